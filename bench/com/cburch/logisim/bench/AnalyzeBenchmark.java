@@ -0,0 +1,53 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.cburch.logisim.analyze.model.AnalyzerModel;
+import com.cburch.logisim.circuit.Analyze;
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.instance.Instance;
+import com.cburch.logisim.proj.Project;
+
+/** Measures how many truth table rows per second Analyze.computeTable
+ * produces for a small adder. */
+class AnalyzeBenchmark extends Benchmark {
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new AnalyzeBenchmark(4),
+		});
+	}
+
+	private int bits;
+	private Project proj;
+	private Circuit circuit;
+	private Map<Instance, String> pinLabels;
+
+	private AnalyzeBenchmark(int bits) {
+		super("analyze.adder" + bits, "rows");
+		this.bits = bits;
+	}
+
+	@Override
+	public void setUp() {
+		ArrayList<Circuit> circuits = new ArrayList<Circuit>();
+		circuit = SyntheticCircuit.rippleAdder(bits).getCircuit();
+		circuits.add(circuit);
+		proj = new Project(SyntheticCircuit.createFile(circuits));
+		pinLabels = Analyze.getPinLabels(circuit);
+	}
+
+	@Override
+	public long run() {
+		AnalyzerModel model = new AnalyzerModel();
+		Analyze.computeTable(model, proj, circuit, pinLabels);
+		int rows = model.getTruthTable().getRowCount();
+		consume(rows);
+		return rows;
+	}
+}
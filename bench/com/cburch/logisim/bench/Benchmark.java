@@ -0,0 +1,46 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+/** A workload measured by BenchmarkRunner. Each call to run performs
+ * some amount of work and reports how many operations it completed. */
+public abstract class Benchmark {
+	private static volatile int sink = 0;
+
+	private String name;
+	private String unit;
+
+	protected Benchmark(String name, String unit) {
+		this.name = name;
+		this.unit = unit;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	public void setUp() throws Exception { }
+
+	public abstract long run() throws Exception;
+
+	public void tearDown() throws Exception { }
+
+	// keeps the JIT from discarding results nobody looks at
+	protected static void consume(Object value) {
+		if (value != null) sink += value.hashCode();
+	}
+
+	protected static void consume(int value) {
+		sink += value;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,130 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs the benchmarks named on the command line. Each benchmark is
+ * warmed up for a few iterations, then measured over several more, where
+ * an iteration repeats the workload until a minimum time has passed. */
+public class BenchmarkRunner {
+	private static final String USAGE
+		= "usage: BenchmarkRunner [-w warmups] [-i iterations] [-t millis] [-list] [filter...]";
+
+	private int warmups = 3;
+	private int iterations = 5;
+	private long minTime = 1000;
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+
+		BenchmarkRunner runner = new BenchmarkRunner();
+		ArrayList<String> filters = new ArrayList<String>();
+		boolean listOnly = false;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-w") && i + 1 < args.length) {
+					runner.warmups = Integer.parseInt(args[++i]);
+				} else if (arg.equals("-i") && i + 1 < args.length) {
+					runner.iterations = Math.max(1, Integer.parseInt(args[++i]));
+				} else if (arg.equals("-t") && i + 1 < args.length) {
+					runner.minTime = Long.parseLong(args[++i]);
+				} else if (arg.equals("-list")) {
+					listOnly = true;
+				} else if (arg.startsWith("-")) {
+					System.err.println(USAGE); //OK
+					System.exit(-1);
+				} else {
+					filters.add(arg);
+				}
+			}
+		} catch (NumberFormatException e) {
+			System.err.println(USAGE); //OK
+			System.exit(-1);
+		}
+
+		List<Benchmark> selected = new ArrayList<Benchmark>();
+		for (Benchmark bench : getBenchmarks()) {
+			if (matches(bench.getName(), filters)) selected.add(bench);
+		}
+		if (listOnly) {
+			for (Benchmark bench : selected) System.out.println(bench.getName()); //OK
+		} else {
+			for (Benchmark bench : selected) {
+				try {
+					runner.measure(bench);
+				} catch (Throwable t) {
+					System.err.println(bench.getName() + " failed: " + t); //OK
+					t.printStackTrace();
+				}
+			}
+		}
+		System.exit(0);
+	}
+
+	static List<Benchmark> getBenchmarks() {
+		ArrayList<Benchmark> ret = new ArrayList<Benchmark>();
+		ret.addAll(SimulationBenchmark.getAll());
+		ret.addAll(BundleMapBenchmark.getAll());
+		ret.addAll(LoadBenchmark.getAll());
+		ret.addAll(ForkBenchmark.getAll());
+		ret.addAll(MutationBenchmark.getAll());
+		ret.addAll(SaveBenchmark.getAll());
+		ret.addAll(StatisticsBenchmark.getAll());
+		ret.addAll(ValueBenchmark.getAll());
+		ret.addAll(AnalyzeBenchmark.getAll());
+		ret.addAll(BuildBenchmark.getAll());
+		return ret;
+	}
+
+	private static boolean matches(String name, List<String> filters) {
+		if (filters.isEmpty()) return true;
+		for (String filter : filters) {
+			if (name.indexOf(filter) >= 0) return true;
+		}
+		return false;
+	}
+
+	private void measure(Benchmark bench) throws Exception {
+		bench.setUp();
+		try {
+			for (int i = 0; i < warmups; i++) runIteration(bench);
+			double[] rates = new double[iterations];
+			for (int i = 0; i < iterations; i++) rates[i] = runIteration(bench);
+			report(bench, rates);
+		} finally {
+			bench.tearDown();
+		}
+	}
+
+	private double runIteration(Benchmark bench) throws Exception {
+		long ops = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			ops += bench.run();
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < minTime * 1000000L);
+		return ops / (elapsed / 1e9);
+	}
+
+	private static void report(Benchmark bench, double[] rates) {
+		double sum = 0.0;
+		double min = Double.MAX_VALUE;
+		double max = 0.0;
+		for (double rate : rates) {
+			sum += rate;
+			min = Math.min(min, rate);
+			max = Math.max(max, rate);
+		}
+		double mean = sum / rates.length;
+		double var = 0.0;
+		for (double rate : rates) var += (rate - mean) * (rate - mean);
+		double dev = rates.length > 1 ? Math.sqrt(var / (rates.length - 1)) : 0.0;
+		System.out.println(String.format("%-36s %14.1f +- %10.1f  [%.1f, %.1f] %s/s", //OK
+				bench.getName(), mean, dev, min, max, bench.getUnit()));
+	}
+}
@@ -0,0 +1,149 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.cburch.logisim.analyze.model.AnalyzerModel;
+import com.cburch.logisim.analyze.model.Entry;
+import com.cburch.logisim.analyze.model.Expression;
+import com.cburch.logisim.analyze.model.Expressions;
+import com.cburch.logisim.analyze.model.TruthTable;
+import com.cburch.logisim.circuit.Analyze;
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitMutation;
+import com.cburch.logisim.std.gates.CircuitBuilder;
+
+/** Measures how many gates per second CircuitBuilder lays out for the
+ * expressions of a ripple adder. Before measuring, the built circuit is
+ * analyzed back into expressions, and their truth table must match the
+ * one of the expressions it was built from. */
+class BuildBenchmark extends Benchmark {
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new BuildBenchmark(4, false, false),
+			new BuildBenchmark(4, true, false),
+			new BuildBenchmark(4, true, true),
+		});
+	}
+
+	private int bits;
+	private boolean twoInputs;
+	private boolean useNands;
+	private AnalyzerModel model;
+
+	private BuildBenchmark(int bits, boolean twoInputs, boolean useNands) {
+		super("build.adder" + bits + (twoInputs ? ".two" : "")
+				+ (useNands ? ".nands" : ""), "components");
+		this.bits = bits;
+		this.twoInputs = twoInputs;
+		this.useNands = useNands;
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		model = createAdderModel(bits);
+		if (useNands) {
+			// NAND gates cannot stand in for XOR, so build from the
+			// minimized sums of products instead
+			for (int i = 0; i < model.getOutputs().size(); i++) {
+				String output = model.getOutputs().get(i);
+				Expression expr = model.getOutputExpressions().getMinimalExpression(output);
+				model.getOutputExpressions().setExpression(output, expr);
+			}
+		}
+
+		Circuit circuit = build();
+		AnalyzerModel analyzed = new AnalyzerModel();
+		Analyze.computeExpression(analyzed, circuit, Analyze.getPinLabels(circuit));
+		String diff = compare(model, analyzed);
+		if (diff != null) {
+			throw new IllegalStateException("built circuit differs: " + diff);
+		}
+	}
+
+	@Override
+	public long run() {
+		Circuit circuit = build();
+		int count = circuit.getNonWires().size() + circuit.getWires().size();
+		consume(count);
+		return count;
+	}
+
+	private Circuit build() {
+		Circuit circuit = new Circuit("adder");
+		CircuitMutation xn = CircuitBuilder.build(circuit, model, twoInputs, useNands);
+		xn.execute();
+		return circuit;
+	}
+
+	// the carry feeds both the sum and the next carry, so the builder
+	// has shared subexpressions to merge
+	private static AnalyzerModel createAdderModel(int bits) {
+		ArrayList<String> inputs = new ArrayList<String>();
+		ArrayList<String> outputs = new ArrayList<String>();
+		for (int i = 0; i < bits; i++) {
+			inputs.add("a" + i);
+			inputs.add("b" + i);
+			outputs.add("s" + i);
+		}
+		outputs.add("c" + bits);
+
+		AnalyzerModel ret = new AnalyzerModel();
+		ret.setVariables(inputs, outputs);
+		Expression carry = null;
+		for (int i = 0; i < bits; i++) {
+			Expression a = Expressions.variable("a" + i);
+			Expression b = Expressions.variable("b" + i);
+			Expression half = Expressions.xor(a, b);
+			if (carry == null) {
+				ret.getOutputExpressions().setExpression("s" + i, half);
+				carry = Expressions.and(a, b);
+			} else {
+				ret.getOutputExpressions().setExpression("s" + i,
+						Expressions.xor(half, carry));
+				carry = Expressions.or(Expressions.and(a, b),
+						Expressions.and(carry, half));
+			}
+		}
+		ret.getOutputExpressions().setExpression("c" + bits, carry);
+		return ret;
+	}
+
+	// returns null if both tables agree on every output, matching the
+	// columns by name since the analyzer may order the pins differently
+	private static String compare(AnalyzerModel expected, AnalyzerModel actual) {
+		TruthTable want = expected.getTruthTable();
+		TruthTable have = actual.getTruthTable();
+		int inputs = want.getInputColumnCount();
+		if (have.getInputColumnCount() != inputs
+				|| have.getOutputColumnCount() != want.getOutputColumnCount()) {
+			return "different pins";
+		}
+		int[] inputMap = new int[inputs];
+		for (int i = 0; i < inputs; i++) {
+			inputMap[i] = have.getInputIndex(want.getInputHeader(i));
+			if (inputMap[i] < 0) return "no input " + want.getInputHeader(i);
+		}
+		for (int j = 0; j < want.getOutputColumnCount(); j++) {
+			String output = want.getOutputHeader(j);
+			int column = have.getOutputIndex(output);
+			if (column < 0) return "no output " + output;
+			for (int row = 0; row < want.getRowCount(); row++) {
+				int other = 0;
+				for (int i = 0; i < inputs; i++) {
+					if (TruthTable.isInputSet(row, i, inputs)) {
+						other |= 1 << (inputs - 1 - inputMap[i]);
+					}
+				}
+				Entry a = want.getOutputEntry(row, j);
+				Entry b = have.getOutputEntry(other, column);
+				if (a != b) return output + " in row " + row;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,65 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitMutation;
+import com.cburch.logisim.circuit.Wire;
+import com.cburch.logisim.data.Location;
+
+/** Measures how quickly the wire bundles of a circuit are recomputed
+ * after a wire is added or removed, as the number of wires grows. */
+class BundleMapBenchmark extends Benchmark {
+	private static final int ROW_LENGTH = 100;
+
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new BundleMapBenchmark(1000),
+			new BundleMapBenchmark(10000),
+		});
+	}
+
+	private int wires;
+	private Circuit circuit;
+	private Wire extra;
+
+	private BundleMapBenchmark(int wires) {
+		super("bundles.wires" + wires, "rebuilds");
+		this.wires = wires;
+	}
+
+	@Override
+	public void setUp() {
+		circuit = new Circuit("wires" + wires);
+		CircuitMutation xn = new CircuitMutation(circuit);
+		for (int i = 0; i < wires; i++) {
+			int x = 100 + (i % ROW_LENGTH) * 20;
+			int y = 100 + (i / ROW_LENGTH) * 20;
+			if (i % 10 == 9) {
+				xn.add(Wire.create(Location.create(x, y), Location.create(x, y + 20)));
+			} else {
+				xn.add(Wire.create(Location.create(x, y), Location.create(x + 20, y)));
+			}
+		}
+		xn.execute();
+		extra = Wire.create(Location.create(90, 90), Location.create(90, 110));
+	}
+
+	@Override
+	public long run() {
+		CircuitMutation add = new CircuitMutation(circuit);
+		add.add(extra);
+		add.execute();
+		consume(circuit.getWidthIncompatibilityData());
+
+		CircuitMutation remove = new CircuitMutation(circuit);
+		remove.remove(extra);
+		remove.execute();
+		consume(circuit.getWidthIncompatibilityData());
+		return 2;
+	}
+}
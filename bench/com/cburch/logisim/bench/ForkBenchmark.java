@@ -0,0 +1,76 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitState;
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.BitWidth;
+import com.cburch.logisim.data.Value;
+import com.cburch.logisim.file.LogisimFile;
+import com.cburch.logisim.proj.Project;
+import com.cburch.logisim.std.wiring.Pin;
+
+/** Measures how many times per second a settled circuit state can be
+ * cloned, optionally followed by changing an input of the clone and
+ * propagating it. */
+class ForkBenchmark extends Benchmark {
+	private static final int FORKS = 16;
+
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new ForkBenchmark("fork.regfile32x32", false, false),
+			new ForkBenchmark("fork.regfile32x32.step", false, true),
+			new ForkBenchmark("fork.hierarchy8", true, false),
+			new ForkBenchmark("fork.hierarchy8.step", true, true),
+		});
+	}
+
+	private boolean hierarchy;
+	private boolean step;
+	private CircuitState state;
+	private Component input;
+	private int count = 0;
+
+	private ForkBenchmark(String name, boolean hierarchy, boolean step) {
+		super(name, "forks");
+		this.hierarchy = hierarchy;
+		this.step = step;
+	}
+
+	@Override
+	public void setUp() {
+		List<SyntheticCircuit> circs;
+		if (hierarchy) circs = SyntheticCircuit.hierarchy(8);
+		else circs = Arrays.asList(SyntheticCircuit.registerFile(5, 32));
+		ArrayList<Circuit> circuits = new ArrayList<Circuit>();
+		for (SyntheticCircuit circ : circs) circuits.add(circ.getCircuit());
+		LogisimFile file = SyntheticCircuit.createFile(circuits);
+		SyntheticCircuit top = circs.get(circs.size() - 1);
+
+		state = new CircuitState(new Project(file), top.getCircuit());
+		input = top.getInputs().get(0);
+		state.getPropagator().propagate();
+	}
+
+	@Override
+	public long run() {
+		for (int i = 0; i < FORKS; i++) {
+			CircuitState fork = state.cloneState();
+			if (step) {
+				BitWidth width = input.getEnd(0).getWidth();
+				Pin.FACTORY.setValue(fork.getInstanceState(input),
+						Value.createKnown(width, count++));
+				fork.markComponentAsDirty(input);
+				fork.getPropagator().propagate();
+			}
+			consume(fork.getValue(input.getLocation()));
+		}
+		return FORKS;
+	}
+}
@@ -0,0 +1,59 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.file.Loader;
+import com.cburch.logisim.file.LogisimFile;
+
+/** Measures how quickly a saved file is read back, including the
+ * circuit contents whose parsing is normally deferred until first use. */
+class LoadBenchmark extends Benchmark {
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new LoadBenchmark(16),
+			new LoadBenchmark(256),
+		});
+	}
+
+	private int bits;
+	private File saved;
+
+	private LoadBenchmark(int bits) {
+		super("load.adder" + bits, "loads");
+		this.bits = bits;
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		ArrayList<Circuit> circuits = new ArrayList<Circuit>();
+		circuits.add(SyntheticCircuit.rippleAdder(bits).getCircuit());
+		LogisimFile file = SyntheticCircuit.createFile(circuits);
+		saved = File.createTempFile("logisim-bench", ".circ");
+		saved.deleteOnExit();
+		if (!SyntheticCircuit.getLoader().save(file, saved)) {
+			throw new Exception("could not save " + saved);
+		}
+	}
+
+	@Override
+	public long run() throws Exception {
+		LogisimFile file = LogisimFile.load(saved, new Loader(null));
+		for (Circuit circ : file.getCircuits()) {
+			circ.loadDeferredContents();
+			consume(circ.getNonWires().size());
+		}
+		return 1;
+	}
+
+	@Override
+	public void tearDown() {
+		saved.delete();
+	}
+}
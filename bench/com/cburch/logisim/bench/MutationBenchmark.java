@@ -0,0 +1,103 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitEvent;
+import com.cburch.logisim.circuit.CircuitListener;
+import com.cburch.logisim.circuit.CircuitMutation;
+import com.cburch.logisim.circuit.CircuitState;
+import com.cburch.logisim.circuit.SubcircuitFactory;
+import com.cburch.logisim.circuit.Wire;
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.ComponentFactory;
+import com.cburch.logisim.data.Location;
+import com.cburch.logisim.file.LogisimFile;
+import com.cburch.logisim.proj.Project;
+
+/** Measures pasting a block of gates into a simulated circuit in one
+ * transaction and deleting it again, optionally with a wire on each
+ * gate's output. A listener rescans the circuit on each event, as the
+ * explorer and logging trees do. */
+class MutationBenchmark extends Benchmark {
+	private static final int COLUMNS = 50;
+
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new MutationBenchmark(100, false),
+			new MutationBenchmark(1000, false),
+			new MutationBenchmark(1000, true),
+		});
+	}
+
+	private static class ScanningListener implements CircuitListener {
+		public void circuitChanged(CircuitEvent event) {
+			int subcircuits = 0;
+			for (Component comp : event.getCircuit().getNonWires()) {
+				if (comp.getFactory() instanceof SubcircuitFactory) subcircuits++;
+			}
+			consume(subcircuits);
+		}
+	}
+
+	private int size;
+	private boolean wired;
+	private Circuit circuit;
+	private CircuitState state;
+	private ComponentFactory factory;
+	private ScanningListener listener = new ScanningListener();
+
+	private MutationBenchmark(int size, boolean wired) {
+		super("mutate.paste" + size + (wired ? ".wired" : ""), "components");
+		this.size = size;
+		this.wired = wired;
+	}
+
+	@Override
+	public void setUp() {
+		SyntheticCircuit base = SyntheticCircuit.rippleAdder(16);
+		circuit = base.getCircuit();
+		LogisimFile file = SyntheticCircuit.createFile(Arrays.asList(circuit));
+		state = new Project(file).getCircuitState(circuit);
+		state.getPropagator().propagate();
+		factory = SyntheticCircuit.getFactory("Gates", "AND Gate");
+		circuit.addCircuitListener(listener);
+	}
+
+	@Override
+	public long run() {
+		ArrayList<Component> block = new ArrayList<Component>();
+		CircuitMutation paste = new CircuitMutation(circuit);
+		for (int i = 0; i < size; i++) {
+			Location loc = Location.create(50000 + (i % COLUMNS) * 100,
+					50000 + (i / COLUMNS) * 100);
+			Component comp = factory.createComponent(loc, factory.createAttributeSet());
+			block.add(comp);
+			paste.add(comp);
+			if (wired) {
+				Location end = comp.getEnd(0).getLocation();
+				Wire wire = Wire.create(end, end.translate(20, 0));
+				block.add(wire);
+				paste.add(wire);
+			}
+		}
+		paste.execute();
+		state.getPropagator().propagate();
+
+		CircuitMutation delete = new CircuitMutation(circuit);
+		delete.removeAll(block);
+		delete.execute();
+		state.getPropagator().propagate();
+		return size;
+	}
+
+	@Override
+	public void tearDown() {
+		circuit.removeCircuitListener(listener);
+	}
+}
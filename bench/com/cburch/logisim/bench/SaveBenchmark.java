@@ -0,0 +1,60 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.file.LogisimFile;
+
+/** Measures how quickly a project is written to disk, for a single
+ * large circuit and for a project of many circuits. */
+class SaveBenchmark extends Benchmark {
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new SaveBenchmark(256, 1),
+			new SaveBenchmark(32, 16),
+		});
+	}
+
+	private int bits;
+	private int copies;
+	private LogisimFile file;
+	private File dest;
+
+	private SaveBenchmark(int bits, int copies) {
+		super("save.adder" + bits + "x" + copies, "saves");
+		this.bits = bits;
+		this.copies = copies;
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		ArrayList<Circuit> circuits = new ArrayList<Circuit>();
+		for (int i = 0; i < copies; i++) {
+			circuits.add(SyntheticCircuit.rippleAdder(bits).getCircuit());
+			circuits.get(i).setName("adder" + i);
+		}
+		file = SyntheticCircuit.createFile(circuits);
+		dest = File.createTempFile("logisim-bench", ".circ");
+		dest.deleteOnExit();
+	}
+
+	@Override
+	public long run() throws Exception {
+		if (!SyntheticCircuit.getLoader().save(file, dest)) {
+			throw new Exception("could not save " + dest);
+		}
+		consume(dest.length());
+		return 1;
+	}
+
+	@Override
+	public void tearDown() {
+		dest.delete();
+	}
+}
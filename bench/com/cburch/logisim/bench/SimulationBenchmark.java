@@ -0,0 +1,105 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitState;
+import com.cburch.logisim.circuit.Propagator;
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.BitWidth;
+import com.cburch.logisim.data.Value;
+import com.cburch.logisim.file.LogisimFile;
+import com.cburch.logisim.instance.StdAttr;
+import com.cburch.logisim.proj.Project;
+import com.cburch.logisim.std.wiring.Pin;
+
+/** Measures how many times per second the propagator can settle a
+ * circuit after all of its inputs are given new random values. */
+class SimulationBenchmark extends Benchmark {
+	private static final int STEPS = 16;
+
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new SimulationBenchmark("sim.chain1000", 0, 1000),
+			new SimulationBenchmark("sim.adder32", 1, 32),
+			new SimulationBenchmark("sim.regfile8x32", 2, 3),
+			new SimulationBenchmark("sim.regfile32x32", 2, 5),
+			new SimulationBenchmark("sim.hierarchy8", 3, 8),
+			new SimulationBenchmark("sim.splitter16", 4, 16),
+		});
+	}
+
+	private int kind;
+	private int size;
+	private CircuitState state;
+	private Propagator prop;
+	private Component[] inputs;
+	private Component clock;
+	private Random random = new Random(42);
+
+	private SimulationBenchmark(String name, int kind, int size) {
+		super(name, "propagations");
+		this.kind = kind;
+		this.size = size;
+	}
+
+	@Override
+	public void setUp() {
+		List<SyntheticCircuit> circs;
+		switch (kind) {
+		case 0: circs = Arrays.asList(SyntheticCircuit.gateChain(size)); break;
+		case 1: circs = Arrays.asList(SyntheticCircuit.rippleAdder(size)); break;
+		case 2: circs = Arrays.asList(SyntheticCircuit.registerFile(size, 32)); break;
+		case 3: circs = SyntheticCircuit.hierarchy(size); break;
+		default: circs = Arrays.asList(SyntheticCircuit.splitterNetwork(size)); break;
+		}
+		ArrayList<Circuit> circuits = new ArrayList<Circuit>();
+		for (SyntheticCircuit circ : circs) circuits.add(circ.getCircuit());
+		LogisimFile file = SyntheticCircuit.createFile(circuits);
+		SyntheticCircuit top = circs.get(circs.size() - 1);
+
+		state = new CircuitState(new Project(file), top.getCircuit());
+		prop = state.getPropagator();
+		ArrayList<Component> ins = new ArrayList<Component>();
+		clock = null;
+		for (Component in : top.getInputs()) {
+			if ("clk".equals(in.getAttributeSet().getValue(StdAttr.LABEL))) clock = in;
+			else ins.add(in);
+		}
+		inputs = ins.toArray(new Component[ins.size()]);
+		prop.propagate();
+	}
+
+	@Override
+	public long run() {
+		long ops = 0;
+		for (int i = 0; i < STEPS; i++) {
+			for (Component in : inputs) {
+				BitWidth width = in.getEnd(0).getWidth();
+				setInput(in, Value.createKnown(width, random.nextInt()));
+			}
+			prop.propagate();
+			ops++;
+			if (clock != null) {
+				setInput(clock, Value.TRUE);
+				prop.propagate();
+				setInput(clock, Value.FALSE);
+				prop.propagate();
+				ops += 2;
+			}
+		}
+		consume(state.getValue(inputs[0].getLocation()));
+		return ops;
+	}
+
+	private void setInput(Component in, Value value) {
+		Pin.FACTORY.setValue(state.getInstanceState(in), value);
+		state.markComponentAsDirty(in);
+	}
+}
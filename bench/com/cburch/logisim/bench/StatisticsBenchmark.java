@@ -0,0 +1,90 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitMutation;
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.Location;
+import com.cburch.logisim.file.FileStatistics;
+import com.cburch.logisim.file.LogisimFile;
+
+/** Measures how quickly the component counts of a project are computed,
+ * both when nothing has changed since the last computation and when one
+ * subcircuit changes before each one. The project is either a deep
+ * hierarchy of small circuits or a top circuit holding several instances
+ * of many large ones. */
+class StatisticsBenchmark extends Benchmark {
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new StatisticsBenchmark(false, false),
+			new StatisticsBenchmark(false, true),
+			new StatisticsBenchmark(true, false),
+			new StatisticsBenchmark(true, true),
+		});
+	}
+
+	private static final int DEPTH = 32;
+	private static final int ADDERS = 16;
+	private static final int ADDER_BITS = 64;
+	private static final int INSTANCES = 4;
+
+	private boolean wide;
+	private boolean edit;
+	private LogisimFile file;
+	private Circuit leaf;
+	private Circuit top;
+	private Component extra;
+
+	private StatisticsBenchmark(boolean wide, boolean edit) {
+		super("stats." + (wide ? "adders" + ADDERS : "hierarchy" + DEPTH)
+				+ (edit ? ".edit" : ""), "computations");
+		this.wide = wide;
+		this.edit = edit;
+	}
+
+	@Override
+	public void setUp() {
+		ArrayList<Circuit> circuits = new ArrayList<Circuit>();
+		if (wide) {
+			SyntheticCircuit main = new SyntheticCircuit("top");
+			for (int i = 0; i < ADDERS; i++) {
+				Circuit adder = SyntheticCircuit.rippleAdder(ADDER_BITS).getCircuit();
+				adder.setName("adder" + i);
+				circuits.add(adder);
+				for (int j = 0; j < INSTANCES; j++) {
+					main.add(adder.getSubcircuitFactory());
+				}
+			}
+			circuits.add(main.finish());
+		} else {
+			for (SyntheticCircuit circ : SyntheticCircuit.hierarchy(DEPTH)) {
+				circuits.add(circ.getCircuit());
+			}
+		}
+		file = SyntheticCircuit.createFile(circuits);
+		leaf = circuits.get(0);
+		top = circuits.get(circuits.size() - 1);
+		extra = SyntheticCircuit.getFactory("Gates", "NOT Gate").createComponent(
+				Location.create(1000, 1000),
+				SyntheticCircuit.getFactory("Gates", "NOT Gate").createAttributeSet());
+	}
+
+	@Override
+	public long run() {
+		if (edit) {
+			CircuitMutation xn = new CircuitMutation(leaf);
+			if (leaf.contains(extra)) xn.remove(extra);
+			else xn.add(extra);
+			xn.execute();
+		}
+		FileStatistics stats = FileStatistics.compute(file, top);
+		consume(stats.getTotalWithSubcircuits().getRecursiveCount());
+		return 1;
+	}
+}
@@ -0,0 +1,277 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitMutation;
+import com.cburch.logisim.circuit.SplitterFactory;
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.ComponentFactory;
+import com.cburch.logisim.comp.EndData;
+import com.cburch.logisim.data.Attribute;
+import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.Location;
+import com.cburch.logisim.file.Loader;
+import com.cburch.logisim.file.LogisimFile;
+import com.cburch.logisim.instance.StdAttr;
+import com.cburch.logisim.std.wiring.Pin;
+import com.cburch.logisim.std.wiring.Tunnel;
+import com.cburch.logisim.tools.AddTool;
+import com.cburch.logisim.tools.Library;
+import com.cburch.logisim.tools.Tool;
+
+/** Builds circuits of a chosen size without any layout. Components are
+ * spread over a grid far enough apart that no two ends coincide, and
+ * each end is joined to its net by a tunnel named after the net. */
+class SyntheticCircuit {
+	private static final int COLUMNS = 40;
+	private static final int SPACING = 400;
+
+	private static Loader loader = null;
+
+	private Circuit circuit;
+	private CircuitMutation xn;
+	private int slots = 0;
+	private ArrayList<Component> inputs = new ArrayList<Component>();
+	private ArrayList<Component> outputs = new ArrayList<Component>();
+
+	SyntheticCircuit(String name) {
+		circuit = new Circuit(name);
+		xn = new CircuitMutation(circuit);
+	}
+
+	Circuit getCircuit() {
+		return circuit;
+	}
+
+	List<Component> getInputs() {
+		return inputs;
+	}
+
+	List<Component> getOutputs() {
+		return outputs;
+	}
+
+	Component add(String lib, String tool, String... attrs) {
+		return add(getFactory(lib, tool), attrs);
+	}
+
+	Component add(ComponentFactory factory, String... attrs) {
+		AttributeSet set = factory.createAttributeSet();
+		for (int i = 0; i + 1 < attrs.length; i += 2) {
+			setAttribute(set, attrs[i], attrs[i + 1]);
+		}
+		int slot = slots++;
+		Location loc = Location.create(100 + (slot % COLUMNS) * SPACING,
+				100 + (slot / COLUMNS) * SPACING);
+		Component ret = factory.createComponent(loc, set);
+		xn.add(ret);
+		return ret;
+	}
+
+	Component addSplitter(int width, int fanout) {
+		return add(SplitterFactory.instance, "incoming", "" + width,
+				"fanout", "" + fanout);
+	}
+
+	Component input(String net, int width) {
+		Component ret = add(Pin.FACTORY, "width", "" + width,
+				"tristate", "false", "label", net);
+		connect(ret, 0, net);
+		inputs.add(ret);
+		return ret;
+	}
+
+	Component output(String net, int width) {
+		Component ret = add(Pin.FACTORY, "width", "" + width,
+				"output", "true", "label", net);
+		connect(ret, 0, net);
+		outputs.add(ret);
+		return ret;
+	}
+
+	void connect(Component comp, int end, String net) {
+		EndData data = comp.getEnd(end);
+		AttributeSet attrs = Tunnel.FACTORY.createAttributeSet();
+		attrs.setValue(StdAttr.LABEL, net);
+		attrs.setValue(StdAttr.WIDTH, data.getWidth());
+		xn.add(Tunnel.FACTORY.createComponent(data.getLocation(), attrs));
+	}
+
+	Circuit finish() {
+		xn.execute();
+		xn = new CircuitMutation(circuit);
+		return circuit;
+	}
+
+	// the files share one loader so they can be saved with it
+	static synchronized Loader getLoader() {
+		if (loader == null) loader = new Loader(null);
+		return loader;
+	}
+
+	static ComponentFactory getFactory(String lib, String tool) {
+		Library library = getLoader().getBuiltin().getLibrary(lib);
+		Tool found = library == null ? null : library.getTool(tool);
+		if (!(found instanceof AddTool)) {
+			throw new IllegalArgumentException("no tool " + lib + "/" + tool);
+		}
+		return ((AddTool) found).getFactory();
+	}
+
+	static LogisimFile createFile(List<Circuit> circuits) {
+		Loader loader = getLoader();
+		LogisimFile ret = LogisimFile.createNew(loader);
+		for (Library lib : loader.getBuiltin().getLibraries()) ret.addLibrary(lib);
+		for (Circuit circ : circuits) ret.addCircuit(circ);
+		if (!circuits.isEmpty()) ret.setMainCircuit(circuits.get(circuits.size() - 1));
+		return ret;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void setAttribute(AttributeSet attrs, String name, String value) {
+		for (Attribute<?> attr : attrs.getAttributes()) {
+			if (attr.getName().equals(name)) {
+				Attribute<Object> a = (Attribute<Object>) attr;
+				attrs.setValue(a, a.parse(value));
+				return;
+			}
+		}
+		throw new IllegalArgumentException("no attribute " + name);
+	}
+
+	//
+	// the circuits used by the benchmarks
+	//
+	static SyntheticCircuit gateChain(int length) {
+		SyntheticCircuit ret = new SyntheticCircuit("chain" + length);
+		ret.input("n0", 1);
+		for (int i = 0; i < length; i++) {
+			Component not = ret.add("Gates", "NOT Gate");
+			ret.connect(not, 1, "n" + i);
+			ret.connect(not, 0, "n" + (i + 1));
+		}
+		ret.output("n" + length, 1);
+		ret.finish();
+		return ret;
+	}
+
+	static SyntheticCircuit rippleAdder(int bits) {
+		SyntheticCircuit ret = new SyntheticCircuit("adder" + bits);
+		ret.input("c0", 1);
+		for (int i = 0; i < bits; i++) {
+			String a = "a" + i;
+			String b = "b" + i;
+			String c = "c" + i;
+			ret.input(a, 1);
+			ret.input(b, 1);
+			gate(ret, "XOR Gate", "p" + i, a, b);
+			gate(ret, "XOR Gate", "s" + i, "p" + i, c);
+			gate(ret, "AND Gate", "g" + i, a, b);
+			gate(ret, "AND Gate", "t" + i, "p" + i, c);
+			gate(ret, "OR Gate", "c" + (i + 1), "g" + i, "t" + i);
+			ret.output("s" + i, 1);
+		}
+		ret.output("c" + bits, 1);
+		ret.finish();
+		return ret;
+	}
+
+	private static void gate(SyntheticCircuit circ, String type, String out,
+			String in0, String in1) {
+		Component gate = circ.add("Gates", type, "inputs", "2");
+		circ.connect(gate, 0, out);
+		circ.connect(gate, 1, in0);
+		circ.connect(gate, 2, in1);
+	}
+
+	static SyntheticCircuit registerFile(int selectBits, int width) {
+		int regs = 1 << selectBits;
+		SyntheticCircuit ret = new SyntheticCircuit("regfile" + regs + "x" + width);
+		ret.input("d", width);
+		ret.input("wsel", selectBits);
+		ret.input("rsel", selectBits);
+		ret.input("clk", 1);
+		Component dec = ret.add("Plexers", "Decoder", "select", "" + selectBits,
+				"enable", "false");
+		ret.connect(dec, regs, "wsel");
+		Component mux = ret.add("Plexers", "Multiplexer", "select", "" + selectBits,
+				"width", "" + width, "enable", "false");
+		ret.connect(mux, regs, "rsel");
+		ret.connect(mux, regs + 1, "q");
+		for (int i = 0; i < regs; i++) {
+			Component reg = ret.add("Memory", "Register", "width", "" + width);
+			ret.connect(dec, i, "we" + i);
+			ret.connect(reg, 4, "we" + i); // EN
+			ret.connect(reg, 1, "d"); // IN
+			ret.connect(reg, 2, "clk"); // CK
+			ret.connect(reg, 0, "r" + i); // OUT
+			ret.connect(mux, i, "r" + i);
+		}
+		ret.output("q", width);
+		ret.finish();
+		return ret;
+	}
+
+	/** Returns circuits where each level holds two instances of the level
+	 * below, so the top level expands to 2^depth NOT gates. The top level
+	 * comes last. */
+	static List<SyntheticCircuit> hierarchy(int depth) {
+		ArrayList<SyntheticCircuit> ret = new ArrayList<SyntheticCircuit>();
+		SyntheticCircuit leaf = new SyntheticCircuit("level0");
+		leaf.input("in", 1);
+		Component not = leaf.add("Gates", "NOT Gate");
+		leaf.connect(not, 1, "in");
+		leaf.connect(not, 0, "out");
+		leaf.output("out", 1);
+		leaf.finish();
+		ret.add(leaf);
+		for (int level = 1; level <= depth; level++) {
+			Circuit sub = ret.get(ret.size() - 1).getCircuit();
+			SyntheticCircuit circ = new SyntheticCircuit("level" + level);
+			circ.input("in", 1);
+			for (int i = 0; i < 2; i++) {
+				Component inst = circ.add(sub.getSubcircuitFactory());
+				for (int j = 0; j < inst.getEnds().size(); j++) {
+					boolean isInput = inst.getEnd(j).isInput();
+					String net;
+					if (i == 0) net = isInput ? "in" : "mid";
+					else net = isInput ? "mid" : "out";
+					circ.connect(inst, j, net);
+				}
+			}
+			circ.output("out", 1);
+			circ.finish();
+			ret.add(circ);
+		}
+		return ret;
+	}
+
+	/** Returns a circuit where a 32-bit value repeatedly fans out through
+	 * a splitter, passes through a NOT gate per bit, and is gathered back
+	 * by a second splitter. */
+	static SyntheticCircuit splitterNetwork(int stages) {
+		SyntheticCircuit ret = new SyntheticCircuit("split" + stages);
+		ret.input("v0", 32);
+		for (int i = 0; i < stages; i++) {
+			Component spread = ret.addSplitter(32, 32);
+			Component gather = ret.addSplitter(32, 32);
+			ret.connect(spread, 0, "v" + i);
+			ret.connect(gather, 0, "v" + (i + 1));
+			for (int j = 0; j < 32; j++) {
+				Component not = ret.add("Gates", "NOT Gate");
+				ret.connect(spread, j + 1, "x" + i + "_" + j);
+				ret.connect(not, 1, "x" + i + "_" + j);
+				ret.connect(not, 0, "y" + i + "_" + j);
+				ret.connect(gather, j + 1, "y" + i + "_" + j);
+			}
+		}
+		ret.output("v" + stages, 32);
+		ret.finish();
+		return ret;
+	}
+}
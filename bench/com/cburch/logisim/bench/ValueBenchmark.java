@@ -0,0 +1,75 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.bench;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.cburch.logisim.data.BitWidth;
+import com.cburch.logisim.data.Value;
+
+/** Measures the operations on Value that the propagator uses most:
+ * building values from bits, combining the values driven onto a wire,
+ * and the gate operations. */
+class ValueBenchmark extends Benchmark {
+	private static final int COUNT = 1024;
+
+	static List<Benchmark> getAll() {
+		return Arrays.asList(new Benchmark[] {
+			new ValueBenchmark("value.create32", 0),
+			new ValueBenchmark("value.combine32", 1),
+			new ValueBenchmark("value.logic32", 2),
+		});
+	}
+
+	private int kind;
+	private Value[] values;
+	private Value[][] bits;
+
+	private ValueBenchmark(String name, int kind) {
+		super(name, "ops");
+		this.kind = kind;
+	}
+
+	@Override
+	public void setUp() {
+		Random random = new Random(42);
+		BitWidth width = BitWidth.create(32);
+		values = new Value[COUNT];
+		bits = new Value[COUNT][];
+		for (int i = 0; i < COUNT; i++) {
+			Value v = Value.createKnown(width, random.nextInt());
+			if (i % 4 == 3) v = v.set(random.nextInt(32), Value.UNKNOWN);
+			values[i] = v;
+			bits[i] = v.getAll();
+		}
+	}
+
+	@Override
+	public long run() {
+		int hash = 0;
+		switch (kind) {
+		case 0:
+			for (int i = 0; i < COUNT; i++) {
+				hash += Value.create(bits[i]).hashCode();
+			}
+			break;
+		case 1:
+			for (int i = 0; i < COUNT; i++) {
+				hash += values[i].combine(values[(i + 1) % COUNT]).hashCode();
+			}
+			break;
+		default:
+			for (int i = 0; i < COUNT; i++) {
+				Value a = values[i];
+				Value b = values[(i + 1) % COUNT];
+				hash += a.and(b).or(a.xor(b)).not().hashCode();
+			}
+			break;
+		}
+		consume(hash);
+		return COUNT;
+	}
+}
@@ -0,0 +1,113 @@
+#!/usr/bin/python
+
+import os
+import platform
+import sys
+import shutil
+import tempfile
+from logisim_script import *
+
+src_dir = get_svn_dir('src')
+bench_dir = get_svn_dir('bench')
+libs_dir = get_svn_dir('libs')
+
+usage = '''usage: run-bench ARGS [-- RUNNER-ARGS]
+arguments:  -bin DIR     compiled Logisim classes are already present in DIR
+            -j DIR       directory for JDK binaries (for java, javac)
+runner arguments:
+            -w N         warmup iterations per benchmark (default 3)
+            -i N         measured iterations per benchmark (default 5)
+            -t MILLIS    minimum duration of each iteration (default 1000)
+            -list        list the benchmarks rather than run them
+            FILTER...    run only benchmarks whose names contain a filter
+'''.rstrip()
+
+bin_dir = None
+jdk_dir = None
+runner_args = []
+
+argi = 0
+print_usage = False
+while argi + 1 < len(sys.argv):
+	argi += 1
+	arg = sys.argv[argi]
+	if arg == '-bin' and argi + 1 < len(sys.argv):
+		argi += 1
+		bin_dir = sys.argv[argi]
+	elif arg == '-j' and argi + 1 < len(sys.argv):
+		argi += 1
+		jdk_dir = sys.argv[argi]
+	elif arg == '--':
+		runner_args = sys.argv[argi + 1:]
+		break
+	else:
+		print_usage = True
+if print_usage:
+	sys.exit(usage)
+
+if bin_dir is not None and not os.path.exists(bin_dir):
+	sys.exit('binary directory ' + bin_dir + ' does not exist')
+if jdk_dir is None:
+	java_exec = 'java'
+	javac_exec = 'javac'
+else:
+	java_exec = '"' + uncygwin(build_path(jdk_dir, 'bin', 'java')) + '"'
+	javac_exec = '"' + uncygwin(build_path(jdk_dir, 'bin', 'javac')) + '"'
+
+def join_classpath(entries):
+	syst = platform.system().upper()
+	if syst.startswith('CYGWIN'):
+		return '"' + ';'.join(entries) + '"'
+	elif syst.startswith('WINDOWS'):
+		return ';'.join(entries)
+	else:
+		return ':'.join(entries)
+
+def list_sources(root, dest):
+	with open(dest, 'w') as java_files:
+		for path, dirs, files in os.walk(root):
+			if '.svn' in dirs:
+				dirs.remove('.svn')
+			for file in files:
+				if file.endswith('.java'):
+					java_files.write(uncygwin(build_path(path, file)) + '\n')
+
+temp_dir = tempfile.mkdtemp(prefix='logisim-bench')
+try:
+	classpath = [build_path(libs_dir, f, cygwin=False)
+		for f in os.listdir(libs_dir) if f.endswith('.jar')]
+	if bin_dir is None:
+		print('compiling Logisim - this may take a full minute')
+		sys.stdout.flush()
+		logisim_bin = build_path(temp_dir, 'logisim')
+		os.mkdir(logisim_bin)
+		sources = build_path(temp_dir, 'source_files')
+		list_sources(src_dir, sources)
+		exit_code = system(javac_exec, '-nowarn',
+			'-d', uncygwin(logisim_bin), '-classpath', join_classpath(classpath),
+			'@' + uncygwin(sources))
+		if exit_code != 0:
+			sys.exit('error during compilation, benchmarks not run')
+	else:
+		logisim_bin = bin_dir
+	classpath.insert(0, uncygwin(logisim_bin))
+	# resources are loaded from the source tree
+	classpath.append(uncygwin(src_dir))
+
+	print('compiling benchmarks')
+	sys.stdout.flush()
+	bench_bin = build_path(temp_dir, 'bench')
+	os.mkdir(bench_bin)
+	sources = build_path(temp_dir, 'bench_files')
+	list_sources(bench_dir, sources)
+	exit_code = system(javac_exec, '-nowarn', '-d', uncygwin(bench_bin),
+		'-classpath', join_classpath(classpath), '@' + uncygwin(sources))
+	if exit_code != 0:
+		sys.exit('error compiling benchmarks')
+	classpath.insert(0, uncygwin(bench_bin))
+
+	system(java_exec, '-Djava.awt.headless=true', '-classpath',
+		join_classpath(classpath), 'com.cburch.logisim.bench.BenchmarkRunner',
+		*runner_args)
+finally:
+	shutil.rmtree(temp_dir)
@@ -15,6 +15,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
 
 import com.cburch.logisim.circuit.appear.CircuitAppearance;
 import com.cburch.logisim.comp.Component;
@@ -53,6 +55,8 @@ public class Circuit {
 
 		@Override
 		protected void run(CircuitMutator mutator) {
+			ArrayList<Location> moved = new ArrayList<Location>(toRemove.keySet());
+			moved.addAll(toAdd.keySet());
 			for (Location loc : toRemove.keySet()) {
 				EndData removed = toRemove.get(loc);
 				EndData replaced = toAdd.remove(loc);
@@ -65,7 +69,8 @@ public class Circuit {
 			for (EndData end : toAdd.values()) {
 				wires.add(comp, end);
 			}
-			((CircuitMutatorImpl) mutator).markModified(Circuit.this);
+			connectionsVersion++;
+			((CircuitMutatorImpl) mutator).markModified(Circuit.this, moved);
 		}
 	}
 
@@ -111,11 +116,20 @@ public class Circuit {
 	private EventSourceWeakSupport<CircuitListener> listeners
 		= new EventSourceWeakSupport<CircuitListener>();
 	private HashSet<Component> comps = new HashSet<Component>(); // doesn't include wires
+	private HashMap<ComponentFactory,Integer> factoryCounts
+		= new HashMap<ComponentFactory,Integer>();
+	private Map<ComponentFactory,Integer> factoryCountsView = null; // null after changes
 	CircuitWires wires = new CircuitWires();
 		// wires is package-protected for CircuitState and Analyze only.
 	private ArrayList<Component> clocks = new ArrayList<Component>();
 	private CircuitLocker locker;
 	private WeakHashMap<Component, Circuit> circuitsUsingThis;
+	private volatile int connectionsVersion = 0;
+	private CircuitBatch batch = null; // additions and removals not yet fired
+	private volatile Runnable deferredContents = null;
+	private Thread deferredContentsLoader = null; // guarded by deferredContentsLock
+	private CountDownLatch deferredContentsDone = null;
+	private Object deferredContentsLock = new Object();
 
 	public Circuit(String name) {
 		appearance = new CircuitAppearance(this);
@@ -128,18 +142,102 @@ public class Circuit {
 	CircuitLocker getLocker() {
 		return locker;
 	}
+
+	/** Computes the wire bundles voided by the last transaction; called on
+	 * WireAnalysisThread, with transactions held off meanwhile. */
+	void analyzeWires() {
+		Lock lock = locker.getReadLock();
+		lock.lock();
+		try {
+			wires.analyze();
+		} finally {
+			lock.unlock();
+		}
+	}
 	
 	public Collection<Circuit> getCircuitsUsingThis() {
 		return circuitsUsingThis.values();
 	}
 	
+	/** Arranges for the given loader to create this circuit's contents
+	 * the first time that they are needed, rather than now. The loader
+	 * should do so through a transaction. */
+	public void setDeferredContents(Runnable loader) {
+		deferredContents = loader;
+	}
+	
+	public boolean hasDeferredContents() {
+		return deferredContents != null;
+	}
+	
+	/** Returns the loader given to setDeferredContents, or null once the
+	 * contents have been created. */
+	public Runnable getDeferredContents() {
+		return deferredContents;
+	}
+	
+	/** Creates the circuit's contents if that was deferred. This happens
+	 * automatically when the contents are first accessed. The first
+	 * thread to get here runs the loader, and any others wait for it to
+	 * finish; no lock is held meanwhile, since the loader takes circuit
+	 * locks of its own. */
+	public void loadDeferredContents() {
+		if (deferredContents == null) return;
+		Runnable loader;
+		CountDownLatch done;
+		Thread cur = Thread.currentThread();
+		synchronized (deferredContentsLock) {
+			loader = deferredContents;
+			// the loader itself will access the contents as it goes
+			if (loader == null || deferredContentsLoader == cur) return;
+			if (deferredContentsLoader == null) {
+				deferredContentsLoader = cur;
+				deferredContentsDone = new CountDownLatch(1);
+				done = null;
+			} else {
+				done = deferredContentsDone;
+			}
+		}
+		if (done != null) {
+			awaitUninterruptibly(done);
+			return;
+		}
+		try {
+			loader.run();
+		} finally {
+			synchronized (deferredContentsLock) {
+				deferredContents = null;
+				deferredContentsLoader = null;
+				done = deferredContentsDone;
+				deferredContentsDone = null;
+			}
+			done.countDown();
+		}
+	}
+	
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+	
 	public void mutatorClear() {
 		locker.checkForWritePermission("clear");
 
 		Set<Component> oldComps = comps;
 		comps = new HashSet<Component>();
+		factoryCounts = new HashMap<ComponentFactory,Integer>();
+		factoryCountsView = null;
 		wires = new CircuitWires();
 		clocks.clear();
+		connectionsVersion++;
 		for (Component comp : oldComps) {
 			if (comp.getFactory() instanceof SubcircuitFactory) {
 				SubcircuitFactory sub = (SubcircuitFactory) comp.getFactory();
@@ -174,6 +272,8 @@ public class Circuit {
 	}
 
 	private void fireEvent(CircuitEvent event) {
+		// keep events in order with the changes held back for the batch
+		if (batch != null && locker.hasWriteLock()) flushBatch();
 		for (CircuitListener l : listeners) {
 			l.circuitChanged(event);
 		}
@@ -187,6 +287,7 @@ public class Circuit {
 	}
 
 	public CircuitAppearance getAppearance() {
+		loadDeferredContents();
 		return appearance;
 	}
 	
@@ -195,65 +296,102 @@ public class Circuit {
 	}
 	
 	public Set<WidthIncompatibilityData> getWidthIncompatibilityData() {
+		loadDeferredContents();
 		return wires.getWidthIncompatibilityData();
 	}
 
 	public BitWidth getWidth(Location p) {
+		loadDeferredContents();
 		return wires.getWidth(p);
 	}
 
 	public Location getWidthDeterminant(Location p) {
+		loadDeferredContents();
 		return wires.getWidthDeterminant(p);
 	}
 	
 	public boolean hasConflict(Component comp) {
+		loadDeferredContents();
 		return wires.points.hasConflict(comp);
 	}
 	
 	public Component getExclusive(Location loc) {
+		loadDeferredContents();
 		return wires.points.getExclusive(loc);
 	}
 
 	private Set<Component> getComponents() {
+		loadDeferredContents();
 		return CollectionUtil.createUnmodifiableSetUnion(comps, wires.getWires());
 	}
 	
 	public boolean contains(Component c) {
+		loadDeferredContents();
 		return comps.contains(c) || wires.getWires().contains(c);
 	}
 
 	public Set<Wire> getWires() {
+		loadDeferredContents();
 		return wires.getWires();
 	}
 
+	/** Returns how many components of each factory the circuit holds,
+	 * not counting wires. The returned map is never modified; a new one
+	 * is returned after the circuit changes, so a caller can tell that
+	 * figures derived from an earlier one are still current. */
+	public Map<ComponentFactory,Integer> getFactoryCounts() {
+		loadDeferredContents();
+		Map<ComponentFactory,Integer> ret = factoryCountsView;
+		if (ret == null) {
+			ret = Collections.unmodifiableMap(
+					new HashMap<ComponentFactory,Integer>(factoryCounts));
+			factoryCountsView = ret;
+		}
+		return ret;
+	}
+
 	public Set<Component> getNonWires() {
+		loadDeferredContents();
 		return comps;
 	}
 
 	public Collection<? extends Component> getComponents(Location loc) {
+		loadDeferredContents();
 		return wires.points.getComponents(loc);
 	}
 	
 	public Collection<? extends Component> getSplitCauses(Location loc) {
+		loadDeferredContents();
 		return wires.points.getSplitCauses(loc);
 	}
 	
 	public Collection<Wire> getWires(Location loc) {
+		loadDeferredContents();
 		return wires.points.getWires(loc);
 	}
 	
 	public Collection<? extends Component> getNonWires(Location loc) {
+		loadDeferredContents();
 		return wires.points.getNonWires(loc);
 	}
 	
 	public boolean isConnected(Location loc, Component ignore) {
+		loadDeferredContents();
 		for (Component o : wires.points.getComponents(loc)) {
 			if (o != ignore) return true;
 		}
 		return false;
 	}
 	
+	/** Returns a number that changes whenever a component or wire is
+	 * added or removed or a component's ends move, so that what isConnected
+	 * reported earlier can be known to be still current. */
+	public int getConnectionsVersion() {
+		return connectionsVersion;
+	}
+	
 	public Set<Location> getSplitLocations() {
+		loadDeferredContents();
 		return wires.points.getSplitLocations();
 	}
 
@@ -290,10 +428,12 @@ public class Circuit {
 	}
 	
 	public WireSet getWireSet(Wire start) {
+		loadDeferredContents();
 		return wires.getWireSet(start);
 	}
 
 	public Bounds getBounds() {
+		loadDeferredContents();
 		Bounds wireBounds = wires.getWireBounds();
 		Iterator<Component> it = comps.iterator();
 		if (!it.hasNext()) return wireBounds;
@@ -322,6 +462,7 @@ public class Circuit {
 	}
 
 	public Bounds getBounds(Graphics g) {
+		loadDeferredContents();
 		Bounds ret = wires.getWireBounds();
 		int xMin = ret.getX();
 		int yMin = ret.getY();
@@ -349,6 +490,7 @@ public class Circuit {
 	}
 
 	ArrayList<Component> getClocks() {
+		loadDeferredContents();
 		return clocks;
 	}
 
@@ -387,6 +529,9 @@ public class Circuit {
 
 			wires.add(c);
 			ComponentFactory factory = c.getFactory();
+			Integer count = factoryCounts.get(factory);
+			factoryCounts.put(factory, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+			factoryCountsView = null;
 			if (factory instanceof Clock) {
 				clocks.add(c);
 			} else if (factory instanceof SubcircuitFactory) {
@@ -395,7 +540,8 @@ public class Circuit {
 			}
 			c.addComponentListener(myComponentListener);
 		}
-		fireEvent(CircuitEvent.ACTION_ADD, c);
+		connectionsVersion++;
+		getBatch().add(c);
 	}
 
 	void mutatorRemove(Component c) {
@@ -406,8 +552,13 @@ public class Circuit {
 			wires.remove(c);
 		} else {
 			wires.remove(c);
-			comps.remove(c);
 			ComponentFactory factory = c.getFactory();
+			if (comps.remove(c)) {
+				Integer count = factoryCounts.get(factory);
+				if (count == null || count.intValue() <= 1) factoryCounts.remove(factory);
+				else factoryCounts.put(factory, Integer.valueOf(count.intValue() - 1));
+				factoryCountsView = null;
+			}
 			if (factory instanceof Clock) {
 				clocks.remove(c);
 			} else if (factory instanceof SubcircuitFactory) {
@@ -416,13 +567,40 @@ public class Circuit {
 			}
 			c.removeComponentListener(myComponentListener);
 		}
-		fireEvent(CircuitEvent.ACTION_REMOVE, c);
+		connectionsVersion++;
+		getBatch().remove(c);
+	}
+
+	private CircuitBatch getBatch() {
+		CircuitBatch ret = batch;
+		if (ret == null) {
+			ret = new CircuitBatch();
+			batch = ret;
+		}
+		return ret;
+	}
+
+	/** Fires the additions and removals made so far by the current
+	 * transaction. Listeners hear of a lone change as ACTION_ADD or
+	 * ACTION_REMOVE, and of several as one ACTION_BATCH, so that pasting
+	 * or deleting many components costs each listener one update. */
+	void flushBatch() {
+		CircuitBatch b = batch;
+		if (b == null) return;
+		batch = null;
+		if (b.size() > 1) {
+			fireEvent(CircuitEvent.ACTION_BATCH, b);
+		} else {
+			for (Component c : b.getRemovals()) fireEvent(CircuitEvent.ACTION_REMOVE, c);
+			for (Component c : b.getAdditions()) fireEvent(CircuitEvent.ACTION_ADD, c);
+		}
 	}
 
 	//
 	// Graphics methods
 	//
 	public void draw(ComponentDrawContext context, Collection<Component> hidden) {
+		loadDeferredContents();
 		Graphics g = context.getGraphics();
 		Graphics g_copy = g.create();
 		context.setGraphics(g_copy);
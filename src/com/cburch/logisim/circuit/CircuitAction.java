@@ -9,7 +9,7 @@ import com.cburch.logisim.util.StringGetter;
 
 public class CircuitAction extends Action {
 	private StringGetter name;
-	private CircuitTransaction forward;
+	private CircuitMutation forward;
 	private CircuitTransaction reverse;
 	
 	CircuitAction(StringGetter name, CircuitMutation forward) {
@@ -28,6 +28,12 @@ public class CircuitAction extends Action {
 		if (result != null) {
 			reverse = result.getReverseTransaction();
 		}
+		forward.compact();
+	}
+
+	@Override
+	public long getMemorySize() {
+		return reverse != null ? reverse.getMemorySize() : forward.getMemorySize();
 	}
 
 	@Override
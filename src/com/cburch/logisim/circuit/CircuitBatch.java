@@ -0,0 +1,42 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import com.cburch.logisim.comp.Component;
+
+/** The components added to and removed from a circuit during one
+ * transaction, delivered to listeners as a single ACTION_BATCH event.
+ * A component added and removed again within the transaction appears in
+ * neither collection; one removed and added back appears in both, and
+ * listeners should handle the removals first. */
+public class CircuitBatch {
+	private LinkedHashSet<Component> removals = new LinkedHashSet<Component>();
+	private LinkedHashSet<Component> additions = new LinkedHashSet<Component>();
+
+	CircuitBatch() { }
+
+	public Collection<Component> getRemovals() {
+		return Collections.unmodifiableSet(removals);
+	}
+
+	public Collection<Component> getAdditions() {
+		return Collections.unmodifiableSet(additions);
+	}
+
+	int size() {
+		return removals.size() + additions.size();
+	}
+
+	void add(Component comp) {
+		additions.add(comp);
+	}
+
+	void remove(Component comp) {
+		if (!additions.remove(comp)) removals.add(comp);
+	}
+}
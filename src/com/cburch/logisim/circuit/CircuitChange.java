@@ -3,6 +3,7 @@
 
 package com.cburch.logisim.circuit;
 
+import java.util.Arrays;
 import java.util.Collection;
 
 import com.cburch.logisim.comp.Component;
@@ -11,6 +12,11 @@ import com.cburch.logisim.instance.StdAttr;
 import com.cburch.logisim.std.wiring.Pin;
 
 class CircuitChange {
+	// estimates for getMemorySize, in bytes
+	private static final int CHANGE_SIZE = 64;
+	private static final int REFERENCE_SIZE = 16;
+	private static final int REMOVED_COMPONENT_SIZE = 600;
+
 	static final int CLEAR = 0;
 	static final int ADD = 1;
 	static final int ADD_ALL = 2;
@@ -138,6 +144,10 @@ class CircuitChange {
 		case SET_FOR_CIRCUIT:
 			return CircuitChange.setForCircuit(circuit, attr, newValue, oldValue);
 		case REPLACE:
+			if (newValue instanceof CompactReplacement) {
+				return new CircuitChange(circuit, REPLACE, null, null, null,
+						((CompactReplacement) newValue).getInverse());
+			}
 			return CircuitChange.replace(circuit,
 					((ReplacementMap) newValue).getInverseMap());
 		default:
@@ -156,7 +166,7 @@ class CircuitChange {
 		case REMOVE_ALL:
 			for (Component comp : comps) prevReplacements.remove(comp);
 			break;
-		case REPLACE: prevReplacements.append((ReplacementMap) newValue); break;
+		case REPLACE: prevReplacements.append(getReplacementMap()); break;
 		case SET:
 			mutator.replace(circuit, prevReplacements);
 			prevReplacements.reset();
@@ -185,11 +195,19 @@ class CircuitChange {
 			}
 			return false;
 		case REPLACE:
-			ReplacementMap repl = (ReplacementMap) newValue;
-			for (Component comp : repl.getRemovals()) {
+			Collection<? extends Component> removals;
+			Collection<? extends Component> additions;
+			if (newValue instanceof CompactReplacement) {
+				removals = ((CompactReplacement) newValue).getRemovals();
+				additions = ((CompactReplacement) newValue).getAdditions();
+			} else {
+				removals = ((ReplacementMap) newValue).getRemovals();
+				additions = ((ReplacementMap) newValue).getAdditions();
+			}
+			for (Component comp : removals) {
 				if (comp.getFactory() instanceof Pin) return true;
 			}
-			for (Component comp : repl.getAdditions()) {
+			for (Component comp : additions) {
 				if (comp.getFactory() instanceof Pin) return true;
 			}
 			return false;
@@ -200,4 +218,60 @@ class CircuitChange {
 			return false;
 		}
 	}
-}
\ No newline at end of file
+
+	private ReplacementMap getReplacementMap() {
+		if (newValue instanceof CompactReplacement) {
+			return ((CompactReplacement) newValue).toReplacementMap();
+		} else {
+			return (ReplacementMap) newValue;
+		}
+	}
+
+	/** Returns an equivalent change held in less memory, for a change
+	 * kept to be undone. */
+	CircuitChange compact() {
+		switch (type) {
+		case CLEAR:
+		case ADD_ALL:
+		case REMOVE_ALL:
+			if (comps == null) return this;
+			Component[] array = comps.toArray(new Component[comps.size()]);
+			return new CircuitChange(circuit, type, Arrays.asList(array));
+		case REPLACE:
+			if (newValue instanceof CompactReplacement) return this;
+			return new CircuitChange(circuit, REPLACE, null, null, null,
+					new CompactReplacement((ReplacementMap) newValue));
+		default:
+			return this;
+		}
+	}
+
+	/** Returns a rough count of the bytes that keeping this change holds,
+	 * counting the components that only it refers to: those that
+	 * executing it would put back into the circuit. */
+	long getMemorySize() {
+		switch (type) {
+		case ADD:
+			return CHANGE_SIZE + REMOVED_COMPONENT_SIZE;
+		case ADD_ALL:
+			return CHANGE_SIZE + comps.size() * REMOVED_COMPONENT_SIZE;
+		case CLEAR:
+		case REMOVE_ALL:
+			return CHANGE_SIZE + (comps == null ? 0 : comps.size() * REFERENCE_SIZE);
+		case REPLACE:
+			Collection<? extends Component> removals;
+			Collection<? extends Component> additions;
+			if (newValue instanceof CompactReplacement) {
+				removals = ((CompactReplacement) newValue).getRemovals();
+				additions = ((CompactReplacement) newValue).getAdditions();
+			} else {
+				removals = ((ReplacementMap) newValue).getRemovals();
+				additions = ((ReplacementMap) newValue).getAdditions();
+			}
+			return CHANGE_SIZE + removals.size() * REFERENCE_SIZE
+				+ additions.size() * REMOVED_COMPONENT_SIZE;
+		default:
+			return CHANGE_SIZE;
+		}
+	}
+}
@@ -12,6 +12,7 @@ public class CircuitEvent {
 	public final static int ACTION_INVALIDATE   = 4; // component invalidated (pin types changed)
 	public final static int ACTION_CLEAR    = 5; // entire circuit cleared
 	public final static int TRANSACTION_DONE = 6;
+	public final static int ACTION_BATCH    = 7; // components added and removed
 
 	private int action;
 	private Circuit circuit;
@@ -39,4 +40,8 @@ public class CircuitEvent {
 	public CircuitTransactionResult getResult() {
 		return (CircuitTransactionResult) data;
 	}
+
+	public CircuitBatch getBatch() {
+		return (CircuitBatch) data;
+	}
 }
@@ -31,6 +31,10 @@ class CircuitLocker {
 		return mutatingThread == Thread.currentThread();
 	}
 	
+	Lock getReadLock() {
+		return circuitLock.readLock();
+	}
+	
 	CircuitMutatorImpl getMutator() {
 		return mutatingMutator;
 	}
@@ -64,6 +68,11 @@ class CircuitLocker {
 		// Acquire locks in serial-number order to avoid deadlock
 		Circuit[] lockOrder = requests.keySet().toArray(new Circuit[0]);
 		Arrays.sort(lockOrder, new CircuitComparator());
+		// a transaction's changes should not be mixed with the
+		// creation of a circuit's deferred contents
+		for (Circuit circ : lockOrder) {
+			circ.loadDeferredContents();
+		}
 		try {
 			for (Circuit circ : lockOrder) {
 				Integer access = requests.get(circ);
@@ -7,7 +7,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 
 import com.cburch.logisim.comp.Component;
@@ -17,7 +16,7 @@ import com.cburch.logisim.util.StringGetter;
 
 public final class CircuitMutation extends CircuitTransaction {
 	private Circuit primary;
-	private List<CircuitChange> changes;
+	private ArrayList<CircuitChange> changes;
 	
 	public CircuitMutation(Circuit circuit) {
 		this.primary = circuit;
@@ -76,6 +75,24 @@ public final class CircuitMutation extends CircuitTransaction {
 		changes.add(change);
 	}
 	
+	/** Shrinks the changes held, once this mutation is only kept to be
+	 * executed again. */
+	void compact() {
+		for (int i = 0, n = changes.size(); i < n; i++) {
+			changes.set(i, changes.get(i).compact());
+		}
+		changes.trimToSize();
+	}
+
+	@Override
+	public long getMemorySize() {
+		long ret = 64;
+		for (CircuitChange change : changes) {
+			ret += change.getMemorySize();
+		}
+		return ret;
+	}
+	
 	public Action toAction(StringGetter name) {
 		if (name == null) name = Strings.getter("unknownChangeAction");
 		return new CircuitAction(name, this);
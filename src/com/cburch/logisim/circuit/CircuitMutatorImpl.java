@@ -8,20 +8,30 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 
 import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.EndData;
 import com.cburch.logisim.data.Attribute;
 import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.Location;
 
 class CircuitMutatorImpl implements CircuitMutator {
 	private ArrayList<CircuitChange> log;
 	private HashMap<Circuit,ReplacementMap> replacements;
 	private HashSet<Circuit> modified;
+	private HashMap<Circuit,HashSet<Location>> movedEnds;
+	private HashSet<Circuit> changedAnywhere;
+	// the attributes that each component had before the transaction changed them
+	private HashMap<Circuit,LinkedHashMap<Component,AttributeSet>> reconfigured;
 	
 	public CircuitMutatorImpl() {
 		log = new ArrayList<CircuitChange>();
 		replacements = new HashMap<Circuit,ReplacementMap>();
 		modified = new HashSet<Circuit>();
+		movedEnds = new HashMap<Circuit,HashSet<Location>>();
+		changedAnywhere = new HashSet<Circuit>();
+		reconfigured = new HashMap<Circuit,LinkedHashMap<Component,AttributeSet>>();
 	}
 	
 	public void clear(Circuit circuit) {
@@ -91,6 +101,14 @@ class CircuitMutatorImpl implements CircuitMutator {
 			AttributeSet attrs = comp.getAttributeSet();
 			Object oldValue = attrs.getValue(a);
 			log.add(CircuitChange.set(circuit, comp, attr, oldValue, newValue));
+			LinkedHashMap<Component,AttributeSet> comps = reconfigured.get(circuit);
+			if (comps == null) {
+				comps = new LinkedHashMap<Component,AttributeSet>();
+				reconfigured.put(circuit, comps);
+			}
+			if (!comps.containsKey(comp)) {
+				comps.put(comp, (AttributeSet) attrs.clone());
+			}
 			attrs.setValue(a, newValue);
 		}
 	}
@@ -118,7 +136,7 @@ class CircuitMutatorImpl implements CircuitMutator {
 		CircuitMutation ret = new CircuitMutation();
 		ArrayList<CircuitChange> log = this.log;
 		for (int i = log.size() - 1; i >= 0; i--) {
-			ret.change(log.get(i).getReverseChange());
+			ret.change(log.get(i).getReverseChange().compact());
 		}
 		return ret;
 	}
@@ -129,6 +147,54 @@ class CircuitMutatorImpl implements CircuitMutator {
 	
 	void markModified(Circuit circuit) {
 		modified.add(circuit);
+		changedAnywhere.add(circuit);
+	}
+	
+	void markModified(Circuit circuit, Collection<Location> ends) {
+		modified.add(circuit);
+		HashSet<Location> locs = movedEnds.get(circuit);
+		if (locs == null) {
+			locs = new HashSet<Location>();
+			movedEnds.put(circuit, locs);
+		}
+		locs.addAll(ends);
+	}
+	
+	Collection<Component> getReconfiguredComponents(Circuit circuit) {
+		LinkedHashMap<Component,AttributeSet> ret = reconfigured.get(circuit);
+		if (ret == null) return Collections.emptySet();
+		return Collections.unmodifiableSet(ret.keySet());
+	}
+	
+	AttributeSet getOriginalAttributeSet(Circuit circuit, Component comp) {
+		LinkedHashMap<Component,AttributeSet> comps = reconfigured.get(circuit);
+		AttributeSet ret = comps == null ? null : comps.get(comp);
+		return ret == null ? comp.getAttributeSet() : ret;
+	}
+	
+	/** Returns the locations where components of the circuit were added,
+	 * removed, or had ends moved, or null if the circuit may have changed
+	 * anywhere. */
+	Collection<Location> getChangedLocations(Circuit circuit) {
+		if (changedAnywhere.contains(circuit)) return null;
+		HashSet<Location> ret = new HashSet<Location>();
+		HashSet<Location> moved = movedEnds.get(circuit);
+		if (moved != null) ret.addAll(moved);
+		ReplacementMap repl = replacements.get(circuit);
+		if (repl != null) {
+			addEnds(ret, repl.getRemovals());
+			addEnds(ret, repl.getAdditions());
+		}
+		return ret;
+	}
+	
+	private static void addEnds(HashSet<Location> dest,
+			Collection<? extends Component> comps) {
+		for (Component comp : comps) {
+			for (EndData end : comp.getEnds()) {
+				if (end != null) dest.add(end.getLocation());
+			}
+		}
 	}
 	
 	Collection<Circuit> getModifiedCircuits() {
@@ -4,12 +4,10 @@
 package com.cburch.logisim.circuit;
 
 import java.util.Collection;
-import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.cburch.logisim.circuit.Propagator.SetData;
 import com.cburch.logisim.comp.Component;
@@ -29,46 +27,39 @@ import com.cburch.logisim.util.ArraySet;
 import com.cburch.logisim.util.SmallSet;
 
 public class CircuitState implements InstanceData {
+	private static final Object CLEAR_DIRTY = new Object();
+
+	private static class DirtyRemoval {
+		private Component comp;
+
+		private DirtyRemoval(Component comp) {
+			this.comp = comp;
+		}
+	}
+
 	private class MyCircuitListener implements CircuitListener {
 		public void circuitChanged(CircuitEvent event) {
 			int action = event.getAction();
 			if (action == CircuitEvent.ACTION_ADD) {
-				Component comp = (Component) event.getData();
-				if (comp instanceof Wire) {
-					Wire w = (Wire) comp;
-					markPointAsDirty(w.getEnd0());
-					markPointAsDirty(w.getEnd1());
-				} else {
-					markComponentAsDirty(comp);
-				}
+				componentAdded((Component) event.getData());
 			} else if (action == CircuitEvent.ACTION_REMOVE) {
-				Component comp = (Component) event.getData();
-				if (comp.getFactory() instanceof SubcircuitFactory) {
-					// disconnect from tree
-					CircuitState substate = (CircuitState) getData(comp);
-					if (substate != null && substate.parentComp == comp) {
-						substates.remove(substate);
-						substate.parentState = null;
-						substate.parentComp = null;
-					}
-				}
-
-				if (comp instanceof Wire) {
-					Wire w = (Wire) comp;
-					markPointAsDirty(w.getEnd0());
-					markPointAsDirty(w.getEnd1());
-				} else {
-					if (base != null) base.checkComponentEnds(CircuitState.this, comp);
-					dirtyComponents.remove(comp);
-				}
+				componentRemoved((Component) event.getData());
+			} else if (action == CircuitEvent.ACTION_BATCH) {
+				CircuitBatch batch = event.getBatch();
+				for (Component comp : batch.getRemovals()) componentRemoved(comp);
+				for (Component comp : batch.getAdditions()) componentAdded(comp);
 			} else if (action == CircuitEvent.ACTION_CLEAR) {
 				substates.clear();
 				wireData = null;
 				componentData.clear();
-				values.clear();
-				dirtyComponents.clear();
-				dirtyPoints.clear();
-				causes.clear();
+				clearValues();
+				if (isPropagatorThread()) {
+					dirtyComponents.clear();
+					dirtyPoints.clear();
+				} else {
+					getPendingComponents().add(CLEAR_DIRTY);
+				}
+				clearCauses();
 			} else if (action == CircuitEvent.ACTION_CHANGE) {
 				Object data = event.getData();
 				if (data instanceof Collection) {
@@ -114,6 +105,41 @@ public class CircuitState implements InstanceData {
 				}
 			}
 		}
+
+		private void componentAdded(Component comp) {
+			if (comp instanceof Wire) {
+				Wire w = (Wire) comp;
+				markPointAsDirty(w.getEnd0());
+				markPointAsDirty(w.getEnd1());
+			} else {
+				markComponentAsDirty(comp);
+			}
+		}
+
+		private void componentRemoved(Component comp) {
+			if (comp.getFactory() instanceof SubcircuitFactory) {
+				// disconnect from tree
+				CircuitState substate = (CircuitState) getData(comp);
+				if (substate != null && substate.parentComp == comp) {
+					substates.remove(substate);
+					substate.parentState = null;
+					substate.parentComp = null;
+				}
+			}
+
+			if (comp instanceof Wire) {
+				Wire w = (Wire) comp;
+				markPointAsDirty(w.getEnd0());
+				markPointAsDirty(w.getEnd1());
+			} else {
+				if (base != null) base.checkComponentEnds(CircuitState.this, comp);
+				if (isPropagatorThread()) {
+					dirtyComponents.remove(comp);
+				} else {
+					getPendingComponents().add(new DirtyRemoval(comp));
+				}
+			}
+		}
 	}
 
 	private MyCircuitListener myCircuitListener = new MyCircuitListener();
@@ -125,12 +151,30 @@ public class CircuitState implements InstanceData {
 	private Component parentComp = null; // subcircuit component containing this state
 	private ArraySet<CircuitState> substates = new ArraySet<CircuitState>();
 
+	// wireData, values, and causes may be shared with clones of this
+	// state, so they are copied before their first modification
 	private CircuitWires.State wireData = null;
-	private HashMap<Component,Object> componentData = new HashMap<Component,Object>();
-	private Map<Location,Value> values = new HashMap<Location,Value>();
+	private boolean wireDataShared = false;
+	private CompactMap<Component,Object> componentData = new CompactMap<Component,Object>();
+	private CompactMap<Location,Value> values = new CompactMap<Location,Value>();
+	private boolean valuesShared = false;
+	private boolean valuesChanged = true; // since values was last published
+	// values as read by threads other than the propagator's; it is shared
+	// with values until that is next modified, so it can be read without
+	// locking. Only states that such a thread has read are published, and
+	// values itself is never read by those threads.
+	private volatile CompactMap<Location,Value> publishedValues = null;
+	private volatile boolean observed = false;
 	private SmallSet<Component> dirtyComponents = new SmallSet<Component>();
 	private SmallSet<Location> dirtyPoints = new SmallSet<Location>();
-	HashMap<Location,SetData> causes = new HashMap<Location,SetData>();
+	// changes to the dirty sets by threads other than the propagator's,
+	// applied in order when it next processes them; created when needed
+	private volatile ConcurrentLinkedQueue<Object> pendingComponents = null;
+	private volatile ConcurrentLinkedQueue<Location> pendingPoints = null;
+	CompactMap<Location,SetData> causes = new CompactMap<Location,SetData>();
+	private boolean causesShared = false;
+	// marks the lists in causes that belong to this state alone
+	private Object causesOwner = new Object();
 
 	private static int lastId = 0;
 	private int id = lastId++;
@@ -138,6 +182,7 @@ public class CircuitState implements InstanceData {
 	public CircuitState(Project proj, Circuit circuit) {
 		this.proj = proj;
 		this.circuit = circuit;
+		circuit.loadDeferredContents();
 		circuit.addCircuitListener(myCircuitListener);
 	}
 	
@@ -175,7 +220,7 @@ public class CircuitState implements InstanceData {
 			this.substates.add(newSub);
 			substateData.put(oldSub, newSub);
 		}
-		for (Component key : src.componentData.keySet()) {
+		for (Component key : src.componentData.keys()) {
 			Object oldValue = src.componentData.get(key);
 			if (oldValue instanceof CircuitState) {
 				Object newValue = substateData.get(oldValue);
@@ -191,15 +236,24 @@ public class CircuitState implements InstanceData {
 				this.componentData.put(key, newValue);
 			}
 		}
-		for (Location key : src.causes.keySet()) {
-			Propagator.SetData oldValue = src.causes.get(key);
-			Propagator.SetData newValue = oldValue.cloneFor(this);
-			this.causes.put(key, newValue);
-		}
-		if (src.wireData != null) {
-			this.wireData = (CircuitWires.State) src.wireData.clone();
-		}
-		this.values.putAll(src.values);
+		// the remaining data is shared until either state modifies it;
+		// giving src a new owner makes both copy the lists of causes
+		this.causes = src.causes;
+		this.causesShared = true;
+		src.causesShared = true;
+		src.causesOwner = new Object();
+		this.wireData = src.wireData;
+		this.wireDataShared = true;
+		src.wireDataShared = true;
+		this.values = src.values;
+		this.valuesShared = true;
+		src.valuesShared = true;
+		// src is copied between propagations, so its values are consistent
+		// and can serve as the first snapshot other threads read
+		this.publishedValues = src.values;
+		this.observed = src.observed;
+		this.valuesChanged = false;
+		if (observed) base.requestPublication();
 		this.dirtyComponents.addAll(src.dirtyComponents);
 		this.dirtyPoints.addAll(src.dirtyPoints);
 	}
@@ -267,8 +321,22 @@ public class CircuitState implements InstanceData {
 		componentData.put(comp, data);
 	}
 
+	/** Returns the value at a point. Threads other than the one running
+	 * the propagator see the values as of the end of its most recent
+	 * propagation, so the GUI never observes a half-finished one. Until
+	 * the propagator first publishes them, such threads see unknown
+	 * values. */
 	public Value getValue(Location pt) {
-		Value ret = values.get(pt);
+		CompactMap<Location,Value> map = values;
+		Propagator prop = base;
+		if (prop != null && !prop.isPropagatorThread()) {
+			map = publishedValues;
+			if (map == null) {
+				observed = true;
+				prop.requestPublication();
+			}
+		}
+		Value ret = map == null ? null : map.get(pt);
 		if (ret != null) return ret;
 
 		BitWidth wid = circuit.getWidth(pt);
@@ -280,21 +348,27 @@ public class CircuitState implements InstanceData {
 	}
 
 	public void markComponentAsDirty(Component comp) {
-		try {
+		if (isPropagatorThread()) {
 			dirtyComponents.add(comp);
-		} catch (RuntimeException e) {
-			SmallSet<Component> set = new SmallSet<Component>();
-			set.add(comp);
-			dirtyComponents = set;
+		} else {
+			getPendingComponents().add(comp);
 		}
 	}
 
 	public void markComponentsDirty(Collection<Component> comps) {
-		dirtyComponents.addAll(comps);
+		if (isPropagatorThread()) {
+			dirtyComponents.addAll(comps);
+		} else {
+			getPendingComponents().addAll(comps);
+		}
 	}
 
 	public void markPointAsDirty(Location pt) {
-		dirtyPoints.add(pt);
+		if (isPropagatorThread()) {
+			dirtyPoints.add(pt);
+		} else {
+			getPendingPoints().add(pt);
+		}
 	}
 	
 	public InstanceState getInstanceState(Component comp) {
@@ -323,32 +397,42 @@ public class CircuitState implements InstanceData {
 	}
 
 	void processDirtyComponents() {
-		if (!dirtyComponents.isEmpty()) {
-			// This seeming wasted copy is to avoid ConcurrentModifications
-			// if we used an iterator instead.
-			Object[] toProcess;
-			RuntimeException firstException = null;
-			for (int tries = 4; true; tries--) {
-				try {
-					toProcess = dirtyComponents.toArray();
-					break;
-				} catch (RuntimeException e) {
-					if (firstException == null) firstException = e;
-					if (tries == 0) {
-						toProcess = new Object[0];
-						dirtyComponents = new SmallSet<Component>();
-						throw firstException;
-					}
-				}
+		ConcurrentLinkedQueue<Object> pending = pendingComponents;
+		for (Object op = pending == null ? null : pending.poll(); op != null;
+				op = pending.poll()) {
+			if (op instanceof Component) {
+				dirtyComponents.add((Component) op);
+			} else if (op == CLEAR_DIRTY) {
+				dirtyComponents.clear();
+			} else {
+				dirtyComponents.remove(((DirtyRemoval) op).comp);
 			}
+		}
+		if (!dirtyComponents.isEmpty()) {
+			// propagating marks more components, so a copy is processed
+			Object[] toProcess = dirtyComponents.toArray();
 			dirtyComponents.clear();
+			SimulationProfile profile = base == null ? null : base.getProfile();
 			for (Object compObj : toProcess) {
 				if (compObj instanceof Component) {
 					Component comp = (Component) compObj;
-					comp.propagate(this);
+					if (profile == null) {
+						comp.propagate(this);
+					} else {
+						long start = System.nanoTime();
+						comp.propagate(this);
+						profile.componentPropagated(this, comp, System.nanoTime() - start);
+					}
 					if (comp.getFactory() instanceof Pin && parentState != null) {
 						// should be propagated in superstate
-						parentComp.propagate(parentState);
+						if (profile == null) {
+							parentComp.propagate(parentState);
+						} else {
+							long start = System.nanoTime();
+							parentComp.propagate(parentState);
+							profile.componentPropagated(parentState, parentComp,
+									System.nanoTime() - start);
+						}
 					}
 				}
 			}
@@ -361,21 +445,17 @@ public class CircuitState implements InstanceData {
 	}
 
 	void processDirtyPoints() {
-		HashSet<Location> dirty = new HashSet<Location>(dirtyPoints);
-		dirtyPoints.clear();
-		if (circuit.wires.isMapVoided()) {
-			for (int i = 3; i >= 0; i--) {
-				try {
-					dirty.addAll(circuit.wires.points.getSplitLocations());
-					break;
-				} catch (ConcurrentModificationException e) {
-					// try again...
-					try { Thread.sleep(1); } catch (InterruptedException e2) { }
-					if (i == 0) e.printStackTrace();
-				}
+		ConcurrentLinkedQueue<Location> pending = pendingPoints;
+		if (pending != null) {
+			for (Location pt = pending.poll(); pt != null; pt = pending.poll()) {
+				dirtyPoints.add(pt);
 			}
 		}
-		if (!dirty.isEmpty()) {
+		HashSet<Location> dirty = new HashSet<Location>(dirtyPoints);
+		dirtyPoints.clear();
+		// when the wires have changed, CircuitWires.propagate updates
+		// every point from the locations recorded with the new bundles
+		if (!dirty.isEmpty() || !circuit.wires.isStateCurrent(this)) {
 			circuit.wires.propagate(this, dirty);
 		}
 
@@ -387,14 +467,15 @@ public class CircuitState implements InstanceData {
 	
 	void reset() {
 		wireData = null;
-		for (Iterator<Component> it = componentData.keySet().iterator(); it.hasNext(); ) {
-			Component comp = it.next();
-			if (!(comp.getFactory() instanceof SubcircuitFactory)) it.remove();
+		for (Component comp : componentData.keys()) {
+			if (!(comp.getFactory() instanceof SubcircuitFactory)) componentData.remove(comp);
 		}
-		values.clear();
+		clearValues();
 		dirtyComponents.clear();
 		dirtyPoints.clear();
-		causes.clear();
+		if (pendingComponents != null) pendingComponents.clear();
+		if (pendingPoints != null) pendingPoints.clear();
+		clearCauses();
 		markAllComponentsDirty();
 		
 		for (CircuitState sub : substates) {
@@ -402,6 +483,19 @@ public class CircuitState implements InstanceData {
 		}
 	}
 
+	void publishValues() {
+		if (observed && (valuesChanged || publishedValues == null)) {
+			publishedValues = values;
+			valuesShared = true;
+			valuesChanged = false;
+		}
+
+		CircuitState[] subs = new CircuitState[substates.size()];
+		for (CircuitState substate : substates.toArray(subs)) {
+			substate.publishValues();
+		}
+	}
+
 	boolean tick(int ticks) {
 		boolean ret = false;
 		for (Component clock : circuit.getClocks()) {
@@ -419,8 +513,59 @@ public class CircuitState implements InstanceData {
 		return wireData;
 	}
 
+	CircuitWires.State getWireDataToModify() {
+		if (wireDataShared) {
+			if (wireData != null) wireData = (CircuitWires.State) wireData.clone();
+			wireDataShared = false;
+		}
+		return wireData;
+	}
+
 	void setWireData(CircuitWires.State data) {
 		wireData = data;
+		wireDataShared = false;
+	}
+
+	SetData getCausesToModify(Location p) {
+		if (causesShared) {
+			causes = new CompactMap<Location,SetData>(causes);
+			causesShared = false;
+		}
+		SetData head = causes.get(p);
+		if (head != null && head.owner != causesOwner) {
+			head = head.copyFor(this, causesOwner);
+			causes.put(p, head);
+		}
+		return head;
+	}
+
+	Object getCausesOwner() {
+		return causesOwner;
+	}
+
+	private synchronized ConcurrentLinkedQueue<Object> getPendingComponents() {
+		if (pendingComponents == null) {
+			pendingComponents = new ConcurrentLinkedQueue<Object>();
+		}
+		return pendingComponents;
+	}
+
+	private synchronized ConcurrentLinkedQueue<Location> getPendingPoints() {
+		if (pendingPoints == null) {
+			pendingPoints = new ConcurrentLinkedQueue<Location>();
+		}
+		return pendingPoints;
+	}
+
+	private void clearCauses() {
+		causes = new CompactMap<Location,SetData>();
+		causesShared = false;
+	}
+
+	private void clearValues() {
+		values = new CompactMap<Location,Value>();
+		valuesShared = false;
+		valuesChanged = true;
 	}
 
 	Value getComponentOutputAt(Location p) {
@@ -435,15 +580,21 @@ public class CircuitState implements InstanceData {
 
 	void setValueByWire(Location p, Value v) {
 		// for CircuitWires - to set value at point
+		Value old = values.get(p);
 		boolean changed;
 		if (v == Value.NIL) {
-			Object old = values.remove(p);
 			changed = (old != null && old != Value.NIL);
 		} else {
-			Object old = values.put(p, v);
 			changed = !v.equals(old);
 		}
 		if (changed) {
+			if (valuesShared) {
+				values = new CompactMap<Location,Value>(values);
+				valuesShared = false;
+			}
+			if (v == Value.NIL) values.remove(p);
+			else values.put(p, v);
+			valuesChanged = true;
 			boolean found = false;
 			for (Component comp : circuit.getComponents(p)) {
 				if (!(comp instanceof Wire) && !(comp instanceof Splitter)) {
@@ -461,6 +612,11 @@ public class CircuitState implements InstanceData {
 	//
 	// private methods
 	// 
+	private boolean isPropagatorThread() {
+		Propagator prop = base;
+		return prop == null || prop.isPropagatorThread();
+	}
+
 	private void markAllComponentsDirty() {
 		dirtyComponents.addAll(circuit.getNonWires());
 	}
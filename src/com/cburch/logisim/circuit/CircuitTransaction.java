@@ -17,6 +17,12 @@ public abstract class CircuitTransaction {
 	
 	protected abstract void run(CircuitMutator mutator);
 	
+	/** Returns a rough count of the bytes held by keeping this transaction
+	 * around, as the undo log does. */
+	public long getMemorySize() {
+		return 256;
+	}
+	
 	public final CircuitTransactionResult execute() {
 		CircuitMutatorImpl mutator = new CircuitMutatorImpl();
 		Map<Circuit,Lock> locks = CircuitLocker.acquireLocks(this, mutator);
@@ -44,7 +50,8 @@ public abstract class CircuitTransaction {
 			for (Circuit circuit : modified) {
 				CircuitMutatorImpl circMutator = circuit.getLocker().getMutator();
 				if (circMutator == mutator) {
-					WireRepair repair = new WireRepair(circuit);
+					WireRepair repair = new WireRepair(circuit,
+							mutator.getChangedLocations(circuit));
 					repair.run(mutator);
 				} else {
 					// this is a transaction executed within a transaction -
@@ -57,7 +64,19 @@ public abstract class CircuitTransaction {
 			for (Circuit circuit : result.getModifiedCircuits()) {
 				circuit.fireEvent(CircuitEvent.TRANSACTION_DONE, result);
 			}
+			// the analysis waits for the locks to be released below
+			for (Circuit circuit : result.getModifiedCircuits()) {
+				WireAnalysisThread.enqueueRequest(circuit);
+			}
 		} finally {
+			// listeners hear of the additions and removals once the wires
+			// are repaired, as TRANSACTION_DONE is fired; this covers a
+			// transaction that failed before that
+			for (Circuit circuit : mutator.getModifiedCircuits()) {
+				if (circuit.getLocker().getMutator() == mutator) {
+					circuit.flushBatch();
+				}
+			}
 			CircuitLocker.releaseLocks(locks);
 		}
 		return result;
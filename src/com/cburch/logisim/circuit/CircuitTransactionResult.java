@@ -5,6 +5,9 @@ package com.cburch.logisim.circuit;
 
 import java.util.Collection;
 
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.data.AttributeSet;
+
 public class CircuitTransactionResult {
 	private CircuitMutatorImpl mutator;
 	
@@ -21,6 +24,19 @@ public class CircuitTransactionResult {
 		return ret == null ? new ReplacementMap() : ret;
 	}
 	
+	/** Returns the components of circuit whose attributes were set, each
+	 * once, in the order first set. */
+	public Collection<Component> getReconfiguredComponents(Circuit circuit) {
+		return mutator.getReconfiguredComponents(circuit);
+	}
+	
+	/** Returns a copy of the attributes that a reconfigured component had
+	 * before the transaction, or the component's own attributes if the
+	 * transaction did not set them. */
+	public AttributeSet getOriginalAttributeSet(Circuit circuit, Component comp) {
+		return mutator.getOriginalAttributeSet(circuit, comp);
+	}
+	
 	public Collection<Circuit> getModifiedCircuits() {
 		return mutator.getModifiedCircuits();
 	}
@@ -6,6 +6,7 @@ package com.cburch.logisim.circuit;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -51,7 +52,7 @@ class CircuitWires {
 
 	static class State {
 		BundleMap bundleMap;
-		HashMap<WireThread,Value> thr_values = new HashMap<WireThread,Value>();
+		CompactMap<WireThread,Value> thr_values = new CompactMap<WireThread,Value>();
 
 		State(BundleMap bundleMap) {
 			this.bundleMap = bundleMap;
@@ -60,7 +61,7 @@ class CircuitWires {
 		@Override
 		public Object clone() {
 			State ret = new State(this.bundleMap);
-			ret.thr_values.putAll(this.thr_values);
+			ret.thr_values = new CompactMap<WireThread,Value>(this.thr_values);
 			return ret;
 		}
 	}
@@ -80,6 +81,7 @@ class CircuitWires {
 		boolean computed = false;
 		HashMap<Location,WireBundle> pointBundles = new HashMap<Location,WireBundle>();
 		HashSet<WireBundle> bundles = new HashSet<WireBundle>();
+		Location[] splitLocations = new Location[0]; // as of computation
 		boolean isValid = true;
 		// NOTE: It would make things more efficient if we also had
 		// a set of just the first bundle in each tree.
@@ -153,7 +155,10 @@ class CircuitWires {
 
 	// derived data
 	private Bounds bounds = Bounds.EMPTY_BOUNDS;
-	private BundleMap bundleMap = null;
+	private volatile BundleMap bundleMap = null;
+	// a map being computed by WireAnalysisThread, which holds the
+	// circuit's read lock meanwhile so that the map cannot be voided
+	private volatile BundleMap analyzing = null;
 
 	CircuitWires() { }
 
@@ -163,6 +168,11 @@ class CircuitWires {
 	boolean isMapVoided() {
 		return bundleMap == null;
 	}
+
+	boolean isStateCurrent(CircuitState circState) {
+		State s = circState.getWireData();
+		return s != null && s.bundleMap == bundleMap;
+	}
 	
 	Set<WidthIncompatibilityData> getWidthIncompatibilityData() {
 		return getBundleMap().getWidthIncompatibilityData();
@@ -172,6 +182,22 @@ class CircuitWires {
 		getBundleMap();
 	}
 
+	/** Computes the bundle map if it has been voided. The caller must hold
+	 * the circuit's read lock; other threads needing the map meanwhile
+	 * wait for this one rather than computing their own. */
+	void analyze() {
+		if (bundleMap != null) return;
+		BundleMap ret = new BundleMap();
+		analyzing = ret;
+		try {
+			computeBundleMap(ret);
+			bundleMap = ret;
+		} finally {
+			analyzing = null;
+			ret.markComputed();
+		}
+	}
+
 	BitWidth getWidth(Location q) {
 		BitWidth det = points.getWidth(q);
 		if (det != BitWidth.UNKNOWN) return det;
@@ -322,7 +348,11 @@ class CircuitWires {
 		// get state, or create a new one if current state is outdated
 		State s = circState.getWireData();
 		if (s == null || s.bundleMap != map) {
-			// if it is outdated, we need to compute for all threads
+			// if it is outdated, we need to compute for all threads and
+			// all points
+			HashSet<Location> allPoints = new HashSet<Location>(points);
+			allPoints.addAll(Arrays.asList(map.splitLocations));
+			points = allPoints;
 			s = new State(map);
 			for (WireBundle b : map.getBundles()) {
 				WireThread[] th = b.threads;
@@ -363,6 +393,7 @@ class CircuitWires {
 		if (dirtyThreads.isEmpty()) return;
 
 		// determine values of affected threads
+		s = circState.getWireDataToModify();
 		HashSet<ThreadBundle> bundles = new HashSet<ThreadBundle>();
 		for (WireThread t : dirtyThreads) {
 			Value v = getThreadValue(circState, t);
@@ -371,6 +402,7 @@ class CircuitWires {
 		}
 
 		// now propagate values through circuit
+		Value[] tvs = null; // thread values of a bundle, reused for each
 		for (ThreadBundle tb : bundles) {
 			WireBundle b = tb.b;
 
@@ -380,14 +412,15 @@ class CircuitWires {
 			} else if (b.threads.length == 1) {
 				bv = s.thr_values.get(b.threads[0]);
 			} else {
-				Value[] tvs = new Value[b.threads.length];
+				int n = b.threads.length;
+				if (tvs == null || tvs.length < n) tvs = new Value[Math.max(n, Value.MAX_WIDTH)];
 				boolean tvs_valid = true;
-				for (int i = 0; i < tvs.length; i++) {
+				for (int i = 0; i < n; i++) {
 					Value tv = s.thr_values.get(b.threads[i]);
 					if (tv == null) { tvs_valid = false; break; }
 					tvs[i] = tv;
 				}
-				if (tvs_valid) bv = Value.create(tvs);
+				if (tvs_valid) bv = Value.concat(tvs, n);
 			}
 
 			if (bv != null) {
@@ -517,6 +550,13 @@ class CircuitWires {
 		// Maybe we already have a valid bundle map (or maybe
 		// one is in progress).
 		BundleMap ret = bundleMap;
+		if (ret == null) {
+			BundleMap inProgress = analyzing;
+			if (inProgress != null) {
+				inProgress.waitUntilComputed();
+				ret = bundleMap; // still null if the analysis failed
+			}
+		}
 		if (ret != null) {
 			ret.waitUntilComputed();
 			return ret;
@@ -549,6 +589,11 @@ class CircuitWires {
 
 	// To be called by getBundleMap only
 	private void computeBundleMap(BundleMap ret) {
+		// record the points, so propagation need not read them while
+		// the circuit is being edited
+		Set<Location> splitLocs = points.getSplitLocations();
+		ret.splitLocations = splitLocs.toArray(new Location[splitLocs.size()]);
+
 		// create bundles corresponding to wires and tunnels
 		connectWires(ret);
 		connectTunnels(ret);
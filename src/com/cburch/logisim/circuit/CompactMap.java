@@ -0,0 +1,155 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.ArrayList;
+
+/** A map held in one flat array, alternating keys and values, using
+ * open addressing. A circuit state keeps several maps for each subcircuit
+ * instance, most with only a few entries, and this takes a fraction of
+ * the memory of a HashMap. Keys may not be null, and putting a null
+ * value removes the key.
+ *
+ * The map is not safe to read while another thread writes it: remove
+ * moves later entries back into the gap, so a concurrent get can miss a
+ * key that is present. Share a map across threads only once it is no
+ * longer written, as CircuitState does when publishing values. */
+class CompactMap<K,V> {
+	private static final Object[] EMPTY = new Object[0];
+	private static final int MIN_CAPACITY = 4;
+
+	private Object[] table = EMPTY; // key at 2 * i, value at 2 * i + 1
+	private int size = 0;
+
+	CompactMap() { }
+
+	CompactMap(CompactMap<K,V> src) {
+		this.table = src.table.length == 0 ? EMPTY : src.table.clone();
+		this.size = src.size;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	V get(Object key) {
+		Object[] t = table;
+		if (t.length == 0) return null;
+		int mask = t.length / 2 - 1;
+		for (int i = slot(key, t); ; i = (i + 1) & mask) {
+			Object k = t[2 * i];
+			if (k == null) return null;
+			if (k == key || k.equals(key)) {
+				@SuppressWarnings("unchecked")
+				V ret = (V) t[2 * i + 1];
+				return ret;
+			}
+		}
+	}
+
+	V put(K key, V value) {
+		if (value == null) return remove(key);
+		if (3 * (size + 1) > table.length) { // keeps the load under 2/3
+			resize(Math.max(MIN_CAPACITY, table.length)); // doubles capacity
+		}
+		Object[] t = table;
+		int mask = t.length / 2 - 1;
+		for (int i = slot(key, t); ; i = (i + 1) & mask) {
+			Object k = t[2 * i];
+			if (k == null) {
+				t[2 * i] = key;
+				t[2 * i + 1] = value;
+				size++;
+				return null;
+			}
+			if (k == key || k.equals(key)) {
+				@SuppressWarnings("unchecked")
+				V ret = (V) t[2 * i + 1];
+				t[2 * i + 1] = value;
+				return ret;
+			}
+		}
+	}
+
+	V remove(Object key) {
+		Object[] t = table;
+		if (t.length == 0) return null;
+		int mask = t.length / 2 - 1;
+		int i = slot(key, t);
+		while (true) {
+			Object k = t[2 * i];
+			if (k == null) return null;
+			if (k == key || k.equals(key)) break;
+			i = (i + 1) & mask;
+		}
+		@SuppressWarnings("unchecked")
+		V ret = (V) t[2 * i + 1];
+
+		// move back any later entry of the run that may fill the gap
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			Object k = t[2 * j];
+			if (k == null) break;
+			int home = slot(k, t);
+			boolean movable = j > i ? (home <= i || home > j)
+					: (home <= i && home > j);
+			if (movable) {
+				t[2 * i] = k;
+				t[2 * i + 1] = t[2 * j + 1];
+				i = j;
+			}
+		}
+		t[2 * i] = null;
+		t[2 * i + 1] = null;
+		size--;
+		return ret;
+	}
+
+	void clear() {
+		table = EMPTY;
+		size = 0;
+	}
+
+	/** Returns a list of the keys, in no particular order. */
+	ArrayList<K> keys() {
+		Object[] t = table;
+		ArrayList<K> ret = new ArrayList<K>(size);
+		for (int i = 0; i < t.length; i += 2) {
+			if (t[i] != null) {
+				@SuppressWarnings("unchecked")
+				K key = (K) t[i];
+				ret.add(key);
+			}
+		}
+		return ret;
+	}
+
+	private static int slot(Object key, Object[] t) {
+		// the multiplication spreads the hash codes of Locations, which
+		// are mostly multiples of 10, over the table
+		int bits = Integer.numberOfTrailingZeros(t.length / 2);
+		return (key.hashCode() * 0x9E3779B9) >>> (32 - bits);
+	}
+
+	private void resize(int capacity) {
+		Object[] old = table;
+		Object[] t = new Object[2 * capacity];
+		int mask = capacity - 1;
+		for (int j = 0; j < old.length; j += 2) {
+			Object k = old[j];
+			if (k != null) {
+				int i = slot(k, t);
+				while (t[2 * i] != null) i = (i + 1) & mask;
+				t[2 * i] = k;
+				t[2 * i + 1] = old[j + 1];
+			}
+		}
+		table = t;
+	}
+}
@@ -0,0 +1,84 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+
+import com.cburch.logisim.comp.Component;
+
+/** An unchangeable copy of a ReplacementMap held in arrays. The undo log
+ * keeps a replacement for each change it may reverse, and a
+ * ReplacementMap, with its two maps of sets, takes several times the
+ * memory. */
+class CompactReplacement {
+	private Component[] removals;
+	private Component[] additions;
+	private int[] pairs; // index into removals, then into additions
+
+	CompactReplacement(ReplacementMap repl) {
+		removals = repl.getRemovals().toArray(new Component[0]);
+		additions = repl.getAdditions().toArray(new Component[0]);
+		HashMap<Component,Integer> index = new HashMap<Component,Integer>();
+		for (int i = 0; i < additions.length; i++) {
+			index.put(additions[i], Integer.valueOf(i));
+		}
+
+		int[] ps = new int[2 * removals.length];
+		int n = 0;
+		for (int i = 0; i < removals.length; i++) {
+			for (Component c : repl.get(removals[i])) {
+				Integer j = index.get(c);
+				if (j == null) continue;
+				if (n + 2 > ps.length) ps = Arrays.copyOf(ps, 2 * ps.length + 2);
+				ps[n] = i;
+				ps[n + 1] = j.intValue();
+				n += 2;
+			}
+		}
+		pairs = Arrays.copyOf(ps, n);
+	}
+
+	private CompactReplacement(Component[] removals, Component[] additions,
+			int[] pairs) {
+		this.removals = removals;
+		this.additions = additions;
+		this.pairs = pairs;
+	}
+
+	Collection<Component> getRemovals() {
+		return Collections.unmodifiableList(Arrays.asList(removals));
+	}
+
+	Collection<Component> getAdditions() {
+		return Collections.unmodifiableList(Arrays.asList(additions));
+	}
+
+	int size() {
+		return removals.length + additions.length;
+	}
+
+	CompactReplacement getInverse() {
+		int[] inv = new int[pairs.length];
+		for (int k = 0; k < pairs.length; k += 2) {
+			inv[k] = pairs[k + 1];
+			inv[k + 1] = pairs[k];
+		}
+		return new CompactReplacement(additions, removals, inv);
+	}
+
+	/** Returns a frozen ReplacementMap with the same contents. */
+	ReplacementMap toReplacementMap() {
+		ReplacementMap ret = new ReplacementMap();
+		for (Component c : removals) ret.remove(c);
+		for (Component c : additions) ret.add(c);
+		for (int k = 0; k < pairs.length; k += 2) {
+			ret.put(removals[pairs[k]], Collections.singleton(additions[pairs[k + 1]]));
+		}
+		ret.freeze();
+		return ret;
+	}
+}
@@ -27,6 +27,7 @@ public class Propagator {
 		Location loc;       // the location at which value is emitted
 		Value val;          // value being emitted
 		SetData next = null;
+		Object owner = null; // owner of the list of causes holding this
 
 		private SetData(int time, int serialNumber, CircuitState state,
 				Location loc, Component cause, Value val) {
@@ -46,13 +47,10 @@ public class Propagator {
 			return this.serialNumber - o.serialNumber;
 		}
 		
-		public SetData cloneFor(CircuitState newState) {
-			Propagator newProp = newState.getPropagator();
-			int dtime = newProp.clock - state.getPropagator().clock;
-			SetData ret = new SetData(time + dtime,
-					newProp.setDataSerialNumber, newState, loc, cause, val);
-			newProp.setDataSerialNumber++;
-			if (this.next != null) ret.next = this.next.cloneFor(newState);
+		SetData copyFor(CircuitState newState, Object newOwner) {
+			SetData ret = new SetData(time, serialNumber, newState, loc, cause, val);
+			ret.owner = newOwner;
+			if (this.next != null) ret.next = this.next.copyFor(newState, newOwner);
 			return ret;
 		}
 
@@ -84,6 +82,34 @@ public class Propagator {
 		}
 	}
 	
+	/** Watches the hashes of the successive states of a propagation for
+	 * one that keeps recurring. A state that comes back REPEATS times has
+	 * gone around a cycle twice. Only recurrence is checked, rather than
+	 * a fixed period, since random delays can stretch some trips around
+	 * the cycle by a step. */
+	private static class CycleDetector {
+		private static final int HISTORY = 1024;
+		private static final int REPEATS = 3;
+
+		private HashMap<Long,int[]> seen = new HashMap<Long,int[]>();
+
+		/** Returns the length of the last trip around the cycle once the
+		 * cycle is confirmed, or 0. */
+		int check(int iter, long hash) {
+			Long key = Long.valueOf(hash);
+			int[] last = seen.get(key); // { times seen, last iteration }
+			if (last == null) {
+				if (seen.size() >= HISTORY) seen.clear();
+				seen.put(key, new int[] { 1, iter });
+				return 0;
+			}
+			int period = iter - last[1];
+			last[0]++;
+			last[1] = iter;
+			return last[0] >= REPEATS ? period : 0;
+		}
+	}
+	
 	private static class Listener implements AttributeListener {
 		WeakReference<Propagator> prop;
 		
@@ -99,6 +125,8 @@ public class Propagator {
 				e.getSource().removeAttributeListener(this);
 			} else if (e.getAttribute().equals(Options.sim_rand_attr)) {
 				p.updateRandomness();
+			} else if (e.getAttribute().equals(Options.sim_limit_attr)) {
+				p.updateSimLimit();
 			}
 		}
 	}
@@ -108,7 +136,30 @@ public class Propagator {
 	/** The number of clock cycles to let pass before deciding that the
 	 * circuit is oscillating.
 	 */
-	private int simLimit = 1000;
+	private volatile int simLimit = 1000;
+
+	/** The number of clock cycles after which the propagator starts
+	 * looking for a repeating state. Most propagations finish sooner. */
+	private static final int CYCLE_CHECK_START = 64;
+
+	// the base by whose powers pending value changes are weighted by
+	// their times in the state hash, along with its inverse and powers
+	private static final long HASH_BASE = 0xD6E8FEB86659FD93L;
+	private static final long HASH_BASE_INVERSE;
+	private static final long[] HASH_POWERS = new long[64];
+	private static final long[] HASH_INVERSE_POWERS = new long[64];
+
+	static {
+		long inv = HASH_BASE; // Newton's method, doubling the correct bits
+		for (int i = 0; i < 5; i++) inv *= 2 - HASH_BASE * inv;
+		HASH_BASE_INVERSE = inv;
+		HASH_POWERS[0] = 1;
+		HASH_INVERSE_POWERS[0] = 1;
+		for (int i = 1; i < HASH_POWERS.length; i++) {
+			HASH_POWERS[i] = HASH_POWERS[i - 1] * HASH_BASE;
+			HASH_INVERSE_POWERS[i] = HASH_INVERSE_POWERS[i - 1] * HASH_BASE_INVERSE;
+		}
+	}
 
 	/** On average, one out of every 2**simRandomShift propagations
 	 * through a component is delayed one step more than the component
@@ -126,6 +177,30 @@ public class Propagator {
 	private Random noiseSource = new Random();
 	private int noiseCount = 0;
 	private int setDataSerialNumber = 0;
+	private volatile SimulationProfile profile = null;
+	// the thread that last ran this propagator; CircuitState gives other
+	// threads the values published when a propagation finishes, and
+	// publishing starts only once another thread has asked for values
+	private volatile Thread owner = null;
+	private volatile boolean publishing = false;
+	// the simulator running this propagator, which publishes values on
+	// its own thread when another thread first asks for them
+	private volatile Simulator simulator = null;
+
+	// running totals reported by getStepCount and its siblings
+	private long stepCount = 0;
+	private long eventCount = 0;
+	private long oscillationStepCount = 0;
+	private int peakQueueSize = 0;
+
+	// While a propagation is checked for cycles, the hash of its state is
+	// kept up to date as each value change is queued or processed, so
+	// that checking a step does not mean going through the queue. See
+	// startStateHash.
+	private boolean hashing = false;
+	private int hashShift;
+	private long queueHash; // of the pending changes, relative to clock
+	private long valueHash; // of the values changed since hashing began
 	
 	static int lastId = 0;
 	int id = lastId++;
@@ -135,6 +210,13 @@ public class Propagator {
 		Listener l = new Listener(this);
 		root.getProject().getOptions().getAttributeSet().addAttributeListener(l);
 		updateRandomness();
+		updateSimLimit();
+	}
+	
+	private void updateSimLimit() {
+		Options opts = root.getProject().getOptions();
+		Integer limit = opts.getAttributeSet().getValue(Options.sim_limit_attr);
+		simLimit = limit == null ? 1000 : Math.max(4, limit.intValue());
 	}
 	
 	private void updateRandomness() {
@@ -159,6 +241,37 @@ public class Propagator {
 		if (isOscillating) oscPoints.draw(context);
 	}
 
+	public SimulationProfile getProfile() {
+		return profile;
+	}
+
+	/** Installs a profile to be updated as this propagator works, or
+	 * removes the current one if value is null. */
+	public void setProfile(SimulationProfile value) {
+		profile = value;
+	}
+
+	/** Returns the number of distinct simulated times processed. */
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	/** Returns the number of value changes processed. */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/** Returns the number of steps that were run again only to find
+	 * which points are oscillating. */
+	public long getOscillationStepCount() {
+		return oscillationStepCount;
+	}
+
+	/** Returns the largest number of value changes ever waiting. */
+	public int getPeakQueueSize() {
+		return peakQueueSize;
+	}
+
 	//
 	// public methods
 	//
@@ -167,32 +280,68 @@ public class Propagator {
 	}
 	
 	void reset() {
+		owner = Thread.currentThread();
 		toProcess.clear();
 		root.reset();
 		isOscillating = false;
+		if (publishing) root.publishValues();
 	}
 	
 	public void propagate() {
+		owner = Thread.currentThread();
+		propagateUntilStable();
+		if (publishing) root.publishValues();
+	}
+
+	private void propagateUntilStable() {
 		oscPoints.clear();
 		clearDirtyPoints();
 		clearDirtyComponents();
 
 		int oscThreshold = simLimit;
 		int logThreshold = 3 * oscThreshold / 4;
+		// a low limit leaves room for a cycle to recur before logging starts
+		int checkStart = Math.min(CYCLE_CHECK_START, logThreshold / 2);
 		int iters = 0;
-		while (!toProcess.isEmpty()) {
-			iters++;
-			
-			if (iters < logThreshold) {
-				stepInternal(null);
-			} else if (iters < oscThreshold) {
-				oscAdding = true;
-				stepInternal(oscPoints);
-			} else {
-				isOscillating = true;
-				oscAdding = false;
-				return;
+		CycleDetector cycles = null;
+		try {
+			while (!toProcess.isEmpty()) {
+				iters++;
+				
+				if (iters < logThreshold) {
+					stepInternal(null);
+					if (iters >= checkStart && !toProcess.isEmpty()) {
+						if (cycles == null) {
+							cycles = new CycleDetector();
+							startStateHash();
+						}
+						int period = cycles.check(iters, getStateHash());
+						if (period > 0) {
+							// one more period shows which points oscillate
+							hashing = false;
+							oscAdding = true;
+							for (int i = 0; i < period && !toProcess.isEmpty(); i++) {
+								oscillationStepCount++;
+								stepInternal(oscPoints);
+							}
+							isOscillating = true;
+							oscAdding = false;
+							return;
+						}
+					}
+				} else if (iters < oscThreshold) {
+					hashing = false;
+					oscAdding = true;
+					oscillationStepCount++;
+					stepInternal(oscPoints);
+				} else {
+					isOscillating = true;
+					oscAdding = false;
+					return;
+				}
 			}
+		} finally {
+			hashing = false;
 		}
 		isOscillating = false;
 		oscAdding = false;
@@ -200,6 +349,7 @@ public class Propagator {
 	}
 	
 	void step(PropagationPoints changedPoints) {
+		owner = Thread.currentThread();
 		oscPoints.clear();
 		clearDirtyPoints();
 		clearDirtyComponents();
@@ -210,21 +360,30 @@ public class Propagator {
 		stepInternal(changedPoints);
 		oscAdding = false;
 		oscPoints = oldOsc;
+		if (publishing) root.publishValues();
 	}
 	
 	private void stepInternal(PropagationPoints changedPoints) {
 		if (toProcess.isEmpty()) return;
 		
 		// update clock
+		int oldClock = clock;
 		clock = toProcess.peek().time;
+		stepCount++;
+		if (hashing) {
+			queueHash *= hashPower(HASH_INVERSE_POWERS, HASH_BASE_INVERSE,
+					hashSteps(oldClock, clock));
+		}
 
 		// propagate all values for this clock tick
 		HashMap<CircuitState,HashSet<ComponentPoint>> visited
 			= new HashMap<CircuitState,HashSet<ComponentPoint>>();
+		SimulationProfile profile = this.profile;
 		while (true) {
 			SetData data = toProcess.peek();
 			if (data == null || data.time != clock) break;
 			toProcess.remove();
+			if (hashing) queueHash -= eventHash(data);
 			CircuitState state = data.state;
 
 			// if it's already handled for this clock tick, continue
@@ -243,9 +402,11 @@ public class Propagator {
 					+ " by " + data.cause); // */
 			
 			if (changedPoints != null) changedPoints.add(state, data.loc);
+			if (profile != null) profile.eventProcessed(state, data.cause);
+			eventCount++;
 
 			// change the information about value
-			SetData oldHead = state.causes.get(data.loc);
+			SetData oldHead = state.getCausesToModify(data.loc);
 			Value   oldVal  = computeValue(oldHead);
 			SetData newHead = addCause(state, oldHead, data);
 			Value   newVal  = computeValue(newHead);
@@ -253,6 +414,10 @@ public class Propagator {
 			// if the value at point has changed, propagate it
 			if (!newVal.equals(oldVal)) {
 				state.markPointAsDirty(data.loc);
+				if (hashing) {
+					valueHash += pointHash(state, data.loc, newVal)
+						- pointHash(state, data.loc, oldVal);
+				}
 			}
 		}
 
@@ -332,8 +497,15 @@ public class Propagator {
 				}
 			}
 		}
-		toProcess.add(new SetData(clock + delay, setDataSerialNumber,
-				state, pt, cause, val));
+		SetData data = new SetData(clock + delay, setDataSerialNumber,
+				state, pt, cause, val);
+		toProcess.add(data);
+		if (hashing) {
+			queueHash += eventHash(data) * hashPower(HASH_POWERS, HASH_BASE,
+					hashSteps(clock, data.time));
+		}
+		int queued = toProcess.size();
+		if (queued > peakQueueSize) peakQueueSize = queued;
 		/*DEBUGGING - comment out
 		Simulator.log(clock + ": set " + pt + " in "
 				+ state + " to " + val
@@ -352,13 +524,38 @@ public class Propagator {
 		return ticks;
 	}
 
+	boolean isPropagatorThread() {
+		Thread t = owner;
+		return t == null || t == Thread.currentThread();
+	}
+
+	void requestPublication() {
+		publishing = true;
+		Simulator sim = simulator;
+		if (sim != null) sim.requestPublication(this);
+	}
+
+	/** Binds this propagator to the simulator that will run it on the
+	 * given thread, so that other threads read published values from
+	 * now on rather than values the thread may be changing. */
+	void setSimulator(Simulator sim, Thread thread) {
+		simulator = sim;
+		owner = thread;
+	}
+
+	/** Publishes values for states that other threads have read; called
+	 * only on the thread running this propagator. */
+	void publishValues() {
+		root.publishValues();
+	}
+
 	//
 	// private methods
 	//
 	void checkComponentEnds(CircuitState state, Component comp) {
 		for (EndData end : comp.getEnds()) {
 			Location loc    = end.getLocation();
-			SetData oldHead = state.causes.get(loc);
+			SetData oldHead = state.getCausesToModify(loc);
 			Value   oldVal  = computeValue(oldHead);
 			SetData newHead = removeCause(state, oldHead, loc, comp);
 			Value   newVal  = computeValue(newHead);
@@ -385,7 +582,7 @@ public class Propagator {
 			return removeCause(state, head, data.loc, data.cause);
 		}
 
-		HashMap<Location,SetData> causes = state.causes;
+		CompactMap<Location,SetData> causes = state.causes;
 
 		// first check whether this is change of previous info.
 		boolean replaced = false;
@@ -399,6 +596,7 @@ public class Propagator {
 
 		// otherwise, insert to list of causes
 		if (!replaced) {
+			data.owner = state.getCausesOwner();
 			if (head == null) {
 				causes.put(data.loc, data);
 				head = data;
@@ -413,7 +611,7 @@ public class Propagator {
 
 	private SetData removeCause(CircuitState state, SetData head,
 			Location loc, Component cause) {
-		HashMap<Location,SetData> causes = state.causes;
+		CompactMap<Location,SetData> causes = state.causes;
 		if (head == null) {
 			;
 		} else if (head.cause == cause) {
@@ -435,6 +633,64 @@ public class Propagator {
 		return head;
 	}
 
+	// Hashes the pending value changes relative to the current time, so
+	// a propagation that returns to an earlier state hashes the same, along
+	// with the values set at points since hashing began. Each change is
+	// weighted by a power of HASH_BASE for its time, and the terms are
+	// added since the queue isn't ordered; as the clock advances, dividing
+	// by the base keeps the times relative. Delays are rounded to hide the
+	// random noise added to them.
+	private void startStateHash() {
+		hashing = true;
+		hashShift = simRandomShift;
+		queueHash = 0;
+		valueHash = 0;
+		for (SetData data : toProcess) {
+			queueHash += eventHash(data) * hashPower(HASH_POWERS, HASH_BASE,
+					hashSteps(clock, data.time));
+		}
+	}
+
+	private long getStateHash() {
+		return queueHash + 0x9E3779B97F4A7C15L * valueHash;
+	}
+
+	// the rounded time units from time to a later time; rounding each time
+	// on its own keeps the units between any three times consistent
+	private int hashSteps(int time, int later) {
+		int shift = hashShift;
+		if (shift == 0) return later - time;
+		int base = time & ((1 << shift) - 1);
+		int half = 1 << (shift - 1);
+		return ((base + (later - time) + half) >> shift) - ((base + half) >> shift);
+	}
+
+	private static long hashPower(long[] powers, long base, int exp) {
+		if (exp < powers.length) return powers[exp];
+		long ret = 1;
+		for (long b = base; exp != 0; exp >>>= 1, b *= b) {
+			if ((exp & 1) != 0) ret *= b;
+		}
+		return ret;
+	}
+
+	private static long eventHash(SetData data) {
+		long h = data.loc.hashCode();
+		h = 31 * h + (data.val == null ? 0 : data.val.hashCode());
+		h = 31 * h + System.identityHashCode(data.cause);
+		h = 31 * h + System.identityHashCode(data.state);
+		h *= 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	private static long pointHash(CircuitState state, Location loc, Value val) {
+		long h = loc.hashCode();
+		h = 31 * h + val.hashCode();
+		h = 31 * h + System.identityHashCode(state);
+		h *= 0xC2B2AE3D27D4EB4FL;
+		return h ^ (h >>> 31);
+	}
+
 	//
 	// static methods
 	//
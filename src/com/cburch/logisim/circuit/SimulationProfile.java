@@ -0,0 +1,161 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.WeakHashMap;
+
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.ComponentFactory;
+
+/** Counts the work a propagator does, broken down by component type, by
+ * circuit, and by position in the tree of circuit states. The propagator
+ * consults a profile only while one is installed, so simulations without
+ * one pay nothing more than a null check. */
+public class SimulationProfile {
+	public static class Entry {
+		private String name;
+		private long events = 0;
+		private long evaluations = 0;
+		private long nanos = 0;
+
+		private Entry(String name) {
+			this.name = name;
+		}
+
+		private Entry(Entry base) {
+			this.name = base.name;
+			this.events = base.events;
+			this.evaluations = base.evaluations;
+			this.nanos = base.nanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/** Returns the number of value changes processed. */
+		public long getEvents() {
+			return events;
+		}
+
+		/** Returns the number of times components were propagated. */
+		public long getEvaluations() {
+			return evaluations;
+		}
+
+		/** Returns the time spent propagating components. */
+		public long getNanos() {
+			return nanos;
+		}
+	}
+
+	private static class CompareEntries implements Comparator<Entry> {
+		public int compare(Entry a, Entry b) {
+			if (a.nanos != b.nanos) return a.nanos > b.nanos ? -1 : 1;
+			if (a.events != b.events) return a.events > b.events ? -1 : 1;
+			return a.name.compareTo(b.name);
+		}
+	}
+
+	private HashMap<ComponentFactory,Entry> factories
+		= new HashMap<ComponentFactory,Entry>();
+	private HashMap<Circuit,Entry> circuits = new HashMap<Circuit,Entry>();
+	// weak so that a profile left enabled does not keep discarded
+	// states (and their circuits' values) alive
+	private WeakHashMap<CircuitState,Entry> states = new WeakHashMap<CircuitState,Entry>();
+	private Entry total = new Entry("");
+
+	public synchronized void clear() {
+		factories.clear();
+		circuits.clear();
+		states.clear();
+		total = new Entry("");
+	}
+
+	public synchronized Entry getTotal() {
+		return new Entry(total);
+	}
+
+	public synchronized List<Entry> getFactoryEntries() {
+		return copy(factories.values());
+	}
+
+	public synchronized List<Entry> getCircuitEntries() {
+		return copy(circuits.values());
+	}
+
+	public synchronized List<Entry> getStateEntries() {
+		return copy(states.values());
+	}
+
+	synchronized void eventProcessed(CircuitState state, Component cause) {
+		total.events++;
+		if (cause != null) getFactoryEntry(cause.getFactory()).events++;
+		getCircuitEntry(state.getCircuit()).events++;
+		getStateEntry(state).events++;
+	}
+
+	synchronized void componentPropagated(CircuitState state, Component comp,
+			long nanos) {
+		total.evaluations++;
+		total.nanos += nanos;
+		Entry entry = getFactoryEntry(comp.getFactory());
+		entry.evaluations++;
+		entry.nanos += nanos;
+		entry = getCircuitEntry(state.getCircuit());
+		entry.evaluations++;
+		entry.nanos += nanos;
+		entry = getStateEntry(state);
+		entry.evaluations++;
+		entry.nanos += nanos;
+	}
+
+	private Entry getFactoryEntry(ComponentFactory factory) {
+		Entry ret = factories.get(factory);
+		if (ret == null) {
+			ret = new Entry(factory.getDisplayName());
+			factories.put(factory, ret);
+		}
+		return ret;
+	}
+
+	private Entry getCircuitEntry(Circuit circuit) {
+		Entry ret = circuits.get(circuit);
+		if (ret == null) {
+			ret = new Entry(circuit.getName());
+			circuits.put(circuit, ret);
+		}
+		return ret;
+	}
+
+	private Entry getStateEntry(CircuitState state) {
+		Entry ret = states.get(state);
+		if (ret == null) {
+			ret = new Entry(getPath(state));
+			states.put(state, ret);
+		}
+		return ret;
+	}
+
+	private static String getPath(CircuitState state) {
+		CircuitState parent = state.getParentState();
+		Component comp = state.getSubcircuit();
+		String name = state.getCircuit().getName();
+		if (parent == null || comp == null) return name;
+		return getPath(parent) + "/" + name + comp.getLocation();
+	}
+
+	private static List<Entry> copy(Collection<Entry> entries) {
+		ArrayList<Entry> ret = new ArrayList<Entry>(entries.size());
+		for (Entry entry : entries) ret.add(new Entry(entry));
+		Collections.sort(ret, new CompareEntries());
+		return ret;
+	}
+}
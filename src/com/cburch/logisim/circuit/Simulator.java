@@ -4,6 +4,9 @@
 package com.cburch.logisim.circuit;
 
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import com.cburch.logisim.comp.ComponentDrawContext;
 import com.cburch.logisim.prefs.AppPreferences;
@@ -37,6 +40,11 @@ public class Simulator {
 		private volatile boolean resetRequested = false;
 		private volatile boolean propagateRequested = false;
 		private volatile boolean complete = false;
+		private boolean finished = false; // the thread has stopped
+		// propagators whose values other threads are waiting to read
+		private ArrayList<Propagator> publishRequests = new ArrayList<Propagator>();
+		// tasks to run between propagations, such as copying a state
+		private ArrayList<Runnable> tasks = new ArrayList<Runnable>();
 
 		// These variables apply only if PRINT_TICK_RATE is set
 		int tickRateTicks = 0;
@@ -71,6 +79,25 @@ public class Simulator {
 			notifyAll();
 		}
 		
+		public synchronized void requestPublication(Propagator prop) {
+			if (!publishRequests.contains(prop)) {
+				publishRequests.add(prop);
+				notifyAll();
+			}
+		}
+		
+		public void requestTask(Runnable task) {
+			synchronized(this) {
+				if (!finished) {
+					tasks.add(task);
+					notifyAll();
+					return;
+				}
+			}
+			// nothing runs the propagator any more, so the task can run here
+			task.run();
+		}
+		
 		public synchronized void shutDown() {
 			complete = true;
 			notifyAll();
@@ -82,16 +109,33 @@ public class Simulator {
 				synchronized(this) {
 					while (!complete && !propagateRequested
 							&& !resetRequested && ticksRequested == 0
-							&& stepsRequested == 0) {
+							&& stepsRequested == 0 && publishRequests.isEmpty()
+							&& tasks.isEmpty()) {
 						try {
 							wait();
 						} catch (InterruptedException e) { }
 					}
 				}
 
+				runTasks();
+				Propagator[] toPublish = null;
+				synchronized(this) {
+					if (!publishRequests.isEmpty()) {
+						toPublish = publishRequests.toArray(new Propagator[publishRequests.size()]);
+						publishRequests.clear();
+					}
+				}
+				if (toPublish != null) {
+					for (Propagator prop : toPublish) prop.publishValues();
+					// lets the readers repaint with the published values
+					firePropagationCompleted();
+				}
+
 				if (resetRequested) {
 					resetRequested = false;
-					if (propagator != null) propagator.reset();
+					if (propagator != null) {
+						propagator.reset();
+					}
 					firePropagationCompleted();
 					propagateRequested |= isRunning;
 				}
@@ -148,6 +192,28 @@ public class Simulator {
 					firePropagationCompleted();
 				}
 			}
+
+			// callers may be waiting on tasks queued before the shutdown
+			synchronized(this) {
+				finished = true;
+			}
+			runTasks();
+		}
+
+		private void runTasks() {
+			Runnable[] toRun;
+			synchronized(this) {
+				if (tasks.isEmpty()) return;
+				toRun = tasks.toArray(new Runnable[tasks.size()]);
+				tasks.clear();
+			}
+			for (Runnable task : toRun) {
+				try {
+					task.run();
+				} catch (Throwable thr) {
+					thr.printStackTrace();
+				}
+			}
 		}
 		
 		private void doTick() {
@@ -167,6 +233,7 @@ public class Simulator {
 	private SimulatorTicker ticker;
 	private ArrayList<SimulatorListener> listeners
 		= new ArrayList<SimulatorListener>();
+	private volatile SimulationProfile profile = null;
 
 	public Simulator() {
 		manager = new PropagationManager();
@@ -189,7 +256,12 @@ public class Simulator {
 	}
 
 	public void setCircuitState(CircuitState state) {
-		manager.setPropagator(state.getPropagator());
+		Propagator prop = state.getPropagator();
+		Propagator old = manager.getPropagator();
+		if (old != null && old != prop) old.setProfile(null);
+		prop.setProfile(profile);
+		prop.setSimulator(this, manager);
+		manager.setPropagator(prop);
 		renewTickerAwake();
 	}
 	
@@ -197,6 +269,28 @@ public class Simulator {
 		Propagator prop = manager.getPropagator();
 		return prop == null ? null : prop.getRootState();
 	}
+
+	/** Runs the task on the simulator's thread once its current
+	 * propagation, if any, finishes. The task may read or copy the state
+	 * being simulated, which nothing else changes while it runs. */
+	public void invokeBetweenPropagations(Runnable task) {
+		manager.requestTask(task);
+	}
+
+	/** Copies the state being simulated on the simulator's thread,
+	 * between propagations so that the copy is consistent. The result
+	 * is null if there is no state. */
+	public Future<CircuitState> cloneCircuitState() {
+		FutureTask<CircuitState> ret = new FutureTask<CircuitState>(
+				new Callable<CircuitState>() {
+			public CircuitState call() {
+				Propagator prop = manager.getPropagator();
+				return prop == null ? null : prop.getRootState().cloneState();
+			}
+		});
+		manager.requestTask(ret);
+		return ret;
+	}
 	
 	public void requestReset() {
 		manager.requestReset();
@@ -277,6 +371,22 @@ public class Simulator {
 		manager.requestPropagate();
 	}
 
+	void requestPublication(Propagator prop) {
+		manager.requestPublication(prop);
+	}
+
+	public SimulationProfile getProfile() {
+		return profile;
+	}
+
+	/** Starts profiling the simulation into the given profile, which
+	 * follows whichever circuit state is being simulated; null stops it. */
+	public void setProfile(SimulationProfile value) {
+		profile = value;
+		Propagator prop = manager.getPropagator();
+		if (prop != null) prop.setProfile(value);
+	}
+
 	public boolean isOscillating() {
 		Propagator prop = manager.getPropagator();
 		return prop != null && prop.isOscillating();
@@ -4,6 +4,11 @@
 package com.cburch.logisim.circuit;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.cburch.logisim.data.BitWidth;
 import com.cburch.logisim.data.Location;
@@ -11,16 +16,25 @@ import com.cburch.logisim.data.Location;
 public class WidthIncompatibilityData {
 	private ArrayList<Location> points;
 	private ArrayList<BitWidth> widths;
+	// the widths found at each point, so that neither adding nor drawing
+	// need search the lists
+	private LinkedHashMap<Location,List<BitWidth>> pointWidths;
 
 	public WidthIncompatibilityData() {
 		points = new ArrayList<Location>();
 		widths = new ArrayList<BitWidth>();
+		pointWidths = new LinkedHashMap<Location,List<BitWidth>>();
 	}
 
 	public void add(Location p, BitWidth w) {
-		for (int i = 0; i < points.size(); i++) {
-			if (p.equals(points.get(i)) && w.equals(widths.get(i))) return;
+		List<BitWidth> ws = pointWidths.get(p);
+		if (ws == null) {
+			ws = new ArrayList<BitWidth>(2);
+			pointWidths.put(p, ws);
+		} else if (ws.contains(w)) {
+			return;
 		}
+		ws.add(w);
 		points.add(p);
 		widths.add(w);
 	}
@@ -37,6 +51,18 @@ public class WidthIncompatibilityData {
 		return widths.get(i);
 	}
 
+	/** Returns each point once, in the order first added. */
+	public Set<Location> getPoints() {
+		return Collections.unmodifiableSet(pointWidths.keySet());
+	}
+
+	/** Returns the widths found at a point, in the order added. */
+	public List<BitWidth> getBitWidths(Location p) {
+		List<BitWidth> ret = pointWidths.get(p);
+		if (ret == null) return Collections.emptyList();
+		return Collections.unmodifiableList(ret);
+	}
+
 	@Override
 	public boolean equals(Object other) {
 		if (!(other instanceof WidthIncompatibilityData)) return false;
@@ -44,17 +70,19 @@ public class WidthIncompatibilityData {
 
 		WidthIncompatibilityData o = (WidthIncompatibilityData) other;
 		if (this.size() != o.size()) return false;
-		for (int i = 0; i < this.size(); i++) {
-			Location p = this.getPoint(i);
-			BitWidth w = this.getBitWidth(i);
-			boolean matched = false;
-			for (int j = 0; j < o.size(); j++) {
-				Location q = this.getPoint(j);
-				BitWidth x = this.getBitWidth(j);
-				if (p.equals(q) && w.equals(x)) { matched = true; break; }
-			}
-			if (!matched) return false;
+		for (Map.Entry<Location,List<BitWidth>> entry : pointWidths.entrySet()) {
+			List<BitWidth> ws = o.pointWidths.get(entry.getKey());
+			if (ws == null || !ws.containsAll(entry.getValue())) return false;
 		}
 		return true;
 	}
+
+	@Override
+	public int hashCode() {
+		int ret = 0;
+		for (int i = 0; i < points.size(); i++) {
+			ret += points.get(i).hashCode() ^ widths.get(i).hashCode();
+		}
+		return ret;
+	}
 }
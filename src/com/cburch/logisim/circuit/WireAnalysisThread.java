@@ -0,0 +1,65 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.circuit;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/** Works out the wire bundles of circuits once transactions on them are
+ * done, along with the width conflicts found in doing so, so that the
+ * canvas and the simulator usually find them ready rather than computing
+ * them in the middle of a repaint or a propagation. */
+class WireAnalysisThread extends Thread {
+	private static WireAnalysisThread INSTANCE = new WireAnalysisThread();
+	
+	static {
+		INSTANCE.start();
+	}
+	
+	public static void enqueueRequest(Circuit circuit) {
+		synchronized (INSTANCE.lock) {
+			// a circuit already waiting is analyzed once for all its changes
+			if (INSTANCE.pending.add(circuit)) {
+				INSTANCE.lock.notifyAll();
+			}
+		}
+	}
+	
+	private Object lock;
+	private LinkedHashSet<Circuit> pending;
+	
+	private WireAnalysisThread() {
+		super("WireAnalysisThread");
+		lock = new Object();
+		pending = new LinkedHashSet<Circuit>();
+		setDaemon(true);
+	}
+	
+	@Override
+	public void run() {
+		while (true) {
+			Circuit circuit;
+			synchronized (lock) {
+				while (pending.isEmpty()) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				Iterator<Circuit> it = pending.iterator();
+				circuit = it.next();
+				it.remove();
+			}
+			
+			try {
+				circuit.analyzeWires();
+			} catch (Throwable t) {
+				// whoever needs the bundles next will compute them instead
+				t.printStackTrace();
+			}
+		}
+	}
+}
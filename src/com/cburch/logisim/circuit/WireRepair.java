@@ -4,69 +4,78 @@
 package com.cburch.logisim.circuit;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.data.Location;
 
+/** Merges collinear and overlapping wires and splits wires where other
+ * components attach. Each row and column of wires is handled on its own:
+ * its wires are sorted along the line and swept once, so the repair takes
+ * O(n log n) time. After an edit, only the rows and columns through the
+ * locations that the edit changed are repaired. */
 class WireRepair extends CircuitTransaction {
+	// how far to either side of a wire Wire.contains accepts a point
+	private static final int TOLERANCE = 2;
 
-	private static class MergeSets {
-		private final HashMap<Wire,ArrayList<Wire>> map;
-		
-		MergeSets() {
-			map = new HashMap<Wire,ArrayList<Wire>>();
-		}
-		
-		void merge(Wire a, Wire b) {
-			ArrayList<Wire> set0 = map.get(a);
-			ArrayList<Wire> set1 = map.get(b);
-			if (set0 == null && set1 == null) {
-				set0 = new ArrayList<Wire>(2);
-				set0.add(a);
-				set0.add(b);
-				map.put(a, set0);
-				map.put(b, set0);
-			} else if (set0 == null && set1 != null) {
-				set1.add(a);
-				map.put(a, set1);
-			} else if (set0 != null && set1 == null) {
-				set0.add(b);
-				map.put(b, set0);
-			} else if (set0 != set1) { // neither is null, and they are different
-				if (set0.size() > set1.size()) { // ensure set1 is the larger
-					ArrayList<Wire> temp = set0;
-					set0 = set1;
-					set1 = temp;
-				}
-				set1.addAll(set0);
-				for (Wire w : set0) {
-					map.put(w, set1);
-				}
-			}
+	private static final Comparator<Wire> BY_FIRST_END = new Comparator<Wire>() {
+		public int compare(Wire a, Wire b) {
+			int ret = a.getEnd0().compareTo(b.getEnd0());
+			return ret != 0 ? ret : a.getEnd1().compareTo(b.getEnd1());
 		}
-		
-		Collection<ArrayList<Wire>> getMergeSets() {
-			IdentityHashMap<ArrayList<Wire>,Boolean> lists;
-			lists = new IdentityHashMap<ArrayList<Wire>,Boolean>();
-			for (ArrayList<Wire> list : map.values()) {
-				lists.put(list, Boolean.TRUE);
-			}
-			return lists.keySet();
+	};
+
+	/** The wires lying along one row or column, sorted by their first
+	 * ends. */
+	private static class Line {
+		private boolean vertical;
+		private int coord;
+		private ArrayList<Wire> wires = new ArrayList<Wire>();
+
+		Line(boolean vertical, int coord) {
+			this.vertical = vertical;
+			this.coord = coord;
+		}
+
+		int pos(Location loc) {
+			return vertical ? loc.getY() : loc.getX();
+		}
+
+		boolean contains(Component comp) {
+			if (!(comp instanceof Wire)) return false;
+			Wire w = (Wire) comp;
+			return w.isVertical() == vertical && across(w.getEnd0(), vertical) == coord
+				&& across(w.getEnd1(), vertical) == coord;
 		}
 	}
 
 	private Circuit circuit;
-	
+	private HashSet<Integer> rows; // of changed locations; null to repair all
+	private HashSet<Integer> columns;
+
 	public WireRepair(Circuit circuit) {
+		this(circuit, null);
+	}
+
+	/** Creates a repair of the rows and columns through the given
+	 * locations, or of the whole circuit if the locations are null. */
+	public WireRepair(Circuit circuit, Collection<Location> changed) {
 		this.circuit = circuit;
+		if (changed != null) {
+			rows = new HashSet<Integer>();
+			columns = new HashSet<Integer>();
+			for (Location loc : changed) {
+				rows.add(Integer.valueOf(loc.getY()));
+				columns.add(Integer.valueOf(loc.getX()));
+			}
+		}
 	}
 
 	@Override
@@ -76,11 +85,12 @@ class WireRepair extends CircuitTransaction {
 
 	@Override
 	protected void run(CircuitMutator mutator) {
+		if (rows != null && rows.isEmpty()) return;
 		doMerges(mutator);
 		doOverlaps(mutator);
 		doSplits(mutator);
 	}
-	
+
 	/* for debugging:
 	private void printWires(String prefix, PrintStream out) {
 		boolean first = true;
@@ -95,158 +105,271 @@ class WireRepair extends CircuitTransaction {
 		out.println(prefix + ": none");
 	}
 	*/
-	
+
+	// joins wires that meet end to end where nothing else is attached
 	private void doMerges(CircuitMutator mutator) {
-		MergeSets sets = new MergeSets();
-		for (Location loc : circuit.wires.points.getSplitLocations()) {
-			Collection<?> at = circuit.getComponents(loc);
-			if (at.size() == 2) {
-				Iterator<?> atit = at.iterator();
-				Object at0 = atit.next();
-				Object at1 = atit.next();
-				if (at0 instanceof Wire && at1 instanceof Wire) {
-					Wire w0 = (Wire) at0;
-					Wire w1 = (Wire) at1;
-					if (w0.isParallel(w1)) {
-						sets.merge(w0, w1);
+		ReplacementMap repl = new ReplacementMap();
+		for (Line line : getLines()) {
+			ArrayList<Wire> wires = line.wires;
+			int n = wires.size();
+			if (n < 2) continue;
+
+			// each end's position along the line, above its wire's index
+			long[] ends = new long[2 * n];
+			for (int i = 0; i < n; i++) {
+				Wire w = wires.get(i);
+				ends[2 * i] = ((long) line.pos(w.getEnd0()) << 32) | i;
+				ends[2 * i + 1] = ((long) line.pos(w.getEnd1()) << 32) | i;
+			}
+			Arrays.sort(ends);
+
+			int[] parent = null;
+			for (int k = 0; k + 1 < ends.length; k++) {
+				int p = (int) (ends[k] >> 32);
+				if (p != (int) (ends[k + 1] >> 32)) continue;
+				int i = (int) ends[k];
+				Wire w = wires.get(i);
+				Location loc = line.pos(w.getEnd0()) == p ? w.getEnd0() : w.getEnd1();
+				if (circuit.wires.points.getComponentCount(loc) == 2) {
+					if (parent == null) {
+						parent = new int[n];
+						for (int j = 0; j < n; j++) parent[j] = j;
 					}
+					parent[find(parent, i)] = find(parent, (int) ends[k + 1]);
 				}
 			}
-		}
+			if (parent == null) continue;
 
-		ReplacementMap repl = new ReplacementMap();
-		for (ArrayList<Wire> mergeSet : sets.getMergeSets()) {
-			if (mergeSet.size() > 1) {
-				ArrayList<Location> locs = new ArrayList<Location>(2 * mergeSet.size());
-				for (Wire w : mergeSet) {
-					locs.add(w.getEnd0());
-					locs.add(w.getEnd1());
+			// the wires come in order of their first ends, so the first
+			// wire of each set starts the merged wire
+			int[] first = new int[n];
+			Wire[] last = new Wire[n];
+			int[] count = new int[n];
+			Arrays.fill(first, -1);
+			for (int i = 0; i < n; i++) {
+				int r = find(parent, i);
+				Wire w = wires.get(i);
+				if (first[r] < 0) first[r] = i;
+				if (last[r] == null || line.pos(w.getEnd1()) > line.pos(last[r].getEnd1())) {
+					last[r] = w;
 				}
-				Collections.sort(locs);
-				Location e0 = locs.get(0);
-				Location e1 = locs.get(locs.size() - 1);
-				Wire wnew = Wire.create(e0, e1);
-				Collection<Wire> wset = Collections.singleton(wnew);
-
-				for (Wire w : mergeSet) {
-					if (!w.equals(wset)) {
-						repl.put(w, wset);
+				count[r]++;
+			}
+			Collection<?>[] merged = new Collection<?>[n];
+			for (int i = 0; i < n; i++) {
+				int r = find(parent, i);
+				if (count[r] > 1) {
+					if (merged[r] == null) {
+						merged[r] = Collections.singleton(Wire.create(
+								wires.get(first[r]).getEnd0(), last[r].getEnd1()));
 					}
+					@SuppressWarnings("unchecked")
+					Collection<Wire> wset = (Collection<Wire>) merged[r];
+					repl.put(wires.get(i), wset);
 				}
 			}
 		}
 		mutator.replace(circuit, repl);
 	}
-	
-	private void doOverlaps(CircuitMutator mutator) {
-		HashMap<Location,ArrayList<Wire>> wirePoints;
-		wirePoints = new HashMap<Location,ArrayList<Wire>>();
-		for (Wire w : circuit.getWires()) {
-			for (Location loc : w) {
-				ArrayList<Wire> locWires = wirePoints.get(loc);
-				if (locWires == null) {
-					locWires = new ArrayList<Wire>(3);
-					wirePoints.put(loc, locWires);
-				}
-				locWires.add(w);
-			}
-		}
-		
-		MergeSets mergeSets = new MergeSets();
-		for (ArrayList<Wire> locWires : wirePoints.values()) {
-			if (locWires.size() > 1) {
-				for (int i = 0, n = locWires.size(); i < n; i++) {
-					Wire w0 = locWires.get(i);
-					for (int j = i + 1; j < n; j++) {
-						Wire w1 = locWires.get(j);
-						if (w0.overlaps(w1, false)) {
-							mergeSets.merge(w0, w1);
-						}
-					}
-				}
-			}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
 		}
+		return i;
+	}
+
+	// replaces each run of overlapping wires by wires that cover the
+	// same span without overlapping
+	private void doOverlaps(CircuitMutator mutator) {
+		ArrayList<Line> lines = getLines();
+		HashMap<Integer,ArrayList<Location>> rowSplits = getSplitLocations(lines, false);
+		HashMap<Integer,ArrayList<Location>> colSplits = getSplitLocations(lines, true);
 
 		ReplacementMap replacements = new ReplacementMap();
-		Set<Location> splitLocs = circuit.wires.points.getSplitLocations();
-		for (ArrayList<Wire> mergeSet : mergeSets.getMergeSets()) {
-			if (mergeSet.size() > 1) {
-				doMergeSet(mergeSet, replacements, splitLocs);
+		for (Line line : lines) {
+			ArrayList<Wire> wires = line.wires;
+			HashMap<Integer,ArrayList<Location>> splitMap = line.vertical ? colSplits : rowSplits;
+			int start = 0;
+			while (start < wires.size()) {
+				int farEnd = line.pos(wires.get(start).getEnd1());
+				int stop = start + 1;
+				while (stop < wires.size() && line.pos(wires.get(stop).getEnd0()) < farEnd) {
+					farEnd = Math.max(farEnd, line.pos(wires.get(stop).getEnd1()));
+					stop++;
+				}
+				if (stop - start > 1) {
+					doMergeSet(line, wires.subList(start, stop),
+							splitMap.get(Integer.valueOf(line.coord)), replacements);
+				}
+				start = stop;
 			}
 		}
 		mutator.replace(circuit, replacements);
 	}
-	
-	private void doMergeSet(ArrayList<Wire> mergeSet, ReplacementMap replacements,
-			Set<Location> splitLocs) {
-		TreeSet<Location> ends = new TreeSet<Location>();
+
+	private void doMergeSet(Line line, List<Wire> mergeSet,
+			ArrayList<Location> splitLocs, ReplacementMap replacements) {
+		Location e0 = mergeSet.get(0).getEnd0();
+		Location e1 = e0;
 		for (Wire w : mergeSet) {
-			ends.add(w.getEnd0());
-			ends.add(w.getEnd1());
+			if (line.pos(w.getEnd1()) > line.pos(e1)) e1 = w.getEnd1();
 		}
-		Wire whole = Wire.create(ends.first(), ends.last());
 
-		TreeSet<Location> mids = new TreeSet<Location>();
-		mids.add(whole.getEnd0());
-		mids.add(whole.getEnd1());
-		for (Location loc : whole) {
-			if (splitLocs.contains(loc)) {
+		// the span is split wherever something besides these wires attaches
+		ArrayList<Location> mids = new ArrayList<Location>();
+		mids.add(e0);
+		if (splitLocs != null) {
+			int p1 = line.pos(e1);
+			for (int k = lowerBound(splitLocs, line, line.pos(e0) + 1);
+					k < splitLocs.size() && line.pos(splitLocs.get(k)) < p1; k++) {
+				Location loc = splitLocs.get(k);
 				for (Component comp : circuit.getComponents(loc)) {
-					if (!mergeSet.contains(comp)) {
+					if (!line.contains(comp)) {
 						mids.add(loc);
 						break;
 					}
 				}
 			}
 		}
-		
-		ArrayList<Wire> mergeResult = new ArrayList<Wire>();
-		if (mids.size() == 2) {
-			mergeResult.add(whole);
-		} else {
-			Location e0 = mids.first();
-			for (Location e1 : mids) {
-				mergeResult.add(Wire.create(e0, e1));
-				e0 = e1;
-			}
+		mids.add(e1);
+
+		Wire[] pieces = new Wire[mids.size() - 1];
+		for (int k = 0; k < pieces.length; k++) {
+			pieces[k] = Wire.create(mids.get(k), mids.get(k + 1));
 		}
-		
 		for (Wire w : mergeSet) {
+			// start from the last piece beginning at or before w
+			int k = lowerBound(mids, line, line.pos(w.getEnd0()) + 1) - 1;
+			int p1 = line.pos(w.getEnd1());
 			ArrayList<Component> wRepl = new ArrayList<Component>(2);
-			for (Wire w2 : mergeResult) {
-				if (w2.overlaps(w, false)) {
-					wRepl.add(w2);
-				}
+			for (; k < pieces.length && line.pos(mids.get(k)) < p1; k++) {
+				wRepl.add(pieces[k]);
 			}
 			replacements.put(w, wRepl);
 		}
 	}
-	
+
+	// splits each wire at any component end lying within it
 	private void doSplits(CircuitMutator mutator) {
-		Set<Location> splitLocs = circuit.wires.points.getSplitLocations();
+		ArrayList<Line> lines = getLines();
+		HashMap<Integer,ArrayList<Location>> rowSplits = getSplitLocations(lines, false);
+		HashMap<Integer,ArrayList<Location>> colSplits = getSplitLocations(lines, true);
+
 		ReplacementMap repl = new ReplacementMap();
-		for (Wire w : circuit.getWires()) {
-			Location w0 = w.getEnd0();
-			Location w1 = w.getEnd1();
-			ArrayList<Location> splits = null;
-			for (Location loc : splitLocs) {
-				if (w.contains(loc) && !loc.equals(w0) && !loc.equals(w1)) {
-					if (splits == null) splits = new ArrayList<Location>();
-					splits.add(loc);
+		for (Line line : lines) {
+			HashMap<Integer,ArrayList<Location>> splitMap = line.vertical ? colSplits : rowSplits;
+			for (Wire w : line.wires) {
+				Location w0 = w.getEnd0();
+				Location w1 = w.getEnd1();
+				int p1 = line.pos(w1);
+				ArrayList<Location> splits = null;
+				for (int d = -TOLERANCE; d <= TOLERANCE; d++) {
+					ArrayList<Location> locs = splitMap.get(Integer.valueOf(line.coord + d));
+					if (locs == null) continue;
+					for (int k = lowerBound(locs, line, line.pos(w0));
+							k < locs.size() && line.pos(locs.get(k)) <= p1; k++) {
+						Location loc = locs.get(k);
+						if (!loc.equals(w0) && !loc.equals(w1)) {
+							if (splits == null) splits = new ArrayList<Location>();
+							splits.add(loc);
+						}
+					}
 				}
-			}
-			if (splits != null) {
-				splits.add(w1);
-				Collections.sort(splits);
-				Location e0 = w0;
-				ArrayList<Wire> subs = new ArrayList<Wire>(splits.size());
-				for (Location e1 : splits) {
-					subs.add(Wire.create(e0, e1));
-					e0 = e1;
+				if (splits != null) {
+					splits.add(w1);
+					Collections.sort(splits);
+					Location e0 = w0;
+					ArrayList<Wire> subs = new ArrayList<Wire>(splits.size());
+					for (Location e1 : splits) {
+						subs.add(Wire.create(e0, e1));
+						e0 = e1;
+					}
+					repl.put(w, subs);
 				}
-				repl.put(w, subs);
 			}
 		}
 		mutator.replace(circuit, repl);
 	}
+
+	private ArrayList<Line> getLines() {
+		HashMap<Integer,Line> horz = new HashMap<Integer,Line>();
+		HashMap<Integer,Line> vert = new HashMap<Integer,Line>();
+		for (Wire w : circuit.getWires()) {
+			boolean vertical = w.isVertical();
+			int coord = across(w.getEnd0(), vertical);
+			if (across(w.getEnd1(), vertical) != coord) continue; // diagonal
+			if (!isRepaired(vertical, coord)) continue;
+			HashMap<Integer,Line> lines = vertical ? vert : horz;
+			Integer key = Integer.valueOf(coord);
+			Line line = lines.get(key);
+			if (line == null) {
+				line = new Line(vertical, coord);
+				lines.put(key, line);
+			}
+			line.wires.add(w);
+		}
+		ArrayList<Line> ret = new ArrayList<Line>(horz.values());
+		ret.addAll(vert.values());
+		for (Line line : ret) Collections.sort(line.wires, BY_FIRST_END);
+		return ret;
+	}
+
+	// returns the component ends near the given lines, grouped by row
+	// (or column) and sorted along it
+	private HashMap<Integer,ArrayList<Location>> getSplitLocations(
+			ArrayList<Line> lines, boolean vertical) {
+		HashMap<Integer,ArrayList<Location>> ret = new HashMap<Integer,ArrayList<Location>>();
+		for (Line line : lines) {
+			if (line.vertical != vertical) continue;
+			for (int d = -TOLERANCE; d <= TOLERANCE; d++) {
+				ret.put(Integer.valueOf(line.coord + d), null);
+			}
+		}
+		if (ret.isEmpty()) return ret;
+
+		for (Location loc : circuit.wires.points.getSplitLocations()) {
+			Integer key = Integer.valueOf(across(loc, vertical));
+			if (!ret.containsKey(key)) continue;
+			ArrayList<Location> locs = ret.get(key);
+			if (locs == null) {
+				locs = new ArrayList<Location>();
+				ret.put(key, locs);
+			}
+			locs.add(loc);
+		}
+		for (ArrayList<Location> locs : ret.values()) {
+			if (locs != null) Collections.sort(locs);
+		}
+		return ret;
+	}
+
+	// a line is repaired if it passes through or near a changed location
+	private boolean isRepaired(boolean vertical, int coord) {
+		HashSet<Integer> lines = vertical ? columns : rows;
+		if (lines == null) return true;
+		for (int d = -TOLERANCE; d <= TOLERANCE; d++) {
+			if (lines.contains(Integer.valueOf(coord + d))) return true;
+		}
+		return false;
+	}
+
+	private static int across(Location loc, boolean vertical) {
+		return vertical ? loc.getX() : loc.getY();
+	}
+
+	// returns the index of the first location at or beyond pos along
+	// the line, where the locations are sorted along it
+	private static int lowerBound(List<Location> locs, Line line, int pos) {
+		int lo = 0;
+		int hi = locs.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (line.pos(locs.get(mid)) < pos) lo = mid + 1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
 }
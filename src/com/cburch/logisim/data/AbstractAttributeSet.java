@@ -19,13 +19,14 @@ public abstract class AbstractAttributeSet implements Cloneable, AttributeSet {
 		} catch (CloneNotSupportedException ex) {
 			throw new UnsupportedOperationException();
 		}
-		ret.listeners = new ArrayList<AttributeListener>();
+		ret.listeners = null;
 		this.copyInto(ret);
 		return ret;
 	}
 	
 	public void addAttributeListener(AttributeListener l) {
-		if (listeners == null) listeners = new ArrayList<AttributeListener>();
+		// most sets have at most a listener or two, for their component
+		if (listeners == null) listeners = new ArrayList<AttributeListener>(2);
 		listeners.add(l);
 	}
 	public void removeAttributeListener(AttributeListener l) {
@@ -3,10 +3,12 @@
 
 package com.cburch.logisim.data;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.WeakHashMap;
 
 public class AttributeSets {
 	private AttributeSets() { }
@@ -45,6 +47,14 @@ public class AttributeSets {
 		}
 	}
 	
+	/** Lets attrs share its values with other sets holding equal values,
+	 * if it is of a kind that can, as when many components of a file
+	 * have the same attributes. The set stays separate from the others:
+	 * its values are copied again when one of them is next changed. */
+	public static void intern(AttributeSet attrs) {
+		if (attrs instanceof FixedSet) ((FixedSet) attrs).intern();
+	}
+
 	public static void copy(AttributeSet src, AttributeSet dst) {
 		if (src == null || src.getAttributes() == null) return;
 		for (Attribute<?> attr : src.getAttributes()) {
@@ -109,9 +119,40 @@ public class AttributeSets {
 		}
 	}
 	
+	// an array of values that is never changed once made, so that sets
+	// may share it
+	private static class Values {
+		private Object[] values;
+		private int hashCode;
+
+		Values(Object[] values) {
+			this.values = values;
+			this.hashCode = Arrays.hashCode(values);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Values
+				&& Arrays.equals(values, ((Values) other).values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	// value arrays shared by sets, each held until no set uses it
+	private static final WeakHashMap<Values,WeakReference<Values>> interned
+		= new WeakHashMap<Values,WeakReference<Values>>();
+
+	/** A set whose values are held in an array that its clones share;
+	 * changing a value replaces the array with a copy. Components of one
+	 * kind are nearly all created by cloning the same few sets, so most
+	 * never hold a copy of their own. */
 	private static class FixedSet extends AbstractAttributeSet {
 		private List<Attribute<?>> attrs;
-		private Object[] values;
+		private Values values;
 		private int readOnly = 0;
 		
 		FixedSet(Attribute<?>[] attrs, Object[] initValues) {
@@ -122,17 +163,29 @@ public class AttributeSets {
 				throw new IllegalArgumentException("cannot handle more than 32 attributes");
 			}
 			this.attrs = Arrays.asList(attrs);
-			this.values = initValues.clone();
+			this.values = new Values(initValues.clone());
 		}
 
 		@Override
 		protected void copyInto(AbstractAttributeSet destSet) {
 			FixedSet dest = (FixedSet) destSet;
 			dest.attrs = this.attrs;
-			dest.values = this.values.clone();
+			dest.values = this.values;
 			dest.readOnly = this.readOnly;
 		}
 
+		void intern() {
+			synchronized (interned) {
+				WeakReference<Values> ref = interned.get(values);
+				Values found = ref == null ? null : ref.get();
+				if (found == null) {
+					interned.put(values, new WeakReference<Values>(values));
+				} else {
+					values = found;
+				}
+			}
+		}
+
 		@Override
 		public List<Attribute<?>> getAttributes() {
 			return attrs;
@@ -161,7 +214,7 @@ public class AttributeSets {
 				return null;
 			} else {
 				@SuppressWarnings("unchecked")
-				V ret = (V) values[index];
+				V ret = (V) values.values[index];
 				return ret;
 			}
 		}
@@ -171,7 +224,12 @@ public class AttributeSets {
 			int index = attrs.indexOf(attr);
 			if (index < 0) throw new IllegalArgumentException("attribute " + attr.getName() + " absent");
 			if (isReadOnly(index)) throw new IllegalArgumentException("read only");
-			values[index] = value;
+			Object[] vs = values.values;
+			if (vs[index] != value) {
+				vs = vs.clone();
+				vs[index] = value;
+				values = new Values(vs);
+			}
 			fireAttributeValueChanged(attr, value);
 		}
 		
@@ -4,7 +4,6 @@
 package com.cburch.logisim.data;
 
 import java.awt.Color;
-import java.util.Arrays;
 
 import com.cburch.logisim.util.Cache;
 
@@ -96,12 +95,47 @@ public class Value {
 		}
 		if (bits == 1) {
 			return base;
+		} else if (bits > MAX_WIDTH) {
+			throw new RuntimeException("Cannot have more than " + MAX_WIDTH
+					+ " bits in a value");
 		} else {
-			Value[] ret = new Value[bits];
-			Arrays.fill(ret, base);
-			return create(ret);
+			return Value.create(bits, -base.error, -base.unknown, -base.value);
 		}
 	}
+	
+	/** Returns the parts placed side by side, with the first part in the
+	 * least significant bits. */
+	public static Value concat(Value... parts) {
+		return concat(parts, parts.length);
+	}
+	
+	/** Returns the first count parts placed side by side, with the first
+	 * part in the least significant bits. */
+	public static Value concat(Value[] parts, int count) {
+		if (count == 1) return parts[0];
+		int width = 0;
+		int error = 0;
+		int unknown = 0;
+		int value = 0;
+		for (int i = 0; i < count; i++) {
+			Value part = parts[i];
+			if (width + part.width > MAX_WIDTH) {
+				throw new RuntimeException("Cannot have more than " + MAX_WIDTH
+						+ " bits in a value");
+			}
+			if (part.width > 0) {
+				error |= part.error << width;
+				unknown |= part.unknown << width;
+				value |= part.value << width;
+				width += part.width;
+			}
+		}
+		return Value.create(width, error, unknown, value);
+	}
+	
+	private static int mask(int width) {
+		return width >= 32 ? -1 : ~(-1 << width);
+	}
 
 	private final int width;
 	private final int error;
@@ -163,6 +197,74 @@ public class Value {
 		}
 	}
 
+	/** Returns the bits from start up to but not including end. */
+	public Value extract(int start, int end) {
+		if (start < 0 || end > width || start > end) {
+			throw new IllegalArgumentException("bits " + start + " to " + end
+					+ " are not within value's width");
+		}
+		if (start == 0 && end == width) return this;
+		if (start == end) return NIL;
+		return Value.create(end - start, error >>> start, unknown >>> start,
+				value >>> start);
+	}
+	
+	/** Returns this value with the bits starting at start replaced by
+	 * those of bits. */
+	public Value insert(int start, Value bits) {
+		if (start < 0 || start + bits.width > width) {
+			throw new IllegalArgumentException("bits to insert are not within value's width");
+		}
+		if (bits.width == 0) return this;
+		if (bits.width == width) return bits;
+		int m = mask(bits.width) << start;
+		return Value.create(width,
+			(error   & ~m) | ((bits.error   << start) & m),
+			(unknown & ~m) | ((bits.unknown << start) & m),
+			(value   & ~m) | ((bits.value   << start) & m));
+	}
+	
+	/** Shifts the bits toward the most significant end, filling the
+	 * vacated bits with the one-bit value fill. Unknown and error bits
+	 * move just as other bits do. */
+	public Value shiftLeft(int dist, Value fill) {
+		if (dist <= 0) return this;
+		if (dist >= width) return repeat(fill, width);
+		int f = mask(dist);
+		return Value.create(width,
+			(error   << dist) | (fill.error   != 0 ? f : 0),
+			(unknown << dist) | (fill.unknown != 0 ? f : 0),
+			(value   << dist) | (fill.value   != 0 ? f : 0));
+	}
+	
+	/** Shifts the bits toward the least significant end, filling the
+	 * vacated bits with the one-bit value fill. */
+	public Value shiftRight(int dist, Value fill) {
+		if (dist <= 0) return this;
+		if (dist >= width) return repeat(fill, width);
+		int f = mask(width) & ~mask(width - dist);
+		return Value.create(width,
+			(error   >>> dist) | (fill.error   != 0 ? f : 0),
+			(unknown >>> dist) | (fill.unknown != 0 ? f : 0),
+			(value   >>> dist) | (fill.value   != 0 ? f : 0));
+	}
+	
+	public Value rotateLeft(int dist) {
+		if (width == 0) return this;
+		int d = dist % width;
+		if (d < 0) d += width;
+		if (d == 0) return this;
+		return Value.create(width,
+			(error   << d) | (error   >>> (width - d)),
+			(unknown << d) | (unknown >>> (width - d)),
+			(value   << d) | (value   >>> (width - d)));
+	}
+	
+	public Value rotateRight(int dist) {
+		if (width == 0) return this;
+		return rotateLeft(width - dist % width);
+	}
+
 	public Value[] getAll() {
 		Value[] ret = new Value[width];
 		for (int i = 0; i < ret.length; i++) {
@@ -10,10 +10,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import com.cburch.logisim.circuit.Circuit;
 import com.cburch.logisim.circuit.SubcircuitFactory;
-import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentFactory;
 import com.cburch.logisim.tools.AddTool;
 import com.cburch.logisim.tools.Library;
@@ -56,79 +56,81 @@ public class FileStatistics {
 		}
 	}
 	
+	/** The recursive counts of a circuit, kept until the circuit or one
+	 * of the subcircuits it was computed from changes. */
+	private static class CircuitTotals {
+		private Map<ComponentFactory,Integer> simple;
+		private HashMap<Circuit,CircuitTotals> subs;
+		private HashMap<ComponentFactory,Integer> recursive;
+	}
+
+	private static WeakHashMap<Circuit,CircuitTotals> cache
+		= new WeakHashMap<Circuit,CircuitTotals>();
+	
 	public static FileStatistics compute(LogisimFile file, Circuit circuit) {
 		Set<Circuit> include = new HashSet<Circuit>(file.getCircuits());
-		Map<Circuit,Map<ComponentFactory,Count>> countMap;
-		countMap = new HashMap<Circuit,Map<ComponentFactory,Count>>();
-		doRecursiveCount(circuit, include, countMap);
-		doUniqueCounts(countMap.get(circuit), countMap);
-		List<Count> countList = sortCounts(countMap.get(circuit), file);
+		Map<ComponentFactory,Count> counts = new HashMap<ComponentFactory,Count>();
+		synchronized (cache) {
+			HashMap<Circuit,CircuitTotals> reached = new HashMap<Circuit,CircuitTotals>();
+			CircuitTotals totals = getTotals(circuit, include, reached);
+			for (Map.Entry<ComponentFactory,Integer> entry : totals.recursive.entrySet()) {
+				ComponentFactory factory = entry.getKey();
+				Count count = new Count(factory);
+				Integer simple = totals.simple.get(factory);
+				count.simpleCount = simple == null ? 0 : simple.intValue();
+				count.recursiveCount = entry.getValue().intValue();
+				for (CircuitTotals sub : reached.values()) {
+					Integer unique = sub.simple.get(factory);
+					if (unique != null) count.uniqueCount += unique.intValue();
+				}
+				counts.put(factory, count);
+			}
+		}
+		List<Count> countList = sortCounts(counts, file);
 		return new FileStatistics(countList, getTotal(countList, include),
 				getTotal(countList, null));
 	}
 	
-	private static Map<ComponentFactory,Count> doRecursiveCount(Circuit circuit,
-			Set<Circuit> include,
-			Map<Circuit,Map<ComponentFactory,Count>> countMap) {
-		if (countMap.containsKey(circuit)) {
-			return countMap.get(circuit);
-		}
+	// reached collects the totals for every circuit visited by this
+	// computation, so each is validated only once
+	private static CircuitTotals getTotals(Circuit circuit, Set<Circuit> include,
+			HashMap<Circuit,CircuitTotals> reached) {
+		CircuitTotals ret = reached.get(circuit);
+		if (ret != null) return ret;
 
-		Map<ComponentFactory,Count> counts = doSimpleCount(circuit);
-		countMap.put(circuit, counts);
-		for (Count count : counts.values()) {
-			count.uniqueCount = count.simpleCount;
-			count.recursiveCount = count.simpleCount;
-		}
-		for (Circuit sub : include) {
-			SubcircuitFactory subFactory = sub.getSubcircuitFactory();
-			if (counts.containsKey(subFactory)) {
-				int multiplier = counts.get(subFactory).simpleCount;
-				Map<ComponentFactory,Count> subCount;
-				subCount = doRecursiveCount(sub, include, countMap);
-				for (Count subcount : subCount.values()) {
-					ComponentFactory subfactory = subcount.factory;
-					Count supercount = counts.get(subfactory);
-					if (supercount == null) {
-						supercount = new Count(subfactory);
-						counts.put(subfactory, supercount);
-					}
-					supercount.recursiveCount += multiplier * subcount.recursiveCount;
+		Map<ComponentFactory,Integer> simple = circuit.getFactoryCounts();
+		HashMap<Circuit,CircuitTotals> subs = new HashMap<Circuit,CircuitTotals>();
+		for (ComponentFactory factory : simple.keySet()) {
+			if (factory instanceof SubcircuitFactory) {
+				Circuit sub = ((SubcircuitFactory) factory).getSubcircuit();
+				if (include.contains(sub)) {
+					subs.put(sub, getTotals(sub, include, reached));
 				}
 			}
 		}
-		
-		return counts;
-	}
-	
-	private static Map<ComponentFactory,Count> doSimpleCount(Circuit circuit) {
-		Map<ComponentFactory,Count> counts;
-		counts = new HashMap<ComponentFactory,Count>();
-		for (Component comp : circuit.getNonWires()) {
-			ComponentFactory factory = comp.getFactory();
-			Count count = counts.get(factory);
-			if (count == null) {
-				count = new Count(factory);
-				counts.put(factory, count);
-			}
-			count.simpleCount++;
-		}
-		return counts;
-	}
-	
-	private static void doUniqueCounts(Map<ComponentFactory,Count> counts,
-			Map<Circuit,Map<ComponentFactory,Count>> circuitCounts) {
-		for (Count count : counts.values()) {
-			ComponentFactory factory = count.getFactory();
-			int unique = 0;
-			for (Circuit circ : circuitCounts.keySet()) {
-				Count subcount = circuitCounts.get(circ).get(factory);
-				if (subcount != null) {
-					unique += subcount.simpleCount;
+
+		ret = cache.get(circuit);
+		if (ret == null || ret.simple != simple || !ret.subs.equals(subs)) {
+			ret = new CircuitTotals();
+			ret.simple = simple;
+			ret.subs = subs;
+			ret.recursive = new HashMap<ComponentFactory,Integer>(simple);
+			for (Map.Entry<Circuit,CircuitTotals> sub : subs.entrySet()) {
+				SubcircuitFactory subFactory = sub.getKey().getSubcircuitFactory();
+				int multiplier = simple.get(subFactory).intValue();
+				for (Map.Entry<ComponentFactory,Integer> entry
+						: sub.getValue().recursive.entrySet()) {
+					ComponentFactory factory = entry.getKey();
+					Integer old = ret.recursive.get(factory);
+					int count = multiplier * entry.getValue().intValue();
+					if (old != null) count += old.intValue();
+					ret.recursive.put(factory, Integer.valueOf(count));
 				}
 			}
-			count.uniqueCount = unique;
+			cache.put(circuit, ret);
 		}
+		reached.put(circuit, ret);
+		return ret;
 	}
 	
 	private static List<Count> sortCounts(Map<ComponentFactory,Count> counts,
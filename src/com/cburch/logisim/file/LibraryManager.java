@@ -9,7 +9,17 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import com.cburch.logisim.tools.Library;
 import com.cburch.logisim.util.StringUtil;
@@ -24,6 +34,7 @@ class LibraryManager {
 		abstract String toDescriptor(Loader loader);
 		abstract void setBase(Loader loader, LoadedLibrary lib)
 			throws LoadFailedException;
+		abstract Library read(Loader loader) throws LoadFailedException;
 	}
 	
 	private static class LogisimProjectDescriptor extends LibraryDescriptor {
@@ -48,6 +59,11 @@ class LibraryManager {
 			lib.setBase(loader.loadLogisimFile(file));
 		}
 		
+		@Override
+		Library read(Loader loader) throws LoadFailedException {
+			return loader.loadLogisimFile(file);
+		}
+		
 		@Override
 		public boolean equals(Object other) {
 			if (!(other instanceof LogisimProjectDescriptor)) return false;
@@ -85,6 +101,11 @@ class LibraryManager {
 			lib.setBase(loader.loadJarFile(file, className));
 		}
 		
+		@Override
+		Library read(Loader loader) throws LoadFailedException {
+			return loader.loadJarFile(file, className);
+		}
+		
 		@Override
 		public boolean equals(Object other) {
 			if (!(other instanceof JarDescriptor)) return false;
@@ -98,12 +119,37 @@ class LibraryManager {
 		}
 	}
 	
+	private static class Prefetch {
+		private Loader owner;
+		private Loader background;
+		private Future<LoadedLibrary> result;
+		
+		Prefetch(Loader owner, Loader background, Future<LoadedLibrary> result) {
+			this.owner = owner;
+			this.background = background;
+			this.result = result;
+		}
+	}
+	
+	// a library that a thread is reading, so that others wanting it wait
+	// for that read rather than read it again
+	private static class Reading {
+		private Thread thread = Thread.currentThread();
+		private CountDownLatch done = new CountDownLatch(1);
+	}
+	
 	private HashMap<LibraryDescriptor,WeakReference<LoadedLibrary>> fileMap;
 	private WeakHashMap<LoadedLibrary,LibraryDescriptor> invMap;
+	private HashMap<LogisimProjectDescriptor,Prefetch> prefetched;
+	private ConcurrentHashMap<LibraryDescriptor,Reading> reading;
+	private ExecutorService prefetcher;
 
 	private LibraryManager() {
 		fileMap = new HashMap<LibraryDescriptor,WeakReference<LoadedLibrary>>();
 		invMap = new WeakHashMap<LoadedLibrary,LibraryDescriptor>();
+		prefetched = new HashMap<LogisimProjectDescriptor,Prefetch>();
+		reading = new ConcurrentHashMap<LibraryDescriptor,Reading>();
+		prefetcher = null;
 		ProjectsDirty.initialize();
 	}
 	
@@ -114,7 +160,7 @@ class LibraryManager {
 		}
 	}
 	
-	Collection<LogisimFile> getLogisimLibraries() {
+	synchronized Collection<LogisimFile> getLogisimLibraries() {
 		ArrayList<LogisimFile> ret = new ArrayList<LogisimFile>();
 		for (LoadedLibrary lib : invMap.keySet()) {
 			if (lib.getBase() instanceof LogisimFile) {
@@ -158,42 +204,172 @@ class LibraryManager {
 		}
 	}
 	
-	public LoadedLibrary loadLogisimLibrary(Loader loader, File toRead) {
-		LoadedLibrary ret = findKnown(toRead);
-		if (ret != null) return ret;
+	/** Starts reading the Logisim libraries named among the given
+	 * descriptors on background threads, so that a file referring to
+	 * several libraries need not parse them one after another. Each
+	 * library is still linked only when loadLibrary requests it, so
+	 * libraries join the file in the order in which they are declared;
+	 * and a library whose background read fails or is abandoned is simply
+	 * read again at that point, where any questions can be put to the
+	 * user. A background read is abandoned when it reaches a JAR library,
+	 * which is loaded only on the caller's thread, or a library that
+	 * another thread is already reading. */
+	void prefetchLibraries(Loader loader, List<String> descs) {
+		if (loader.isBackground()) return; // its libraries are read in turn
 		
+		ArrayList<File> toRead = new ArrayList<File>();
+		for (String desc : descs) {
+			int sep = desc.indexOf(desc_sep);
+			if (sep < 0 || !desc.substring(0, sep).equals("file")) continue;
+			File file = loader.resolveFile(desc.substring(sep + 1));
+			if (file.canRead() && !loader.isOpening(file)
+					&& !toRead.contains(file) && findKnown(file) == null) {
+				toRead.add(file);
+			}
+		}
+		if (toRead.size() < 2) return; // nothing to overlap
+		
+		synchronized (this) {
+			ExecutorService pool = getPrefetcher();
+			for (final File file : toRead) {
+				final LogisimProjectDescriptor desc = new LogisimProjectDescriptor(file);
+				if (prefetched.containsKey(desc)) continue;
+				final Loader background = loader.createBackgroundLoader();
+				Future<LoadedLibrary> result = pool.submit(new Callable<LoadedLibrary>() {
+					public LoadedLibrary call() {
+						return readShared(background, desc);
+					}
+				});
+				prefetched.put(desc, new Prefetch(loader, background, result));
+			}
+		}
+	}
+	
+	/** Abandons any background reads that the loader did not use. */
+	void discardPrefetched(Loader loader) {
+		synchronized (this) {
+			Iterator<Prefetch> it = prefetched.values().iterator();
+			while (it.hasNext()) {
+				Prefetch pre = it.next();
+				if (pre.owner == loader) {
+					pre.result.cancel(false);
+					it.remove();
+				}
+			}
+		}
+	}
+	
+	private LoadedLibrary takePrefetched(Loader loader, File toRead) {
+		Prefetch pre;
+		synchronized (this) {
+			LogisimProjectDescriptor desc = new LogisimProjectDescriptor(toRead);
+			pre = prefetched.get(desc);
+			if (pre == null || pre.owner != loader) return null;
+			prefetched.remove(desc);
+		}
+		
+		LoadedLibrary ret;
 		try {
-			ret = new LoadedLibrary(loader.loadLogisimFile(toRead));
-		} catch (LoadFailedException e) {
-			loader.showError(e.getMessage());
+			ret = pre.result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
 			return null;
 		}
-		
-		LogisimProjectDescriptor desc = new LogisimProjectDescriptor(toRead);
-		fileMap.put(desc, new WeakReference<LoadedLibrary>(ret));
-		invMap.put(ret, desc);
+		List<String> errors = pre.background.finishBackground();
+		if (ret != null) loader.showDeferredErrors(errors);
 		return ret;
 	}
 	
+	private synchronized ExecutorService getPrefetcher() {
+		if (prefetcher == null) {
+			int threads = Runtime.getRuntime().availableProcessors();
+			prefetcher = Executors.newFixedThreadPool(Math.max(1, threads),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread ret = new Thread(r, "LibraryLoader");
+						ret.setDaemon(true);
+						return ret;
+					}
+				});
+		}
+		return prefetcher;
+	}
+	
+	public LoadedLibrary loadLogisimLibrary(Loader loader, File toRead) {
+		LoadedLibrary ret = takePrefetched(loader, toRead);
+		if (ret != null) return ret;
+		return readShared(loader, new LogisimProjectDescriptor(toRead));
+	}
+	
 	public LoadedLibrary loadJarLibrary(Loader loader, File toRead, String className) {
 		JarDescriptor jarDescriptor = new JarDescriptor(toRead, className);
 		LoadedLibrary ret = findKnown(jarDescriptor);
 		if (ret != null) return ret;
-
+		// instantiating a library class may touch Swing
+		if (loader.isBackground()) {
+			loader.abandonBackground();
+			return null;
+		}
+		return readShared(loader, jarDescriptor);
+	}
+	
+	// Reads the library unless it is known or another thread is reading
+	// it, in which case this waits for that read; so each library is read
+	// and registered once. A background loader never waits, since the
+	// thread it would wait on might be waiting on it; it abandons its read
+	// instead, leaving the library to the foreground.
+	private LoadedLibrary readShared(Loader loader, LibraryDescriptor desc) {
+		while (true) {
+			LoadedLibrary ret = findKnown(desc);
+			if (ret != null) return ret;
+			
+			Reading mine = new Reading();
+			Reading cur = reading.putIfAbsent(desc, mine);
+			if (cur == null) {
+				try {
+					ret = findKnown(desc); // it may have been read meanwhile
+					return ret != null ? ret : read(loader, desc);
+				} finally {
+					reading.remove(desc);
+					mine.done.countDown();
+				}
+			} else if (cur.thread == Thread.currentThread()) {
+				// a library referring to itself; the loader reports it
+				return read(loader, desc);
+			} else if (loader.isBackground()) {
+				loader.abandonBackground();
+				return null;
+			}
+			
+			try {
+				cur.done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			// it is now known, or else that read failed and this one tries
+		}
+	}
+	
+	private LoadedLibrary read(Loader loader, LibraryDescriptor desc) {
+		Library base;
 		try {
-			ret = new LoadedLibrary(loader.loadJarFile(toRead, className));
+			base = desc.read(loader);
 		} catch (LoadFailedException e) {
 			loader.showError(e.getMessage());
 			return null;
 		}
-		
-		fileMap.put(jarDescriptor, new WeakReference<LoadedLibrary>(ret));
-		invMap.put(ret, jarDescriptor);
+		// a library missing one of its own is not to be shared
+		if (base == null || loader.isAbandoned()) return null;
+		LoadedLibrary ret = new LoadedLibrary(base);
+		register(desc, ret);
 		return ret;
 	}
 	
 	public void reload(Loader loader, LoadedLibrary lib) {
-		LibraryDescriptor descriptor = invMap.get(lib);
+		LibraryDescriptor descriptor = findDescriptor(lib);
 		if (descriptor == null) {
 			loader.showError(StringUtil.format(Strings.get("unknownLibraryFileError"),
 					lib.getDisplayName()));
@@ -208,7 +384,7 @@ class LibraryManager {
 	
 	public Library findReference(LogisimFile file, File query) {
 		for (Library lib : file.getLibraries()) {
-			LibraryDescriptor desc = invMap.get(lib);
+			LibraryDescriptor desc = findDescriptor(lib);
 			if (desc != null && desc.concernsFile(query)) {
 				return lib;
 			}
@@ -243,7 +419,7 @@ class LibraryManager {
 		if (loader.getBuiltin().getLibraries().contains(lib)) {
 			return desc_sep + lib.getName();
 		} else {
-			LibraryDescriptor desc = invMap.get(lib);
+			LibraryDescriptor desc = findDescriptor(lib);
 			if (desc != null) {
 				return desc.toDescriptor(loader);
 			} else {
@@ -253,7 +429,17 @@ class LibraryManager {
 		}
 	}
 
-	private LoadedLibrary findKnown(Object key) {
+	// The maps are shared with threads reading libraries in the background.
+	private synchronized void register(LibraryDescriptor desc, LoadedLibrary lib) {
+		fileMap.put(desc, new WeakReference<LoadedLibrary>(lib));
+		invMap.put(lib, desc);
+	}
+	
+	private synchronized LibraryDescriptor findDescriptor(Library lib) {
+		return invMap.get(lib);
+	}
+
+	private synchronized LoadedLibrary findKnown(Object key) {
 		WeakReference<LoadedLibrary> retLibRef;
 		retLibRef = fileMap.get(key);
 		if (retLibRef == null) {
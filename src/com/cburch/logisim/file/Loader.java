@@ -7,10 +7,13 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import javax.swing.JFileChooser;
@@ -65,12 +68,27 @@ public class Loader implements LibraryLoader {
 	private File mainFile = null;
 	private Stack<File> filesOpening = new Stack<File>();
 	private Map<File,File> substitutions = new HashMap<File,File>();
+	
+	// non-null while working on a background thread, where errors are
+	// collected rather than shown
+	private ArrayList<String> deferredErrors = null;
+	// set when a background read must be left to the foreground
+	private volatile boolean abandoned = false;
 
 	public Loader(Component parent) {
 		this.parent = parent;
 		clear();
 	}
 	
+	private Loader(Loader base) {
+		this.parent = base.parent;
+		this.builtin = base.builtin;
+		this.mainFile = base.mainFile;
+		this.filesOpening.addAll(base.filesOpening);
+		this.substitutions = new HashMap<File,File>(base.substitutions);
+		this.deferredErrors = new ArrayList<String>();
+	}
+	
 	public Builtin getBuiltin() {
 		return builtin;
 	}
@@ -139,6 +157,24 @@ public class Loader implements LibraryLoader {
 		}
 	}
 	
+	/** Opens copy in place of file, as when recovering changes that were
+	 * never saved: the project is read from copy, which should be in the
+	 * same directory, but it is named for file and saved there. */
+	public LogisimFile openLogisimFile(File file, File copy)
+			throws LoadFailedException {
+		try {
+			LogisimFile ret = loadLogisimFile(copy);
+			if (ret != null) {
+				setMainFile(file);
+				ret.setName(toProjectName(file));
+			}
+			showMessages(ret);
+			return ret;
+		} catch (LoaderException e) {
+			throw new LoadFailedException(e.getMessage(), e.isShown());
+		}
+	}
+	
 	public LogisimFile openLogisimFile(InputStream reader)
 			throws LoadFailedException, IOException {
 		LogisimFile ret = null;
@@ -180,65 +216,109 @@ public class Loader implements LibraryLoader {
 			return false;
 		}
 		
-		File backup = determineBackupName(dest);
-		boolean backupCreated = backup != null && dest.renameTo(backup);
-		
+		// The file is written beside its destination and then renamed over
+		// it, so an interrupted save never leaves a truncated file.
+		File temp;
+		try {
+			temp = File.createTempFile("logisim", ".tmp", dest.getAbsoluteFile().getParentFile());
+		} catch (IOException e) {
+			showSaveError(Strings.get("fileSaveError"), e);
+			return false;
+		}
+
 		FileOutputStream fwrite = null;
 		try {
-			try {
-				MacCompatibility.setFileCreatorAndType(dest, "LGSM", "circ");
-			} catch (IOException e) { }
-			fwrite = new FileOutputStream(dest);
+			fwrite = new FileOutputStream(temp);
 			file.write(fwrite, this);
-			file.setName(toProjectName(dest));
-
-			File oldFile = getMainFile();
-			setMainFile(dest);
-			LibraryManager.instance.fileSaved(this, dest, oldFile, file);
 		} catch (IOException e) {
-			if (backupCreated) recoverBackup(backup, dest);
-			if (dest.exists() && dest.length() == 0) dest.delete();
-			JOptionPane.showMessageDialog(parent,
-				StringUtil.format(Strings.get("fileSaveError"),
-					e.toString()),
-				Strings.get("fileSaveErrorTitle"),
-				JOptionPane.ERROR_MESSAGE);
+			closeQuietly(fwrite);
+			temp.delete();
+			showSaveError(Strings.get("fileSaveError"), e);
 			return false;
-		} finally {
-			if (fwrite != null) {
-				try {
-					fwrite.close();
-				} catch (IOException e) {
-					if (backupCreated) recoverBackup(backup, dest);
-					if (dest.exists() && dest.length() == 0) dest.delete();
-					JOptionPane.showMessageDialog(parent,
-						StringUtil.format(Strings.get("fileSaveCloseError"),
-							e.toString()),
-						Strings.get("fileSaveErrorTitle"),
-						JOptionPane.ERROR_MESSAGE);
-					return false;
-				}
-			}
 		}
-		
-		if (!dest.exists() || dest.length() == 0) {
-			if (backupCreated && backup != null && backup.exists()) {
-				recoverBackup(backup, dest);
-			} else {
-				dest.delete();
-			}
+		try {
+			fwrite.close();
+		} catch (IOException e) {
+			temp.delete();
+			showSaveError(Strings.get("fileSaveCloseError"), e);
+			return false;
+		}
+
+		if (temp.length() == 0) {
+			temp.delete();
 			JOptionPane.showMessageDialog(parent,
 					Strings.get("fileSaveZeroError"),
 					Strings.get("fileSaveErrorTitle"),
 					JOptionPane.ERROR_MESSAGE);
 			return false;
 		}
-		
-		if (backupCreated && backup.exists()) {
-			backup.delete();
+
+		try {
+			MacCompatibility.setFileCreatorAndType(temp, "LGSM", "circ");
+		} catch (IOException e) { }
+		if (!temp.renameTo(dest)) {
+			// Some systems will not rename over an existing file, so the
+			// old one is moved aside until the new one is in place.
+			File backup = determineBackupName(dest);
+			boolean backupCreated = backup != null && dest.renameTo(backup);
+			if (!temp.renameTo(dest)) {
+				if (backupCreated) recoverBackup(backup, dest);
+				temp.delete();
+				showSaveError(Strings.get("fileSaveError"),
+						new IOException(temp.toString()));
+				return false;
+			}
+			if (backupCreated) backup.delete();
 		}
+
+		file.setName(toProjectName(dest));
+		File oldFile = getMainFile();
+		setMainFile(dest);
+		LibraryManager.instance.fileSaved(this, dest, oldFile, file);
 		return true;
 	}
+
+	/** Copies file so that it can be written as a save does, but from
+	 * another thread and without making the destination the project's
+	 * file or telling the user of any problems, for a copy kept in case
+	 * of a crash. It must be called from the event thread, with the
+	 * file's loaded circuits kept from changing meanwhile. */
+	public LogisimFile.Snapshot snapshot(LogisimFile file) throws IOException {
+		return file.snapshot(new QuietLoader(this));
+	}
+
+	// finds libraries as the loader does, but ignores errors rather than
+	// showing them
+	private static class QuietLoader implements LibraryLoader {
+		private Loader base;
+
+		QuietLoader(Loader base) {
+			this.base = base;
+		}
+
+		public Library loadLibrary(String desc) {
+			return base.loadLibrary(desc);
+		}
+
+		public String getDescriptor(Library lib) {
+			return base.getDescriptor(lib);
+		}
+
+		public void showError(String description) { }
+	}
+
+	private void showSaveError(String format, IOException e) {
+		JOptionPane.showMessageDialog(parent,
+			StringUtil.format(format, e.toString()),
+			Strings.get("fileSaveErrorTitle"),
+			JOptionPane.ERROR_MESSAGE);
+	}
+
+	private static void closeQuietly(OutputStream out) {
+		if (out != null) {
+			try { out.close(); } catch (IOException e) { }
+		}
+	}
 	
 	private static File determineBackupName(File base) {
 		File dir = base.getParentFile();
@@ -264,6 +344,48 @@ public class Loader implements LibraryLoader {
 	//
 	// methods for LibraryManager
 	//  
+	/** Creates a loader for reading a library from another thread while
+	 * this loader is in the middle of opening a file. It resolves names
+	 * relative to the same files, but it holds its errors until
+	 * finishBackground, and it never prompts the user. */
+	Loader createBackgroundLoader() {
+		return new Loader(this);
+	}
+	
+	boolean isBackground() {
+		return deferredErrors != null;
+	}
+	
+	/** Marks this background loader's read as one to be redone in the
+	 * foreground, as when it reaches a JAR library or a library that
+	 * another thread is reading. */
+	void abandonBackground() {
+		abandoned = true;
+	}
+	
+	boolean isAbandoned() {
+		return abandoned;
+	}
+	
+	/** Returns the errors collected on the background thread; afterwards
+	 * the loader reports errors like any other. */
+	List<String> finishBackground() {
+		List<String> ret = deferredErrors;
+		deferredErrors = null;
+		filesOpening.clear();
+		return ret == null ? Collections.<String>emptyList() : ret;
+	}
+	
+	void showDeferredErrors(List<String> errors) {
+		for (String error : errors) {
+			displayError(error);
+		}
+	}
+	
+	boolean isOpening(File file) {
+		return filesOpening.contains(getSubstitution(file));
+	}
+	
 	LogisimFile loadLogisimFile(File request) throws LoadFailedException {
 		File actual = getSubstitution(request);
 		for (File fileOpening : filesOpening) {
@@ -282,6 +404,9 @@ public class Loader implements LibraryLoader {
 					toProjectName(actual), e.toString()));
 		} finally {
 			filesOpening.pop();
+			if (filesOpening.empty() && deferredErrors == null) {
+				LibraryManager.instance.discardPrefetched(this);
+			}
 		}
 		ret.setName(toProjectName(actual));
 		return ret;
@@ -357,6 +482,14 @@ public class Loader implements LibraryLoader {
 			}
 		}
 		
+		if (deferredErrors != null) {
+			deferredErrors.add(description);
+		} else {
+			displayError(description);
+		}
+	}
+	
+	private void displayError(String description) {
 		if (description.contains("\n") || description.length() > 60) {
 			int lines = 1;
 			for (int pos = description.indexOf('\n'); pos >= 0;
@@ -394,13 +527,23 @@ public class Loader implements LibraryLoader {
 	//
 	// helper methods
 	//
-	File getFileFor(String name, FileFilter filter) {
-		// Determine the actual file name.
+	File resolveFile(String name) {
 		File file = new File(name);
 		if (!file.isAbsolute()) {
 			File currentDirectory = getCurrentDirectory();
 			if (currentDirectory != null) file = new File(currentDirectory, name);
 		}
+		return file;
+	}
+
+	File getFileFor(String name, FileFilter filter) {
+		// Determine the actual file name.
+		File file = resolveFile(name);
+		if (deferredErrors != null && !file.canRead()) {
+			// only the thread that owns the dialogs may ask the user
+			throw new LoaderException(StringUtil.format(Strings.get("fileLibraryMissingError"),
+					file.getName()));
+		}
 		while (!file.canRead()) {
 			// It doesn't exist. Figure it out from the user.
 			JOptionPane.showMessageDialog(parent,
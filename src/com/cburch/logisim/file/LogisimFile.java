@@ -6,6 +6,7 @@ package com.cburch.logisim.file;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -18,8 +19,6 @@ import java.util.LinkedList;
 import java.util.List;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
 
 import org.xml.sax.SAXException;
 
@@ -301,15 +300,35 @@ public class LogisimFile extends Library implements LibraryEventSource {
 	void write(OutputStream out, LibraryLoader loader) throws IOException {
 		try {
 			XmlWriter.write(this, out, loader);
-		} catch (TransformerConfigurationException e) {
-			loader.showError("internal error configuring transformer");
 		} catch (ParserConfigurationException e) {
 			loader.showError("internal error configuring parser");
-		} catch (TransformerException e) {
-			String msg = e.getMessage();
-			String err = Strings.get("xmlConversionError");
-			if (msg == null) err += ": " + msg;
-			loader.showError(err);
+		}
+	}
+
+	/** The contents of a file as they stood when it was copied, which
+	 * may be written from any thread. */
+	public static class Snapshot {
+		private XmlWriter writer;
+
+		private Snapshot(XmlWriter writer) {
+			this.writer = writer;
+		}
+
+		public void write(File dest) throws IOException {
+			FileOutputStream out = new FileOutputStream(dest);
+			try {
+				writer.writeSnapshot(out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	Snapshot snapshot(LibraryLoader loader) throws IOException {
+		try {
+			return new Snapshot(XmlWriter.snapshot(this, loader));
+		} catch (ParserConfigurationException e) {
+			throw new IOException("internal error configuring parser");
 		}
 	}
 
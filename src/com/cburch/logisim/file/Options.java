@@ -4,6 +4,8 @@
 package com.cburch.logisim.file;
 
 import com.cburch.logisim.data.Attribute;
+import com.cburch.logisim.data.AttributeEvent;
+import com.cburch.logisim.data.AttributeListener;
 import com.cburch.logisim.data.AttributeOption;
 import com.cburch.logisim.data.AttributeSet;
 import com.cburch.logisim.data.AttributeSets;
@@ -32,19 +34,39 @@ public class Options {
 			GATE_UNDEFINED_IGNORE, Integer.valueOf(1000), Integer.valueOf(0),
 	};
 	
+	private class MyListener implements AttributeListener {
+		public void attributeListChanged(AttributeEvent e) { }
+
+		public void attributeValueChanged(AttributeEvent e) {
+			if (e.getAttribute() == ATTR_GATE_UNDEFINED) {
+				gateUndefinedError = GATE_UNDEFINED_ERROR.equals(e.getValue());
+			}
+		}
+	}
+	
 	private AttributeSet attrs;
 	private MouseMappings mmappings;
 	private ToolbarData toolbar;
+	private volatile boolean gateUndefinedError;
 
 	public Options() {
 		attrs = AttributeSets.fixedSet(ATTRIBUTES, DEFAULTS);
 		mmappings = new MouseMappings();
 		toolbar = new ToolbarData();
+		gateUndefinedError = false;
+		attrs.addAttributeListener(new MyListener());
 	}
 
 	public AttributeSet getAttributeSet() {
 		return attrs;
 	}
+	
+	/** Returns whether ATTR_GATE_UNDEFINED is GATE_UNDEFINED_ERROR. Gates
+	 * ask this on every evaluation, so it is kept up to date here rather
+	 * than looked up in the attribute set each time. */
+	public boolean isGateUndefinedError() {
+		return gateUndefinedError;
+	}
 
 	public MouseMappings getMouseMappings() {
 		return mmappings;
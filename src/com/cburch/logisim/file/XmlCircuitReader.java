@@ -18,6 +18,7 @@ import com.cburch.logisim.circuit.Wire;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentFactory;
 import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.AttributeSets;
 import com.cburch.logisim.data.Location;
 import com.cburch.logisim.tools.AddTool;
 import com.cburch.logisim.tools.Library;
@@ -54,11 +55,7 @@ public class XmlCircuitReader extends CircuitTransaction {
 		Circuit dest = circData.circuit;
 		Map<Element, Component> knownComponents = circData.knownComponents;
 		if (knownComponents == null) knownComponents = Collections.emptyMap();
-		try {
-			reader.initAttributeSet(circData.circuitElement, dest.getStaticAttributes(), null);
-		} catch (XmlReaderException e) {
-			reader.addErrors(e, circData.circuit.getName() + ".static");
-		}
+		// the static attributes are read along with the circuit's name
 
 		for (Element sub_elt : XmlIterator.forChildElements(elt)) {
 			String sub_elt_name = sub_elt.getTagName();
@@ -155,6 +152,7 @@ public class XmlCircuitReader extends CircuitTransaction {
 		String loc_str = elt.getAttribute("loc");
 		AttributeSet attrs = source.createAttributeSet();
 		reader.initAttributeSet(elt, attrs, source);
+		AttributeSets.intern(attrs);
 
 		// Create component if location known
 		if (loc_str == null || loc_str.equals("")) {
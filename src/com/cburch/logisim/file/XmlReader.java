@@ -5,17 +5,25 @@ package com.cburch.logisim.file;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.swing.SwingUtilities;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 import com.cburch.draw.model.AbstractCanvasObject;
@@ -36,8 +44,14 @@ import com.cburch.logisim.util.InputEventUtil;
 import com.cburch.logisim.util.StringUtil;
 
 class XmlReader {
+	// the first version to write components against the attribute
+	// defaults used now (see the plexers' getDefaultAttributeValue)
+	private static final LogisimVersion CURRENT_DEFAULTS
+		= LogisimVersion.get(2, 6, 3, 220);
+
 	static class CircuitData {
 		Element circuitElement;
+		String contents; // the circuit's elements as text, until they are read
 		Circuit circuit;
 		Map<Element, Component> knownComponents;
 		List<AbstractCanvasObject> appearance;
@@ -52,7 +66,13 @@ class XmlReader {
 		LogisimFile file;
 		LogisimVersion sourceVersion;
 		HashMap<String,Library> libs = new HashMap<String,Library>();
+		// the circuits by their names in the file, which unloaded contents use
+		private HashMap<String,Circuit> circuitNames = new HashMap<String,Circuit>();
 		private ArrayList<String> messages;
+		private List<CircuitData> circuitsData = new ArrayList<CircuitData>();
+		private List<Element> laterElements = new ArrayList<Element>();
+		private List<Element> pendingLibs = new ArrayList<Element>();
+		private volatile boolean loaded = false; // errors are now reported as they arise
 
 		ReadContext(LogisimFile file) {
 			this.file = file;
@@ -60,16 +80,28 @@ class XmlReader {
 		}
 		
 		void addError(String message, String context) {
-			messages.add(message + " [" + context + "]");
+			synchronized (messages) {
+				messages.add(message + " [" + context + "]");
+			}
 		}
 		
 		void addErrors(XmlReaderException exception, String context) {
-			for (String msg : exception.getMessages()) {
-				messages.add(msg + " [" + context + "]");
+			synchronized (messages) {
+				for (String msg : exception.getMessages()) {
+					messages.add(msg + " [" + context + "]");
+				}
 			}
 		}
 
 		private void toLogisimFile(Element elt) {
+			startLogisimFile(elt);
+			for (Element sub_elt : XmlIterator.forChildElements(elt)) {
+				addFileElement(sub_elt);
+			}
+			finishLogisimFile();
+		}
+		
+		private void startLogisimFile(Element elt) {
 			// determine the version producing this file
 			String versionString = elt.getAttribute("source");
 			if (versionString.equals("")) {
@@ -77,41 +109,81 @@ class XmlReader {
 			} else {
 				sourceVersion = LogisimVersion.parse(versionString);
 			}
-
-			// first, load the sublibraries
-			for (Element o : XmlIterator.forChildElements(elt, "lib")) {
-				Library lib = toLibrary(o);
-				if (lib != null) file.addLibrary(lib);
+		}
+		
+		/** Handles one child of the project element. Libraries are held
+		 * until the next other element so that they can be read together;
+		 * circuits are created as they arrive, though each is left empty
+		 * until its contents are needed. Elements that may refer to
+		 * circuits appearing later in the file wait for
+		 * finishLogisimFile. */
+		private void addFileElement(Element sub_elt) {
+			String name = sub_elt.getTagName();
+			if (name.equals("lib")) {
+				pendingLibs.add(sub_elt);
+				return;
 			}
-			
-			// second, create the circuits - empty for now
-			List<CircuitData> circuitsData = new ArrayList<CircuitData>();
-			for (Element circElt : XmlIterator.forChildElements(elt, "circuit")) {
-				String name = circElt.getAttribute("name");
-				if (name == null || name.equals("")) {
-					addError(Strings.get("circNameMissingError"), "C??");
-				}
-				CircuitData circData = new CircuitData(circElt, new Circuit(name));
-				file.addCircuit(circData.circuit);
-				circData.knownComponents = loadKnownComponents(circElt);
-				for (Element appearElt : XmlIterator.forChildElements(circElt, "appear")) {
-					loadAppearance(appearElt, circData, name + ".appear");
+			addLibraries();
+			if (name.equals("circuit")) {
+				addCircuit(sub_elt, null);
+			} else if (name.equals("options")) {
+				try {
+					initAttributeSet(sub_elt, file.getOptions().getAttributeSet(), null);
+				} catch (XmlReaderException e) {
+					addErrors(e, "options");
 				}
-				circuitsData.add(circData);
+			} else {
+				laterElements.add(sub_elt);
 			}
-
-			// third, process the other child elements
-			for (Element sub_elt : XmlIterator.forChildElements(elt)) {
+		}
+		
+		/** Creates a circuit from its element. If contents is not null,
+		 * the element holds only the circuit's attributes, and contents
+		 * holds the rest of its elements as text; that is far smaller
+		 * than the elements themselves while the circuit waits to be
+		 * loaded. */
+		private void addCircuit(Element elt, String contents) {
+			addLibraries();
+			String circName = elt.getAttribute("name");
+			if (circName == null || circName.equals("")) {
+				addError(Strings.get("circNameMissingError"), "C??");
+			}
+			CircuitData circData = new CircuitData(elt, new Circuit(circName));
+			file.addCircuit(circData.circuit);
+			try {
+				initAttributeSet(elt, circData.circuit.getStaticAttributes(), null);
+			} catch (XmlReaderException e) {
+				addErrors(e, circName + ".static");
+			}
+			if (contents != null) {
+				circData.circuitElement = null;
+				circData.contents = contents;
+			}
+			circuitNames.put(circName, circData.circuit);
+			circuitsData.add(circData);
+		}
+		
+		/** Loads the libraries declared so far. Their files are read
+		 * together, but they are added to the file in declaration order. */
+		private void addLibraries() {
+			if (pendingLibs.isEmpty()) return;
+			List<String> descs = new ArrayList<String>();
+			for (Element libElt : pendingLibs) {
+				if (libElt.hasAttribute("desc")) descs.add(libElt.getAttribute("desc"));
+			}
+			LibraryManager.instance.prefetchLibraries(loader, descs);
+			for (Element libElt : pendingLibs) {
+				Library lib = toLibrary(libElt);
+				if (lib != null) file.addLibrary(lib);
+			}
+			pendingLibs.clear();
+		}
+		
+		private void finishLogisimFile() {
+			addLibraries();
+			for (Element sub_elt : laterElements) {
 				String name = sub_elt.getTagName();
-				if (name.equals("circuit") || name.equals("lib")) {
-					; // Nothing to do: Done earlier.
-				} else if (name.equals("options")) {
-					try {
-						initAttributeSet(sub_elt, file.getOptions().getAttributeSet(), null);
-					} catch (XmlReaderException e) {
-						addErrors(e, "options");
-					}
-				} else if (name.equals("mappings")) {
+				if (name.equals("mappings")) {
 					initMouseMappings(sub_elt);
 				} else if (name.equals("toolbar")) {
 					initToolbarData(sub_elt);
@@ -125,11 +197,96 @@ class XmlReader {
 					file.addMessage(sub_elt.getAttribute("value"));
 				}
 			}
+			laterElements = null;
+			
+			// each circuit's components are created once they are first
+			// needed, which for most circuits of a large library is never
+			for (CircuitData circData : circuitsData) {
+				circData.circuit.setDeferredContents(new CircuitLoader(circData));
+			}
+			circuitsData = null;
+		}
+		
+		private class CircuitLoader implements Runnable {
+			private volatile CircuitData circData;
+			
+			CircuitLoader(CircuitData circData) {
+				this.circData = circData;
+			}
+			
+			/** Returns the text read for the circuit's contents, if a
+			 * file written now would give the same circuit by it: the
+			 * file must name the libraries and the circuits that it
+			 * uses as this one did. Otherwise returns null. */
+			String getContents(LogisimFile current, Map<Library,String> libNames) {
+				CircuitData data = circData;
+				if (data == null || data.contents == null
+						|| sourceVersion.compareTo(CURRENT_DEFAULTS) < 0) {
+					return null;
+				}
+				for (Map.Entry<String,Library> entry : libs.entrySet()) {
+					if (!entry.getKey().equals(libNames.get(entry.getValue()))) {
+						return null;
+					}
+				}
+				for (Map.Entry<String,Circuit> entry : circuitNames.entrySet()) {
+					if (current.getCircuit(entry.getKey()) != entry.getValue()) {
+						return null;
+					}
+				}
+				return data.contents;
+			}
 			
-			// fourth, execute a transaction that initializes all the circuits
-			XmlCircuitReader builder;
-			builder = new XmlCircuitReader(this, circuitsData);
-			builder.execute();
+			public void run() {
+				CircuitData circData = this.circData;
+				String name = circData.circuit.getName();
+				if (circData.contents != null) {
+					try {
+						circData.circuitElement = readContents(circData.contents);
+					} catch (XMLStreamException e) {
+						addError(e.getMessage(), name);
+						circData.circuitElement = readEmptyCircuit();
+					}
+					circData.contents = null;
+				}
+				Element circElt = circData.circuitElement;
+				circData.knownComponents = loadKnownComponents(circElt);
+				for (Element appearElt : XmlIterator.forChildElements(circElt, "appear")) {
+					loadAppearance(appearElt, circData, name + ".appear");
+				}
+				XmlCircuitReader builder;
+				builder = new XmlCircuitReader(ReadContext.this,
+						Collections.singletonList(circData));
+				builder.execute();
+				this.circData = null; // let the element be collected
+				if (loaded) reportErrors();
+			}
+		}
+		
+		// errors found after the file is read are reported from the event
+		// thread, whichever thread loaded the circuit
+		private void reportErrors() {
+			String all;
+			synchronized (messages) {
+				if (messages.isEmpty()) return;
+				StringBuilder buf = new StringBuilder();
+				for (String msg : messages) {
+					buf.append(msg);
+					buf.append("\n");
+				}
+				all = buf.substring(0, buf.length() - 1);
+				messages.clear();
+			}
+			if (!loaded || SwingUtilities.isEventDispatchThread()) {
+				loader.showError(all);
+			} else {
+				final String toShow = all;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						loader.showError(toShow);
+					}
+				});
+			}
 		}
 
 		private Library toLibrary(Element elt) {
@@ -359,41 +516,300 @@ class XmlReader {
 		}
 	}
 
-	private LibraryLoader loader;
+	private Loader loader;
 
 	XmlReader(Loader loader) {
 		this.loader = loader;
 	}
 
 	LogisimFile readLibrary(InputStream is) throws IOException, SAXException {
-		Document doc = loadXmlFrom(is);
-		Element elt = doc.getDocumentElement();
-		considerRepairs(doc, elt);
-		LogisimFile file = new LogisimFile((Loader) loader);
+		LogisimFile file = new LogisimFile(loader);
 		ReadContext context = new ReadContext(file);
-		context.toLogisimFile(elt);
+		try {
+			readXmlFrom(is, context);
+		} catch (XMLStreamException e) {
+			throw new SAXException(e);
+		}
 		if (file.getCircuitCount() == 0) {
 			file.addCircuit(new Circuit("main"));
 		}
-		if (context.messages.size() > 0) {
-			StringBuilder all = new StringBuilder();
-			for (String msg : context.messages) {
-				all.append(msg);
-				all.append("\n");
+		// the main circuit is about to be shown anyway, and any errors
+		// in it are best reported along with the rest of the file's
+		Circuit main = file.getMainCircuit();
+		if (main != null) main.loadDeferredContents();
+		context.loaded = true;
+		context.reportErrors();
+		return file;
+	}
+	
+	/** Reads the project element and each of its children in turn,
+	 * rather than building a document for the entire file first. Files
+	 * from versions needing repairs are still read into a complete
+	 * document, since the repairs work across the whole file. */
+	private void readXmlFrom(InputStream is, ReadContext context)
+			throws XMLStreamException, SAXException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		XMLStreamReader in = factory.createXMLStreamReader(is);
+		try {
+			DocumentBuilder builder = null;
+			try {
+				builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			} catch (ParserConfigurationException ex) { }
+			Document doc = builder.newDocument();
+			
+			while (!in.isStartElement()) {
+				if (!in.hasNext()) throw new XMLStreamException("no root element");
+				in.next();
+			}
+			Element root = createElement(in, doc);
+			doc.appendChild(root);
+			LogisimVersion version = LogisimVersion.parse(root.getAttribute("source"));
+			boolean repair = version.compareTo(LogisimVersion.get(2, 6, 3)) < 0;
+			
+			if (!repair) context.startLogisimFile(root);
+			while (nextChildElement(in)) {
+				if (!repair && in.getLocalName().equals("circuit")) {
+					StringBuilder contents = new StringBuilder();
+					Element elt = readCircuitElement(in, doc, contents);
+					context.addCircuit(elt, contents.toString());
+					continue;
+				}
+				Element elt = readElement(in, doc);
+				if (repair) {
+					root.appendChild(elt);
+				} else {
+					context.addFileElement(elt);
+				}
+			}
+			if (repair) {
+				considerRepairs(doc, root);
+				context.toLogisimFile(root);
+			} else {
+				context.finishLogisimFile();
 			}
-			loader.showError(all.substring(0, all.length() - 1));
+		} finally {
+			in.close();
 		}
-		return file;
 	}
 	
-	private Document loadXmlFrom(InputStream is) throws SAXException, IOException {
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		factory.setNamespaceAware(true);
-		DocumentBuilder builder = null;
+	/** Advances to the next child of the current element, skipping any
+	 * text, and returns false if the element ends first. */
+	private static boolean nextChildElement(XMLStreamReader in)
+			throws XMLStreamException {
+		while (true) {
+			int event = in.next();
+			if (event == XMLStreamConstants.START_ELEMENT) return true;
+			if (event == XMLStreamConstants.END_ELEMENT) return false;
+		}
+	}
+	
+	/** Reads the circuit element at which the stream is positioned,
+	 * along with its attribute elements; its other elements are copied
+	 * as text into contents, one to a line. */
+	private static Element readCircuitElement(XMLStreamReader in, Document doc,
+			StringBuilder contents) throws XMLStreamException {
+		Element ret = createElement(in, doc);
+		String indent = "";
+		while (true) {
+			switch (in.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				if (in.getLocalName().equals("a")) {
+					ret.appendChild(readElement(in, doc));
+				} else {
+					contents.append(indent);
+					copyElement(in, contents);
+					contents.append('\n');
+				}
+				indent = "";
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				return ret;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.SPACE:
+				// keep the indentation of the next element's line
+				String text = in.getText();
+				indent = text.substring(text.lastIndexOf('\n') + 1);
+				break;
+			default:
+				;
+			}
+		}
+	}
+	
+	/** Writes the element at which the stream is positioned, along with
+	 * all its descendants, as text into buf, leaving the stream at the
+	 * element's end tag. */
+	private static void copyElement(XMLStreamReader in, StringBuilder buf)
+			throws XMLStreamException {
+		int depth = 0;
+		boolean inStartTag = false;
+		int event = in.getEventType();
+		while (true) {
+			switch (event) {
+			case XMLStreamConstants.START_ELEMENT:
+				if (inStartTag) buf.append('>');
+				buf.append('<').append(qualifiedName(in.getPrefix(), in.getLocalName()));
+				for (int i = 0, n = in.getNamespaceCount(); i < n; i++) {
+					String prefix = in.getNamespacePrefix(i);
+					buf.append(prefix == null || prefix.equals("")
+							? " xmlns" : " xmlns:" + prefix);
+					copyAttributeValue(in.getNamespaceURI(i), buf);
+				}
+				for (int i = 0, n = in.getAttributeCount(); i < n; i++) {
+					buf.append(' ').append(qualifiedName(in.getAttributePrefix(i),
+							in.getAttributeLocalName(i)));
+					copyAttributeValue(in.getAttributeValue(i), buf);
+				}
+				inStartTag = true;
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (inStartTag) {
+					buf.append("/>");
+					inStartTag = false;
+				} else {
+					buf.append("</").append(qualifiedName(in.getPrefix(),
+							in.getLocalName())).append('>');
+				}
+				depth--;
+				if (depth == 0) return;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (inStartTag) {
+					buf.append('>');
+					inStartTag = false;
+				}
+				XmlWriter.escape(buf, in.getText(), false);
+				break;
+			default:
+				; // comments, processing instructions, and the like
+			}
+			event = in.next();
+		}
+	}
+	
+	private static void copyAttributeValue(String value, StringBuilder buf) {
+		buf.append("=\"");
+		XmlWriter.escape(buf, value == null ? "" : value, true);
+		buf.append('"');
+	}
+	
+	/** Reads a circuit's elements as copied by readCircuitElement into
+	 * an element of their own. */
+	private static Element readContents(String contents)
+			throws XMLStreamException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		XMLStreamReader in = factory.createXMLStreamReader(
+				new StringReader("<circuit>" + contents + "</circuit>"));
+		try {
+			while (!in.isStartElement()) in.next();
+			return readElement(in, newDocument());
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static Element readEmptyCircuit() {
+		return newDocument().createElement("circuit");
+	}
+	
+	private static Document newDocument() {
 		try {
-			builder = factory.newDocumentBuilder();
-		} catch (ParserConfigurationException ex) { }
-		return builder.parse(is);
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.newDocument();
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/** Returns the text read for a circuit's contents, if it is yet to
+	 * be loaded and a file written now would give the same circuit by
+	 * that text, using libNames for the file's libraries. */
+	static String getUnloadedContents(Circuit circuit, LogisimFile file,
+			Map<Library,String> libNames) {
+		Runnable loader = circuit.getDeferredContents();
+		if (loader instanceof ReadContext.CircuitLoader) {
+			return ((ReadContext.CircuitLoader) loader).getContents(file, libNames);
+		} else {
+			return null;
+		}
+	}
+	
+	/** Reads the element at which the stream is positioned, along with
+	 * all its descendants, leaving the stream at the element's end tag. */
+	private static Element readElement(XMLStreamReader in, Document doc)
+			throws XMLStreamException {
+		Element ret = createElement(in, doc);
+		Element cur = ret;
+		int depth = 1;
+		while (depth > 0) {
+			switch (in.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				Element child = createElement(in, doc);
+				cur.appendChild(child);
+				cur = child;
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				removeIndentation(cur);
+				depth--;
+				if (depth > 0) cur = (Element) cur.getParentNode();
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				cur.appendChild(doc.createTextNode(in.getText()));
+				break;
+			default:
+				; // comments, processing instructions, and the like
+			}
+		}
+		return ret;
+	}
+	
+	/** Drops the whitespace between an element's children, which only
+	 * lays out the file; many elements may be held until a circuit is
+	 * loaded, so there is no point keeping it. */
+	private static void removeIndentation(Element elt) {
+		boolean hasElements = false;
+		for (Node n = elt.getFirstChild(); n != null; n = n.getNextSibling()) {
+			if (n.getNodeType() == Node.ELEMENT_NODE) hasElements = true;
+		}
+		if (!hasElements) return;
+		Node child = elt.getFirstChild();
+		while (child != null) {
+			Node next = child.getNextSibling();
+			if (child.getNodeType() == Node.TEXT_NODE
+					&& child.getNodeValue().trim().equals("")) {
+				elt.removeChild(child);
+			}
+			child = next;
+		}
+	}
+	
+	private static Element createElement(XMLStreamReader in, Document doc) {
+		Element ret = doc.createElementNS(in.getNamespaceURI(), qualifiedName(
+				in.getPrefix(), in.getLocalName()));
+		for (int i = 0, n = in.getAttributeCount(); i < n; i++) {
+			ret.setAttributeNS(in.getAttributeNamespace(i), qualifiedName(
+					in.getAttributePrefix(i), in.getAttributeLocalName(i)),
+					in.getAttributeValue(i));
+		}
+		return ret;
+	}
+	
+	private static String qualifiedName(String prefix, String localName) {
+		if (prefix == null || prefix.equals("")) {
+			return localName;
+		} else {
+			return prefix + ":" + localName;
+		}
 	}
 	
 	private void considerRepairs(Document doc, Element root) {
@@ -3,25 +3,28 @@
 
 package com.cburch.logisim.file;
 
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 
 import com.cburch.draw.model.AbstractCanvasObject;
 import com.cburch.logisim.LogisimVersion;
@@ -38,217 +41,390 @@ import com.cburch.logisim.tools.Tool;
 import com.cburch.logisim.util.InputEventUtil;
 import com.cburch.logisim.util.StringUtil;
 
+/** Writes a project as XML. The text is produced directly rather than
+ * through a DOM document and a Transformer, and when there are several
+ * circuits and processors, the circuits are written into separate
+ * buffers in parallel and then concatenated in order. A circuit whose
+ * contents were never loaded from its file is written from the text
+ * read for it, so saving does not load every circuit. */
 class XmlWriter {
-	static void write(LogisimFile file, OutputStream out, LibraryLoader loader)
-			throws ParserConfigurationException,
-				TransformerConfigurationException, TransformerException {
-		DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
+	private static final String UNKNOWN_LIBRARY = "";
+	// smaller projects are written faster than threads can be started
+	private static final int PARALLEL_THRESHOLD = 2000;
 
-		Document doc = docBuilder.newDocument();
-		XmlWriter context = new XmlWriter(file, doc, loader);
+	static void write(LogisimFile file, OutputStream out, LibraryLoader loader)
+			throws ParserConfigurationException, IOException {
+		XmlWriter context = new XmlWriter(file, loader);
 		context.fromLogisimFile();
-		
-		TransformerFactory tfFactory = TransformerFactory.newInstance();
-		try {
-			tfFactory.setAttribute("indent-number", Integer.valueOf(2));
-		} catch (IllegalArgumentException e) { }
-		Transformer tf = tfFactory.newTransformer();
-		tf.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-		tf.setOutputProperty(OutputKeys.INDENT, "yes");
-		try {
-			tf.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", 
-					"2");
-		} catch (IllegalArgumentException e) { }
+		Writer dest = new OutputStreamWriter(out, "UTF-8");
+		dest.write(context.out.toString());
+		for (String circuitText : context.fromCircuits()) {
+			dest.write(circuitText);
+		}
+		dest.write("</project>\n");
+		dest.flush();
+	}
+
+	/** Copies what is needed to write file, so that writeSnapshot can
+	 * produce the text on another thread while the file goes on
+	 * changing. This must be called from the thread that changes the
+	 * file, with its loaded circuits kept from changing meanwhile. */
+	static XmlWriter snapshot(LogisimFile file, LibraryLoader loader)
+			throws ParserConfigurationException {
+		XmlWriter ret = new XmlWriter(file, loader);
+		ret.fromLogisimFile();
+		ret.copies = new ArrayList<CircuitCopy>();
+		for (Circuit circ : file.getCircuits()) {
+			CircuitCopy copy = new CircuitCopy();
+			copy.unloaded = XmlReader.getUnloadedContents(circ, file, ret.libs);
+			copy.context = new XmlWriter(ret);
+			copy.context.out.setDepth(1);
+			copy.context.startCircuit(circ, copy.unloaded == null);
+			if (copy.unloaded == null) {
+				copy.wires = circ.getWires().toArray(new Wire[0]);
+				copy.comps = circ.getNonWires().toArray(new Component[0]);
+				copy.attrs = new AttributeSet[copy.comps.length];
+				for (int i = 0; i < copy.comps.length; i++) {
+					Component comp = copy.comps[i];
+					copy.attrs[i] = (AttributeSet) comp.getAttributeSet().clone();
+					ComponentFactory source = comp.getFactory();
+					if (!ret.factoryLibs.containsKey(source)) {
+						ret.factoryLibs.put(source, ret.findLibraryName(source));
+					}
+				}
+			}
+			ret.copies.add(copy);
+		}
+		return ret;
+	}
+
+	/** Writes a file from what snapshot copied; errors are ignored. */
+	void writeSnapshot(OutputStream out) throws IOException {
+		Writer dest = new OutputStreamWriter(out, "UTF-8");
+		dest.write(this.out.toString());
+		for (CircuitCopy copy : copies) {
+			XmlWriter context = copy.context;
+			if (copy.unloaded != null) {
+				context.out.raw(copy.unloaded);
+			} else {
+				for (Wire w : copy.wires) {
+					context.fromWire(w);
+				}
+				for (int i = 0; i < copy.comps.length; i++) {
+					context.fromComponent(copy.comps[i], copy.attrs[i]);
+				}
+			}
+			context.out.end();
+			dest.write(context.out.toString());
+		}
+		dest.write("</project>\n");
+		dest.flush();
+	}
 
-		Source src = new DOMSource(doc);
-		Result dest = new StreamResult(out);
-		tf.transform(src, dest);
+	// a circuit as snapshot found it
+	private static class CircuitCopy {
+		XmlWriter context; // holding the start of the circuit's element
+		String unloaded; // the circuit's contents if never loaded
+		Wire[] wires;
+		Component[] comps;
+		AttributeSet[] attrs; // copied from comps
 	}
 
 	private LogisimFile file;
-	private Document doc;
 	private LibraryLoader loader;
-	private HashMap<Library,String> libs = new HashMap<Library,String>();
+	private HashMap<Library,String> libs;
+	// the library name for each factory used, so that workers writing
+	// circuits need not search libraries themselves
+	private HashMap<ComponentFactory,String> factoryLibs;
+	private XmlBuffer out = new XmlBuffer();
+	private ArrayList<String> errors = null; // held for the caller's thread
+	private Document svgDoc = null;
+	private ArrayList<CircuitCopy> copies = null; // for a snapshot
 
-	private XmlWriter(LogisimFile file, Document doc, LibraryLoader loader) {
+	private XmlWriter(LogisimFile file, LibraryLoader loader) {
 		this.file = file;
-		this.doc = doc;
 		this.loader = loader;
+		this.libs = new HashMap<Library,String>();
+		this.factoryLibs = new HashMap<ComponentFactory,String>();
 	}
 
-	Element fromLogisimFile() {
-		Element ret = doc.createElement("project");
-		doc.appendChild(ret);
-		ret.appendChild(doc.createTextNode("\nThis file is intended to be "
-				+ "loaded by Logisim (http://www.cburch.com/logisim/).\n"));
-		ret.setAttribute("version", "1.0");
-		ret.setAttribute("source", Main.VERSION_NAME);
+	private XmlWriter(XmlWriter parent) {
+		this.file = parent.file;
+		this.loader = parent.loader;
+		this.libs = parent.libs;
+		this.factoryLibs = parent.factoryLibs;
+		this.errors = new ArrayList<String>();
+	}
+
+	void fromLogisimFile() {
+		out.declaration();
+		out.start("project");
+		out.attr("source", Main.VERSION_NAME);
+		out.attr("version", "1.0");
+		out.note("This file is intended to be "
+				+ "loaded by Logisim (http://www.cburch.com/logisim/).");
 
 		for (Library lib : file.getLibraries()) {
-			Element elt = fromLibrary(lib);
-			if (elt != null) ret.appendChild(elt);
+			fromLibrary(lib);
 		}
 
 		if (file.getMainCircuit() != null) {
-			Element mainElt = doc.createElement("main");
-			mainElt.setAttribute("name", file.getMainCircuit().getName());
-			ret.appendChild(mainElt);
+			out.start("main");
+			out.attr("name", file.getMainCircuit().getName());
+			out.end();
 		}
 
-		ret.appendChild(fromOptions());
-		ret.appendChild(fromMouseMappings());
-		ret.appendChild(fromToolbarData());
+		fromOptions();
+		fromMouseMappings();
+		fromToolbarData();
+		// the circuits and the closing tag are written by fromCircuits
+	}
 
-		for (Circuit circ : file.getCircuits()) {
-			ret.appendChild(fromCircuit(circ));
+	List<String> fromCircuits() throws ParserConfigurationException {
+		List<Circuit> circuits = file.getCircuits();
+		final HashMap<Circuit,String> unloaded = new HashMap<Circuit,String>();
+		int size = 0;
+		for (Circuit circ : circuits) {
+			String text = XmlReader.getUnloadedContents(circ, file, libs);
+			if (text != null) {
+				unloaded.put(circ, text);
+				continue;
+			}
+			size += circ.getWires().size() + circ.getNonWires().size();
+			for (Component comp : circ.getNonWires()) {
+				ComponentFactory source = comp.getFactory();
+				if (!factoryLibs.containsKey(source)) {
+					factoryLibs.put(source, findLibraryName(source));
+				}
+			}
+		}
+
+		int threads = Math.min(circuits.size(),
+				Runtime.getRuntime().availableProcessors());
+		ArrayList<String> ret = new ArrayList<String>(circuits.size());
+		if (threads <= 1 || size < PARALLEL_THRESHOLD) {
+			for (Circuit circ : circuits) {
+				ret.add(collect(fromCircuitAlone(circ, unloaded.get(circ))));
+			}
+			return ret;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			ArrayList<Future<XmlWriter>> results = new ArrayList<Future<XmlWriter>>();
+			for (final Circuit circ : circuits) {
+				results.add(pool.submit(new Callable<XmlWriter>() {
+					public XmlWriter call() throws ParserConfigurationException {
+						return fromCircuitAlone(circ, unloaded.get(circ));
+					}
+				}));
+			}
+			for (Future<XmlWriter> result : results) {
+				ret.add(collect(getResult(result)));
+			}
+		} finally {
+			pool.shutdown();
 		}
 		return ret;
 	}
 
-	Element fromLibrary(Library lib) {
-		Element ret = doc.createElement("lib");
-		if (libs.containsKey(lib)) return null;
+	private XmlWriter fromCircuitAlone(Circuit circ, String unloaded)
+			throws ParserConfigurationException {
+		XmlWriter context = new XmlWriter(this);
+		context.out.setDepth(1);
+		context.fromCircuit(circ, unloaded);
+		return context;
+	}
+
+	// reports a circuit's errors from this thread and returns its text
+	private String collect(XmlWriter context) {
+		for (String error : context.errors) showError(error);
+		return context.out.toString();
+	}
+
+	private static XmlWriter getResult(Future<XmlWriter> result)
+			throws ParserConfigurationException {
+		while (true) {
+			try {
+				return result.get();
+			} catch (InterruptedException e) {
+				// keep waiting: the circuit is needed to complete the file
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof ParserConfigurationException) {
+					throw (ParserConfigurationException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				} else {
+					throw new RuntimeException(cause);
+				}
+			}
+		}
+	}
+
+	void fromLibrary(Library lib) {
+		if (libs.containsKey(lib)) return;
 		String name = "" + libs.size();
 		String desc = loader.getDescriptor(lib);
 		if (desc == null) {
-			loader.showError("library location unknown: "
+			showError("library location unknown: "
 				+ lib.getName());
-			return null;
+			return;
 		}
 		libs.put(lib, name);
-		ret.setAttribute("name", name);
-		ret.setAttribute("desc", desc);
+		out.start("lib");
+		out.attr("desc", desc);
+		out.attr("name", name);
 		for (Tool t : lib.getTools()) {
 			AttributeSet attrs = t.getAttributeSet();
-			if (attrs != null) {
-				Element toAdd = doc.createElement("tool");
-				toAdd.setAttribute("name", t.getName());
-				addAttributeSetContent(toAdd, attrs, t);
-				if (toAdd.getChildNodes().getLength() > 0) {
-					ret.appendChild(toAdd);
-				}
+			if (attrs != null && hasAttributeSetContent(attrs, t)) {
+				out.start("tool");
+				out.attr("name", t.getName());
+				addAttributeSetContent(attrs, t);
+				out.end();
 			}
 		}
-		return ret;
+		out.end();
 	}
 
-	Element fromOptions() {
-		Element elt = doc.createElement("options");
-		addAttributeSetContent(elt, file.getOptions().getAttributeSet(), null);
-		return elt;
+	void fromOptions() {
+		out.start("options");
+		addAttributeSetContent(file.getOptions().getAttributeSet(), null);
+		out.end();
 	}
 
-	Element fromMouseMappings() {
-		Element elt = doc.createElement("mappings");
+	void fromMouseMappings() {
+		out.start("mappings");
 		MouseMappings map = file.getOptions().getMouseMappings();
 		for (Map.Entry<Integer,Tool> entry : map.getMappings().entrySet()) {
 			Integer mods = entry.getKey();
 			Tool tool = entry.getValue();
-			Element toolElt = fromTool(tool);
 			String mapValue = InputEventUtil.toString(mods.intValue());
-			toolElt.setAttribute("map", mapValue);
-			elt.appendChild(toolElt);
+			fromTool(tool, mapValue);
 		}
-		return elt;
+		out.end();
 	}
 
-	Element fromToolbarData() {
-		Element elt = doc.createElement("toolbar");
+	void fromToolbarData() {
+		out.start("toolbar");
 		ToolbarData toolbar = file.getOptions().getToolbarData();
 		for (Tool tool : toolbar.getContents()) {
 			if (tool == null) {
-				elt.appendChild(doc.createElement("sep"));
+				out.start("sep");
+				out.end();
 			} else {
-				elt.appendChild(fromTool(tool));
+				fromTool(tool, null);
 			}
 		}
-		return elt;
+		out.end();
 	}
 
-	Element fromTool(Tool tool) {
+	void fromTool(Tool tool, String mapValue) {
 		Library lib = findLibrary(tool);
 		String lib_name;
 		if (lib == null) {
-			loader.showError(StringUtil.format("tool `%s' not found",
+			showError(StringUtil.format("tool `%s' not found",
 				tool.getDisplayName()));
-			return null;
+			return;
 		} else if (lib == file) {
 			lib_name = null;
 		} else {
 			lib_name = libs.get(lib);
 			if (lib_name == null) {
-				loader.showError("unknown library within file");
-				return null;
+				showError("unknown library within file");
+				return;
 			}
 		}
 
-		Element elt = doc.createElement("tool");
-		if (lib_name != null) elt.setAttribute("lib", lib_name);
-		elt.setAttribute("name", tool.getName());
-		addAttributeSetContent(elt, tool.getAttributeSet(), tool);
-		return elt;
+		out.start("tool");
+		if (lib_name != null) out.attr("lib", lib_name);
+		if (mapValue != null) out.attr("map", mapValue);
+		out.attr("name", tool.getName());
+		addAttributeSetContent(tool.getAttributeSet(), tool);
+		out.end();
+	}
+
+	// unloaded is the text of the circuit's contents if they were never loaded
+	void fromCircuit(Circuit circuit, String unloaded)
+			throws ParserConfigurationException {
+		startCircuit(circuit, unloaded == null);
+		if (unloaded != null) {
+			out.raw(unloaded);
+		} else {
+			for (Wire w : circuit.getWires()) {
+				fromWire(w);
+			}
+			for (Component comp : circuit.getNonWires()) {
+				fromComponent(comp, comp.getAttributeSet());
+			}
+		}
+		out.end();
 	}
 
-	Element fromCircuit(Circuit circuit) {
-		Element ret = doc.createElement("circuit");
-		ret.setAttribute("name", circuit.getName());
-		addAttributeSetContent(ret, circuit.getStaticAttributes(), null);
-		if (!circuit.getAppearance().isDefaultAppearance()) {
-			Element appear = doc.createElement("appear");
+	// leaves the circuit's element open for its wires and components
+	private void startCircuit(Circuit circuit, boolean withAppearance)
+			throws ParserConfigurationException {
+		out.start("circuit");
+		out.attr("name", circuit.getName());
+		addAttributeSetContent(circuit.getStaticAttributes(), null);
+		if (withAppearance && !circuit.getAppearance().isDefaultAppearance()) {
+			if (svgDoc == null) {
+				svgDoc = DocumentBuilderFactory.newInstance()
+					.newDocumentBuilder().newDocument();
+			}
+			out.start("appear");
 			for (Object o : circuit.getAppearance().getObjectsFromBottom()) {
 				if (o instanceof AbstractCanvasObject) {
-					Element elt = ((AbstractCanvasObject) o).toSvgElement(doc);
+					Element elt = ((AbstractCanvasObject) o).toSvgElement(svgDoc);
 					if (elt != null) {
-						appear.appendChild(elt);
+						out.element(elt);
 					}
 				}
 			}
-			ret.appendChild(appear);
-		}
-		for (Wire w : circuit.getWires()) {
-			ret.appendChild(fromWire(w));
+			out.end();
 		}
-		for (Component comp : circuit.getNonWires()) {
-			Element elt = fromComponent(comp);
-			if (elt != null) ret.appendChild(elt);
-		}
-		return ret;
 	}
 
-	Element fromComponent(Component comp) {
+	void fromComponent(Component comp, AttributeSet attrs) {
 		ComponentFactory source = comp.getFactory();
-		Library lib = findLibrary(source);
-		String lib_name;
-		if (lib == null) {
-			loader.showError(source.getName() + " component not found");
-			return null;
-		} else if (lib == file) {
-			lib_name = null;
-		} else {
-			lib_name = libs.get(lib);
-			if (lib_name == null) {
-				loader.showError("unknown library within file");
-				return null;
-			}
-		}
+		String lib_name = factoryLibs.containsKey(source)
+			? factoryLibs.get(source) : findLibraryName(source);
+		if (lib_name == UNKNOWN_LIBRARY) return;
 
-		Element ret = doc.createElement("comp");
-		if (lib_name != null) ret.setAttribute("lib", lib_name);
-		ret.setAttribute("name", source.getName());
-		ret.setAttribute("loc", comp.getLocation().toString());
-		addAttributeSetContent(ret, comp.getAttributeSet(), comp.getFactory());
-		return ret;
+		out.start("comp");
+		if (lib_name != null) out.attr("lib", lib_name);
+		out.attr("loc", comp.getLocation().toString());
+		out.attr("name", source.getName());
+		addAttributeSetContent(attrs, source);
+		out.end();
 	}
 
-	Element fromWire(Wire w) {
-		Element ret = doc.createElement("wire");
-		ret.setAttribute("from", w.getEnd0().toString());
-		ret.setAttribute("to", w.getEnd1().toString());
-		return ret;
+	void fromWire(Wire w) {
+		out.start("wire");
+		out.attr("from", w.getEnd0().toString());
+		out.attr("to", w.getEnd1().toString());
+		out.end();
+	}
+
+	boolean hasAttributeSetContent(AttributeSet attrs,
+			AttributeDefaultProvider source) {
+		LogisimVersion ver = Main.VERSION;
+		if (source != null && source.isAllDefaultValues(attrs, ver)) return false;
+		for (Attribute<?> attrBase : attrs.getAttributes()) {
+			@SuppressWarnings("unchecked")
+			Attribute<Object> attr = (Attribute<Object>) attrBase;
+			Object val = attrs.getValue(attr);
+			if (attrs.isToSave(attr) && val != null) {
+				Object dflt = source == null ? null : source.getDefaultAttributeValue(attr, ver);
+				if (dflt == null || !dflt.equals(val)) return true;
+			}
+		}
+		return false;
 	}
 
-	void addAttributeSetContent(Element elt, AttributeSet attrs,
+	void addAttributeSetContent(AttributeSet attrs,
 			AttributeDefaultProvider source) {
 		if (attrs == null) return;
 		LogisimVersion ver = Main.VERSION;
@@ -256,24 +432,49 @@ class XmlWriter {
 		for (Attribute<?> attrBase : attrs.getAttributes()) {
 			@SuppressWarnings("unchecked")
 			Attribute<Object> attr = (Attribute<Object>) attrBase;
+			if (!attrs.isToSave(attr)) continue;
 			Object val = attrs.getValue(attr);
-			if (attrs.isToSave(attr) && val != null) {
+			if (val != null) {
 				Object dflt = source == null ? null : source.getDefaultAttributeValue(attr, ver);
 				if (dflt == null || !dflt.equals(val)) {
-					Element a = doc.createElement("a");
-					a.setAttribute("name", attr.getName());
+					out.start("a");
+					out.attr("name", attr.getName());
 					String value = attr.toStandardString(val);
 					if (value.indexOf("\n") >= 0) {
-						a.appendChild(doc.createTextNode(value));
+						out.text(value);
 					} else {
-						a.setAttribute("val", attr.toStandardString(val));
+						out.attr("val", value);
 					}
-					elt.appendChild(a);
+					out.end();
 				}
 			}
 		}
 	}
 
+	private void showError(String message) {
+		if (errors == null) loader.showError(message);
+		else errors.add(message);
+	}
+
+	// returns null for the file itself and UNKNOWN_LIBRARY if the
+	// factory cannot be found, after reporting the error
+	private String findLibraryName(ComponentFactory source) {
+		Library lib = findLibrary(source);
+		if (lib == null) {
+			showError(source.getName() + " component not found");
+			return UNKNOWN_LIBRARY;
+		} else if (lib == file) {
+			return null;
+		} else {
+			String ret = libs.get(lib);
+			if (ret == null) {
+				showError("unknown library within file");
+				return UNKNOWN_LIBRARY;
+			}
+			return ret;
+		}
+	}
+
 	Library findLibrary(Tool tool) {
 		if (libraryContains(file, tool)) {
 			return file;
@@ -300,4 +501,125 @@ class XmlWriter {
 		}
 		return false;
 	}
+
+	static void escape(StringBuilder buf, String value, boolean inAttribute) {
+		for (int i = 0, n = value.length(); i < n; i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&': buf.append("&amp;"); break;
+			case '<': buf.append("&lt;"); break;
+			case '>': buf.append("&gt;"); break;
+			case '"': buf.append(inAttribute ? "&quot;" : "\""); break;
+			case '\r': buf.append("&#13;"); break;
+			case '\n': buf.append(inAttribute ? "&#10;" : "\n"); break;
+			case '\t': buf.append(inAttribute ? "&#9;" : "\t"); break;
+			default:
+				if (c < 0x20) buf.append("&#").append((int) c).append(';');
+				else buf.append(c);
+			}
+		}
+	}
+
+	/** Accumulates indented XML text. Elements hold either other
+	 * elements or a single text value. */
+	private static class XmlBuffer {
+		private StringBuilder buf = new StringBuilder();
+		private ArrayList<String> open = new ArrayList<String>();
+		private int baseDepth = 0;
+		private boolean inStartTag = false;
+		private boolean hasText = false;
+
+		void setDepth(int value) {
+			baseDepth = value;
+		}
+
+		void declaration() {
+			buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+		}
+
+		void start(String name) {
+			closeStartTag(true);
+			indent(open.size());
+			buf.append('<').append(name);
+			open.add(name);
+			inStartTag = true;
+		}
+
+		void attr(String name, String value) {
+			buf.append(' ').append(name).append("=\"");
+			escape(value, true);
+			buf.append('"');
+		}
+
+		void text(String value) {
+			closeStartTag(false);
+			escape(value, false);
+			hasText = true;
+		}
+
+		// text already laid out as lines at the current element's depth
+		void raw(String value) {
+			closeStartTag(true);
+			buf.append(value);
+		}
+
+		// a line of text followed by a blank line, within the current element
+		void note(String value) {
+			closeStartTag(true);
+			indent(open.size());
+			escape(value, false);
+			buf.append("\n\n");
+		}
+
+		void end() {
+			String name = open.remove(open.size() - 1);
+			if (inStartTag) {
+				buf.append("/>\n");
+				inStartTag = false;
+			} else {
+				if (!hasText) indent(open.size());
+				buf.append("</").append(name).append(">\n");
+			}
+			hasText = false;
+		}
+
+		void element(Element elt) {
+			start(elt.getTagName());
+			NamedNodeMap attrs = elt.getAttributes();
+			for (int i = 0, n = attrs.getLength(); i < n; i++) {
+				Node attr = attrs.item(i);
+				attr(attr.getNodeName(), attr.getNodeValue());
+			}
+			NodeList children = elt.getChildNodes();
+			for (int i = 0, n = children.getLength(); i < n; i++) {
+				Node child = children.item(i);
+				if (child instanceof Element) {
+					element((Element) child);
+				} else if (child.getNodeType() == Node.TEXT_NODE) {
+					text(child.getNodeValue());
+				}
+			}
+			end();
+		}
+
+		private void closeStartTag(boolean newLine) {
+			if (inStartTag) {
+				buf.append(newLine ? ">\n" : ">");
+				inStartTag = false;
+			}
+		}
+
+		private void indent(int depth) {
+			for (int i = baseDepth + depth; i > 0; i--) buf.append("  ");
+		}
+
+		private void escape(String value, boolean inAttribute) {
+			XmlWriter.escape(buf, value, inAttribute);
+		}
+
+		@Override
+		public String toString() {
+			return buf.toString();
+		}
+	}
 }
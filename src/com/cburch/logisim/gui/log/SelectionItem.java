@@ -131,7 +131,8 @@ class SelectionItem implements AttributeListener, CircuitListener {
 	public void circuitChanged(CircuitEvent event) {
 		int action = event.getAction();
 		if (action == CircuitEvent.ACTION_CLEAR
-				|| action == CircuitEvent.ACTION_REMOVE) {
+				|| action == CircuitEvent.ACTION_REMOVE
+				|| action == CircuitEvent.ACTION_BATCH) {
 			Circuit circ = event.getCircuit();
 			Component circComp = null;
 			if (circ == model.getCircuitState().getCircuit()) {
@@ -150,6 +151,10 @@ class SelectionItem implements AttributeListener, CircuitListener {
 					&& event.getData() != circComp) {
 				return;
 			}
+			if (action == CircuitEvent.ACTION_BATCH
+					&& !event.getBatch().getRemovals().contains(circComp)) {
+				return;
+			}
 			
 			int index = model.getSelection().indexOf(this);
 			if (index < 0) return;
@@ -22,6 +22,7 @@ import com.cburch.logisim.circuit.CircuitEvent;
 import com.cburch.logisim.circuit.CircuitListener;
 import com.cburch.logisim.circuit.CircuitState;
 import com.cburch.logisim.circuit.Propagator;
+import com.cburch.logisim.circuit.Simulator;
 import com.cburch.logisim.circuit.SimulatorEvent;
 import com.cburch.logisim.circuit.SimulatorListener;
 import com.cburch.logisim.circuit.SubcircuitFactory;
@@ -246,6 +247,7 @@ public class Canvas extends JPanel
 						tickCounter.clear();
 					}
 				}
+				setSimulator(proj.getSimulator());
 			}
 
 			if (act != ProjectEvent.ACTION_SELECTION
@@ -312,6 +314,11 @@ public class Canvas extends JPanel
 				if (c == painter.getHaloedComponent()) {
 					proj.getFrame().viewComponentAttributes(null, null);
 				}
+			} else if (act == CircuitEvent.ACTION_BATCH) {
+				Component c = painter.getHaloedComponent();
+				if (c != null && event.getBatch().getRemovals().contains(c)) {
+					proj.getFrame().viewComponentAttributes(null, null);
+				}
 			} else if (act == CircuitEvent.ACTION_CLEAR) {
 				if (painter.getHaloedComponent() != null) {
 					proj.getFrame().viewComponentAttributes(null, null);
@@ -515,6 +522,7 @@ public class Canvas extends JPanel
 	private MyViewport viewport = new MyViewport();
 	private MyProjectListener myProjectListener = new MyProjectListener();
 	private TickCounter tickCounter;
+	private Simulator simulator; // the simulator of the project's current session
 
 	private CanvasPaintThread paintThread;
 	private CanvasPainter painter;
@@ -540,7 +548,7 @@ public class Canvas extends JPanel
 		proj.addProjectListener(myProjectListener);
 		proj.addLibraryListener(myProjectListener);
 		proj.addCircuitListener(myProjectListener);
-		proj.getSimulator().addSimulatorListener(tickCounter);
+		setSimulator(proj.getSimulator());
 		selection.addListener(myProjectListener);
 		LocaleManager.addLocaleListener(this);
 
@@ -561,8 +569,20 @@ public class Canvas extends JPanel
 		boolean showTips = AppPreferences.COMPONENT_TIPS.getBoolean();
 		setToolTipText(showTips ? "" : null);
 
-		proj.getSimulator().removeSimulatorListener(myProjectListener);
-		proj.getSimulator().addSimulatorListener(myProjectListener);
+		simulator.removeSimulatorListener(myProjectListener);
+		simulator.addSimulatorListener(myProjectListener);
+	}
+
+	private void setSimulator(Simulator value) {
+		Simulator old = simulator;
+		if (old == value) return;
+		if (old != null) {
+			old.removeSimulatorListener(tickCounter);
+			old.removeSimulatorListener(myProjectListener);
+		}
+		simulator = value;
+		value.addSimulatorListener(tickCounter);
+		value.addSimulatorListener(myProjectListener);
 	}
 
 	@Override
@@ -12,6 +12,8 @@ import java.awt.Rectangle;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import com.cburch.logisim.circuit.Circuit;
@@ -187,23 +189,16 @@ class CanvasPainter implements PropertyChangeListener {
 		g.setColor(Value.WIDTH_ERROR_COLOR);
 		GraphicsUtil.switchToWidth(g, 2);
 		FontMetrics fm = base.getFontMetrics(g.getFont());
+		HashSet<Location> drawn = new HashSet<Location>();
 		for (WidthIncompatibilityData ex : exceptions) {
-			for (int i = 0; i < ex.size(); i++) {
-				Location p = ex.getPoint(i);
-				BitWidth w = ex.getBitWidth(i);
-
-				// ensure it hasn't already been drawn
-				boolean drawn = false;
-				for (int j = 0; j < i; j++) {
-					if (ex.getPoint(j).equals(p)) { drawn = true; break; }
-				}
-				if (drawn) continue;
-
-				// compute the caption combining all similar points
-				String caption = "" + w.getWidth();
-				for (int j = i + 1; j < ex.size(); j++) {
-					if (ex.getPoint(j).equals(p)) { caption += "/" + ex.getBitWidth(j); break; }
-				}
+			for (Location p : ex.getPoints()) {
+				// points may be shared by several sets of data
+				if (!drawn.add(p)) continue;
+
+				// compute the caption combining the first two widths there
+				List<BitWidth> ws = ex.getBitWidths(p);
+				String caption = "" + ws.get(0).getWidth();
+				if (ws.size() > 1) caption += "/" + ws.get(1);
 				g.drawOval(p.getX() - 4, p.getY() - 4, 8, 8);
 				g.drawString(caption, p.getX() + 5, p.getY() + 2 + fm.getAscent());
 			}
@@ -3,38 +3,195 @@
 
 package com.cburch.logisim.gui.main;
 
+import java.awt.HeadlessException;
+import java.awt.Toolkit;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.FlavorEvent;
+import java.awt.datatransfer.FlavorListener;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import javax.swing.SwingUtilities;
+
+import com.cburch.logisim.circuit.Wire;
 import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.ComponentFactory;
 import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.Location;
+import com.cburch.logisim.file.LogisimFile;
+import com.cburch.logisim.tools.Library;
 import com.cburch.logisim.util.PropertyChangeWeakSupport;
 
+/** The components last copied, held as a snapshot of their factories,
+ * locations and attributes: components are only created when pasted,
+ * each paste creating its own. The snapshot is also placed on the
+ * system clipboard as text (see ClipboardText), so that it can be
+ * pasted into another running copy of Logisim. */
 class Clipboard {
 	public static final String contentsProperty = "contents";
-	
+
 	private static Clipboard current = null;
 	private static PropertyChangeWeakSupport propertySupport = new PropertyChangeWeakSupport(Clipboard.class);
-	
+	// whether the system clipboard may hold something placed there by
+	// another program since the last copy
+	private static boolean systemChanged = true;
+	// whether the system clipboard offers text, kept up to date by Owner
+	// so that refreshing the menus never transfers the text itself
+	private static boolean systemHasText = false;
+
+	private static class Data implements Transferable {
+		private Clipboard clip;
+
+		Data(Clipboard clip) {
+			this.clip = clip;
+		}
+
+		public DataFlavor[] getTransferDataFlavors() {
+			return new DataFlavor[] { DataFlavor.stringFlavor };
+		}
+
+		public boolean isDataFlavorSupported(DataFlavor flavor) {
+			return flavor == DataFlavor.stringFlavor;
+		}
+
+		public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException {
+			if (flavor == DataFlavor.stringFlavor) {
+				return ClipboardText.write(clip);
+			} else {
+				throw new UnsupportedFlavorException(flavor);
+			}
+		}
+	}
+
+	private static class Owner implements ClipboardOwner, FlavorListener {
+		public void lostOwnership(java.awt.datatransfer.Clipboard clip,
+				Transferable transfer) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					systemChanged = true;
+					systemHasText = checkSystemText();
+					propertySupport.firePropertyChange(contentsProperty, null, current);
+				}
+			});
+		}
+
+		public void flavorsChanged(FlavorEvent e) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					boolean hasText = checkSystemText();
+					if (hasText != systemHasText) {
+						systemHasText = hasText;
+						propertySupport.firePropertyChange(contentsProperty, null, current);
+					}
+				}
+			});
+		}
+	}
+
+	private static final Owner owner = new Owner();
+
+	static {
+		java.awt.datatransfer.Clipboard sys = getSystemClipboard();
+		if (sys != null) {
+			sys.addFlavorListener(owner);
+			systemHasText = checkSystemText();
+		}
+	}
+
+	/** Returns whether Paste has nothing to offer. Text that another
+	 * program placed on the system clipboard counts as content without
+	 * being read here; pasting it reports whether it is a snapshot. */
 	public static boolean isEmpty() {
-		return current == null || current.components.isEmpty();
+		if (current != null && !current.isEmptySnapshot()) return false;
+		return !systemChanged || !systemHasText;
 	}
-	
+
 	public static Clipboard get() {
 		return current;
 	}
-	
+
+	/** Returns what a paste into file should add: a snapshot that
+	 * another program has since placed on the system clipboard, if there
+	 * is one, or else the last snapshot copied here. */
+	public static Clipboard getForPaste(LogisimFile file) {
+		if (systemChanged) {
+			String text = getSystemText();
+			if (text != null && ClipboardText.isSnapshot(text)) {
+				return ClipboardText.parse(text, file);
+			}
+		}
+		return current;
+	}
+
 	public static void set(Selection value, AttributeSet oldAttrs) {
 		set(new Clipboard(value, oldAttrs));
 	}
-	
+
 	public static void set(Clipboard value) {
 		Clipboard old = current;
 		current = value;
+		if (value != null) {
+			java.awt.datatransfer.Clipboard sys = getSystemClipboard();
+			if (sys != null) {
+				try {
+					sys.setContents(new Data(value), owner);
+					systemChanged = false;
+				} catch (IllegalStateException e) {
+					// the system clipboard is busy; the copy is still held here
+				}
+			}
+		}
 		propertySupport.firePropertyChange(contentsProperty, old, current);
 	}
-	
+
+	private static java.awt.datatransfer.Clipboard getSystemClipboard() {
+		try {
+			return Toolkit.getDefaultToolkit().getSystemClipboard();
+		} catch (HeadlessException e) {
+			return null;
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+
+	private static boolean checkSystemText() {
+		java.awt.datatransfer.Clipboard sys = getSystemClipboard();
+		if (sys == null) return false;
+		try {
+			return sys.isDataFlavorAvailable(DataFlavor.stringFlavor);
+		} catch (IllegalStateException e) {
+			return false;
+		}
+	}
+
+	private static String getSystemText() {
+		java.awt.datatransfer.Clipboard sys = getSystemClipboard();
+		if (sys == null) return null;
+		try {
+			Transferable xfer = sys.getContents(owner);
+			if (xfer == null || !xfer.isDataFlavorSupported(DataFlavor.stringFlavor)) {
+				return null;
+			}
+			return (String) xfer.getTransferData(DataFlavor.stringFlavor);
+		} catch (IllegalStateException e) {
+			return null;
+		} catch (UnsupportedFlavorException e) {
+			return null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
 	//
 	// PropertyChangeSource methods
 	//
@@ -54,39 +211,143 @@ class Clipboard {
 	//
 	// instance variables and methods
 	//
-	private HashSet<Component> components;
+	private int[] wires; // x0, y0, x1, y1 for each wire
+	private ComponentFactory[] factories;
+	private int[] locs; // x, y for each of the other components
+	private AttributeSet[] attrs;
+	private HashMap<ComponentFactory,String> libNames; // null for the file's own
+	private List<String> missing; // names of components that could not be read
 	private AttributeSet oldAttrs;
 	private AttributeSet newAttrs;
-	
+
 	private Clipboard(Selection sel, AttributeSet viewAttrs) {
-		components = new HashSet<Component>();
 		oldAttrs = null;
 		newAttrs = null;
-		for (Component base : sel.getComponents()) {
+		Collection<Component> comps = sel.getComponents();
+		int numWires = 0;
+		for (Component base : comps) {
+			if (base instanceof Wire) numWires++;
+		}
+		wires = new int[4 * numWires];
+		factories = new ComponentFactory[comps.size() - numWires];
+		locs = new int[2 * factories.length];
+		attrs = new AttributeSet[factories.length];
+		libNames = new HashMap<ComponentFactory,String>();
+		missing = Collections.emptyList();
+
+		LogisimFile file = sel.proj.getLogisimFile();
+		int w = 0;
+		int n = 0;
+		for (Component base : comps) {
+			if (base instanceof Wire) {
+				Wire wire = (Wire) base;
+				wires[w] = wire.getEnd0().getX();
+				wires[w + 1] = wire.getEnd0().getY();
+				wires[w + 2] = wire.getEnd1().getX();
+				wires[w + 3] = wire.getEnd1().getY();
+				w += 4;
+				continue;
+			}
+
+			ComponentFactory factory = base.getFactory();
 			AttributeSet baseAttrs = base.getAttributeSet();
 			AttributeSet copyAttrs = (AttributeSet) baseAttrs.clone();
-			Component copy = base.getFactory().createComponent(base.getLocation(),
-					copyAttrs);
-			components.add(copy);
+			factories[n] = factory;
+			locs[2 * n] = base.getLocation().getX();
+			locs[2 * n + 1] = base.getLocation().getY();
+			attrs[n] = copyAttrs;
+			n++;
+			if (!libNames.containsKey(factory)) {
+				libNames.put(factory, findLibraryName(file, factory));
+			}
 			if (baseAttrs == viewAttrs) {
 				oldAttrs = baseAttrs;
 				newAttrs = copyAttrs;
 			}
 		}
 	}
-	
-	public Collection<Component> getComponents() {
-		return components;
+
+	Clipboard(int[] wires, ComponentFactory[] factories, int[] locs,
+			AttributeSet[] attrs, List<String> missing) {
+		this.wires = wires;
+		this.factories = factories;
+		this.locs = locs;
+		this.attrs = attrs;
+		this.libNames = new HashMap<ComponentFactory,String>();
+		this.missing = missing;
+	}
+
+	static String findLibraryName(LogisimFile file, ComponentFactory factory) {
+		if (file == null || file.contains(factory)) return null;
+		for (Library lib : file.getLibraries()) {
+			if (lib.contains(factory)) return lib.getName();
+		}
+		return null;
+	}
+
+	boolean isEmptySnapshot() {
+		return wires.length == 0 && factories.length == 0;
+	}
+
+	int[] getWireEnds() {
+		return wires;
+	}
+
+	/** Returns the factory of each component other than the wires, in
+	 * order; a factory appears once for each of its components. */
+	List<ComponentFactory> getFactories() {
+		return Collections.unmodifiableList(Arrays.asList(factories));
+	}
+
+	Location getLocation(int index) {
+		return Location.create(locs[2 * index], locs[2 * index + 1]);
 	}
-	
+
+	AttributeSet getAttributeSet(int index) {
+		return attrs[index];
+	}
+
+	String getLibraryName(ComponentFactory factory) {
+		return libNames.get(factory);
+	}
+
+	/** Returns the names of components in a pasted snapshot for which no
+	 * factory was found. */
+	List<String> getMissing() {
+		return missing;
+	}
+
+	/** Creates new components from the snapshot. A factory mapped to
+	 * another in replacements is used in its place, and one mapped to
+	 * null is left out. */
+	Collection<Component> createComponents(
+			Map<ComponentFactory,ComponentFactory> replacements) {
+		ArrayList<Component> ret = new ArrayList<Component>(wires.length / 4
+				+ factories.length);
+		for (int i = 0; i < wires.length; i += 4) {
+			ret.add(Wire.create(Location.create(wires[i], wires[i + 1]),
+					Location.create(wires[i + 2], wires[i + 3])));
+		}
+		for (int i = 0; i < factories.length; i++) {
+			ComponentFactory factory = factories[i];
+			if (replacements.containsKey(factory)) {
+				factory = replacements.get(factory);
+				if (factory == null) continue;
+			}
+			AttributeSet copyAttrs = (AttributeSet) attrs[i].clone();
+			ret.add(factory.createComponent(getLocation(i), copyAttrs));
+		}
+		return ret;
+	}
+
 	public AttributeSet getOldAttributeSet() {
 		return oldAttrs;
 	}
-	
+
 	public AttributeSet getNewAttributeSet() {
 		return newAttrs;
 	}
-	
+
 	void setOldAttributeSet(AttributeSet value) {
 		oldAttrs = value;
 	}
@@ -0,0 +1,243 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.gui.main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.cburch.logisim.comp.ComponentFactory;
+import com.cburch.logisim.data.Attribute;
+import com.cburch.logisim.data.AttributeSet;
+import com.cburch.logisim.data.AttributeSets;
+import com.cburch.logisim.data.Location;
+import com.cburch.logisim.file.LogisimFile;
+import com.cburch.logisim.tools.AddTool;
+import com.cburch.logisim.tools.Library;
+import com.cburch.logisim.tools.Tool;
+
+/** Converts a clipboard snapshot to and from text, one line for each
+ * wire, component and attribute, with tab-separated fields:
+ * <pre>
+ * logisim-clipboard	1
+ * w	x0	y0	x1	y1
+ * c	library	name	x	y
+ * a	attribute	value
+ * </pre>
+ * Attribute lines follow the component that they belong to, and give
+ * each value that a file would save. Tabs, newlines
+ * and backslashes within fields are escaped with backslashes. Components
+ * are found by library and name in the file into which they are pasted,
+ * so a snapshot can move between projects and between programs. */
+class ClipboardText {
+	static final String HEADER = "logisim-clipboard\t1";
+
+	private ClipboardText() { }
+
+	static boolean isSnapshot(String text) {
+		return text.startsWith(HEADER);
+	}
+
+	static String write(Clipboard clip) {
+		StringBuilder ret = new StringBuilder();
+		ret.append(HEADER).append('\n');
+		int[] wires = clip.getWireEnds();
+		for (int i = 0; i < wires.length; i += 4) {
+			writeWire(ret, "w", wires[i], wires[i + 1], wires[i + 2], wires[i + 3]);
+		}
+
+		List<ComponentFactory> factories = clip.getFactories();
+		for (int i = 0, n = factories.size(); i < n; i++) {
+			ComponentFactory factory = factories.get(i);
+			writeComponent(ret, "c", clip.getLibraryName(factory), factory,
+					clip.getLocation(i), clip.getAttributeSet(i));
+		}
+		return ret.toString();
+	}
+
+	static void writeWire(StringBuilder dest, String tag, int x0, int y0,
+			int x1, int y1) {
+		dest.append(tag).append('\t').append(x0).append('\t').append(y0)
+			.append('\t').append(x1).append('\t').append(y1).append('\n');
+	}
+
+	/** Writes a component's line, followed by a line for each of its
+	 * attributes unless attrs is null. */
+	static void writeComponent(StringBuilder dest, String tag, String libName,
+			ComponentFactory factory, Location loc, AttributeSet attrs) {
+		dest.append(tag).append('\t');
+		escape(dest, libName == null ? "" : libName);
+		dest.append('\t');
+		escape(dest, factory.getName());
+		dest.append('\t').append(loc.getX())
+			.append('\t').append(loc.getY()).append('\n');
+
+		if (attrs == null) return;
+		for (Attribute<?> attrBase : attrs.getAttributes()) {
+			@SuppressWarnings("unchecked")
+			Attribute<Object> attr = (Attribute<Object>) attrBase;
+			Object val = attrs.getValue(attr);
+			if (val == null || !attrs.isToSave(attr)) continue;
+			dest.append("a\t");
+			escape(dest, attr.getName());
+			dest.append('\t');
+			escape(dest, attr.toStandardString(val));
+			dest.append('\n');
+		}
+	}
+
+	/** Reads a snapshot from text, finding its components' factories in
+	 * file. Lines that cannot be read are skipped, as are the attributes
+	 * of a component whose factory is not found. */
+	static Clipboard parse(String text, LogisimFile file) {
+		ArrayList<Integer> wires = new ArrayList<Integer>();
+		ArrayList<ComponentFactory> factories = new ArrayList<ComponentFactory>();
+		ArrayList<Integer> locs = new ArrayList<Integer>();
+		ArrayList<AttributeSet> attrs = new ArrayList<AttributeSet>();
+		ArrayList<String> missing = new ArrayList<String>();
+		HashMap<String,ComponentFactory> found = new HashMap<String,ComponentFactory>();
+		AttributeSet curAttrs = null;
+		HashMap<String,String> curValues = new HashMap<String,String>();
+
+		String[] lines = text.split("\n");
+		for (int i = 1; i < lines.length; i++) {
+			String line = lines[i];
+			if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+			String[] fields = line.split("\t", -1);
+			if (!fields[0].equals("a") && curAttrs != null) {
+				setAttributes(curAttrs, curValues);
+				curAttrs = null;
+			}
+			try {
+				if (fields[0].equals("w") && fields.length == 5) {
+					for (int j = 1; j < 5; j++) {
+						wires.add(Integer.valueOf(fields[j]));
+					}
+				} else if (fields[0].equals("c") && fields.length == 5) {
+					String libName = unescape(fields[1]);
+					String name = unescape(fields[2]);
+					Integer x = Integer.valueOf(fields[3]);
+					Integer y = Integer.valueOf(fields[4]);
+					String key = libName + "\t" + name;
+					ComponentFactory factory;
+					if (found.containsKey(key)) {
+						factory = found.get(key);
+					} else {
+						factory = findFactory(file, libName, name);
+						found.put(key, factory);
+					}
+					if (factory == null) {
+						missing.add(name);
+						curAttrs = null;
+					} else {
+						curAttrs = factory.createAttributeSet();
+						curValues.clear();
+						factories.add(factory);
+						locs.add(x);
+						locs.add(y);
+						attrs.add(curAttrs);
+					}
+				} else if (fields[0].equals("a") && fields.length == 3) {
+					if (curAttrs != null) {
+						curValues.put(unescape(fields[1]), unescape(fields[2]));
+					}
+				}
+			} catch (NumberFormatException e) {
+				curAttrs = null;
+			}
+		}
+		if (curAttrs != null) setAttributes(curAttrs, curValues);
+
+		return new Clipboard(toArray(wires),
+				factories.toArray(new ComponentFactory[factories.size()]),
+				toArray(locs), attrs.toArray(new AttributeSet[attrs.size()]),
+				missing);
+	}
+
+	// sets values in the order of the attribute list, fetching the list
+	// again each time since a value may change it, as XmlReader does
+	private static void setAttributes(AttributeSet attrs, Map<String,String> values) {
+		for (int i = 0; true; i++) {
+			List<Attribute<?>> attrList = attrs.getAttributes();
+			if (i >= attrList.size()) break;
+			@SuppressWarnings("unchecked")
+			Attribute<Object> attr = (Attribute<Object>) attrList.get(i);
+			String value = values.get(attr.getName());
+			if (value == null || attrs.isReadOnly(attr)) continue;
+			try {
+				attrs.setValue(attr, attr.parse(value));
+			} catch (RuntimeException e) {
+				// leave the default, as when a file's attribute cannot be read
+			}
+		}
+		AttributeSets.intern(attrs);
+	}
+
+	// looks in the named library first, then in the file's own circuits
+	// and its other libraries
+	static ComponentFactory findFactory(LogisimFile file,
+			String libName, String name) {
+		ArrayList<Library> libs = new ArrayList<Library>();
+		if (libName.equals("")) {
+			libs.add(file);
+		} else {
+			for (Library lib : file.getLibraries()) {
+				if (lib.getName().equals(libName)) libs.add(lib);
+			}
+			libs.add(file);
+		}
+		libs.addAll(file.getLibraries());
+		for (Library lib : libs) {
+			for (Tool tool : lib.getTools()) {
+				if (tool instanceof AddTool && name.equals(tool.getName())) {
+					return ((AddTool) tool).getFactory(true);
+				}
+			}
+		}
+		return null;
+	}
+
+	private static int[] toArray(List<Integer> values) {
+		int[] ret = new int[values.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = values.get(i).intValue();
+		}
+		return ret;
+	}
+
+	static void escape(StringBuilder dest, String value) {
+		for (int i = 0, n = value.length(); i < n; i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\': dest.append("\\\\"); break;
+			case '\t': dest.append("\\t"); break;
+			case '\n': dest.append("\\n"); break;
+			case '\r': dest.append("\\r"); break;
+			default: dest.append(c);
+			}
+		}
+	}
+
+	static String unescape(String value) {
+		if (value.indexOf('\\') < 0) return value;
+		StringBuilder ret = new StringBuilder(value.length());
+		for (int i = 0, n = value.length(); i < n; i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < n) {
+				i++;
+				c = value.charAt(i);
+				switch (c) {
+				case 't': ret.append('\t'); break;
+				case 'n': ret.append('\n'); break;
+				case 'r': ret.append('\r'); break;
+				default: ret.append(c);
+				}
+			} else {
+				ret.append(c);
+			}
+		}
+		return ret.toString();
+	}
+}
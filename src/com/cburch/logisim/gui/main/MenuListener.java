@@ -199,7 +199,8 @@ class MenuListener {
 			} else if (src == LogisimMenuBar.ANALYZE_CIRCUIT) {
 				ProjectCircuitActions.doAnalyze(proj, cur);
 			} else if (src == LogisimMenuBar.CIRCUIT_STATS) {
-				StatisticsDialog.show(frame, proj.getLogisimFile(), cur);
+				StatisticsDialog.show(frame, proj.getLogisimFile(), cur,
+						proj.getSimulator());
 			}
 		}
 		
@@ -0,0 +1,666 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.gui.main;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitEvent;
+import com.cburch.logisim.circuit.CircuitListener;
+import com.cburch.logisim.circuit.CircuitMutation;
+import com.cburch.logisim.circuit.CircuitMutator;
+import com.cburch.logisim.circuit.CircuitTransaction;
+import com.cburch.logisim.circuit.CircuitTransactionResult;
+import com.cburch.logisim.circuit.ReplacementMap;
+import com.cburch.logisim.circuit.SubcircuitFactory;
+import com.cburch.logisim.circuit.Wire;
+import com.cburch.logisim.comp.Component;
+import com.cburch.logisim.comp.ComponentFactory;
+import com.cburch.logisim.data.Location;
+import com.cburch.logisim.file.LibraryEvent;
+import com.cburch.logisim.file.LibraryListener;
+import com.cburch.logisim.file.LoadFailedException;
+import com.cburch.logisim.file.Loader;
+import com.cburch.logisim.file.LogisimFile;
+import com.cburch.logisim.proj.Action;
+import com.cburch.logisim.proj.Project;
+import com.cburch.logisim.proj.ProjectEvent;
+import com.cburch.logisim.proj.ProjectListener;
+import com.cburch.logisim.tools.AddTool;
+
+/** Keeps what is needed to recover the unsaved changes to a project
+ * should Logisim not close normally. Each transaction on the project's
+ * circuits is appended to a journal beside the project's file, as lines
+ * much like those of ClipboardText:
+ * <pre>
+ * logisim-journal	1
+ * t	circuit
+ * -w	x0	y0	x1	y1
+ * -c	library	name	x	y
+ * w	x0	y0	x1	y1
+ * c	library	name	x	y
+ * a	attribute	value
+ * x
+ * </pre>
+ * Each transaction's removals precede its additions, and a component
+ * whose attributes changed is removed and added again. A removed
+ * component is followed by the attributes it had, which tell it apart
+ * from others stacked at its location. A change that the
+ * journal cannot describe, such as adding a library, is marked by an x
+ * line, past which recovery does not go. Once the user pauses after such
+ * a change or after many transactions, the whole project is written to a
+ * recovery copy, and the journal starts again from there.
+ *
+ * <p>The journal is kept on the event thread, which takes a snapshot of
+ * the project for each copy; the files are written by a background
+ * thread, and both are deleted once the project is saved or closed. A
+ * project that has never been saved keeps no journal. */
+public class RecoveryJournal {
+	private static final String HEADER = "logisim-journal\t1";
+	private static final String COPY_SUFFIX = ".autosave";
+	private static final String JOURNAL_SUFFIX = ".journal";
+	// how long the user must pause before the copy is rewritten, in ms
+	private static final int COPY_DELAY = 10000;
+	// how many transactions the journal holds before the copy is rewritten
+	private static final int COPY_RECORDS = 2000;
+
+	private static ExecutorService writer = null;
+
+	private static synchronized ExecutorService getWriter() {
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread ret = new Thread(r, "RecoveryJournal");
+					ret.setDaemon(true);
+					return ret;
+				}
+			});
+		}
+		return writer;
+	}
+
+	static File getCopyFile(File file) {
+		return new File(file.getPath() + COPY_SUFFIX);
+	}
+
+	static File getJournalFile(File file) {
+		return new File(file.getPath() + JOURNAL_SUFFIX);
+	}
+
+	/** Offers to recover the changes to f that were journaled but never
+	 * saved, if Logisim did not close it normally. Returns the recovered
+	 * file, to be marked with Project.setFileAsRecovered, or null if there
+	 * is nothing to recover or the user declines, in which case the
+	 * recovery files are deleted. */
+	public static LogisimFile openRecovered(java.awt.Component parent,
+			Loader loader, File f) throws LoadFailedException {
+		File copy = getCopyFile(f);
+		File journal = getJournalFile(f);
+		if (!copy.exists() && !journal.exists()) return null;
+
+		String[] options = {
+				Strings.get("recoverRecoverOption"),
+				Strings.get("recoverDiscardOption"),
+			};
+		int choice = JOptionPane.showOptionDialog(parent,
+				Strings.get("recoverMessage", f.getName()),
+				Strings.get("recoverTitle"), 0,
+				JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+		if (choice != 0) {
+			copy.delete();
+			journal.delete();
+			return null;
+		}
+
+		LogisimFile ret;
+		if (copy.exists()) {
+			ret = loader.openLogisimFile(f, copy);
+		} else {
+			ret = loader.openLogisimFile(f);
+		}
+		if (ret != null && journal.exists()) {
+			try {
+				replay(ret, journal);
+			} catch (IOException e) {
+				// keep whatever was replayed before the journal failed
+			}
+		}
+		return ret;
+	}
+
+	// applies the journal's transactions to file, stopping at an x line
+	// or at a line that cannot be applied
+	private static void replay(LogisimFile file, File journal) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(journal), "UTF-8"));
+		try {
+			if (!HEADER.equals(in.readLine())) return;
+			Replay xn = null;
+			while (true) {
+				String line = in.readLine();
+				if (line == null || line.equals("x") || line.startsWith("t\t")) {
+					if (xn != null && !xn.execute()) return;
+					xn = null;
+					if (line == null || line.equals("x")) return;
+					Circuit circuit = findCircuit(file,
+							ClipboardText.unescape(line.substring(2)));
+					if (circuit == null) return;
+					xn = new Replay(file, circuit);
+				} else if (xn == null || !xn.read(line)) {
+					return;
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Circuit findCircuit(LogisimFile file, String name) {
+		for (Circuit circuit : file.getCircuits()) {
+			if (circuit.getName().equals(name)) return circuit;
+		}
+		return null;
+	}
+
+	// one transaction read from the journal
+	private static class Replay {
+		private LogisimFile file;
+		private Circuit circuit;
+		private ArrayList<Component> removals = new ArrayList<Component>();
+		private HashMap<Location,ArrayList<Component>> byLocation = null;
+		private StringBuilder additions = new StringBuilder();
+		// a component to remove, until its attributes have been read
+		private StringBuilder removal = null;
+		private String removalLibrary;
+		private ComponentFactory removalFactory;
+		private Location removalLocation;
+
+		Replay(LogisimFile file, Circuit circuit) {
+			this.file = file;
+			this.circuit = circuit;
+			additions.append(ClipboardText.HEADER).append('\n');
+		}
+
+		// returns false if the line cannot be applied
+		boolean read(String line) {
+			if (removal != null) {
+				if (line.startsWith("a\t")) {
+					removal.append(line).append('\n');
+					return true;
+				} else if (!finishRemoval()) {
+					return false;
+				}
+			}
+			String[] fields = line.split("\t", -1);
+			try {
+				if (fields[0].equals("-w") && fields.length == 5) {
+					Location e0 = Location.create(Integer.parseInt(fields[1]),
+							Integer.parseInt(fields[2]));
+					Location e1 = Location.create(Integer.parseInt(fields[3]),
+							Integer.parseInt(fields[4]));
+					// a wire is equal to any other with the same ends
+					removals.add(Wire.create(e0, e1));
+					return true;
+				} else if (fields[0].equals("-c") && fields.length == 5) {
+					removalLibrary = ClipboardText.unescape(fields[1]);
+					removalFactory = ClipboardText.findFactory(file,
+							removalLibrary, ClipboardText.unescape(fields[2]));
+					removalLocation = Location.create(Integer.parseInt(fields[3]),
+							Integer.parseInt(fields[4]));
+					if (removalFactory == null) return false;
+					removal = new StringBuilder();
+					removal.append(line).append('\n');
+					return true;
+				} else {
+					additions.append(line).append('\n');
+					return true;
+				}
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		private boolean finishRemoval() {
+			Component comp = findComponent(removalFactory, removalLocation);
+			removal = null;
+			if (comp == null) return false;
+			removals.add(comp);
+			return true;
+		}
+
+		// finds the component to remove among those not yet removed; not
+		// all components have an end at their location, so the circuit is
+		// indexed by location. Of components stacked at one location by
+		// one factory, the one whose attributes are those recorded is
+		// taken; any that match are alike, so it does not matter which.
+		private Component findComponent(ComponentFactory factory, Location loc) {
+			if (byLocation == null) {
+				byLocation = new HashMap<Location,ArrayList<Component>>();
+				for (Component comp : circuit.getNonWires()) {
+					ArrayList<Component> comps = byLocation.get(comp.getLocation());
+					if (comps == null) {
+						comps = new ArrayList<Component>(1);
+						byLocation.put(comp.getLocation(), comps);
+					}
+					comps.add(comp);
+				}
+			}
+			ArrayList<Component> comps = byLocation.get(loc);
+			if (comps == null) return null;
+			String recorded = removal.toString();
+			int found = -1;
+			int count = 0;
+			for (int i = 0; i < comps.size(); i++) {
+				Component comp = comps.get(i);
+				if (comp.getFactory() != factory) continue;
+				StringBuilder text = new StringBuilder();
+				ClipboardText.writeComponent(text, "-c", removalLibrary, factory,
+						loc, comp.getAttributeSet());
+				if (text.toString().equals(recorded)) return comps.remove(i);
+				found = i;
+				count++;
+			}
+			// attributes read differently now still identify a lone component
+			return count == 1 ? comps.remove(found) : null;
+		}
+
+		// returns false, changing nothing, if a removal cannot be found
+		boolean execute() {
+			if (removal != null && !finishRemoval()) return false;
+			Clipboard clip = ClipboardText.parse(additions.toString(), file);
+			Map<ComponentFactory,ComponentFactory> none = Collections.emptyMap();
+			CircuitMutation xn = new CircuitMutation(circuit);
+			xn.removeAll(removals);
+			xn.addAll(clip.createComponents(none));
+			xn.execute();
+			return true;
+		}
+	}
+
+	private class MyListener implements ProjectListener, LibraryListener,
+			CircuitListener, ActionListener {
+		public void projectChanged(ProjectEvent event) {
+			int action = event.getAction();
+			if (action == ProjectEvent.ACTION_SET_FILE) {
+				setFile((LogisimFile) event.getData());
+			} else if (action == ProjectEvent.ACTION_START
+					|| action == ProjectEvent.UNDO_START) {
+				actionStart = transactions;
+			} else if (action == ProjectEvent.ACTION_COMPLETE
+					|| action == ProjectEvent.UNDO_COMPLETE) {
+				Action act = (Action) event.getData();
+				if (act.isModification() && transactions == actionStart) {
+					invalidate();
+				}
+				if (invalid || records >= COPY_RECORDS) timer.restart();
+			}
+		}
+
+		public void libraryChanged(LibraryEvent event) {
+			int action = event.getAction();
+			Object data = event.getData();
+			if (action == LibraryEvent.DIRTY_STATE) {
+				if (!((Boolean) data).booleanValue()) reset();
+			} else if (action == LibraryEvent.ADD_TOOL) {
+				Circuit circuit = getCircuit(data);
+				if (circuit != null) circuit.addCircuitListener(this);
+				invalidate();
+			} else if (action == LibraryEvent.REMOVE_TOOL) {
+				Circuit circuit = getCircuit(data);
+				if (circuit != null) circuit.removeCircuitListener(this);
+				invalidate();
+			} else if (action != LibraryEvent.SET_NAME) {
+				libNames.clear();
+				invalidate();
+			}
+		}
+
+		// renaming a circuit is an action with no transaction to record,
+		// so it too leads to a copy
+		public void circuitChanged(CircuitEvent event) {
+			if (event.getAction() == CircuitEvent.TRANSACTION_DONE) {
+				record(event.getCircuit(), event.getResult());
+			}
+		}
+
+		public void actionPerformed(ActionEvent event) {
+			writeCopy();
+		}
+	}
+
+	private static Circuit getCircuit(Object tool) {
+		if (!(tool instanceof AddTool)) return null;
+		Object factory = ((AddTool) tool).getFactory();
+		if (!(factory instanceof SubcircuitFactory)) return null;
+		return ((SubcircuitFactory) factory).getSubcircuit();
+	}
+
+	private Project proj;
+	private MyListener myListener = new MyListener();
+	private Timer timer;
+	private LogisimFile file = null;
+	private File copyFile = null; // null if the file is not journaled
+	private File journalFile = null;
+	private HashMap<ComponentFactory,String> libNames
+		= new HashMap<ComponentFactory,String>();
+	private int records = 0; // transactions journaled since the copy
+	private long transactions = 0; // transactions journaled in all
+	private long actionStart = 0; // transactions when the current action began
+	private boolean invalid = false; // whether the journal has an x line
+
+	// Records are numbered as they are made, so that the writer can drop
+	// those that a copy or a save has already covered. The fields above
+	// are touched only on the event thread; those below seq only by the
+	// writer, and while holding fileLock, except as the journal closes.
+	private long seq = 0;
+	private Object fileLock = new Object();
+	private long baseSeq = 0; // records up to this are not to be written
+	private OutputStream out = null;
+	private boolean closed = false;
+
+	public RecoveryJournal(Project proj) {
+		this.proj = proj;
+		this.timer = new Timer(COPY_DELAY, myListener);
+		timer.setRepeats(false);
+		proj.addProjectListener(myListener);
+		setFile(proj.getLogisimFile());
+		// a recovered file differs from its saved version from the outset
+		if (proj.isFileDirty()) recovered();
+	}
+
+	/** Stops journaling and deletes the recovery files, as when the
+	 * project is closed. */
+	public void close() {
+		File copy = copyFile;
+		File journal = journalFile;
+		proj.removeProjectListener(myListener);
+		setFile(null);
+		// deleted now rather than by the writer, which may not get the
+		// chance before Logisim exits
+		synchronized (fileLock) {
+			closed = true;
+			closeJournal();
+			if (copy != null) {
+				copy.delete();
+				journal.delete();
+			}
+		}
+	}
+
+	/** Writes a copy of the project at once, as for a file that has
+	 * just been recovered and not yet saved. */
+	public void recovered() {
+		invalidate();
+		writeCopy();
+	}
+
+	private void setFile(LogisimFile value) {
+		if (file != null) {
+			file.removeLibraryListener(myListener);
+			for (Circuit circuit : file.getCircuits()) {
+				circuit.removeCircuitListener(myListener);
+			}
+		}
+		file = value;
+		libNames.clear();
+		reset();
+		if (file != null) {
+			file.addLibraryListener(myListener);
+			for (Circuit circuit : file.getCircuits()) {
+				circuit.addCircuitListener(myListener);
+			}
+		}
+	}
+
+	// A circuit's contents being created from its file, perhaps on another
+	// thread, are nothing to record. Other transactions off the event thread
+	// are rare, and the journal's state is not theirs to change, so they
+	// lead to a copy instead.
+	private void record(Circuit circuit, CircuitTransactionResult result) {
+		if (circuit.hasDeferredContents()) return;
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					invalidate();
+					if (invalid) timer.restart();
+				}
+			});
+			return;
+		}
+		if (journalFile == null) return;
+		ReplacementMap repl = result.getReplacementMap(circuit);
+		Collection<? extends Component> removals = repl.getRemovals();
+		Collection<? extends Component> additions = repl.getAdditions();
+		ArrayList<Component> changed = new ArrayList<Component>();
+		for (Component comp : result.getReconfiguredComponents(circuit)) {
+			if (!removals.contains(comp) && !additions.contains(comp)) {
+				changed.add(comp);
+			}
+		}
+		if (removals.isEmpty() && additions.isEmpty() && changed.isEmpty()) {
+			return;
+		}
+
+		StringBuilder text = new StringBuilder();
+		text.append("t\t");
+		ClipboardText.escape(text, circuit.getName());
+		text.append('\n');
+		for (Component comp : removals) writeRemoval(text, circuit, result, comp);
+		for (Component comp : changed) writeRemoval(text, circuit, result, comp);
+		for (Component comp : additions) writeAddition(text, comp);
+		for (Component comp : changed) writeAddition(text, comp);
+		records++;
+		transactions++;
+		append(text.toString());
+	}
+
+	private void writeRemoval(StringBuilder text, Circuit circuit,
+			CircuitTransactionResult result, Component comp) {
+		if (comp instanceof Wire) {
+			Wire wire = (Wire) comp;
+			ClipboardText.writeWire(text, "-w",
+					wire.getEnd0().getX(), wire.getEnd0().getY(),
+					wire.getEnd1().getX(), wire.getEnd1().getY());
+		} else {
+			ComponentFactory factory = comp.getFactory();
+			ClipboardText.writeComponent(text, "-c", getLibraryName(factory),
+					factory, comp.getLocation(),
+					result.getOriginalAttributeSet(circuit, comp));
+		}
+	}
+
+	private void writeAddition(StringBuilder text, Component comp) {
+		if (comp instanceof Wire) {
+			Wire wire = (Wire) comp;
+			ClipboardText.writeWire(text, "w",
+					wire.getEnd0().getX(), wire.getEnd0().getY(),
+					wire.getEnd1().getX(), wire.getEnd1().getY());
+		} else {
+			ComponentFactory factory = comp.getFactory();
+			ClipboardText.writeComponent(text, "c", getLibraryName(factory),
+					factory, comp.getLocation(), comp.getAttributeSet());
+		}
+	}
+
+	private String getLibraryName(ComponentFactory factory) {
+		if (libNames.containsKey(factory)) return libNames.get(factory);
+		String ret = Clipboard.findLibraryName(file, factory);
+		libNames.put(factory, ret);
+		return ret;
+	}
+
+	// marks a change that the journal cannot describe, so that a copy
+	// of the whole project is written at the next pause
+	private void invalidate() {
+		if (journalFile == null || invalid) return;
+		invalid = true;
+		append("x\n");
+	}
+
+	// the file matches its saved version, so there is nothing to recover;
+	// the file may also have been saved under a new name
+	private void reset() {
+		records = 0;
+		invalid = false;
+		timer.stop();
+		if (journalFile != null) {
+			final long resetSeq = ++seq;
+			final File copy = copyFile;
+			final File journal = journalFile;
+			getWriter().submit(new Runnable() {
+				public void run() {
+					synchronized (fileLock) {
+						baseSeq = Math.max(baseSeq, resetSeq);
+						closeJournal();
+						copy.delete();
+						journal.delete();
+					}
+				}
+			});
+		}
+		File dest = file == null ? null : file.getLoader().getMainFile();
+		copyFile = dest == null ? null : getCopyFile(dest);
+		journalFile = dest == null ? null : getJournalFile(dest);
+	}
+
+	private void append(final String text) {
+		final long recordSeq = ++seq;
+		final File journal = journalFile;
+		getWriter().submit(new Runnable() {
+			public void run() {
+				synchronized (fileLock) {
+					if (closed || recordSeq <= baseSeq) return;
+					try {
+						if (out == null) {
+							boolean fresh = !journal.exists();
+							out = new FileOutputStream(journal, true);
+							if (fresh) out.write((HEADER + "\n").getBytes("UTF-8"));
+						}
+						out.write(text.getBytes("UTF-8"));
+						out.flush();
+					} catch (IOException e) {
+						closeJournal();
+						copyFailed();
+					}
+				}
+			}
+		});
+	}
+
+	private void writeCopy() {
+		if (copyFile == null || records == 0 && !invalid) return;
+		LogisimFile.Snapshot snapshot = takeSnapshot(file);
+		if (snapshot == null) {
+			invalid = true;
+			timer.restart();
+			return;
+		}
+		records = 0;
+		invalid = false;
+		final LogisimFile.Snapshot source = snapshot;
+		final long copySeq = seq; // every record so far is in the copy
+		final File copy = copyFile;
+		final File journal = journalFile;
+		getWriter().submit(new Runnable() {
+			public void run() {
+				File temp = new File(copy.getPath() + ".tmp");
+				boolean written;
+				try {
+					source.write(temp);
+					written = true;
+				} catch (IOException e) {
+					written = false;
+				}
+				synchronized (fileLock) {
+					if (!written || closed) {
+						temp.delete();
+						if (!written) copyFailed();
+						return;
+					}
+					closeJournal();
+					journal.delete();
+					if (!temp.renameTo(copy)) {
+						copy.delete();
+						if (!temp.renameTo(copy)) {
+							temp.delete();
+							copyFailed();
+							return;
+						}
+					}
+					baseSeq = Math.max(baseSeq, copySeq);
+				}
+			}
+		});
+	}
+
+	// copies the file while no circuit may change, returning null if it
+	// cannot be copied. Circuits whose contents have yet to be created are
+	// left so, and copied from the text read for them.
+	private static LogisimFile.Snapshot takeSnapshot(final LogisimFile source) {
+		final LogisimFile.Snapshot[] ret = { null };
+		CircuitTransaction xn = new CircuitTransaction() {
+			@Override
+			protected Map<Circuit,Integer> getAccessedCircuits() {
+				HashMap<Circuit,Integer> accessed = new HashMap<Circuit,Integer>();
+				for (Circuit circuit : source.getCircuits()) {
+					if (!circuit.hasDeferredContents()) {
+						accessed.put(circuit, READ_ONLY);
+					}
+				}
+				return accessed;
+			}
+
+			@Override
+			protected void run(CircuitMutator mutator) {
+				try {
+					ret[0] = source.getLoader().snapshot(source);
+				} catch (IOException e) {
+					ret[0] = null;
+				}
+			}
+		};
+		xn.execute();
+		return ret[0];
+	}
+
+	// tries again at the next pause
+	private void copyFailed() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (journalFile != null) {
+					invalid = true;
+					timer.restart();
+				}
+			}
+		});
+	}
+
+	private void closeJournal() {
+		if (out == null) return;
+		try {
+			out.close();
+		} catch (IOException e) { }
+		out = null;
+	}
+}
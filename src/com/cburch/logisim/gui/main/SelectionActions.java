@@ -4,11 +4,11 @@
 package com.cburch.logisim.gui.main;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
@@ -20,11 +20,8 @@ import com.cburch.logisim.circuit.CircuitTransaction;
 import com.cburch.logisim.circuit.CircuitTransactionResult;
 import com.cburch.logisim.circuit.ReplacementMap;
 import com.cburch.logisim.circuit.SubcircuitFactory;
-import com.cburch.logisim.circuit.Wire;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentFactory;
-import com.cburch.logisim.data.AttributeSet;
-import com.cburch.logisim.data.Location;
 import com.cburch.logisim.file.LogisimFile;
 import com.cburch.logisim.proj.Action;
 import com.cburch.logisim.proj.JoinedAction;
@@ -61,9 +58,7 @@ public class SelectionActions {
 			}
 		}
 		if (toDrop.size() == toIgnore.size()) {
-			for (Component comp : toIgnore) {
-				sel.remove(null, comp);
-			}
+			sel.removeAll(null, toIgnore);
 			return null;
 		} else {
 			int numDrop = toDrop.size() - toIgnore.size();
@@ -92,8 +87,19 @@ public class SelectionActions {
 	}
 
 	public static Action pasteMaybe(Project proj, Selection sel) {
-		HashMap<Component, Component> replacements = getReplacementMap(proj);
-		return new Paste(sel, replacements);
+		Clipboard clip = Clipboard.getForPaste(proj.getLogisimFile());
+		if (clip == null) {
+			// Paste was enabled by text that turned out not to be a snapshot
+			JOptionPane.showMessageDialog(proj.getFrame(),
+					Strings.get("pasteNoSnapshotMessage"),
+					Strings.get("pasteNoSnapshotTitle"),
+					JOptionPane.INFORMATION_MESSAGE);
+			return null;
+		}
+		HashMap<ComponentFactory, ComponentFactory> replacements
+			= getReplacementMap(proj, clip);
+		if (replacements == null) return null;
+		return new Paste(sel, clip, replacements);
 	}
 	
 	public static Action translate(Selection sel, int dx, int dy, ReplacementMap repl) {
@@ -125,9 +131,7 @@ public class SelectionActions {
 		public void doIt(Project proj) {
 			Circuit circuit = proj.getCurrentCircuit();
 			CircuitMutation xn = new CircuitMutation(circuit);
-			for (Component comp : drops) {
-				sel.remove(xn, comp);
-			}
+			sel.removeAll(xn, Arrays.asList(drops));
 			CircuitTransactionResult result = xn.execute();
 			xnReverse = result.getReverseTransaction();
 		}
@@ -137,6 +141,11 @@ public class SelectionActions {
 			xnReverse.execute();
 		}
 
+		@Override
+		public long getMemorySize() {
+			return super.getMemorySize() + xnReverse.getMemorySize();
+		}
+
 		@Override
 		public boolean shouldAppendTo(Action other) {
 			Action last;
@@ -185,6 +194,11 @@ public class SelectionActions {
 			xnReverse.execute();
 		}
 
+		@Override
+		public long getMemorySize() {
+			return super.getMemorySize() + xnReverse.getMemorySize();
+		}
+
 		@Override
 		public boolean shouldAppendTo(Action other) {
 			Action last;
@@ -227,6 +241,11 @@ public class SelectionActions {
 		public void undo(Project proj) {
 			xnReverse.execute();
 		}
+
+		@Override
+		public long getMemorySize() {
+			return super.getMemorySize() + xnReverse.getMemorySize();
+		}
 	}
 
 	private static class Duplicate extends Action {
@@ -258,6 +277,11 @@ public class SelectionActions {
 		public void undo(Project proj) {
 			xnReverse.execute();
 		}
+
+		@Override
+		public long getMemorySize() {
+			return super.getMemorySize() + xnReverse.getMemorySize();
+		}
 	}
 
 	private static class Cut extends Action {
@@ -285,6 +309,11 @@ public class SelectionActions {
 			second.undo(proj);
 			first.undo(proj);
 		}
+
+		@Override
+		public long getMemorySize() {
+			return first.getMemorySize() + second.getMemorySize();
+		}
 	}
 
 	private static class Copy extends Action {
@@ -315,9 +344,13 @@ public class SelectionActions {
 		}
 	}
 	
-	private static HashMap<Component, Component> getReplacementMap(Project proj) {
-		HashMap<Component, Component> replMap;
-		replMap = new HashMap<Component, Component>();
+	// maps each factory in the clipboard that is not in the project's
+	// libraries to the one that replaces it, or to null to leave it out;
+	// returns null if the user cancels
+	private static HashMap<ComponentFactory, ComponentFactory> getReplacementMap(
+			Project proj, Clipboard clip) {
+		HashMap<ComponentFactory, ComponentFactory> replMap;
+		replMap = new HashMap<ComponentFactory, ComponentFactory>();
 		
 		LogisimFile file = proj.getLogisimFile();
 		ArrayList<Library> libs = new ArrayList<Library>();
@@ -325,24 +358,29 @@ public class SelectionActions {
 		libs.addAll(file.getLibraries());
 		
 		ArrayList<String> dropped = null; 
-		Clipboard clip = Clipboard.get();
-		Collection<Component> comps = clip.getComponents();
-		HashMap<ComponentFactory, ComponentFactory> factoryReplacements;
-		factoryReplacements = new HashMap<ComponentFactory, ComponentFactory>();
-		for (Component comp : comps) {
-			if (comp instanceof Wire) continue;
+		if (!clip.getMissing().isEmpty()) {
+			dropped = new ArrayList<String>(clip.getMissing());
+		}
+		// each factory is looked up once, however many components use it
+		HashSet<ComponentFactory> found = new HashSet<ComponentFactory>();
+		HashSet<ComponentFactory> notFound = new HashSet<ComponentFactory>();
+		for (ComponentFactory compFactory : clip.getFactories()) {
+			if (found.contains(compFactory) || replMap.containsKey(compFactory)) {
+				if (notFound.contains(compFactory)) {
+					dropped.add(compFactory.getDisplayName());
+				}
+				continue;
+			}
 			
-			ComponentFactory compFactory = comp.getFactory();
 			ComponentFactory copyFactory = findComponentFactory(compFactory, libs, false);
-			if (factoryReplacements.containsKey(compFactory)) {
-				copyFactory = factoryReplacements.get(compFactory);
-			} else if (copyFactory == null) {
+			if (copyFactory == null) {
 				ComponentFactory candidate = findComponentFactory(compFactory, libs, true);
 				if (candidate == null) {
 					if (dropped == null) {
 						dropped = new ArrayList<String>();
 					}
 					dropped.add(compFactory.getDisplayName());
+					notFound.add(compFactory);
 				} else {
 					String msg = Strings.get("pasteCloneQuery",
 							compFactory.getName());
@@ -359,17 +397,13 @@ public class SelectionActions {
 					} else {
 						return null;
 					}
-					factoryReplacements.put(compFactory, copyFactory);
 				}
 			}
 			
-			if (copyFactory == null) {
-				replMap.put(comp, null);
-			} else if (copyFactory != compFactory) {
-				Location copyLoc = comp.getLocation();
-				AttributeSet copyAttrs = (AttributeSet) comp.getAttributeSet().clone();
-				Component copy = copyFactory.createComponent(copyLoc, copyAttrs);
-				replMap.put(comp, copy);
+			if (copyFactory == compFactory) {
+				found.add(compFactory);
+			} else {
+				replMap.put(compFactory, copyFactory);
 			}
 		}
 		
@@ -439,11 +473,14 @@ public class SelectionActions {
 		private Selection sel;
 		private CircuitTransaction xnReverse;
 		private SelectionSave after;
-		private HashMap<Component,Component> componentReplacements; 
+		private Clipboard clip;
+		private HashMap<ComponentFactory,ComponentFactory> factoryReplacements; 
 
-		Paste(Selection sel, HashMap<Component, Component> replacements) {
+		Paste(Selection sel, Clipboard clip,
+				HashMap<ComponentFactory, ComponentFactory> replacements) {
 			this.sel = sel;
-			this.componentReplacements = replacements;
+			this.clip = clip;
+			this.factoryReplacements = replacements;
 		}
 
 		@Override
@@ -453,11 +490,9 @@ public class SelectionActions {
 
 		@Override
 		public void doIt(Project proj) {
-			Clipboard clip = Clipboard.get();
 			Circuit circuit = proj.getCurrentCircuit();
 			CircuitMutation xn = new CircuitMutation(circuit);
-			Collection<Component> comps = clip.getComponents();
-			Collection<Component> toAdd = computeAdditions(comps);
+			Collection<Component> toAdd = clip.createComponents(factoryReplacements);
 			if (toAdd.size() > 0) {
 				sel.pasteHelper(xn, toAdd);
 				CircuitTransactionResult result = xn.execute();
@@ -468,29 +503,19 @@ public class SelectionActions {
 			}
 		}
 		
-		private Collection<Component> computeAdditions(Collection<Component> comps) {
-			HashMap<Component, Component> replMap = componentReplacements;
-			ArrayList<Component> toAdd = new ArrayList<Component>(comps.size());
-			for (Iterator<Component> it = comps.iterator(); it.hasNext(); ) {
-				Component comp = it.next();
-				if (replMap.containsKey(comp)) {
-					Component repl = replMap.get(comp);
-					if (repl != null) {
-						toAdd.add(repl);
-					}
-				} else {
-					toAdd.add(comp);
-				}
-			}
-			return toAdd;
-		}
-		
 		@Override
 		public void undo(Project proj) {
 			if (xnReverse != null) {
 				xnReverse.execute();
 			}
 		}
+
+		@Override
+		public long getMemorySize() {
+			long ret = super.getMemorySize();
+			if (xnReverse != null) ret += xnReverse.getMemorySize();
+			return ret;
+		}
 	}
 
 	private static class Translate extends Action {
@@ -533,6 +558,11 @@ public class SelectionActions {
 			xnReverse.execute();
 		}
 
+		@Override
+		public long getMemorySize() {
+			return super.getMemorySize() + xnReverse.getMemorySize();
+		}
+
 		@Override
 		public boolean shouldAppendTo(Action other) {
 			Action last;
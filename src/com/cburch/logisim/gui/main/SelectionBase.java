@@ -130,6 +130,24 @@ class SelectionBase {
 		}
 	}
 	
+	// removes each from selection, as remove does, but adds all the lifted
+	// ones to the circuit together and tells listeners once
+	void removeAll(CircuitMutation xn, Collection<Component> comps) {
+		boolean removed = false;
+		ArrayList<Component> dropped = new ArrayList<Component>();
+		for (Component comp : comps) {
+			if (selected.remove(comp)) removed = true;
+			if (lifted.contains(comp)) {
+				if (xn == null) throw new IllegalStateException("cannot remove");
+				lifted.remove(comp);
+				dropped.add(comp);
+				removed = true;
+			}
+		}
+		if (!dropped.isEmpty()) xn.addAll(dropped);
+		if (removed) fireSelectionChanged();
+	}
+	
 	void dropAll(CircuitMutation xn) {
 		if (!lifted.isEmpty()) {
 			xn.addAll(lifted);
@@ -166,13 +184,19 @@ class SelectionBase {
 	void duplicateHelper(CircuitMutation xn) {
 		HashSet<Component> oldSelected = new HashSet<Component>(selected);
 		oldSelected.addAll(lifted);
-		pasteHelper(xn, oldSelected);
+		clear(xn);
+		liftCopies(copyComponents(oldSelected, false));
 	}
 	
+	// lifts the given new components into the selection, moving them if
+	// they would land on existing ones; those that stay put are lifted
+	// as they are rather than copied
 	void pasteHelper(CircuitMutation xn, Collection<Component> comps) {
 		clear(xn);
+		liftCopies(copyComponents(comps, true));
+	}
 	
-		Map<Component,Component> newLifted = copyComponents(comps);
+	private void liftCopies(Map<Component,Component> newLifted) {
 		lifted.addAll(newLifted.values());
 		fireSelectionChanged();
 	}
@@ -187,12 +211,12 @@ class SelectionBase {
 	}
 
 	void translateHelper(CircuitMutation xn, int dx, int dy) {
-		Map<Component,Component> selectedAfter = copyComponents(selected, dx, dy);
+		Map<Component,Component> selectedAfter = copyComponents(selected, dx, dy, false);
 		for (Map.Entry<Component,Component> entry : selectedAfter.entrySet()) {
 			xn.replace(entry.getKey(), entry.getValue());
 		}
 		
-		Map<Component,Component> liftedAfter = copyComponents(lifted, dx, dy);
+		Map<Component,Component> liftedAfter = copyComponents(lifted, dx, dy, false);
 		lifted.clear();
 		for (Map.Entry<Component,Component> entry : liftedAfter.entrySet()) {
 			xn.add(entry.getValue());
@@ -262,7 +286,8 @@ class SelectionBase {
 		}
 	}
 	
-	private HashMap<Component,Component> copyComponents(Collection<Component> components) {
+	private HashMap<Component,Component> copyComponents(Collection<Component> components,
+			boolean reuse) {
 		// determine translation offset where we can legally place the clipboard
 		int dx;
 		int dy;
@@ -299,26 +324,31 @@ class SelectionBase {
 			
 			if (bds.getX() + dx >= 0 && bds.getY() + dy >= 0
 					&& !hasConflictTranslated(components, dx, dy, true)) {
-				return copyComponents(components, dx, dy);
+				return copyComponents(components, dx, dy, reuse);
 			}
 		}
 	}
 	
 	private HashMap<Component,Component> copyComponents(Collection<Component> components,
-			int dx, int dy) {
+			int dx, int dy, boolean reuse) {
 		HashMap<Component,Component> ret = new HashMap<Component,Component>();
 		for (Component comp : components) {
 			Location oldLoc = comp.getLocation();
-			AttributeSet attrs = (AttributeSet) comp.getAttributeSet().clone();
+			AttributeSet oldAttrs = comp.getAttributeSet();
 			int newX = oldLoc.getX() + dx;
 			int newY = oldLoc.getY() + dy;
-			Object snap = comp.getFactory().getFeature(ComponentFactory.SHOULD_SNAP, attrs);
+			Object snap = comp.getFactory().getFeature(ComponentFactory.SHOULD_SNAP, oldAttrs);
 			if (snap == null || ((Boolean) snap).booleanValue()) {
 				newX = Canvas.snapXToGrid(newX);
 				newY = Canvas.snapYToGrid(newY);
 			}
+			if (reuse && newX == oldLoc.getX() && newY == oldLoc.getY()) {
+				ret.put(comp, comp);
+				continue;
+			}
 			Location newLoc = Location.create(newX, newY);
 			
+			AttributeSet attrs = (AttributeSet) oldAttrs.clone();
 			Component copy = comp.getFactory().createComponent(newLoc, attrs);
 			ret.put(comp, copy);
 		}
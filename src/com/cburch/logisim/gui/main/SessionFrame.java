@@ -0,0 +1,195 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.gui.main;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitEvent;
+import com.cburch.logisim.circuit.CircuitListener;
+import com.cburch.logisim.circuit.CircuitState;
+import com.cburch.logisim.circuit.SimulatorEvent;
+import com.cburch.logisim.circuit.SimulatorListener;
+import com.cburch.logisim.comp.ComponentDrawContext;
+import com.cburch.logisim.data.Bounds;
+import com.cburch.logisim.file.LibraryEvent;
+import com.cburch.logisim.file.LibraryListener;
+import com.cburch.logisim.gui.generic.LFrame;
+import com.cburch.logisim.gui.menu.LogisimMenuBar;
+import com.cburch.logisim.prefs.AppPreferences;
+import com.cburch.logisim.proj.Project;
+import com.cburch.logisim.proj.ProjectEvent;
+import com.cburch.logisim.proj.ProjectListener;
+import com.cburch.logisim.proj.SimulationSession;
+import com.cburch.logisim.util.LocaleListener;
+import com.cburch.logisim.util.LocaleManager;
+import com.cburch.logisim.util.StringUtil;
+import com.cburch.logisim.util.WindowMenuItemManager;
+
+/** A window showing the circuit that one simulation session runs, so
+ * that it can be watched beside the project's frame while that shows
+ * another session. It only displays the session; to edit or poke the
+ * circuit, make the session current in the project's frame. */
+public class SessionFrame extends LFrame {
+	private static final long serialVersionUID = 1L;
+	private static final int BORDER = 20;
+
+	private class WindowMenuManager extends WindowMenuItemManager {
+		WindowMenuManager() {
+			super(computeTitle(), false);
+		}
+
+		@Override
+		public JFrame getJFrame(boolean create) {
+			return SessionFrame.this;
+		}
+	}
+
+	private class MyListener implements SimulatorListener, CircuitListener,
+			ProjectListener, LibraryListener, LocaleListener {
+		public void propagationCompleted(SimulatorEvent e) {
+			view.repaint();
+		}
+
+		public void tickCompleted(SimulatorEvent e) { }
+
+		public void simulatorStateChanged(SimulatorEvent e) {
+			view.repaint();
+		}
+
+		public void circuitChanged(CircuitEvent event) {
+			updateSize();
+			view.repaint();
+		}
+
+		public void projectChanged(ProjectEvent event) {
+			int action = event.getAction();
+			if (action == ProjectEvent.ACTION_SET_STATE
+					|| action == ProjectEvent.ACTION_SET_CURRENT) {
+				updateCircuit();
+			} else if (action == ProjectEvent.ACTION_SET_FILE) {
+				updateCircuit();
+				localeChanged();
+			}
+		}
+
+		public void libraryChanged(LibraryEvent event) {
+			if (event.getAction() == LibraryEvent.SET_NAME) localeChanged();
+		}
+
+		public void localeChanged() {
+			String title = computeTitle();
+			setTitle(title);
+			windowManager.setText(title);
+		}
+	}
+
+	private class View extends JPanel {
+		private static final long serialVersionUID = 1L;
+
+		View() {
+			setBackground(Color.white);
+		}
+
+		@Override
+		public void paintComponent(Graphics g) {
+			super.paintComponent(g);
+			CircuitState state = session.getCircuitState();
+			if (state == null) return;
+			if (state.getCircuit() != circuit) updateCircuit();
+
+			Graphics gCopy = g.create();
+			boolean printerView = AppPreferences.PRINTER_VIEW.getBoolean();
+			ComponentDrawContext context = new ComponentDrawContext(this,
+					state.getCircuit(), state, g, gCopy, printerView);
+			state.getCircuit().draw(context, null);
+			gCopy.dispose();
+		}
+	}
+
+	private Project proj;
+	private SimulationSession session;
+	private Circuit circuit = null;
+	private MyListener myListener = new MyListener();
+	private WindowMenuManager windowManager;
+	private View view = new View();
+
+	public SessionFrame(Project proj, SimulationSession session) {
+		this.proj = proj;
+		this.session = session;
+		this.windowManager = new WindowMenuManager();
+		setDefaultCloseOperation(HIDE_ON_CLOSE);
+		setJMenuBar(new LogisimMenuBar(this, proj));
+
+		JScrollPane pane = new JScrollPane(view);
+		pane.setPreferredSize(new Dimension(450, 350));
+		getContentPane().add(pane, BorderLayout.CENTER);
+
+		proj.addProjectListener(myListener);
+		proj.addLibraryListener(myListener);
+		session.getSimulator().addSimulatorListener(myListener);
+		LocaleManager.addLocaleListener(myListener);
+		updateCircuit();
+		myListener.localeChanged();
+		pack();
+	}
+
+	public SimulationSession getSession() {
+		return session;
+	}
+
+	@Override
+	public void setVisible(boolean value) {
+		if (value) windowManager.frameOpened(this);
+		super.setVisible(value);
+	}
+
+	@Override
+	public void dispose() {
+		proj.removeProjectListener(myListener);
+		proj.removeLibraryListener(myListener);
+		session.getSimulator().removeSimulatorListener(myListener);
+		LocaleManager.removeLocaleListener(myListener);
+		if (circuit != null) circuit.removeCircuitListener(myListener);
+		windowManager.frameClosed(this);
+		super.dispose();
+	}
+
+	private void updateCircuit() {
+		CircuitState state = session.getCircuitState();
+		Circuit value = state == null ? null : state.getCircuit();
+		if (value != circuit) {
+			if (circuit != null) circuit.removeCircuitListener(myListener);
+			circuit = value;
+			if (circuit != null) circuit.addCircuitListener(myListener);
+			myListener.localeChanged();
+			updateSize();
+		}
+		view.repaint();
+	}
+
+	private void updateSize() {
+		Dimension size = new Dimension(0, 0);
+		if (circuit != null) {
+			Bounds bds = circuit.getBounds();
+			size.width = Math.max(0, bds.getX() + bds.getWidth() + BORDER);
+			size.height = Math.max(0, bds.getY() + bds.getHeight() + BORDER);
+		}
+		view.setPreferredSize(size);
+		view.revalidate();
+	}
+
+	private String computeTitle() {
+		String name = circuit == null ? "???" : circuit.getName();
+		return StringUtil.format(Strings.get("sessionFrameTitle"),
+				session.getName(), name, proj.getLogisimFile().getDisplayName());
+	}
+}
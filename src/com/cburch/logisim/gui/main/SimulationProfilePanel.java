@@ -0,0 +1,167 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.gui.main;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+import com.cburch.logisim.circuit.SimulationProfile;
+import com.cburch.logisim.circuit.Simulator;
+
+class SimulationProfilePanel extends JPanel {
+	private static final long serialVersionUID = 1L;
+
+	private static final int REFRESH_MILLIS = 1000;
+
+	private static final int BY_FACTORY = 0;
+	private static final int BY_CIRCUIT = 1;
+	private static final int BY_STATE = 2;
+
+	private class MyListener implements ActionListener {
+		public void actionPerformed(ActionEvent e) {
+			Object src = e.getSource();
+			if (src == enable) {
+				if (enable.isSelected()) {
+					if (sim.getProfile() == null) sim.setProfile(new SimulationProfile());
+				} else {
+					sim.setProfile(null);
+				}
+			} else if (src == reset) {
+				SimulationProfile profile = sim.getProfile();
+				if (profile != null) profile.clear();
+			}
+			model.refresh();
+		}
+	}
+
+	private class ProfileTableModel extends AbstractTableModel {
+		private static final long serialVersionUID = 1L;
+
+		private List<SimulationProfile.Entry> entries = Collections.emptyList();
+		private long totalNanos = 0;
+
+		void refresh() {
+			SimulationProfile profile = sim.getProfile();
+			if (profile == null) {
+				entries = Collections.emptyList();
+				totalNanos = 0;
+			} else {
+				switch (grouping.getSelectedIndex()) {
+				case BY_CIRCUIT: entries = profile.getCircuitEntries(); break;
+				case BY_STATE: entries = profile.getStateEntries(); break;
+				default: entries = profile.getFactoryEntries(); break;
+				}
+				totalNanos = profile.getTotal().getNanos();
+			}
+			fireTableDataChanged();
+		}
+
+		public int getColumnCount() {
+			return 5;
+		}
+
+		public int getRowCount() {
+			return entries.size();
+		}
+
+		@Override
+		public Class<?> getColumnClass(int column) {
+			switch (column) {
+			case 0: return String.class;
+			case 1: return Long.class;
+			case 2: return Long.class;
+			default: return Double.class;
+			}
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			switch (column) {
+			case 0: return Strings.get("profileNameColumn");
+			case 1: return Strings.get("profileEventsColumn");
+			case 2: return Strings.get("profileEvaluationsColumn");
+			case 3: return Strings.get("profileTimeColumn");
+			case 4: return Strings.get("profileShareColumn");
+			default: return "??"; // should never happen
+			}
+		}
+
+		public Object getValueAt(int row, int column) {
+			if (row < 0 || row >= entries.size()) return "";
+			SimulationProfile.Entry entry = entries.get(row);
+			switch (column) {
+			case 0: return entry.getName();
+			case 1: return Long.valueOf(entry.getEvents());
+			case 2: return Long.valueOf(entry.getEvaluations());
+			case 3: return Double.valueOf(Math.round(entry.getNanos() / 1e4) / 100.0);
+			case 4:
+				if (totalNanos == 0) return Double.valueOf(0.0);
+				return Double.valueOf(Math.round(1000.0 * entry.getNanos() / totalNanos) / 10.0);
+			default: return ""; // should never happen
+			}
+		}
+	}
+
+	private Simulator sim;
+	private MyListener myListener = new MyListener();
+	private JCheckBox enable;
+	private JComboBox<String> grouping;
+	private JButton reset;
+	private ProfileTableModel model = new ProfileTableModel();
+	private Timer timer;
+
+	SimulationProfilePanel(Simulator sim) {
+		super(new BorderLayout());
+		this.sim = sim;
+
+		enable = new JCheckBox(Strings.get("profileEnable"), sim.getProfile() != null);
+		grouping = new JComboBox<String>(new String[] {
+				Strings.get("profileByFactory"),
+				Strings.get("profileByCircuit"),
+				Strings.get("profileByState") });
+		reset = new JButton(Strings.get("profileReset"));
+		enable.addActionListener(myListener);
+		grouping.addActionListener(myListener);
+		reset.addActionListener(myListener);
+
+		JPanel controls = new JPanel();
+		controls.add(enable);
+		controls.add(grouping);
+		controls.add(reset);
+
+		add(controls, BorderLayout.PAGE_START);
+		add(new JScrollPane(new JTable(model)), BorderLayout.CENTER);
+
+		model.refresh();
+		timer = new Timer(REFRESH_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (SimulationProfilePanel.this.sim.getProfile() != null) model.refresh();
+			}
+		});
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		timer.start();
+	}
+
+	@Override
+	public void removeNotify() {
+		timer.stop();
+		super.removeNotify();
+	}
+}
@@ -16,11 +16,13 @@ import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.table.AbstractTableModel;
 import javax.swing.table.TableColumn;
 
 import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.Simulator;
 import com.cburch.logisim.file.FileStatistics;
 import com.cburch.logisim.file.LogisimFile;
 import com.cburch.logisim.tools.Library;
@@ -28,9 +30,14 @@ import com.cburch.logisim.util.TableSorter;
 
 public class StatisticsDialog extends JDialog implements ActionListener {
 	public static void show(JFrame parent, LogisimFile file, Circuit circuit) {
+		show(parent, file, circuit, null);
+	}
+	
+	public static void show(JFrame parent, LogisimFile file, Circuit circuit,
+			Simulator sim) {
 		FileStatistics stats = FileStatistics.compute(file, circuit);
 		StatisticsDialog dlog = new StatisticsDialog(parent,
-				circuit.getName(), new StatisticsTableModel(stats));
+				circuit.getName(), new StatisticsTableModel(stats), sim);
 		dlog.setVisible(true);
 	}
 	
@@ -139,7 +146,7 @@ public class StatisticsDialog extends JDialog implements ActionListener {
 	}
 	
 	private StatisticsDialog(JFrame parent, String circuitName,
-			StatisticsTableModel model) {
+			StatisticsTableModel model, Simulator sim) {
 		super(parent, true);
 		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 		setTitle(Strings.get("statsDialogTitle", circuitName));
@@ -159,7 +166,14 @@ public class StatisticsDialog extends JDialog implements ActionListener {
 		
 		Container contents = this.getContentPane();
 		contents.setLayout(new BorderLayout());
-		contents.add(tablePane, BorderLayout.CENTER);
+		if (sim == null) {
+			contents.add(tablePane, BorderLayout.CENTER);
+		} else {
+			JTabbedPane tabs = new JTabbedPane();
+			tabs.addTab(Strings.get("statsComponentsTab"), tablePane);
+			tabs.addTab(Strings.get("statsProfileTab"), new SimulationProfilePanel(sim));
+			contents.add(tabs, BorderLayout.CENTER);
+		}
 		contents.add(buttonPanel, BorderLayout.PAGE_END);
 		this.pack();
 		
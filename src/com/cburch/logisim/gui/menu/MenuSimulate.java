@@ -14,6 +14,8 @@ import javax.swing.ButtonGroup;
 import javax.swing.KeyStroke;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 
 import com.cburch.logisim.circuit.Circuit;
 import com.cburch.logisim.circuit.CircuitEvent;
@@ -24,6 +26,7 @@ import com.cburch.logisim.circuit.SimulatorEvent;
 import com.cburch.logisim.circuit.SimulatorListener;
 import com.cburch.logisim.gui.log.LogFrame;
 import com.cburch.logisim.proj.Project;
+import com.cburch.logisim.proj.SimulationSession;
 import com.cburch.logisim.util.StringUtil;
 
 import java.util.ArrayList;
@@ -94,8 +97,26 @@ class MenuSimulate extends Menu {
 		}
 	}
 
+	private class SessionMenuItem extends JRadioButtonMenuItem
+			implements ActionListener {
+		private static final long serialVersionUID = 1L;
+
+		private SimulationSession session;
+
+		public SessionMenuItem(SimulationSession session, boolean selected) {
+			super(session.getName(), selected);
+			this.session = session;
+			addActionListener(this);
+		}
+
+		public void actionPerformed(ActionEvent e) {
+			Project proj = menubar.getProject();
+			if (proj != null) proj.setSession(session);
+		}
+	}
+
 	private class MyListener implements ActionListener, SimulatorListener,
-			ChangeListener {
+			ChangeListener, MenuListener {
 		public void actionPerformed(ActionEvent e) {
 			Object src = e.getSource();
 			Project proj = menubar.getProject();
@@ -113,12 +134,37 @@ class MenuSimulate extends Menu {
 				if (sim != null) sim.tick();
 			} else if (src == ticksEnabled || src == LogisimMenuBar.TICK_ENABLE) {
 				if (sim != null) sim.setIsTicking(!sim.isTicking());
+			} else if (src == newSession) {
+				if (proj != null) proj.forkSession();
+			} else if (src == sessionWindow) {
+				if (proj != null) {
+					proj.getSessionFrame(proj.getSession(), true).setVisible(true);
+				}
+			} else if (src == closeSession) {
+				if (proj != null) proj.closeSession(proj.getSession());
 			} else if (src == log) {
 				LogFrame frame = menubar.getProject().getLogFrame(true);
 				frame.setVisible(true);
 			}
 		}
 
+		public void menuSelected(MenuEvent e) {
+			// the sessions may have changed since the menu was last shown
+			sessionMenu.removeAll();
+			Project proj = menubar.getProject();
+			if (proj == null) return;
+			ButtonGroup group = new ButtonGroup();
+			for (SimulationSession session : proj.getSessions()) {
+				SessionMenuItem item = new SessionMenuItem(session,
+						session == proj.getSession());
+				group.add(item);
+				sessionMenu.add(item);
+			}
+		}
+
+		public void menuDeselected(MenuEvent e) { }
+		public void menuCanceled(MenuEvent e) { }
+
 		public void propagationCompleted(SimulatorEvent e) { }
 		public void tickCompleted(SimulatorEvent e) { }
 		public void simulatorStateChanged(SimulatorEvent e) {
@@ -148,6 +194,10 @@ class MenuSimulate extends Menu {
 	private MenuItemCheckImpl run;
 	private JMenuItem reset = new JMenuItem();
 	private MenuItemImpl step;
+	private JMenuItem newSession = new JMenuItem();
+	private JMenu sessionMenu = new JMenu();
+	private JMenuItem sessionWindow = new JMenuItem();
+	private JMenuItem closeSession = new JMenuItem();
 	private MenuItemCheckImpl ticksEnabled;
 	private MenuItemImpl tickOnce;
 	private JMenu tickFreq = new JMenu();
@@ -211,6 +261,11 @@ class MenuSimulate extends Menu {
 		add(reset);
 		add(step);
 		addSeparator();
+		add(newSession);
+		add(sessionMenu);
+		add(sessionWindow);
+		add(closeSession);
+		addSeparator();
 		add(upStateMenu);
 		add(downStateMenu);
 		addSeparator();
@@ -224,6 +279,10 @@ class MenuSimulate extends Menu {
 		run.setEnabled(false);
 		reset.setEnabled(false);
 		step.setEnabled(false);
+		newSession.setEnabled(false);
+		sessionMenu.setEnabled(false);
+		sessionWindow.setEnabled(false);
+		closeSession.setEnabled(false);
 		upStateMenu.setEnabled(false);
 		downStateMenu.setEnabled(false);
 		tickOnce.setEnabled(false);
@@ -237,6 +296,10 @@ class MenuSimulate extends Menu {
 		menubar.addActionListener(LogisimMenuBar.TICK_STEP, myListener);
 		// run.addActionListener(myListener);
 		reset.addActionListener(myListener);
+		newSession.addActionListener(myListener);
+		sessionMenu.addMenuListener(myListener);
+		sessionWindow.addActionListener(myListener);
+		closeSession.addActionListener(myListener);
 		// step.addActionListener(myListener);
 		// tickOnce.addActionListener(myListener);
 		// ticksEnabled.addActionListener(myListener);
@@ -250,6 +313,10 @@ class MenuSimulate extends Menu {
 		run.setText(Strings.get("simulateRunItem"));
 		reset.setText(Strings.get("simulateResetItem"));
 		step.setText(Strings.get("simulateStepItem"));
+		newSession.setText(Strings.get("simulateNewSessionItem"));
+		sessionMenu.setText(Strings.get("simulateSessionMenu"));
+		sessionWindow.setText(Strings.get("simulateSessionWindowItem"));
+		closeSession.setText(Strings.get("simulateCloseSessionItem"));
 		tickOnce.setText(Strings.get("simulateTickOnceItem"));
 		ticksEnabled.setText(Strings.get("simulateTickItem"));
 		tickFreq.setText(Strings.get("simulateTickFreqMenu"));
@@ -281,7 +348,7 @@ class MenuSimulate extends Menu {
 		
 		boolean oldPresent = oldState != null;
 		boolean present = currentState != null;
-		if (oldPresent != present) {
+		if (oldPresent != present || currentSim != oldSim) {
 			computeEnabled();
 		}
 
@@ -350,6 +417,12 @@ class MenuSimulate extends Menu {
 		run.setEnabled(present);
 		reset.setEnabled(present);
 		step.setEnabled(present && !simRunning);
+		Project proj = menubar.getProject();
+		newSession.setEnabled(present);
+		sessionMenu.setEnabled(present);
+		sessionWindow.setEnabled(present);
+		closeSession.setEnabled(present && proj != null
+				&& proj.getSessions().size() > 1);
 		upStateMenu.setEnabled(present);
 		downStateMenu.setEnabled(present);
 		tickOnce.setEnabled(present);
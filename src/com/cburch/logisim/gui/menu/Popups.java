@@ -140,7 +140,8 @@ public class Popups {
 				ProjectCircuitActions.doAnalyze(proj, circuit);
 			} else if (source == stats) {
 				JFrame frame = (JFrame) SwingUtilities.getRoot(this);
-				StatisticsDialog.show(frame, proj.getLogisimFile(), circuit);
+				StatisticsDialog.show(frame, proj.getLogisimFile(), circuit,
+						proj.getSimulator());
 			} else if (source == main) {
 				ProjectCircuitActions.doSetAsMainCircuit(proj, circuit);
 			} else if (source == remove) {
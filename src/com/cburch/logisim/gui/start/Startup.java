@@ -280,6 +280,12 @@ public class Startup {
 							ret.ttyFormat |= TtyInterface.FORMAT_HALT;
 						} else if (fmt.equals("stats")) {
 							ret.ttyFormat |= TtyInterface.FORMAT_STATISTICS;
+						} else if (fmt.equals("profile")) {
+							ret.ttyFormat |= TtyInterface.FORMAT_PROFILE;
+						} else if (fmt.equals("json")) {
+							ret.ttyFormat |= TtyInterface.FORMAT_JSON;
+						} else if (fmt.equals("csv")) {
+							ret.ttyFormat |= TtyInterface.FORMAT_CSV;
 						} else {
 							System.err.println(Strings.get("ttyFormatError")); //OK
 						}
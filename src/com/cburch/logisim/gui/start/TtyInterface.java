@@ -8,12 +8,14 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import com.cburch.logisim.circuit.Analyze;
 import com.cburch.logisim.circuit.Circuit;
 import com.cburch.logisim.circuit.CircuitState;
 import com.cburch.logisim.circuit.Propagator;
+import com.cburch.logisim.circuit.SimulationProfile;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.data.Value;
 import com.cburch.logisim.file.LoadFailedException;
@@ -36,6 +38,9 @@ public class TtyInterface {
 	public static final int FORMAT_TTY = 4;
 	public static final int FORMAT_HALT = 8;
 	public static final int FORMAT_STATISTICS = 16;
+	public static final int FORMAT_PROFILE = 32;
+	public static final int FORMAT_JSON = 64;
+	public static final int FORMAT_CSV = 128;
 
 	private static boolean lastIsNewline = true;
 	
@@ -105,7 +110,24 @@ public class TtyInterface {
 			}
 		}
 		int ttyFormat = args.getTtyFormat();
-		int simCode = runSimulation(circState, outputPins, haltPin, ttyFormat);
+		SimulationProfile profile = null;
+		if ((ttyFormat & FORMAT_PROFILE) != 0) {
+			profile = new SimulationProfile();
+			circState.getPropagator().setProfile(profile);
+		}
+		TtyMetrics metrics = null;
+		if ((ttyFormat & (FORMAT_JSON | FORMAT_CSV)) != 0) {
+			metrics = new TtyMetrics(fileToOpen.getName(), file);
+		}
+		int simCode = runSimulation(circState, outputPins, haltPin, ttyFormat,
+				metrics);
+		if (profile != null) {
+			displayProfile(profile);
+		}
+		if (metrics != null) {
+			if ((ttyFormat & FORMAT_JSON) != 0) metrics.writeJson(System.out);
+			if ((ttyFormat & FORMAT_CSV) != 0) metrics.writeCsv(System.out);
+		}
 		System.exit(simCode);
 	}
 	
@@ -139,6 +161,29 @@ public class TtyInterface {
 				Strings.get("statsTotalWith"));
 	}
 	
+	private static void displayProfile(SimulationProfile profile) {
+		System.out.println(Strings.get("ttyProfileByFactory")); //OK
+		displayProfileEntries(profile.getFactoryEntries());
+		System.out.println(Strings.get("ttyProfileByCircuit")); //OK
+		displayProfileEntries(profile.getCircuitEntries());
+		System.out.println(Strings.get("ttyProfileByState")); //OK
+		displayProfileEntries(profile.getStateEntries());
+		SimulationProfile.Entry total = profile.getTotal();
+		System.out.println(StringUtil.format(Strings.get("ttyProfileTotal"), //OK
+				"" + total.getEvents(), "" + total.getEvaluations(),
+				"" + total.getNanos() / 1000000));
+	}
+	
+	private static void displayProfileEntries(List<SimulationProfile.Entry> entries) {
+		for (SimulationProfile.Entry entry : entries) {
+			System.out.printf("%12d\t%12d\t%10.2f\t%s\n", //OK
+					Long.valueOf(entry.getEvents()),
+					Long.valueOf(entry.getEvaluations()),
+					Double.valueOf(entry.getNanos() / 1e6),
+					entry.getName());
+		}
+	}
+	
 	private static int countDigits(int num) {
 		int digits = 1;
 		int lessThan = 10;
@@ -192,7 +237,8 @@ public class TtyInterface {
 	}
 	
 	private static int runSimulation(CircuitState circState,
-			ArrayList<Instance> outputPins, Instance haltPin, int format) {
+			ArrayList<Instance> outputPins, Instance haltPin, int format,
+			TtyMetrics metrics) {
 		boolean showTable = (format & FORMAT_TABLE) != 0;
 		boolean showSpeed = (format & FORMAT_SPEED) != 0;
 		boolean showTty = (format & FORMAT_TTY) != 0;
@@ -221,6 +267,7 @@ public class TtyInterface {
 		boolean halted = false;
 		ArrayList<Value> prevOutputs = null;
 		Propagator prop = circState.getPropagator();
+		if (metrics != null) metrics.start(prop);
 		while (true) {
 			ArrayList<Value> curOutputs = new ArrayList<Value>();
 			for (Instance pin : outputPins) {
@@ -258,6 +305,7 @@ public class TtyInterface {
 			prop.propagate();
 		}
 		long elapse = System.currentTimeMillis() - start;
+		if (metrics != null) metrics.stop(prop, tickCount, retCode);
 		if (showTty) ensureLineTerminated();
 		if (showHalt || retCode != 0) {
 			if (retCode == 0) {
@@ -0,0 +1,212 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.gui.start;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.Propagator;
+import com.cburch.logisim.file.FileStatistics;
+import com.cburch.logisim.file.LogisimFile;
+
+/** Collects the figures reported by the "json" and "csv" formats of
+ * -tty. Unlike the other formats, the output is not localized, so
+ * scripts can rely on its keys. */
+class TtyMetrics {
+	private static class CircuitCount {
+		String name;
+		int components;
+		int wires;
+	}
+
+	private String fileName;
+	private String circuitName;
+	private ArrayList<CircuitCount> circuits = new ArrayList<CircuitCount>();
+	private int uniqueComponents;
+	private int recursiveComponents;
+
+	private long wallStart;
+	private long cpuStart;
+	private long allocStart;
+	private long wallNanos = 0;
+	private long cpuNanos = -1;
+	private long allocatedBytes = -1;
+
+	private long ticks = 0;
+	private long steps = 0;
+	private long events = 0;
+	private long oscillationSteps = 0;
+	private int peakQueue = 0;
+	private String haltReason = "";
+
+	TtyMetrics(String fileName, LogisimFile file) {
+		this.fileName = fileName;
+		Circuit main = file.getMainCircuit();
+		circuitName = main.getName();
+		for (Circuit circ : file.getCircuits()) {
+			CircuitCount count = new CircuitCount();
+			count.name = circ.getName();
+			count.components = circ.getNonWires().size();
+			count.wires = circ.getWires().size();
+			circuits.add(count);
+		}
+		FileStatistics stats = FileStatistics.compute(file, main);
+		uniqueComponents = stats.getTotalWithSubcircuits().getUniqueCount();
+		recursiveComponents = stats.getTotalWithSubcircuits().getRecursiveCount();
+	}
+
+	void start(Propagator prop) {
+		// the totals are kept from the propagator's creation, so only
+		// the change over the run is reported
+		steps = -prop.getStepCount();
+		events = -prop.getEventCount();
+		oscillationSteps = -prop.getOscillationStepCount();
+		wallStart = System.nanoTime();
+		cpuStart = getThreadCpuTime();
+		allocStart = getThreadAllocatedBytes();
+	}
+
+	void stop(Propagator prop, long tickCount, int retCode) {
+		wallNanos = System.nanoTime() - wallStart;
+		long cpu = getThreadCpuTime();
+		cpuNanos = cpu < 0 || cpuStart < 0 ? -1 : cpu - cpuStart;
+		long alloc = getThreadAllocatedBytes();
+		allocatedBytes = alloc < 0 || allocStart < 0 ? -1 : alloc - allocStart;
+		ticks = tickCount;
+		steps += prop.getStepCount();
+		events += prop.getEventCount();
+		oscillationSteps += prop.getOscillationStepCount();
+		peakQueue = prop.getPeakQueueSize();
+		haltReason = retCode == 0 ? "pin" : "oscillation";
+	}
+
+	void writeJson(PrintStream out) {
+		StringBuilder ret = new StringBuilder();
+		ret.append("{\n");
+		ret.append("  \"file\": ").append(quote(fileName)).append(",\n");
+		ret.append("  \"circuit\": ").append(quote(circuitName)).append(",\n");
+		ret.append("  \"haltReason\": ").append(quote(haltReason)).append(",\n");
+		ret.append("  \"ticks\": ").append(ticks).append(",\n");
+		ret.append("  \"propagationSteps\": ").append(steps).append(",\n");
+		ret.append("  \"events\": ").append(events).append(",\n");
+		ret.append("  \"peakQueueDepth\": ").append(peakQueue).append(",\n");
+		ret.append("  \"oscillationRetries\": ").append(oscillationSteps).append(",\n");
+		ret.append("  \"wallNanos\": ").append(wallNanos).append(",\n");
+		ret.append("  \"cpuNanos\": ").append(cpuNanos).append(",\n");
+		ret.append("  \"ticksPerSecond\": ").append(perSecond(ticks)).append(",\n");
+		ret.append("  \"allocatedBytes\": ").append(allocatedBytes).append(",\n");
+		ret.append("  \"allocatedBytesPerSecond\": ").append(allocatedBytes < 0
+				? "-1" : perSecond(allocatedBytes)).append(",\n");
+		ret.append("  \"uniqueComponents\": ").append(uniqueComponents).append(",\n");
+		ret.append("  \"recursiveComponents\": ").append(recursiveComponents).append(",\n");
+		ret.append("  \"circuits\": [");
+		for (int i = 0; i < circuits.size(); i++) {
+			CircuitCount count = circuits.get(i);
+			ret.append(i == 0 ? "\n" : ",\n");
+			ret.append("    { \"name\": ").append(quote(count.name));
+			ret.append(", \"components\": ").append(count.components);
+			ret.append(", \"wires\": ").append(count.wires).append(" }");
+		}
+		ret.append(circuits.isEmpty() ? "]\n" : "\n  ]\n");
+		ret.append("}");
+		out.println(ret); //OK
+	}
+
+	void writeCsv(PrintStream out) {
+		out.println("metric,circuit,value"); //OK
+		writeCsvRow(out, "file", "", fileName);
+		writeCsvRow(out, "circuit", "", circuitName);
+		writeCsvRow(out, "haltReason", "", haltReason);
+		writeCsvRow(out, "ticks", "", "" + ticks);
+		writeCsvRow(out, "propagationSteps", "", "" + steps);
+		writeCsvRow(out, "events", "", "" + events);
+		writeCsvRow(out, "peakQueueDepth", "", "" + peakQueue);
+		writeCsvRow(out, "oscillationRetries", "", "" + oscillationSteps);
+		writeCsvRow(out, "wallNanos", "", "" + wallNanos);
+		writeCsvRow(out, "cpuNanos", "", "" + cpuNanos);
+		writeCsvRow(out, "ticksPerSecond", "", perSecond(ticks));
+		writeCsvRow(out, "allocatedBytes", "", "" + allocatedBytes);
+		writeCsvRow(out, "allocatedBytesPerSecond", "",
+				allocatedBytes < 0 ? "-1" : perSecond(allocatedBytes));
+		writeCsvRow(out, "uniqueComponents", "", "" + uniqueComponents);
+		writeCsvRow(out, "recursiveComponents", "", "" + recursiveComponents);
+		for (CircuitCount count : circuits) {
+			writeCsvRow(out, "components", count.name, "" + count.components);
+			writeCsvRow(out, "wires", count.name, "" + count.wires);
+		}
+	}
+
+	private String perSecond(long count) {
+		if (wallNanos <= 0) return "0";
+		return Double.toString(count * 1e9 / wallNanos);
+	}
+
+	private static void writeCsvRow(PrintStream out, String metric,
+			String circuit, String value) {
+		out.println(metric + "," + csvField(circuit) + "," + csvField(value)); //OK
+	}
+
+	private static String csvField(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+				&& value.indexOf('\n') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String quote(String value) {
+		StringBuilder ret = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': ret.append("\\\""); break;
+			case '\\': ret.append("\\\\"); break;
+			case '\n': ret.append("\\n"); break;
+			case '\r': ret.append("\\r"); break;
+			case '\t': ret.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					String hex = Integer.toHexString(c);
+					ret.append("\\u");
+					for (int j = hex.length(); j < 4; j++) ret.append('0');
+					ret.append(hex);
+				} else {
+					ret.append(c);
+				}
+			}
+		}
+		ret.append('"');
+		return ret.toString();
+	}
+
+	private static long getThreadCpuTime() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			if (!bean.isCurrentThreadCpuTimeSupported()) return -1;
+			return bean.getCurrentThreadCpuTime();
+		} catch (UnsupportedOperationException e) {
+			return -1;
+		}
+	}
+
+	// The allocation counter is an extension of Sun's JVMs, so it is
+	// looked up reflectively.
+	private static long getThreadAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		try {
+			Class<?> ext = Class.forName("com.sun.management.ThreadMXBean");
+			if (!ext.isInstance(bean)) return -1;
+			Method method = ext.getMethod("getThreadAllocatedBytes", long.class);
+			Object ret = method.invoke(bean,
+					Long.valueOf(Thread.currentThread().getId()));
+			return ((Long) ret).longValue();
+		} catch (Throwable t) {
+			return -1;
+		}
+	}
+}
@@ -10,6 +10,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 
+import com.cburch.logisim.circuit.Circuit;
 import com.cburch.logisim.circuit.CircuitState;
 import com.cburch.logisim.comp.Component;
 import com.cburch.logisim.comp.ComponentDrawContext;
@@ -32,6 +33,25 @@ import com.cburch.logisim.util.StringGetter;
 import com.cburch.logisim.util.UnmodifiableList;
 
 class InstanceComponent implements Component, AttributeListener, ToolTipMaker {
+	/** Which ports had something else attached to them as of a version of
+	 * the containing circuit. It is never modified once published, so
+	 * that simulation threads can share it without locking. */
+	private static class PortConnections {
+		private Circuit circuit;
+		private int version;
+		private boolean[] connected;
+		
+		PortConnections(Circuit circuit, int version, EndData[] ends,
+				Component comp) {
+			this.circuit = circuit;
+			this.version = version;
+			this.connected = new boolean[ends.length];
+			for (int i = 0; i < ends.length; i++) {
+				connected[i] = circuit.isConnected(ends[i].getLocation(), comp);
+			}
+		}
+	}
+	
 	private EventSourceWeakSupport<ComponentListener> listeners;
 	private InstanceFactory factory;
 	private Instance instance;
@@ -45,6 +65,7 @@ class InstanceComponent implements Component, AttributeListener, ToolTipMaker {
 	private AttributeSet attrs;
 	private boolean attrListenRequested;
 	private InstanceTextField textField;
+	private volatile PortConnections portConnections;
 	
 	InstanceComponent(InstanceFactory factory, Location loc,
 			AttributeSet attrs) {
@@ -59,6 +80,7 @@ class InstanceComponent implements Component, AttributeListener, ToolTipMaker {
 		this.attrs = attrs;
 		this.attrListenRequested = false;
 		this.textField = null;
+		this.portConnections = null;
 
 		computeEnds();
 	}
@@ -121,6 +143,7 @@ class InstanceComponent implements Component, AttributeListener, ToolTipMaker {
 		widthAttrs = wattrs;
 		hasToolTips = toolTipFound;
 		if (endsChangedOld != null) {
+			portConnections = null;
 			fireEndsChanged(endsChangedOld, endsChangedNew);
 		}
 	}
@@ -244,7 +267,25 @@ class InstanceComponent implements Component, AttributeListener, ToolTipMaker {
 	}
 
 	public void propagate(CircuitState state) {
-		factory.propagate(state.getInstanceState(this));
+		InstanceStateImpl instanceState = InstanceStateImpl.acquire(state, this);
+		try {
+			factory.propagate(instanceState);
+		} finally {
+			InstanceStateImpl.release(instanceState);
+		}
+	}
+	
+	boolean isPortConnected(Circuit circ, int index) {
+		// the version is read before the ports are examined, so a change
+		// made meanwhile leaves the result stale and it is computed again
+		int version = circ.getConnectionsVersion();
+		PortConnections conns = portConnections;
+		if (conns == null || conns.circuit != circ || conns.version != version
+				|| conns.connected.length != endArray.length) {
+			conns = new PortConnections(circ, version, endArray, this);
+			portConnections = conns;
+		}
+		return conns.connected[index];
 	}
 
 	//
@@ -43,6 +43,7 @@ public abstract class InstanceFactory extends AbstractComponentFactory {
 	private Icon icon;
 	private Attribute<?>[] attrs;
 	private Object[] defaults;
+	private AttributeSet prototype; // cloned for each set created from attrs
 	private AttributeSet defaultSet;
 	private Bounds bounds;
 	private List<Port> portList;
@@ -169,13 +170,16 @@ public abstract class InstanceFactory extends AbstractComponentFactory {
 	public void setAttributes(Attribute<?>[] attrs, Object[] defaults) {
 		this.attrs = attrs;
 		this.defaults = defaults;
+		// built here rather than on first use, since attribute sets are
+		// also created from other threads
+		this.prototype = attrs == null ? null : AttributeSets.fixedSet(attrs, defaults);
 	}
 	
 	@Override
 	public AttributeSet createAttributeSet() {
-		Attribute<?>[] as = attrs;
-		AttributeSet ret = as == null ? AttributeSets.EMPTY : AttributeSets.fixedSet(as, defaults);
-		return ret;
+		AttributeSet proto = prototype;
+		if (proto == null) return AttributeSets.EMPTY;
+		return (AttributeSet) proto.clone();
 	}
 
 	@Override
@@ -306,4 +310,19 @@ public abstract class InstanceFactory extends AbstractComponentFactory {
 	public final InstanceState createInstanceState(CircuitState state, Component comp) {
 		return createInstanceState(state, ((InstanceComponent) comp).getInstance());
 	}
+	
+	/** Returns a state for the component that is meant to be used only
+	 * briefly and then handed to releaseInstanceState, after which it
+	 * will be reused. This saves allocating a state for each step of a
+	 * simulation; a state that may be retained should come from
+	 * createInstanceState instead. */
+	public final InstanceState acquireInstanceState(CircuitState state, Component comp) {
+		return InstanceStateImpl.acquire(state, comp);
+	}
+	
+	public final void releaseInstanceState(InstanceState state) {
+		if (state instanceof InstanceStateImpl) {
+			InstanceStateImpl.release((InstanceStateImpl) state);
+		}
+	}
 }
@@ -140,8 +140,7 @@ public class InstancePainter implements InstanceState {
 	
 	public boolean isPortConnected(int index) {
 		Circuit circ = context.getCircuit();
-		Location loc = comp.getEnd(index).getLocation();
-		return circ.isConnected(loc, comp);
+		return comp.isPortConnected(circ, index);
 	}
 	
 	public Bounds getOffsetBounds() {
@@ -14,6 +14,23 @@ import com.cburch.logisim.data.Value;
 import com.cburch.logisim.proj.Project;
 
 class InstanceStateImpl implements InstanceState {
+	// one spare state per thread, so that propagation need not allocate
+	private static final ThreadLocal<InstanceStateImpl> spare
+		= new ThreadLocal<InstanceStateImpl>();
+	
+	static InstanceStateImpl acquire(CircuitState circuitState, Component component) {
+		InstanceStateImpl ret = spare.get();
+		if (ret == null) return new InstanceStateImpl(circuitState, component);
+		spare.set(null); // a nested request will get a state of its own
+		ret.repurpose(circuitState, component);
+		return ret;
+	}
+	
+	static void release(InstanceStateImpl state) {
+		state.repurpose(null, null);
+		spare.set(state);
+	}
+	
 	private CircuitState circuitState;
 	private Component component;
 	
@@ -67,6 +84,9 @@ class InstanceStateImpl implements InstanceState {
 	
 	public boolean isPortConnected(int index) {
 		Circuit circ = circuitState.getCircuit();
+		if (component instanceof InstanceComponent) {
+			return ((InstanceComponent) component).isPortConnected(circ, index);
+		}
 		Location loc = component.getEnd(index).getLocation();
 		return circ.isConnected(loc, component);
 	}
@@ -150,6 +150,10 @@ public class AppPreferences {
 		= create(new PrefMonitorDouble("windowLeftSplit", 0.5));
 	public static final PrefMonitor<String> DIALOG_DIRECTORY
 		= create(new PrefMonitorString("dialogDirectory", ""));
+	public static final PrefMonitor<Integer> UNDO_MEMORY // in megabytes
+		= create(new PrefMonitorInt("undoMemory", 64));
+	public static final PrefMonitor<Boolean> RECOVERY_JOURNAL
+		= create(new PrefMonitorBoolean("recoveryJournal", true));
 	
 	//
 	// methods for accessing preferences
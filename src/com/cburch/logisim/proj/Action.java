@@ -17,4 +17,8 @@ public abstract class Action {
 	public Action append(Action other) {
 		return new JoinedAction(this, other);
 	}
+
+	/** Returns a rough count of the bytes held by keeping this action in
+	 * the undo log, once it has been done. */
+	public long getMemorySize() { return 256; }
 }
@@ -3,6 +3,10 @@
 
 package com.cburch.logisim.proj;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+
 import com.cburch.logisim.circuit.Circuit;
 import com.cburch.logisim.circuit.CircuitEvent;
 import com.cburch.logisim.circuit.CircuitListener;
@@ -44,50 +48,79 @@ public class Dependencies {
 		}
 
 		public void circuitChanged(CircuitEvent e) {
-			Component comp;
 			switch (e.getAction()) {
 			case CircuitEvent.ACTION_ADD:
-				comp = (Component) e.getData();
-				if (comp.getFactory() instanceof SubcircuitFactory) {
-					SubcircuitFactory factory = (SubcircuitFactory) comp.getFactory();
-					depends.addEdge(e.getCircuit(), factory.getSubcircuit());
-				}
+				componentsAdded(e.getCircuit(),
+						Collections.singleton((Component) e.getData()));
 				break;
 			case CircuitEvent.ACTION_REMOVE:
-				comp = (Component) e.getData();
-				if (comp.getFactory() instanceof SubcircuitFactory) {
-					SubcircuitFactory factory = (SubcircuitFactory) comp.getFactory();
-					boolean found = false;
-					for (Component o : e.getCircuit().getNonWires()) { 
-						if (o.getFactory() == factory) {
-							found = true;
-							break;
-						}
-					}
-					if (!found) depends.removeEdge(e.getCircuit(), factory.getSubcircuit());
-				}
+				componentsRemoved(e.getCircuit(),
+						Collections.singleton((Component) e.getData()));
+				break;
+			case CircuitEvent.ACTION_BATCH:
+				componentsRemoved(e.getCircuit(), e.getBatch().getRemovals());
+				componentsAdded(e.getCircuit(), e.getBatch().getAdditions());
 				break;
 			case CircuitEvent.ACTION_CLEAR:
 				depends.removeNode(e.getCircuit());
 				break;
 			}
 		}
+
+		private void componentsAdded(Circuit circ, Collection<Component> comps) {
+			for (Component comp : comps) {
+				if (comp.getFactory() instanceof SubcircuitFactory) {
+					SubcircuitFactory factory = (SubcircuitFactory) comp.getFactory();
+					depends.addEdge(circ, factory.getSubcircuit());
+				}
+			}
+		}
+
+		private void componentsRemoved(Circuit circ, Collection<Component> comps) {
+			HashSet<ComponentFactory> removed = new HashSet<ComponentFactory>();
+			for (Component comp : comps) {
+				if (comp.getFactory() instanceof SubcircuitFactory) {
+					removed.add(comp.getFactory());
+				}
+			}
+			if (removed.isEmpty()) return;
+
+			// one pass over the circuit finds which subcircuits are still used
+			for (Component o : circ.getNonWires()) {
+				removed.remove(o.getFactory());
+				if (removed.isEmpty()) return;
+			}
+			for (ComponentFactory factory : removed) {
+				depends.removeEdge(circ, ((SubcircuitFactory) factory).getSubcircuit());
+			}
+		}
 	}
 
 	private MyListener myListener = new MyListener();
 	private Dag depends = new Dag();
+	private LogisimFile file;
 
 	Dependencies(LogisimFile file) {
+		this.file = file;
 		addDependencies(file);
 	}
 
 	public boolean canRemove(Circuit circ) {
+		loadDeferredCircuits();
 		return !depends.hasPredecessors(circ);
 	}
 
 	public boolean canAdd(Circuit circ, Circuit sub) {
+		loadDeferredCircuits();
 		return depends.canFollow(sub, circ);
 	}
+	
+	private void loadDeferredCircuits() {
+		// as each circuit is loaded, our listener learns what it contains
+		for (Circuit circuit : file.getCircuits()) {
+			circuit.loadDeferredContents();
+		}
+	}
 
 	private void addDependencies(LogisimFile file) {
 		file.addLibraryListener(myListener);
@@ -98,6 +131,7 @@ public class Dependencies {
 
 	private void processCircuit(Circuit circ) {
 		circ.addCircuitListener(myListener);
+		if (circ.hasDeferredContents()) return; // we'll hear as it is loaded
 		for (Component comp : circ.getNonWires()) {
 			if (comp.getFactory() instanceof SubcircuitFactory) {
 				SubcircuitFactory factory = (SubcircuitFactory) comp.getFactory();
@@ -50,6 +50,15 @@ public class JoinedAction extends Action {
 		}
 	}
 	
+	@Override
+	public long getMemorySize() {
+		long ret = 0;
+		for (Action act : todo) {
+			ret += act.getMemorySize();
+		}
+		return ret;
+	}
+	
 	@Override
 	public Action append(Action other) {
 		int oldLen = todo.length;
@@ -3,10 +3,16 @@
 
 package com.cburch.logisim.proj;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
 
 import com.cburch.logisim.circuit.Circuit;
 import com.cburch.logisim.circuit.CircuitListener;
@@ -21,9 +27,12 @@ import com.cburch.logisim.file.Options;
 import com.cburch.logisim.gui.log.LogFrame;
 import com.cburch.logisim.gui.main.Canvas;
 import com.cburch.logisim.gui.main.Frame;
+import com.cburch.logisim.gui.main.RecoveryJournal;
 import com.cburch.logisim.gui.main.Selection;
 import com.cburch.logisim.gui.main.SelectionActions;
+import com.cburch.logisim.gui.main.SessionFrame;
 import com.cburch.logisim.gui.opts.OptionsFrame;
+import com.cburch.logisim.prefs.AppPreferences;
 import com.cburch.logisim.tools.AddTool;
 import com.cburch.logisim.tools.Library;
 import com.cburch.logisim.tools.Tool;
@@ -31,14 +40,14 @@ import com.cburch.logisim.util.EventSourceWeakSupport;
 import com.cburch.logisim.util.JFileChoosers;
 
 public class Project {
-	private static final int MAX_UNDO_SIZE = 64;
-
 	private static class ActionData {
-		CircuitState circuitState;
+		// weak so that an old entry does not keep a closed simulation alive
+		WeakReference<CircuitState> circuitState;
 		Action action;
+		long size = 0;
 
 		public ActionData(CircuitState circuitState, Action action) {
-			this.circuitState = circuitState;
+			this.circuitState = new WeakReference<CircuitState>(circuitState);
 			this.action = action;
 		}
 	}
@@ -70,17 +79,21 @@ public class Project {
 		}
 	}
 
-	private Simulator simulator = new Simulator();
+	private ArrayList<SimulationSession> sessions = new ArrayList<SimulationSession>();
+	private SimulationSession session; // the session shown in the frame
+	private int sessionCount = 0;
 	private LogisimFile file;
-	private CircuitState circuitState;
-	private HashMap<Circuit,CircuitState> stateMap
-		= new HashMap<Circuit,CircuitState>();
 	private Frame frame = null;
 	private OptionsFrame optionsFrame = null;
 	private LogFrame logFrame = null;
+	private HashMap<SimulationSession,SessionFrame> sessionFrames
+		= new HashMap<SimulationSession,SessionFrame>();
 	private Tool tool = null;
 	private LinkedList<ActionData> undoLog = new LinkedList<ActionData>();
+	private long undoSize = 0;
 	private int undoMods = 0;
+	private boolean recovered = false; // whether the file holds recovered changes
+	private RecoveryJournal journal = null;
 	private EventSourceWeakSupport<ProjectListener> projectListeners
 		= new EventSourceWeakSupport<ProjectListener>();
 	private EventSourceWeakSupport<LibraryListener> fileListeners
@@ -92,6 +105,8 @@ public class Project {
 	private boolean startupScreen = false;
 
 	public Project(LogisimFile file) {
+		session = new SimulationSession(this, ++sessionCount);
+		sessions.add(session);
 		addLibraryListener(myListener);
 		setLogisimFile(file);
 	}
@@ -102,6 +117,9 @@ public class Project {
 		frame = value;
 		Projects.windowCreated(this, oldValue, value);
 		value.getCanvas().getSelection().addListener(myListener);
+		if (journal == null && AppPreferences.RECOVERY_JOURNAL.getBoolean()) {
+			journal = new RecoveryJournal(this);
+		}
 	}
 
 	//
@@ -112,7 +130,15 @@ public class Project {
 	}
 
 	public Simulator getSimulator() {
-		return simulator;
+		return session.getSimulator();
+	}
+
+	public SimulationSession getSession() {
+		return session;
+	}
+
+	public List<SimulationSession> getSessions() {
+		return Collections.unmodifiableList(sessions);
 	}
 
 	public Options getOptions() {
@@ -142,25 +168,28 @@ public class Project {
 		return logFrame;
 	}
 
+	/** Returns the window showing the given session beside the
+	 * project's frame, creating it if requested. */
+	public SessionFrame getSessionFrame(SimulationSession value, boolean create) {
+		SessionFrame ret = sessionFrames.get(value);
+		if (ret == null && create && sessions.contains(value)) {
+			ret = new SessionFrame(this, value);
+			sessionFrames.put(value, ret);
+		}
+		return ret;
+	}
+
 	public Circuit getCurrentCircuit() {
-		return circuitState == null ? null : circuitState.getCircuit();
+		CircuitState state = session.getCircuitState();
+		return state == null ? null : state.getCircuit();
 	}
 
 	public CircuitState getCircuitState() {
-		return circuitState;
+		return session.getCircuitState();
 	}
 	
 	public CircuitState getCircuitState(Circuit circuit) {
-		if (circuitState != null && circuitState.getCircuit() == circuit) {
-			return circuitState;
-		} else {
-			CircuitState ret = stateMap.get(circuit);
-			if (ret == null) {
-				ret = new CircuitState(this, circuit);
-				stateMap.put(circuit, ret);
-			}
-			return ret;
-		}
+		return session.getCircuitState(circuit);
 	}
 
 	public Action getLastAction() {
@@ -183,7 +212,7 @@ public class Project {
 	}
 
 	public boolean isFileDirty() {
-		return undoMods != 0;
+		return recovered || undoMods != 0;
 	}
 
 	public JFileChooser createChooser() {
@@ -266,10 +295,12 @@ public class Project {
 			}
 		}
 		file = value;
-		stateMap.clear();
+		for (SimulationSession s : sessions) s.clearStates();
 		depends = new Dependencies(file);
 		undoLog.clear();
+		undoSize = 0;
 		undoMods = 0;
+		recovered = false;
 		fireEvent(ProjectEvent.ACTION_SET_FILE, old, file);
 		setCurrentCircuit(file.getMainCircuit());
 		if (file != null) {
@@ -282,9 +313,21 @@ public class Project {
 	}
 
 	public void setCircuitState(CircuitState value) {
-		if (value == null || circuitState == value) return;
+		if (value == null) return;
+		// a state from another session, as when undoing, brings it back
+		SimulationSession target = session;
+		if (!session.containsState(value)) {
+			for (SimulationSession s : sessions) {
+				if (s.containsState(value)) target = s;
+			}
+		}
+		setCircuitState(target, value);
+	}
+
+	private void setCircuitState(SimulationSession target, CircuitState value) {
+		CircuitState old = session.getCircuitState();
+		if (target == session && old == value) return;
 
-		CircuitState old = circuitState;
 		Circuit oldCircuit = old == null ? null : old.getCircuit();
 		Circuit newCircuit = value.getCircuit();
 		boolean circuitChanged = old == null || oldCircuit != newCircuit;
@@ -307,9 +350,8 @@ public class Project {
 				}
 			}
 		}
-		circuitState = value;
-		stateMap.put(circuitState.getCircuit(), circuitState);
-		simulator.setCircuitState(circuitState);
+		session = target;
+		session.setCircuitState(value);
 		if (circuitChanged) {
 			fireEvent(ProjectEvent.ACTION_SET_CURRENT, oldCircuit, newCircuit);
 			if (newCircuit != null) {
@@ -318,13 +360,85 @@ public class Project {
 				}
 			}
 		}
-		fireEvent(ProjectEvent.ACTION_SET_STATE, old, circuitState);
+		fireEvent(ProjectEvent.ACTION_SET_STATE, old, value);
 	}
 
 	public void setCurrentCircuit(Circuit circuit) {
-		CircuitState circState = stateMap.get(circuit);
-		if (circState == null) circState = new CircuitState(this, circuit);
-		setCircuitState(circState);
+		setCircuitState(session, session.getCircuitState(circuit));
+	}
+
+	/** Creates a session with its own simulator and makes it current.
+	 * If fork is set, the new session starts from a copy of the
+	 * current session's state; otherwise the circuit starts afresh.
+	 * Forking waits for the current propagation to finish, so the event
+	 * thread should call forkSession instead. */
+	public SimulationSession createSession(boolean fork) {
+		CircuitState start = null;
+		if (fork) {
+			try {
+				start = session.getSimulator().cloneCircuitState().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+			}
+		}
+		return addSession(session, start);
+	}
+
+	/** Creates a session starting from a copy of the current session's
+	 * state, without waiting: the simulator copies the state once its
+	 * current propagation finishes, and the new session becomes current
+	 * when the copy arrives on the event thread. */
+	public void forkSession() {
+		final SimulationSession source = session;
+		final Simulator sim = source.getSimulator();
+		sim.invokeBetweenPropagations(new Runnable() {
+			public void run() {
+				CircuitState state = sim.getCircuitState();
+				final CircuitState copy = state == null ? null : state.cloneState();
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (sessions.contains(source)) addSession(source, copy);
+					}
+				});
+			}
+		});
+	}
+
+	private SimulationSession addSession(SimulationSession source,
+			CircuitState start) {
+		CircuitState current = source.getCircuitState();
+		SimulationSession ret = new SimulationSession(this, ++sessionCount);
+		sessions.add(ret);
+		if (current == null) return ret;
+		ret.getSimulator().setTickFrequency(source.getSimulator().getTickFrequency());
+		if (start == null) start = ret.getCircuitState(current.getCircuit());
+		setCircuitState(ret, start);
+		ret.getSimulator().requestPropagate();
+		return ret;
+	}
+
+	public void setSession(SimulationSession value) {
+		if (value == session || !sessions.contains(value)) return;
+		CircuitState state = value.getCircuitState();
+		if (state == null) state = value.getCircuitState(getCurrentCircuit());
+		setCircuitState(value, state);
+	}
+
+	/** Stops a session's simulator and discards its states. The last
+	 * remaining session cannot be closed. */
+	public boolean closeSession(SimulationSession value) {
+		if (sessions.size() <= 1 || !sessions.contains(value)) return false;
+		if (value == session) {
+			int index = sessions.indexOf(value);
+			setSession(sessions.get(index == 0 ? 1 : index - 1));
+		}
+		sessions.remove(value);
+		SessionFrame sessionFrame = sessionFrames.remove(value);
+		if (sessionFrame != null) sessionFrame.dispose();
+		value.shutDown();
+		return true;
 	}
 
 	public void setTool(Tool value) {
@@ -353,26 +467,29 @@ public class Project {
 		startupScreen = false;
 		if (!undoLog.isEmpty() && act.shouldAppendTo(getLastAction())) {
 			ActionData firstData = undoLog.removeLast();
+			undoSize -= firstData.size;
 			Action first = firstData.action;
 			if (first.isModification()) --undoMods;
 			toAdd = first.append(act);
+			ActionData toAddData = null;
 			if (toAdd != null) {
-				undoLog.add(new ActionData(circuitState, toAdd));
+				toAddData = new ActionData(getCircuitState(), toAdd);
+				undoLog.add(toAddData);
 				if (toAdd.isModification()) ++undoMods;
 			}
 			fireEvent(new ProjectEvent(ProjectEvent.ACTION_START, this, act));
 			act.doIt(this);
+			if (toAddData != null) addUndoSize(toAddData);
 			file.setDirty(isFileDirty());
 			fireEvent(new ProjectEvent(ProjectEvent.ACTION_COMPLETE, this, act));
 			fireEvent(new ProjectEvent(ProjectEvent.ACTION_MERGE, this, first, toAdd));
 			return;
 		}
-		undoLog.add(new ActionData(circuitState, toAdd));
+		ActionData data = new ActionData(getCircuitState(), toAdd);
+		undoLog.add(data);
 		fireEvent(new ProjectEvent(ProjectEvent.ACTION_START, this, act));
 		act.doIt(this);
-		while (undoLog.size() > MAX_UNDO_SIZE) {
-			undoLog.removeFirst();
-		}
+		addUndoSize(data);
 		if (toAdd.isModification()) ++undoMods;
 		file.setDirty(isFileDirty());
 		fireEvent(new ProjectEvent(ProjectEvent.ACTION_COMPLETE, this, act));
@@ -381,7 +498,9 @@ public class Project {
 	public void undoAction() {
 		if (undoLog != null && undoLog.size() > 0) {
 			ActionData data = undoLog.removeLast();
-			setCircuitState(data.circuitState);
+			undoSize -= data.size;
+			CircuitState state = data.circuitState.get();
+			if (state != null) setCircuitState(state);
 			Action action = data.action;
 			if (action.isModification()) --undoMods;
 			fireEvent(new ProjectEvent(ProjectEvent.UNDO_START, this, action));
@@ -391,9 +510,38 @@ public class Project {
 		}
 	}
 
+	// Counts an action done into the undo log's size, then drops the oldest
+	// actions while the log is over its budget. The newest is always kept,
+	// so a single large action can still be undone.
+	private void addUndoSize(ActionData data) {
+		data.size = data.action.getMemorySize();
+		undoSize += data.size;
+		long budget = (long) AppPreferences.UNDO_MEMORY.get().intValue() << 20;
+		while (undoSize > budget && undoLog.size() > 1) {
+			undoSize -= undoLog.removeFirst().size;
+		}
+	}
+
 	public void setFileAsClean() {
 		undoMods = 0;
+		recovered = false;
+		file.setDirty(isFileDirty());
+	}
+
+	/** Marks the file as holding changes recovered after Logisim did not
+	 * close normally, which are not saved though nothing may be undone. */
+	public void setFileAsRecovered() {
+		recovered = true;
 		file.setDirty(isFileDirty());
+		if (journal != null) journal.recovered();
+	}
+
+	// stops keeping the recovery journal, deleting it, as the project closes
+	void closeJournal() {
+		if (journal != null) {
+			journal.close();
+			journal = null;
+		}
 	}
 
 	public void repaintCanvas() {
@@ -20,6 +20,7 @@ import com.cburch.logisim.file.LoadFailedException;
 import com.cburch.logisim.file.Loader;
 import com.cburch.logisim.file.LogisimFile;
 import com.cburch.logisim.gui.main.Frame;
+import com.cburch.logisim.gui.main.RecoveryJournal;
 import com.cburch.logisim.gui.start.SplashScreen;
 import com.cburch.logisim.prefs.AppPreferences;
 import com.cburch.logisim.tools.Tool;
@@ -149,10 +150,17 @@ public class ProjectActions {
 			Map<File,File> substitutions) throws LoadFailedException {
 		if (monitor != null) monitor.setProgress(SplashScreen.FILE_LOAD);
 		Loader loader = new Loader(monitor);
-		LogisimFile file = loader.openLogisimFile(source, substitutions);
+		LogisimFile file = null;
+		if (substitutions.isEmpty()) {
+			file = RecoveryJournal.openRecovered(monitor, loader, source);
+		}
+		boolean recovered = file != null;
+		if (!recovered) file = loader.openLogisimFile(source, substitutions);
 		AppPreferences.updateRecentFile(source);
 		
-		return completeProject(monitor, loader, file, false);
+		Project ret = completeProject(monitor, loader, file, false);
+		if (recovered) ret.setFileAsRecovered();
+		return ret;
 	}
 
 	public static void doOpen(Component parent, Project baseProject) {
@@ -214,7 +222,9 @@ public class ProjectActions {
 		}
 
 		try {
-			LogisimFile lib = loader.openLogisimFile(f);
+			LogisimFile lib = RecoveryJournal.openRecovered(parent, loader, f);
+			boolean recovered = lib != null;
+			if (!recovered) lib = loader.openLogisimFile(f);
 			AppPreferences.updateRecentFile(f);
 			if (lib == null) return null;
 			if (proj == null) {
@@ -222,6 +232,7 @@ public class ProjectActions {
 			} else {
 				proj.setLogisimFile(lib);
 			}
+			if (recovered) proj.setFileAsRecovered();
 		} catch (LoadFailedException ex) {
 			if (!ex.isShown()) {
 				JOptionPane.showMessageDialog(parent,
@@ -324,6 +335,9 @@ public class ProjectActions {
 		for (Project proj : new ArrayList<Project>(Projects.getOpenProjects())) {
 			if (!proj.confirmClose(Strings.get("confirmQuitTitle"))) return;
 		}
+		for (Project proj : Projects.getOpenProjects()) {
+			proj.closeJournal();
+		}
 		System.exit(0);
 	}
 }
@@ -30,7 +30,10 @@ public class Projects {
 			MyListener listener) {
 		frame.removeWindowListener(listener);
 		openProjects.remove(proj);
-		proj.getSimulator().shutDown();
+		proj.closeJournal();
+		for (SimulationSession session : proj.getSessions()) {
+			session.getSimulator().shutDown();
+		}
 		propertySupport.firePropertyChange(projectListProperty, null, null);
 	}
 
@@ -0,0 +1,100 @@
+/* Copyright (c) 2010, Carl Burch. License information is located in the
+ * com.cburch.logisim.Main source code and at www.cburch.com/logisim/. */
+
+package com.cburch.logisim.proj;
+
+import java.util.HashMap;
+
+import com.cburch.logisim.circuit.Circuit;
+import com.cburch.logisim.circuit.CircuitState;
+import com.cburch.logisim.circuit.Simulator;
+
+/** One simulation of a project's circuits: a simulator, with its own
+ * thread and clock, and the circuit states that it runs. A project has
+ * at least one session, and its frame shows the project's current
+ * session; the others keep running in the background. */
+public class SimulationSession {
+	private Project proj;
+	private int number;
+	private Simulator simulator = new Simulator();
+	private CircuitState circuitState = null;
+	private HashMap<Circuit,CircuitState> stateMap
+		= new HashMap<Circuit,CircuitState>();
+
+	SimulationSession(Project proj, int number) {
+		this.proj = proj;
+		this.number = number;
+	}
+
+	public Project getProject() {
+		return proj;
+	}
+
+	public String getName() {
+		return Strings.get("simulationSessionName", "" + number);
+	}
+
+	public Simulator getSimulator() {
+		return simulator;
+	}
+
+	/** Returns the state that the simulator is running, which is the one
+	 * shown when this is the project's current session. */
+	public CircuitState getCircuitState() {
+		return circuitState;
+	}
+
+	/** Returns this session's state for simulating circuit as a top-level
+	 * circuit, creating it if needed. */
+	public CircuitState getCircuitState(Circuit circuit) {
+		if (circuitState != null && circuitState.getCircuit() == circuit) {
+			return circuitState;
+		} else {
+			CircuitState ret = stateMap.get(circuit);
+			if (ret == null) {
+				ret = new CircuitState(proj, circuit);
+				stateMap.put(circuit, ret);
+			}
+			return ret;
+		}
+	}
+
+	/** Makes the simulator run the given state. Scripts use this to drive
+	 * a session that is not shown; for the current session, use
+	 * Project.setCircuitState so that the frame follows. */
+	public void setCircuitState(CircuitState value) {
+		if (value == null || circuitState == value) return;
+		circuitState = value;
+		stateMap.put(value.getCircuit(), value);
+		simulator.setCircuitState(value);
+	}
+
+	/** Returns whether the state, or the tree of states holding it, was
+	 * created for this session. */
+	public boolean containsState(CircuitState state) {
+		CircuitState root = getRoot(state);
+		for (CircuitState s : stateMap.values()) {
+			if (getRoot(s) == root) return true;
+		}
+		return false;
+	}
+
+	void clearStates() {
+		stateMap.clear();
+	}
+
+	void shutDown() {
+		simulator.shutDown();
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+	private static CircuitState getRoot(CircuitState state) {
+		CircuitState ret = state;
+		while (ret.getParentState() != null) ret = ret.getParentState();
+		return ret;
+	}
+}
@@ -5,7 +5,6 @@ package com.cburch.logisim.std.arith;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.util.Arrays;
 
 import com.cburch.logisim.data.Attribute;
 import com.cburch.logisim.data.AttributeOption;
@@ -94,51 +93,16 @@ public class Shifter extends InstanceFactory {
 		if (vd.isFullyDefined() && vx.getWidth() == bits) {
 			int d = vd.toIntValue();
 			Object shift = state.getAttributeValue(ATTR_SHIFT);
-			if (d == 0) {
-				vy = vx;
-			} else if (vx.isFullyDefined()) {
-				int x = vx.toIntValue();
-				int y;
-				if (shift == SHIFT_LOGICAL_RIGHT) {
-					y = x >>> d;
-				} else if (shift == SHIFT_ARITHMETIC_RIGHT) {
-					if (d >= bits) d = bits - 1;
-					y = x >> d | ((x << (32 - bits)) >> (32 - bits + d));
-				} else if (shift == SHIFT_ROLL_RIGHT) {
-					if (d >= bits) d -= bits;
-					y = (x >>> d) | (x << (bits - d));
-				} else if (shift == SHIFT_ROLL_LEFT) {
-					if (d >= bits) d -= bits;
-					y = (x << d) | (x >>> (bits - d));
-				} else { // SHIFT_LOGICAL_LEFT
-					y = x << d;
-				}
-				vy = Value.createKnown(dataWidth, y);
-			} else {
-				Value[] x = vx.getAll();
-				Value[] y = new Value[bits];
-				if (shift == SHIFT_LOGICAL_RIGHT) {
-					if (d >= bits) d = bits;
-					System.arraycopy(x, d, y, 0, bits - d);
-					Arrays.fill(y, bits - d, bits, Value.FALSE);
-				} else if (shift == SHIFT_ARITHMETIC_RIGHT) {
-					if (d >= bits) d = bits;
-					System.arraycopy(x, d, y, 0, x.length - d);
-					Arrays.fill(y, bits - d, y.length, x[bits - 1]);
-				} else if (shift == SHIFT_ROLL_RIGHT) {
-					if (d >= bits) d -= bits;
-					System.arraycopy(x, d, y, 0, bits - d);
-					System.arraycopy(x, 0, y, bits - d, d);
-				} else if (shift == SHIFT_ROLL_LEFT) {
-					if (d >= bits) d -= bits;
-					System.arraycopy(x, x.length - d, y, 0, d);
-					System.arraycopy(x, 0, y, d, bits - d);
-				} else { // SHIFT_LOGICAL_LEFT
-					if (d >= bits) d = bits;
-					Arrays.fill(y, 0, d, Value.FALSE);
-					System.arraycopy(x, 0, y, d, bits - d);
-				}
-				vy = Value.create(y);
+			if (shift == SHIFT_LOGICAL_RIGHT) {
+				vy = vx.shiftRight(d, Value.FALSE);
+			} else if (shift == SHIFT_ARITHMETIC_RIGHT) {
+				vy = vx.shiftRight(d, vx.get(bits - 1));
+			} else if (shift == SHIFT_ROLL_RIGHT) {
+				vy = vx.rotateRight(d);
+			} else if (shift == SHIFT_ROLL_LEFT) {
+				vy = vx.rotateLeft(d);
+			} else { // SHIFT_LOGICAL_LEFT
+				vy = vx.shiftLeft(d, Value.FALSE);
 			}
 		} else {
 			vy = Value.createError(dataWidth);
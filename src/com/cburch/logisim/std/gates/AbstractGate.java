@@ -7,6 +7,7 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.Icon;
 
@@ -21,7 +22,6 @@ import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
 import com.cburch.logisim.data.Value;
-import com.cburch.logisim.file.Options;
 import com.cburch.logisim.instance.Instance;
 import com.cburch.logisim.instance.InstanceFactory;
 import com.cburch.logisim.instance.InstancePainter;
@@ -39,6 +39,14 @@ import com.cburch.logisim.util.Icons;
 import com.cburch.logisim.util.StringGetter;
 
 abstract class AbstractGate extends InstanceFactory {
+	// inputs are gathered here rather than in a new array each evaluation
+	private static final ThreadLocal<Value[]> inputBuffer = new ThreadLocal<Value[]>() {
+		@Override
+		protected Value[] initialValue() {
+			return new Value[GateAttributes.MAX_INPUTS];
+		}
+	};
+	
 	private String[] iconNames = new String[3];
 	private Icon[] icons = new Icon[3];
 	private int bonusWidth = 0;
@@ -46,6 +54,11 @@ abstract class AbstractGate extends InstanceFactory {
 	private boolean isXor = false;
 	private String rectLabel = "";
 	private boolean paintInputLines;
+	// ports depend only on a few attributes, so gates configured alike
+	// share the same Port objects, keyed as in getPortKey (setPorts
+	// copies the array itself for each gate)
+	private ConcurrentHashMap<Long,Port[]> portCache
+		= new ConcurrentHashMap<Long,Port[]>();
 
 	protected AbstractGate(String name, StringGetter desc) {
 		this(name, desc, false);
@@ -411,25 +424,40 @@ abstract class AbstractGate extends InstanceFactory {
 		GateAttributes attrs = (GateAttributes) instance.getAttributeSet();
 		int inputs = attrs.inputs;
 
-		Port[] ports = new Port[inputs + 1];
-		ports[0] = new Port(0, 0, Port.OUTPUT, StdAttr.WIDTH);
-		for (int i = 0; i < inputs; i++) {
-			Location offs = getInputOffset(attrs, i);
-			ports[i + 1] = new Port(offs.getX(), offs.getY(), Port.INPUT, StdAttr.WIDTH);
+		Long key = getPortKey(attrs);
+		Port[] ports = portCache.get(key);
+		if (ports == null) {
+			ports = new Port[inputs + 1];
+			ports[0] = new Port(0, 0, Port.OUTPUT, StdAttr.WIDTH);
+			for (int i = 0; i < inputs; i++) {
+				Location offs = getInputOffset(attrs, i);
+				ports[i + 1] = new Port(offs.getX(), offs.getY(), Port.INPUT, StdAttr.WIDTH);
+			}
+			portCache.putIfAbsent(key, ports);
 		}
 		instance.setPorts(ports);
 	}
 
+	// the attributes on which getInputOffset depends
+	private static Long getPortKey(GateAttributes attrs) {
+		long size = ((Integer) attrs.size.getValue()).intValue();
+		long facing = attrs.facing.toDegrees() / 90;
+		return Long.valueOf((attrs.negated & 0xFFFFFFFFL)
+				| ((long) attrs.inputs << 32) | (facing << 40) | (size << 42));
+	}
+
 	@Override
 	public void propagate(InstanceState state) {
 		GateAttributes attrs = (GateAttributes) state.getAttributeSet();
 		int inputCount = attrs.inputs;
 		int negated = attrs.negated;
-		AttributeSet opts = state.getProject().getOptions().getAttributeSet();
-		boolean errorIfUndefined = opts.getValue(Options.ATTR_GATE_UNDEFINED)
-									.equals(Options.GATE_UNDEFINED_ERROR);
+		boolean errorIfUndefined = state.getProject().getOptions().isGateUndefinedError();
 
-		Value[] inputs = new Value[inputCount];
+		Value[] inputs = inputBuffer.get();
+		if (inputs.length < inputCount) {
+			inputs = new Value[inputCount];
+			inputBuffer.set(inputs);
+		}
 		int numInputs = 0;
 		boolean error = false;
 		for (int i = 1; i <= inputCount; i++) {
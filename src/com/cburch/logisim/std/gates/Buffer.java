@@ -17,7 +17,6 @@ import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
 import com.cburch.logisim.data.Value;
-import com.cburch.logisim.file.Options;
 import com.cburch.logisim.instance.Instance;
 import com.cburch.logisim.instance.InstanceFactory;
 import com.cburch.logisim.instance.InstancePainter;
@@ -155,9 +154,7 @@ class Buffer extends InstanceFactory {
 	// static methods - shared with other classes
 	//
 	static Value repair(InstanceState state, Value v) {
-		AttributeSet opts = state.getProject().getOptions().getAttributeSet();
-		Object onUndefined = opts.getValue(Options.ATTR_GATE_UNDEFINED);
-		boolean errorIfUndefined = onUndefined.equals(Options.GATE_UNDEFINED_ERROR);
+		boolean errorIfUndefined = state.getProject().getOptions().isGateUndefinedError();
 		Value repaired;
 		if (errorIfUndefined) {
 			int vw = v.getWidth();
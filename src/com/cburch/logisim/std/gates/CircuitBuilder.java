@@ -7,6 +7,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import com.cburch.logisim.analyze.model.AnalyzerModel;
 import com.cburch.logisim.analyze.model.Expression;
@@ -26,6 +32,8 @@ import com.cburch.logisim.std.wiring.Constant;
 import com.cburch.logisim.std.wiring.Pin;
 
 public class CircuitBuilder {
+	private static ExecutorService pool = null;
+	
 	private CircuitBuilder() { }
 	
 	public static CircuitMutation build(Circuit destCirc, AnalyzerModel model,
@@ -33,26 +41,63 @@ public class CircuitBuilder {
 		CircuitMutation result = new CircuitMutation(destCirc);
 		result.clear();
 		
-		Layout[] layouts = new Layout[model.getOutputs().size()];
-		int maxWidth = 0;
-		for (int i = 0; i < layouts.length; i++) {
+		Expression[] exprs = new Expression[model.getOutputs().size()];
+		for (int i = 0; i < exprs.length; i++) {
 			String output = model.getOutputs().get(i);
-			Expression expr = model.getOutputExpressions().getExpression(output);
-			CircuitDetermination det = CircuitDetermination.create(expr);
-			if (det != null) {
-				if (twoInputs) det.convertToTwoInputs();
-				if (useNands) det.convertToNands();
-				det.repair();
-				layouts[i] = layoutGates(det);
-				maxWidth = Math.max(maxWidth, layouts[i].width);
-			} else {
-				layouts[i] = null;
-			}
+			exprs[i] = model.getOutputExpressions().getExpression(output);
 		}
 		
+		// determine the gates for each output, and then merge the
+		// subexpressions that appear in several places so that each
+		// is built only once
+		CircuitDetermination[] dets = determineGates(exprs, twoInputs, useNands);
+		ArrayList<CircuitDetermination> shared = CircuitDetermination.shareCommon(dets);
+		SharedData sharedData = new SharedData(shared);
+		
+		// lay out the shared gates and the output cones; these are
+		// independent of each other, since each shared gate is reached
+		// through a spine just as an input is
+		int numShared = shared.size();
+		CircuitDetermination[] roots = new CircuitDetermination[numShared + dets.length];
+		shared.toArray(roots);
+		System.arraycopy(dets, 0, roots, numShared, dets.length);
+		Layout[] allLayouts = layoutGates(roots, sharedData);
+
 		InputData inputData = computeInputData(model);
 		int x = inputData.getStartX();
 		int y = 10;
+		
+		// place the shared gates, in bands so that each band only uses
+		// the spines of inputs and of shared gates in earlier bands
+		for (int level = 0; level <= sharedData.maxLevel; level++) {
+			int bandWidth = 0;
+			for (int i = 0; i < numShared; i++) {
+				if (sharedData.levels[i] == level) {
+					bandWidth = Math.max(bandWidth, allLayouts[i].width);
+				}
+			}
+			int spineX = x + bandWidth + 20;
+			for (int i = 0; i < numShared; i++) {
+				if (sharedData.levels[i] == level) {
+					Layout layout = allLayouts[i];
+					String name = sharedData.names.get(shared.get(i));
+					Location output = Location.create(spineX, y + layout.outputY);
+					inputData.addSpine(name, spineX);
+					inputData.registerConnection(name, output);
+					placeComponents(result, layout, x, y, inputData, output);
+					spineX += 20;
+					y += layout.height + 10;
+				}
+			}
+			x = spineX;
+		}
+		
+		Layout[] layouts = new Layout[dets.length];
+		System.arraycopy(allLayouts, numShared, layouts, 0, dets.length);
+		int maxWidth = 0;
+		for (int i = 0; i < layouts.length; i++) {
+			if (layouts[i] != null) maxWidth = Math.max(maxWidth, layouts[i].width);
+		}
 		int outputX = x + maxWidth + 20;
 		for (int i = 0; i < layouts.length; i++) {
 			String outputName = model.getOutputs().get(i);
@@ -73,14 +118,148 @@ public class CircuitBuilder {
 			y += height + 10;
 		}
 		placeInputs(result, inputData);
+		placeSharedSpines(result, inputData);
 		return result;
 	}
+	
+	//
+	// determineGates
+	//
+	private static CircuitDetermination[] determineGates(final Expression[] exprs,
+			final boolean twoInputs, final boolean useNands) {
+		final CircuitDetermination[] ret = new CircuitDetermination[exprs.length];
+		forEachIndex(exprs.length, new IndexedTask() {
+			public void run(int i) {
+				CircuitDetermination det = CircuitDetermination.create(exprs[i]);
+				if (det != null) {
+					if (twoInputs) det.convertToTwoInputs();
+					if (useNands) det.convertToNands();
+					det.repair();
+				}
+				ret[i] = det;
+			}
+		});
+		return ret;
+	}
+	
+	private static interface IndexedTask {
+		public void run(int index);
+	}
+	
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			int threads = Runtime.getRuntime().availableProcessors();
+			pool = Executors.newFixedThreadPool(Math.max(1, threads),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread ret = new Thread(r, "CircuitBuilder");
+						ret.setDaemon(true);
+						return ret;
+					}
+				});
+		}
+		return pool;
+	}
+	
+	/** Runs the task for each index from 0 to count - 1, spreading the
+	 * work across the available processors. The tasks must be
+	 * independent of one another. */
+	private static void forEachIndex(int count, final IndexedTask task) {
+		if (count <= 1 || Runtime.getRuntime().availableProcessors() <= 1) {
+			for (int i = 0; i < count; i++) task.run(i);
+			return;
+		}
+		
+		ExecutorService pool = getPool();
+		try {
+			ArrayList<Future<?>> results = new ArrayList<Future<?>>(count);
+			for (int i = 0; i < count; i++) {
+				final int index = i;
+				results.add(pool.submit(new Runnable() {
+					public void run() { task.run(index); }
+				}));
+			}
+			for (Future<?> f : results) f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+	
+	//
+	// SharedData
+	//
+	private static class SharedData {
+		// input names cannot contain a space, so these cannot clash
+		private static final String NAME_PREFIX = "shared ";
+		
+		IdentityHashMap<CircuitDetermination,String> names
+			= new IdentityHashMap<CircuitDetermination,String>();
+		int[] levels;
+		int maxLevel = -1;
+		
+		SharedData(ArrayList<CircuitDetermination> shared) {
+			IdentityHashMap<CircuitDetermination,Integer> levelMap
+				= new IdentityHashMap<CircuitDetermination,Integer>();
+			levels = new int[shared.size()];
+			for (int i = 0; i < levels.length; i++) {
+				CircuitDetermination det = shared.get(i);
+				// shared gates arrive after all gates they depend upon
+				levels[i] = findLevel(det, levelMap);
+				levelMap.put(det, Integer.valueOf(levels[i]));
+				names.put(det, NAME_PREFIX + i);
+				maxLevel = Math.max(maxLevel, levels[i]);
+			}
+		}
+		
+		String getName(CircuitDetermination det) {
+			return names.get(det);
+		}
+		
+		private static int findLevel(CircuitDetermination det,
+				IdentityHashMap<CircuitDetermination,Integer> levelMap) {
+			int ret = 0;
+			if (det instanceof CircuitDetermination.Gate) {
+				ArrayList<CircuitDetermination> inputs
+					= ((CircuitDetermination.Gate) det).getInputs();
+				for (int i = 0; i < inputs.size(); i++) {
+					CircuitDetermination sub = inputs.get(i);
+					if (inputs.indexOf(sub) != i) continue;
+					Integer subLevel = levelMap.get(sub);
+					if (subLevel != null) {
+						ret = Math.max(ret, subLevel.intValue() + 1);
+					} else {
+						ret = Math.max(ret, findLevel(sub, levelMap));
+					}
+				}
+			}
+			return ret;
+		}
+	}
 
 	//
 	// layoutGates
 	//
-	private static Layout layoutGates(CircuitDetermination det) {
-		return layoutGatesSub(det);
+	private static Layout[] layoutGates(final CircuitDetermination[] dets,
+			final SharedData shared) {
+		final Layout[] ret = new Layout[dets.length];
+		forEachIndex(dets.length, new IndexedTask() {
+			public void run(int i) {
+				CircuitDetermination det = dets[i];
+				if (det != null) {
+					// a shared gate is itself laid out, but when it is an
+					// output's root the output simply draws on its spine
+					boolean isShared = i < shared.levels.length;
+					ret[i] = layoutGatesSub(det, shared, isShared);
+				}
+			}
+		});
+		return ret;
 	}
 	
 	private static class Layout {
@@ -97,6 +276,7 @@ public class CircuitBuilder {
 		int subX; // where right edge of sublayouts should be relative to my left edge
 		Layout[] subLayouts;
 		String inputName; // for references directly to inputs
+		   // (or to the spines of shared gates)
 
 		Layout(int width, int height, int outputY,
 				ComponentFactory factory, AttributeSet attrs,
@@ -117,8 +297,12 @@ public class CircuitBuilder {
 		}
 	}
 	
-	private static Layout layoutGatesSub(CircuitDetermination det) {
-		if (det instanceof CircuitDetermination.Input) {
+	private static Layout layoutGatesSub(CircuitDetermination det,
+			SharedData shared, boolean expand) {
+		String sharedName = expand ? null : shared.getName(det);
+		if (sharedName != null) {
+			return new Layout(sharedName);
+		} else if (det instanceof CircuitDetermination.Input) {
 			CircuitDetermination.Input input = (CircuitDetermination.Input) det;
 			return new Layout(input.getName());
 		} else if (det instanceof CircuitDetermination.Value) {
@@ -141,9 +325,10 @@ public class CircuitBuilder {
 		// Handle a NOT implemented with a NAND as a special case
 		if (gate.isNandNot()) {
 			CircuitDetermination subDet = inputs.get(0);
-			if (!(subDet instanceof CircuitDetermination.Input)) {
+			if (!(subDet instanceof CircuitDetermination.Input)
+					&& shared.getName(subDet) == null) {
 				Layout[] sub = new Layout[1];
-				sub[0] = layoutGatesSub(subDet);
+				sub[0] = layoutGatesSub(subDet, shared, false);
 				sub[0].y = 0;
 				
 				AttributeSet attrs = factory.createAttributeSet();
@@ -181,7 +366,7 @@ public class CircuitBuilder {
 		int subWidth = 0; // maximum width of sublayouts
 		int subHeight = 0; // total height of sublayouts
 		for (int i = 0; i < sub.length; i++) {
-			sub[i] = layoutGatesSub(inputs.get(i));
+			sub[i] = layoutGatesSub(inputs.get(i), shared, false);
 			if (sub.length % 2 == 0 && i == (sub.length + 1) / 2
 					&& sub[i - 1].height + sub[i].height == 0) {
 				// if there are an even number of inputs, then there is a
@@ -271,6 +456,7 @@ public class CircuitBuilder {
 	private static class InputData {
 		int startX;
 		String[] names;
+		ArrayList<String> sharedNames = new ArrayList<String>();
 		HashMap<String,SingleInput> inputs = new HashMap<String,SingleInput>();
 		
 		InputData() { }
@@ -284,6 +470,11 @@ public class CircuitBuilder {
 			return data.spineX;
 		}
 		
+		void addSpine(String name, int spineX) {
+			sharedNames.add(name);
+			inputs.put(name, new SingleInput(spineX));
+		}
+		
 		void registerConnection(String input, Location loc) {
 			SingleInput data = inputs.get(input);
 			data.ys.add(loc);
@@ -478,16 +669,7 @@ public class CircuitBuilder {
 					result.add(Wire.create(loc, spineLoc));
 				// }
 
-				// create spine
-				Collections.sort(spine, compareYs);
-				Location prev = spine.get(0);
-				for (int k = 1, n = spine.size(); k < n; k++) {
-					Location cur = spine.get(k);
-					if (!cur.equals(prev)) {
-						result.add(Wire.create(prev, cur));
-						prev = cur;
-					}
-				}
+				placeSpine(result, spine);
 			}
 					
 			// advance y and forbid spine intersections for next pin
@@ -496,6 +678,29 @@ public class CircuitBuilder {
 		}
 	}
 	
+	//
+	// placeSharedSpines
+	//
+	private static void placeSharedSpines(CircuitMutation result,
+			InputData inputData) {
+		for (String name : inputData.sharedNames) {
+			placeSpine(result, inputData.inputs.get(name).ys);
+		}
+	}
+	
+	private static void placeSpine(CircuitMutation result,
+			ArrayList<Location> spine) {
+		Collections.sort(spine, new CompareYs());
+		Location prev = spine.get(0);
+		for (int k = 1, n = spine.size(); k < n; k++) {
+			Location cur = spine.get(k);
+			if (!cur.equals(prev)) {
+				result.add(Wire.create(prev, cur));
+				prev = cur;
+			}
+		}
+	}
+	
 	private static class CompareYs implements Comparator<Location> {
 		public int compare(Location a, Location b) {
 			return a.getY() - b.getY();
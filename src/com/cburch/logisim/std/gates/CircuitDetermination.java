@@ -4,6 +4,10 @@
 package com.cburch.logisim.std.gates;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 
 import com.cburch.logisim.analyze.model.Expression;
 import com.cburch.logisim.analyze.model.ExpressionVisitor;
@@ -194,6 +198,89 @@ abstract class CircuitDetermination {
 		int getValue() { return value; }
 	}
 	
+	/** Merges structurally identical subexpressions across all the
+	 * given determinations, so that each distinct gate is represented
+	 * by a single object. The array entries are replaced by their
+	 * merged counterparts. The returned list holds the gates that are
+	 * referenced from more than one place (including from several
+	 * entries of the array); each gate is listed after every gate it
+	 * depends upon. */
+	static ArrayList<CircuitDetermination> shareCommon(CircuitDetermination[] dets) {
+		HashMap<List<Object>,CircuitDetermination> canonical
+			= new HashMap<List<Object>,CircuitDetermination>();
+		IdentityHashMap<CircuitDetermination,CircuitDetermination> merged
+			= new IdentityHashMap<CircuitDetermination,CircuitDetermination>();
+		for (int i = 0; i < dets.length; i++) {
+			if (dets[i] != null) dets[i] = merge(dets[i], canonical, merged);
+		}
+		
+		IdentityHashMap<CircuitDetermination,Integer> refs
+			= new IdentityHashMap<CircuitDetermination,Integer>();
+		ArrayList<CircuitDetermination> order = new ArrayList<CircuitDetermination>();
+		for (CircuitDetermination det : dets) {
+			if (det != null) countReferences(det, refs, order);
+		}
+		
+		ArrayList<CircuitDetermination> ret = new ArrayList<CircuitDetermination>();
+		for (CircuitDetermination gate : order) {
+			if (refs.get(gate).intValue() > 1) ret.add(gate);
+		}
+		return ret;
+	}
+	
+	private static CircuitDetermination merge(CircuitDetermination det,
+			HashMap<List<Object>,CircuitDetermination> canonical,
+			IdentityHashMap<CircuitDetermination,CircuitDetermination> merged) {
+		CircuitDetermination ret = merged.get(det);
+		if (ret != null) return ret;
+		
+		List<Object> key;
+		if (det instanceof Gate) {
+			Gate gate = (Gate) det;
+			key = new ArrayList<Object>(gate.inputs.size() + 1);
+			key.add(gate.factory);
+			for (int i = 0; i < gate.inputs.size(); i++) {
+				CircuitDetermination sub = merge(gate.inputs.get(i), canonical, merged);
+				gate.inputs.set(i, sub);
+				key.add(sub); // subexpressions are compared by identity
+			}
+		} else if (det instanceof Input) {
+			key = Arrays.asList((Object) Input.class, ((Input) det).name);
+		} else {
+			key = Arrays.asList((Object) Value.class,
+					Integer.valueOf(((Value) det).value));
+		}
+		
+		ret = canonical.get(key);
+		if (ret == null) {
+			canonical.put(key, det);
+			ret = det;
+		}
+		merged.put(det, ret);
+		return ret;
+	}
+	
+	private static void countReferences(CircuitDetermination det,
+			IdentityHashMap<CircuitDetermination,Integer> refs,
+			ArrayList<CircuitDetermination> order) {
+		if (!(det instanceof Gate)) return;
+		Integer count = refs.get(det);
+		if (count != null) {
+			refs.put(det, Integer.valueOf(count.intValue() + 1));
+			return;
+		}
+		refs.put(det, Integer.valueOf(1));
+		
+		// an input repeated in the same gate (as in a NAND acting as a NOT)
+		// is still just one reference
+		ArrayList<CircuitDetermination> inputs = ((Gate) det).inputs;
+		for (int i = 0; i < inputs.size(); i++) {
+			CircuitDetermination sub = inputs.get(i);
+			if (inputs.indexOf(sub) == i) countReferences(sub, refs, order);
+		}
+		order.add(det);
+	}
+	
 	static CircuitDetermination create(Expression expr) {
 		if (expr == null) return null;
 		return expr.visit(new Determine());
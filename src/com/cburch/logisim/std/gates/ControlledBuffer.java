@@ -19,7 +19,6 @@ import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Direction;
 import com.cburch.logisim.data.Location;
 import com.cburch.logisim.data.Value;
-import com.cburch.logisim.file.Options;
 import com.cburch.logisim.instance.Instance;
 import com.cburch.logisim.instance.InstanceFactory;
 import com.cburch.logisim.instance.InstancePainter;
@@ -228,9 +227,7 @@ class ControlledBuffer extends InstanceFactory {
 		} else {
 			Value out;
 			if (control == Value.UNKNOWN || control == Value.NIL) {
-				AttributeSet opts = state.getProject().getOptions().getAttributeSet();
-				if (opts.getValue(Options.ATTR_GATE_UNDEFINED)
-						.equals(Options.GATE_UNDEFINED_ERROR)) {
+				if (state.getProject().getOptions().isGateUndefinedError()) {
 					out = Value.createError(width);
 				} else {
 					out = Value.createUnknown(width);
@@ -23,6 +23,9 @@ class MemContents implements Cloneable, HexModel {
 	private int addrBits;
 	private int mask;
 	private MemContentsSub.ContentsInterface[] pages;
+	// pages that may also belong to a clone, copied before being modified;
+	// null if no page is shared
+	private boolean[] sharedPages = null;
 	
 	private MemContents(int addrBits, int width) {
 		listeners = null;
@@ -72,12 +75,11 @@ class MemContents implements Cloneable, HexModel {
 		try {
 			MemContents ret = (MemContents) super.clone();
 			ret.listeners = null;
-			ret.pages = new MemContentsSub.ContentsInterface[this.pages.length];
-			for (int i = 0; i < ret.pages.length; i++) {
-				if (this.pages[i] != null) {
-					ret.pages[i] = this.pages[i].clone();
-				}
-			}
+			// the pages are shared until one of the two modifies them
+			ret.pages = this.pages.clone();
+			ret.sharedPages = new boolean[pages.length];
+			Arrays.fill(ret.sharedPages, true);
+			this.sharedPages = ret.sharedPages.clone();
 			return ret;
 		} catch (CloneNotSupportedException ex) { return this; }
 	}
@@ -110,10 +112,8 @@ class MemContents implements Cloneable, HexModel {
 		int old = pages[page] == null ? 0 : pages[page].get(offs) & mask;
 		int val = value & mask;
 		if (old != val) {
-			if (pages[page] == null) {
-				pages[page] = MemContentsSub.createContents(PAGE_SIZE, width);
-			}
-			pages[page].set(offs, val);
+			ensurePage(page);
+			getPageToModify(page).set(offs, val);
 			fireBytesChanged(addr, 1, new int[] { old });
 		}
 	}
@@ -128,7 +128,7 @@ class MemContents implements Cloneable, HexModel {
 
 		if (pageStart == pageEnd) {
 			ensurePage(pageStart);
-			MemContentsSub.ContentsInterface page = pages[pageStart];
+			MemContentsSub.ContentsInterface page = getPageToModify(pageStart);
 			if (!page.matches(values, startOffs, mask)) {
 				int[] oldValues = page.get(startOffs, values.length);
 				page.load(startOffs, values, mask);
@@ -144,7 +144,7 @@ class MemContents implements Cloneable, HexModel {
 				ensurePage(pageStart);
 				int[] vals = new int[PAGE_SIZE - startOffs];
 				System.arraycopy(values, 0, vals, 0, vals.length);
-				MemContentsSub.ContentsInterface page = pages[pageStart];
+				MemContentsSub.ContentsInterface page = getPageToModify(pageStart);
 				if (!page.matches(vals, startOffs, mask)) {
 					int[] oldValues = page.get(startOffs, vals.length);
 					page.load(startOffs, vals, mask);
@@ -156,7 +156,7 @@ class MemContents implements Cloneable, HexModel {
 			int[] vals = new int[PAGE_SIZE];
 			int offs = nextOffs;
 			for (int i = pageStart + 1; i < pageEnd; i++, offs += PAGE_SIZE) {
-				MemContentsSub.ContentsInterface page = pages[i];
+				MemContentsSub.ContentsInterface page = getPageToModify(i);
 				if (page == null) {
 					boolean allZeroes = true;
 					for (int j = 0; j < PAGE_SIZE; j++) {
@@ -181,7 +181,7 @@ class MemContents implements Cloneable, HexModel {
 				ensurePage(pageEnd);
 				vals = new int[endOffs + 1];
 				System.arraycopy(values, offs, vals, 0, endOffs + 1);
-				MemContentsSub.ContentsInterface page = pages[pageEnd];
+				MemContentsSub.ContentsInterface page = getPageToModify(pageEnd);
 				if (!page.matches(vals, startOffs, mask)) {
 					int[] oldValues = page.get(0, endOffs + 1);
 					page.load(0, vals, mask);
@@ -205,7 +205,7 @@ class MemContents implements Cloneable, HexModel {
 			ensurePage(pageStart);
 			int[] vals = new int[(int) len];
 			Arrays.fill(vals, value);
-			MemContentsSub.ContentsInterface page = pages[pageStart];
+			MemContentsSub.ContentsInterface page = getPageToModify(pageStart);
 			if (!page.matches(vals, startOffs, mask)) {
 				int[] oldValues = page.get(startOffs, (int) len);
 				page.load(startOffs, vals, mask);
@@ -222,7 +222,7 @@ class MemContents implements Cloneable, HexModel {
 					ensurePage(pageStart);
 					int[] vals = new int[PAGE_SIZE - startOffs];
 					Arrays.fill(vals, value);
-					MemContentsSub.ContentsInterface page = pages[pageStart];
+					MemContentsSub.ContentsInterface page = getPageToModify(pageStart);
 					if (!page.matches(vals, startOffs, mask)) {
 						int[] oldValues = page.get(startOffs, vals.length);
 						page.load(startOffs, vals, mask);
@@ -240,7 +240,7 @@ class MemContents implements Cloneable, HexModel {
 				Arrays.fill(vals, value);
 				for (int i = pageStart + 1; i < pageEnd; i++) {
 					ensurePage(i);
-					MemContentsSub.ContentsInterface page = pages[i];
+					MemContentsSub.ContentsInterface page = getPageToModify(i);
 					if (!page.matches(vals, 0, mask)) {
 						int[] oldValues = page.get(0, PAGE_SIZE);
 						page.load(0, vals, mask);
@@ -249,7 +249,7 @@ class MemContents implements Cloneable, HexModel {
 				}
 			}
 			if (endOffs >= 0) {
-				MemContentsSub.ContentsInterface page = pages[pageEnd];
+				MemContentsSub.ContentsInterface page = getPageToModify(pageEnd);
 				if (value == 0 && page == null) {
 					// nothing to do
 				} else {
@@ -302,6 +302,7 @@ class MemContents implements Cloneable, HexModel {
 		if (addrBits < PAGE_SIZE_BITS) { pageCount = 1; pageLength = 1 << addrBits; }
 		else { pageCount = 1 << (addrBits - PAGE_SIZE_BITS); pageLength = PAGE_SIZE; }
 		pages = new MemContentsSub.ContentsInterface[pageCount];
+		sharedPages = null;
 		if (oldPages != null) {
 			int n = Math.min(oldPages.length, pages.length);
 			for (int i = 0; i < n; i++) {
@@ -332,9 +333,23 @@ class MemContents implements Cloneable, HexModel {
 		return width;
 	}
 	
+	// returns the page at index, first copying it if it is shared
+	private MemContentsSub.ContentsInterface getPageToModify(int index) {
+		MemContentsSub.ContentsInterface page = pages[index];
+		if (sharedPages != null && sharedPages[index]) {
+			if (page != null) {
+				page = page.clone();
+				pages[index] = page;
+			}
+			sharedPages[index] = false;
+		}
+		return page;
+	}
+	
 	private void ensurePage(int index) {
 		if (pages[index] == null) {
 			pages[index] = MemContentsSub.createContents(PAGE_SIZE, width);
+			if (sharedPages != null) sharedPages[index] = false;
 		}
 	}
 }
@@ -118,15 +118,9 @@ public class BitSelector extends InstanceFactory {
 			} else if (groupBits.getWidth() == 1) {
 				group = data.get(shift);
 			} else {
-				Value[] bits = new Value[groupBits.getWidth()];
-				for (int i = 0; i < bits.length; i++) {
-					if (shift + i >= data.getWidth()) {
-						bits[i] = Value.FALSE;
-					} else {
-						bits[i] = data.get(shift + i);
-					}
-				}
-				group = Value.create(bits);
+				int end = Math.min(shift + groupBits.getWidth(), data.getWidth());
+				group = data.extract(shift, end).extendWidth(groupBits.getWidth(),
+						Value.FALSE);
 			}
 		}
 		state.setPort(0, group, Plexers.DELAY);
@@ -76,6 +76,7 @@ public class PokeTool extends Tool {
 			Circuit circ = pokedCircuit;
 			if (event.getCircuit() == circ && circ != null
 					&& (event.getAction() == CircuitEvent.ACTION_REMOVE
+							|| event.getAction() == CircuitEvent.ACTION_BATCH
 							|| event.getAction() == CircuitEvent.ACTION_CLEAR)
 					&& !circ.contains(pokedComponent)) {
 				removeCaret(false);
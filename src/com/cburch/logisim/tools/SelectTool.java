@@ -75,6 +75,10 @@ public class SelectTool extends Tool {
 		public void requestSatisfied(MoveGesture gesture, int dx, int dy) {
 			clearCanvasMessage(canvas, dx, dy);
 		}
+		
+		public void requestProgressed(MoveGesture gesture, int dx, int dy) {
+			canvas.repaint();
+		}
 	}
 	
 	private class Listener implements Selection.Listener {
@@ -146,7 +150,7 @@ public class SelectTool extends Tool {
 
 			MoveGesture gesture = moveGesture;
 			if (gesture != null && drawConnections && (dx != 0 || dy != 0)) {
-				MoveResult result = gesture.findResult(dx, dy);
+				MoveResult result = gesture.findBestResult(dx, dy);
 				if (result != null) {
 					Collection<Wire> wiresToAdd = result.getWiresToAdd();
 					Graphics g = context.getGraphics();
@@ -523,7 +527,7 @@ public class SelectTool extends Tool {
 			Set<Component> sel = canvas.getSelection().getComponents();
 			MoveGesture gesture = moveGesture;
 			if (gesture != null && drawConnections) {
-				MoveResult result = gesture.findResult(dx, dy);
+				MoveResult result = gesture.findBestResult(dx, dy);
 				if (result != null) {
 					HashSet<Component> ret = new HashSet<Component>(sel);
 					ret.addAll(result.getReplacementMap().getRemovals());
@@ -89,4 +89,11 @@ public class SetAttributeAction extends Action {
 			}
 		}
 	}
+
+	@Override
+	public long getMemorySize() {
+		long ret = super.getMemorySize() + 32 * comps.size();
+		if (xnReverse != null) ret += xnReverse.getMemorySize();
+		return ret;
+	}
 }
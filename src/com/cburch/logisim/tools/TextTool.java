@@ -95,6 +95,11 @@ public class TextTool extends Tool {
 				if (event.getData() == caretComponent) {
 					caret.cancelEditing();
 				}
+			} else if (action == CircuitEvent.ACTION_BATCH) {
+				if (caretComponent != null
+						&& event.getBatch().getRemovals().contains(caretComponent)) {
+					caret.cancelEditing();
+				}
 			} else if (action == CircuitEvent.ACTION_CLEAR) {
 				if (caretComponent != null) {
 					caret.cancelEditing();
@@ -8,6 +8,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import com.cburch.logisim.circuit.Wire;
@@ -16,24 +18,67 @@ import com.cburch.logisim.data.Bounds;
 import com.cburch.logisim.data.Location;
 
 class AvoidanceMap {
+	// recorded in an overlay for a location that its base map marks
+	// but that has since been unmarked
+	private static final String CLEARED = "cleared";
+	
 	static AvoidanceMap create(Collection<Component> elements, int dx, int dy) {
-		AvoidanceMap ret = new AvoidanceMap(new HashMap<Location,String>());
+		AvoidanceMap ret = new AvoidanceMap(null, new HashMap<Location,String>());
 		ret.markAll(elements, dx, dy);
 		return ret;
 	}
 
+	private final AvoidanceMap base;
 	private final HashMap<Location,String> avoid;
 	
-	private AvoidanceMap(HashMap<Location,String> map) {
-		avoid = map;
+	private AvoidanceMap(AvoidanceMap base, HashMap<Location,String> map) {
+		this.base = base;
+		this.avoid = map;
 	}
 	
 	public AvoidanceMap cloneMap() {
-		return new AvoidanceMap(new HashMap<Location,String>(avoid));
+		return new AvoidanceMap(base, new HashMap<Location,String>(avoid));
+	}
+	
+	/** Returns a map that starts identical to this one but that records
+	 * its own changes separately, so that creating and cloning it costs
+	 * time proportional only to those changes. This map must not change
+	 * while the overlay is in use. */
+	public AvoidanceMap createOverlay() {
+		return new AvoidanceMap(this, new HashMap<Location,String>());
 	}
 	
 	public Object get(Location loc) {
-		return avoid.get(loc);
+		return lookup(loc);
+	}
+	
+	private String lookup(Location loc) {
+		String ret = avoid.get(loc);
+		if (ret == null) {
+			return base == null ? null : base.lookup(loc);
+		} else {
+			return ret == CLEARED ? null : ret;
+		}
+	}
+	
+	private String put(Location loc, String value) {
+		String prev = avoid.put(loc, value);
+		if (prev == null) {
+			return base == null ? null : base.lookup(loc);
+		} else {
+			return prev == CLEARED ? null : prev;
+		}
+	}
+	
+	private String remove(Location loc) {
+		if (base == null) return avoid.remove(loc);
+		String prev = lookup(loc);
+		if (base.lookup(loc) == null) {
+			avoid.remove(loc);
+		} else {
+			avoid.put(loc, CLEARED);
+		}
+		return prev;
 	}
 	
 	public void markAll(Collection<Component> elements, int dx, int dy) {
@@ -48,8 +93,23 @@ class AvoidanceMap {
 		}
 	}
 	
+	/** Marks everything that the other map marks, shifted by the given
+	 * offset. When the offset lies on the grid, this has the same
+	 * effect as marking the elements from which the other map was
+	 * created, but it avoids recomputing their footprints. The other
+	 * map must not be an overlay. */
+	public void markTranslated(AvoidanceMap other, int dx, int dy) {
+		for (Map.Entry<Location,String> entry : other.avoid.entrySet()) {
+			String value = entry.getValue();
+			Location loc = entry.getKey().translate(dx, dy);
+			String prev = put(loc, value);
+			if (prev != null && prev != value) {
+				avoid.put(loc, Connector.ALLOW_NEITHER);
+			}
+		}
+	}
+	
 	public void markComponent(Component comp, int dx, int dy) {
-		HashMap<Location,String> avoid = this.avoid;
 		boolean translated = dx != 0 || dy != 0;
 		Bounds bds = comp.getBounds();
 		int x0 = bds.getX() + dx;
@@ -64,14 +124,14 @@ class AvoidanceMap {
 				// loc is most likely in the component, so go ahead and
 				// put it into the map as if it is - and in the rare event
 				// that loc isn't in the component, we can remove it.
-				String prev = avoid.put(loc, Connector.ALLOW_NEITHER);
+				String prev = put(loc, Connector.ALLOW_NEITHER);
 				if (prev != Connector.ALLOW_NEITHER) {
 					Location baseLoc = translated ? loc.translate(-dx, -dy) : loc;
 					if (!comp.contains(baseLoc)) {
 						if (prev == null) {
-							avoid.remove(loc);
+							remove(loc);
 						} else {
-							avoid.put(loc, prev);
+							put(loc, prev);
 						}
 					}
 				}
@@ -80,7 +140,6 @@ class AvoidanceMap {
 	}
 	
 	public void markWire(Wire w, int dx, int dy) {
-		HashMap<Location,String> avoid = this.avoid;
 		boolean translated = dx != 0 || dy != 0;
 		Location loc0 = w.getEnd0();
 		Location loc1 = w.getEnd1();
@@ -88,24 +147,24 @@ class AvoidanceMap {
 			loc0 = loc0.translate(dx, dy);
 			loc1 = loc1.translate(dx, dy);
 		}
-		avoid.put(loc0, Connector.ALLOW_NEITHER);
-		avoid.put(loc1, Connector.ALLOW_NEITHER);
+		put(loc0, Connector.ALLOW_NEITHER);
+		put(loc1, Connector.ALLOW_NEITHER);
 		int x0 = loc0.getX();
 		int y0 = loc0.getY();
 		int x1 = loc1.getX();
 		int y1 = loc1.getY();
 		if (x0 == x1) { // vertical wire
 			for (Location loc : Wire.create(loc0, loc1)) {
-				Object prev = avoid.put(loc, Connector.ALLOW_HORIZONTAL);
+				Object prev = put(loc, Connector.ALLOW_HORIZONTAL);
 				if (prev == Connector.ALLOW_NEITHER || prev == Connector.ALLOW_VERTICAL) {
-					avoid.put(loc, Connector.ALLOW_NEITHER);
+					put(loc, Connector.ALLOW_NEITHER);
 				}
 			}
 		} else if (y0 == y1) { // horizontal wire
 			for (Location loc : Wire.create(loc0, loc1)) {
-				Object prev = avoid.put(loc, Connector.ALLOW_VERTICAL);
+				Object prev = put(loc, Connector.ALLOW_VERTICAL);
 				if (prev == Connector.ALLOW_NEITHER || prev == Connector.ALLOW_HORIZONTAL) {
-					avoid.put(loc, Connector.ALLOW_NEITHER);
+					put(loc, Connector.ALLOW_NEITHER);
 				}
 			}
 		} else { // diagonal - shouldn't happen
@@ -114,14 +173,14 @@ class AvoidanceMap {
 	}
 	
 	public void unmarkLocation(Location loc) {
-		avoid.remove(loc);
+		remove(loc);
 	}
 	
 	public void unmarkWire(Wire w, Location deletedEnd, Set<Location> unmarkable) {
 		Location loc0 = w.getEnd0();
 		Location loc1 = w.getEnd1();
 		if (unmarkable == null || unmarkable.contains(deletedEnd)) {
-			avoid.remove(deletedEnd);
+			remove(deletedEnd);
 		}
 		int x0 = loc0.getX();
 		int y0 = loc0.getY();
@@ -130,18 +189,18 @@ class AvoidanceMap {
 		if (x0 == x1) { // vertical wire
 			for (Location loc : w) {
 				if (unmarkable == null || unmarkable.contains(deletedEnd)) {
-					Object prev = avoid.remove(loc);
+					Object prev = remove(loc);
 					if (prev != Connector.ALLOW_HORIZONTAL && prev != null) {
-						avoid.put(loc, Connector.ALLOW_VERTICAL);
+						put(loc, Connector.ALLOW_VERTICAL);
 					}
 				}
 			}
 		} else if (y0 == y1) { // horizontal wire
 			for (Location loc : w) {
 				if (unmarkable == null || unmarkable.contains(deletedEnd)) {
-					Object prev = avoid.remove(loc);
+					Object prev = remove(loc);
 					if (prev != Connector.ALLOW_VERTICAL && prev != null) {
-						avoid.put(loc, Connector.ALLOW_HORIZONTAL);
+						put(loc, Connector.ALLOW_HORIZONTAL);
 					}
 				}
 			}
@@ -151,10 +210,15 @@ class AvoidanceMap {
 	}
 	
 	public void print(PrintStream stream) {
-		ArrayList<Location> list = new ArrayList<Location>(avoid.keySet());
+		HashSet<Location> keys = new HashSet<Location>();
+		for (AvoidanceMap map = this; map != null; map = map.base) {
+			keys.addAll(map.avoid.keySet());
+		}
+		ArrayList<Location> list = new ArrayList<Location>(keys);
 		Collections.sort(list);
 		for (int i = 0, n = list.size(); i < n; i++) {
-			stream.println(list.get(i) + ": " + avoid.get(list.get(i)));
+			Object value = get(list.get(i));
+			if (value != null) stream.println(list.get(i) + ": " + value);
 		}
 	}
 }
@@ -38,7 +38,25 @@ class Connector {
 		ArrayList<ConnectionData> impossible = pruneImpossible(baseConnects,
 				gesture.getFixedAvoidanceMap(), dx, dy);
 
-		AvoidanceMap selAvoid = AvoidanceMap.create(gesture.getSelected(), dx, dy);
+		// The avoidance maps for the fixed components and for the
+		// unmoved selection persist across the gesture's requests; when
+		// the offset is on the grid, the selection's map can simply be
+		// shifted rather than recomputed.
+		AvoidanceMap selAvoid;
+		int selDx;
+		int selDy;
+		AvoidanceMap avoid = gesture.getFixedAvoidanceMap().createOverlay();
+		if (dx % 10 == 0 && dy % 10 == 0) {
+			selAvoid = gesture.getSelectedAvoidanceMap();
+			selDx = dx;
+			selDy = dy;
+			avoid.markTranslated(selAvoid, dx, dy);
+		} else {
+			selAvoid = AvoidanceMap.create(gesture.getSelected(), dx, dy);
+			selDx = 0;
+			selDy = 0;
+			avoid.markAll(gesture.getSelected(), dx, dy);
+		}
 		HashMap<ConnectionData,Set<Location>> pathLocs;
 		pathLocs = new HashMap<ConnectionData,Set<Location>>();
 		HashMap<ConnectionData,List<SearchNode>> initNodes;
@@ -46,7 +64,8 @@ class Connector {
 		for (ConnectionData conn : baseConnects) {
 			HashSet<Location> connLocs = new HashSet<Location>();
 			ArrayList<SearchNode> connNodes = new ArrayList<SearchNode>();
-			processConnection(conn, dx, dy, connLocs, connNodes, selAvoid);
+			processConnection(conn, dx, dy, connLocs, connNodes,
+					selAvoid, selDx, selDy);
 			pathLocs.put(conn, connLocs);
 			initNodes.put(conn, connNodes);
 		}
@@ -77,34 +96,35 @@ class Connector {
 				Collections.shuffle(connects);
 			}
 			
-			MoveResult candidate = tryList(req, gesture, connects, dx, dy,
+			MoveResult candidate = tryList(req, connects, avoid.cloneMap(),
 				pathLocs, initNodes, stopTime);
 			if (candidate == null) {
 				return null;
-			} else if (bestResult == null) {
+			}
+			candidate.addUnsatisfiedConnections(impossible);
+			if (isBetter(candidate, bestResult)) {
 				bestResult = candidate;
-			} else {
-				int unsatisfied1 = bestResult.getUnsatisifiedConnections().size();
-				int unsatisfied2 = candidate.getUnsatisifiedConnections().size();
-				if (unsatisfied2 < unsatisfied1) {
-					bestResult = candidate;
-				} else if (unsatisfied2 == unsatisfied1) {
-					int dist1 = bestResult.getTotalDistance();
-					int dist2 = candidate.getTotalDistance();
-					if (dist2 < dist1) {
-						bestResult = candidate;
-					}
-				}
+				// let the drag preview show this while we look for better
+				if (tryNum + 1 < tries) gesture.notifyProgress(req, bestResult);
 			}
 		}
 		if (bestResult == null) { // should only happen for no connections
 			bestResult = new MoveResult(req, new ReplacementMap(), impossible, 0);
-		} else {
-			bestResult.addUnsatisfiedConnections(impossible);
 		}
 		return bestResult;
 	}
 	
+	private static boolean isBetter(MoveResult candidate, MoveResult best) {
+		if (best == null) return true;
+		int unsatisfied1 = best.getUnsatisifiedConnections().size();
+		int unsatisfied2 = candidate.getUnsatisifiedConnections().size();
+		if (unsatisfied2 != unsatisfied1) {
+			return unsatisfied2 < unsatisfied1;
+		} else {
+			return candidate.getTotalDistance() < best.getTotalDistance();
+		}
+	}
+	
 	private static ArrayList<ConnectionData> pruneImpossible(
 			ArrayList<ConnectionData> connects, AvoidanceMap avoid, int dx, int dy) {
 		ArrayList<Wire> pathWires = new ArrayList<Wire>();
@@ -157,10 +177,10 @@ class Connector {
 	
 	private static void processConnection(ConnectionData conn, int dx, int dy,
 			HashSet<Location> connLocs, ArrayList<SearchNode> connNodes,
-			AvoidanceMap selAvoid) {
+			AvoidanceMap selAvoid, int selDx, int selDy) {
 		Location cur = conn.getLocation();
 		Location dest = cur.translate(dx, dy);
-		if (selAvoid.get(cur) == null) {
+		if (selAvoid.get(cur.translate(-selDx, -selDy)) == null) {
 			Direction preferred = conn.getDirection();
 			if (preferred == null) {
 				if (Math.abs(dx) > Math.abs(dy)) {
@@ -176,7 +196,8 @@ class Connector {
 
 		for (Wire w : conn.getWirePath()) {
 			for (Location loc : w) {
-				if (selAvoid.get(loc) == null || loc.equals(dest)) {
+				if (selAvoid.get(loc.translate(-selDx, -selDy)) == null
+						|| loc.equals(dest)) {
 					boolean added = connLocs.add(loc);
 					if (added) {
 						Direction dir = null;
@@ -199,12 +220,9 @@ class Connector {
 	}
 	
 	private static MoveResult tryList(MoveRequest req,
-			MoveGesture gesture, ArrayList<ConnectionData> connects,
-			int dx, int dy, HashMap<ConnectionData,Set<Location>> pathLocs,
+			ArrayList<ConnectionData> connects, AvoidanceMap avoid,
+			HashMap<ConnectionData,Set<Location>> pathLocs,
 			HashMap<ConnectionData,List<SearchNode>> initNodes, long stopTime) {
-		AvoidanceMap avoid = gesture.getFixedAvoidanceMap().cloneMap();
-		avoid.markAll(gesture.getSelected(), dx, dy);
-
 		ReplacementMap replacements = new ReplacementMap();
 		ArrayList<ConnectionData> unconnected = new ArrayList<ConnectionData>();
 		int totalDistance = 0;
@@ -236,6 +254,12 @@ class Connector {
 			Set<Location> pathLocs, AvoidanceMap avoid) {
 		PriorityQueue<SearchNode> q = new PriorityQueue<SearchNode>(nodes);
 		HashSet<SearchNode> visited = new HashSet<SearchNode>();
+		// the shortest distance queued so far for each location/direction,
+		// so that we needn't queue (and later discard) longer routes to it
+		HashMap<SearchNode,Integer> queued = new HashMap<SearchNode,Integer>();
+		for (SearchNode n : nodes) {
+			queued.put(n, Integer.valueOf(n.getDistance()));
+		}
 		int iters = 0;
 		while (!q.isEmpty() && iters < MAX_SEARCH_ITERATIONS) {
 			iters++;
@@ -303,7 +327,11 @@ class Connector {
 				}
 				SearchNode o = n.next(oDir, allowed != null);
 				if (o != null && !visited.contains(o)) {
-					q.add(o);
+					Integer prevDist = queued.get(o);
+					if (prevDist == null || o.getDistance() < prevDist.intValue()) {
+						queued.put(o, Integer.valueOf(o.getDistance()));
+						q.add(o);
+					}
 				}
 			}
 		}
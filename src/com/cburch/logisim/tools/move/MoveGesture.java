@@ -25,7 +25,9 @@ public class MoveGesture {
 	
 	private transient Set<ConnectionData> connections;
 	private transient AvoidanceMap initAvoid;
+	private transient AvoidanceMap selectedAvoid;
 	private HashMap<MoveRequest,MoveResult> cachedResults;
+	private HashMap<MoveRequest,MoveResult> provisionalResults;
 	
 	public MoveGesture(MoveRequestListener listener, Circuit circuit,
 			Collection<Component> selected) {
@@ -34,7 +36,9 @@ public class MoveGesture {
 		this.selected = new HashSet<Component>(selected);
 		this.connections = null;
 		this.initAvoid = null;
+		this.selectedAvoid = null;
 		this.cachedResults = new HashMap<MoveRequest,MoveResult>();
+		this.provisionalResults = new HashMap<MoveRequest,MoveResult>();
 	}
 	
 	HashSet<Component> getSelected() {
@@ -53,6 +57,17 @@ public class MoveGesture {
 		return ret;
 	}
 	
+	/** Returns the locations that the selection avoids when it has not
+	 * moved; this is shared by all requests of this gesture. */
+	AvoidanceMap getSelectedAvoidanceMap() {
+		AvoidanceMap ret = selectedAvoid;
+		if (ret == null) {
+			ret = AvoidanceMap.create(selected, 0, 0);
+			selectedAvoid = ret;
+		}
+		return ret;
+	}
+	
 	Set<ConnectionData> getConnections() {
 		Set<ConnectionData> ret = connections;
 		if (ret == null) {
@@ -69,6 +84,18 @@ public class MoveGesture {
 		}
 	}
 
+	/** Returns the result for the given offset if it has been computed,
+	 * and otherwise the best result found so far, if any. The latter is
+	 * suitable only for previewing the move. */
+	public MoveResult findBestResult(int dx, int dy) {
+		MoveRequest request = new MoveRequest(this, dx, dy);
+		synchronized (cachedResults) {
+			MoveResult ret = cachedResults.get(request);
+			if (ret == null) ret = provisionalResults.get(request);
+			return ret;
+		}
+	}
+
 	public boolean enqueueRequest(int dx, int dy) {
 		MoveRequest request = new MoveRequest(this, dx, dy);
 		synchronized (cachedResults) {
@@ -100,8 +127,19 @@ public class MoveGesture {
 		}
 	}
 	
+	void notifyProgress(MoveRequest request, MoveResult result) {
+		synchronized (cachedResults) {
+			if (cachedResults.containsKey(request)) return;
+			provisionalResults.put(request, result);
+		}
+		if (listener != null) {
+			listener.requestProgressed(this, request.getDeltaX(), request.getDeltaY());
+		}
+	}
+	
 	void notifyResult(MoveRequest request, MoveResult result) {
 		synchronized (cachedResults) {
+			provisionalResults.remove(request);
 			cachedResults.put(request, result);
 			cachedResults.notifyAll();
 		}
@@ -3,20 +3,28 @@
 
 package com.cburch.logisim.util;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class ZipClassLoader extends ClassLoader {
-	// This code was posted on a forum by "leukbr" on March 30, 2001.
-	// http://forums.sun.com/thread.jspa?threadID=360060&forumID=31
-	// I've modified it substantially to include a thread that keeps the file
-	// open for OPEN_TIME milliseconds so time isn't wasted continually
+	// This code was originally posted on a forum by "leukbr" on March 30,
+	// 2001 (http://forums.sun.com/thread.jspa?threadID=360060&forumID=31),
+	// and it used to route every request through a single thread owning the
+	// ZIP file. Now the names of the entries are indexed once, and each
+	// request reads from the calling thread, so several threads can load
+	// classes at the same time. The file is still kept open for OPEN_TIME
+	// milliseconds after its last use so time isn't wasted continually
 	// opening and closing the file.
 	private static final int OPEN_TIME = 5000;
 	private static final int DEBUG = 0;
@@ -24,208 +32,59 @@ public class ZipClassLoader extends ClassLoader {
 		// 1 = open/close ZIP file only
 		// 2 = also each resource request
 		// 3 = all messages while retrieving resource
-	
-	private static final int REQUEST_FIND = 0;
-	private static final int REQUEST_LOAD = 1;
-	
-	private static class Request {
-		int action;
-		String resource;
-		boolean responseSent;
-		Object response;
-		
-		Request(int action, String resource) {
-			this.action = action;
-			this.resource = resource;
-			this.responseSent = false;
-		}
-		
-		@Override
-		public String toString() {
-			String act = action == REQUEST_LOAD ? "load"
-					: action == REQUEST_FIND ? "find" : "act" + action;
-			return act + ":" + resource;
-		}
-		
-		void setResponse(Object value) {
-			synchronized(this) {
-				response = value;
-				responseSent = true;
-				notifyAll();
-			}
-		}
-		
-		void ensureDone() {
-			boolean aborted = false;
-			synchronized(this) {
-				if (!responseSent) {
-					aborted = true;
-					responseSent = true;
-					response = null;
-					notifyAll();
-				}
-			}
-			if (aborted && DEBUG >= 1) {
-				System.err.println("request not handled successfully"); //OK
-			}
-		}
-		
-		Object getResponse() {
-			synchronized(this) {
-				while (!responseSent) {
-					try { this.wait(1000); } catch (InterruptedException e) { }
-				}
-				return response;
-			}
-		}
+
+	private static Timer closer = null;
+
+	static {
+		registerAsParallelCapable();
 	}
-	
-	private class WorkThread extends Thread {
-		private LinkedList<Request> requests = new LinkedList<Request>();
-		private ZipFile zipFile = null;
-		
+
+	private static synchronized Timer getCloser() {
+		if (closer == null) closer = new Timer("ZipClassLoader", true);
+		return closer;
+	}
+
+	private class CloseTask extends TimerTask {
 		@Override
 		public void run() {
-			try {
-				while (true) {
-					Request request = waitForNextRequest();
-					if (request == null) return;
-					
-					if (DEBUG >= 2) System.err.println("processing " + request); //OK
-					try {
-						switch (request.action) {
-						case REQUEST_LOAD: performLoad(request); break;
-						case REQUEST_FIND: performFind(request); break;
-						}
-					} finally {
-						request.ensureDone();
-					}
-					if (DEBUG >= 2) System.err.println("processed: " + request.getResponse()); //OK
-				}
-			} catch (Throwable t) {
-				if (DEBUG >= 3) { System.err.print("uncaught: "); t.printStackTrace(); } //OK
-			} finally {
-				if (zipFile != null) {
-					try {
-						zipFile.close();
-						zipFile = null;
-						if (DEBUG >= 1) System.err.println("  ZIP closed"); //OK
-					} catch (IOException e) {
-						if (DEBUG >= 1) System.err.println("Error closing ZIP file"); //OK
-					}
-				}
-			}
-		}
-		
-		private Request waitForNextRequest() {
-			synchronized(bgLock) {
-				long start = System.currentTimeMillis();
-				while (requests.isEmpty()) {
-					long elapse = System.currentTimeMillis() - start;
-					if (elapse >= OPEN_TIME) {
-						bgThread = null;
-						return null;
-					}
-					try {
-						bgLock.wait(OPEN_TIME);
-					} catch (InterruptedException e) { }
-				}
-				return requests.removeFirst();
-			}
-		}
-		
-		private void performFind(Request req) {
-			ensureZipOpen();
-			Object ret = null;
-			try {
-				if (zipFile != null) {
-					if (DEBUG >= 3) System.err.println("  retrieve ZIP entry"); //OK
-					String res = req.resource;
-					ZipEntry zipEntry = zipFile.getEntry(res);
-					if (zipEntry != null) {
-						String url = "jar:" + zipPath.toURI() + "!/" + res;
-						ret = new URL(url);
-						if (DEBUG >= 3) System.err.println("  found: " + url); //OK
-					}
-				}
-			} catch (Throwable ex) {
-				if (DEBUG >= 3) System.err.println("  error retrieving data"); //OK
-				ex.printStackTrace();
-			}
-			req.setResponse(ret);
-		}
-		
-		private void performLoad(Request req) {
-			BufferedInputStream bis = null;
-			ensureZipOpen();
-			Object ret = null;
-			try {
-				if (zipFile != null) {
-					if (DEBUG >= 3) System.err.println("  retrieve ZIP entry"); //OK
-					ZipEntry zipEntry = zipFile.getEntry(req.resource);
-					if (zipEntry != null) {
-						if (DEBUG >= 3) System.err.println("  load file"); //OK
-						byte[] result = new byte[(int) zipEntry.getSize()];
-						bis = new BufferedInputStream(zipFile.getInputStream(zipEntry));
-						try {
-							bis.read(result, 0, result.length);
-							ret = result;
-						} catch (IOException e) {
-							if (DEBUG >= 3) System.err.println("  error loading file"); //OK
-						}
-					}
-				}
-			} catch (Throwable ex) {
-				if (DEBUG >= 3) System.err.println("  error retrieving data"); //OK
-				ex.printStackTrace();
-			} finally {
-				if (bis!=null) {
-					try {
-						if (DEBUG >= 3) System.err.println("  close file"); //OK
-						bis.close();
-					} catch (IOException ioex) {
-						if (DEBUG >= 3) System.err.println("  error closing data"); //OK
-					}
-				}
-			}
-			req.setResponse(ret);
-		}
-		
-		private void ensureZipOpen() {
-			if (zipFile == null) {
-				try {
-					if (DEBUG >= 3) System.err.println("  open ZIP file"); //OK
-					zipFile = new ZipFile(zipPath);
-					if (DEBUG >= 1) System.err.println("  ZIP opened");  //OK
-				} catch (IOException e) {
-					if (DEBUG >= 1) System.err.println("  error opening ZIP file"); //OK
-				}
+			synchronized(zipLock) {
+				if (closeTask != this) return;
+				closeTask = null;
+				if (zipUsers == 0) closeZip();
 			}
 		}
 	}
-	
+
 	private File zipPath;
 	private HashMap<String,Object> classes = new HashMap<String,Object>();
-	private Object bgLock = new Object();
-	private WorkThread bgThread = null;
- 
+	private volatile Map<String,Long> index = null; // entry name -> size
+	private Object zipLock = new Object();
+	private ZipFile zipFile = null;
+	private int zipUsers = 0;
+	private CloseTask closeTask = null;
+
 	public ZipClassLoader(String zipFileName) {
 		this(new File(zipFileName));
 	}
- 
+
 	public ZipClassLoader(File zipFile) {
 		zipPath = zipFile;
 	}
-	
+
 	@Override
 	public URL findResource(String resourceName) {
-		if (DEBUG >= 3) System.err.println("findResource " + resourceName); //OK
-		Object ret = request(REQUEST_FIND, resourceName);
-		if (ret instanceof URL) {
-			return (URL) ret;
-		} else {
-			return super.findResource(resourceName);
+		if (DEBUG >= 2) System.err.println("findResource " + resourceName); //OK
+		if (getIndex().containsKey(resourceName)) {
+			try {
+				String url = "jar:" + zipPath.toURI() + "!/" + resourceName;
+				if (DEBUG >= 3) System.err.println("  found: " + url); //OK
+				return new URL(url);
+			} catch (Throwable ex) {
+				if (DEBUG >= 3) System.err.println("  error creating URL"); //OK
+				ex.printStackTrace();
+			}
 		}
+		return super.findResource(resourceName);
 	}
 
 	@Override
@@ -242,7 +101,8 @@ public class ZipClassLoader extends ClassLoader {
 		// try loading it from the ZIP file if we haven't
 		if (!found) {
 			String resourceName = className.replace('.', '/') + ".class";
-			result = request(REQUEST_LOAD, resourceName);
+			if (DEBUG >= 2) System.err.println("findClass " + resourceName); //OK
+			result = loadEntry(resourceName);
 
 			if (result instanceof byte[]) {
 				if (DEBUG >= 3) System.err.println("  define class"); //OK
@@ -256,9 +116,16 @@ public class ZipClassLoader extends ClassLoader {
 				}
 			}
 
-			synchronized(classes) { classes.put(className, result); }
+			synchronized(classes) {
+				// another thread may have defined it while we read it
+				if (classes.containsKey(className)) {
+					result = classes.get(className);
+				} else {
+					classes.put(className, result);
+				}
+			}
 		}
-		
+
 		if (result instanceof Class) {
 			return (Class<?>) result;
 		} else if (result instanceof ClassNotFoundException) {
@@ -269,18 +136,111 @@ public class ZipClassLoader extends ClassLoader {
 			return super.findClass(className);
 		}
 	}
-	
-	private Object request(int action, String resourceName) {
-		Request request;
-		synchronized(bgLock) {
-			if (bgThread == null) { // start the thread if it isn't working
-				bgThread = new WorkThread();
-				bgThread.start();
+
+	private Map<String,Long> getIndex() {
+		Map<String,Long> ret = index;
+		if (ret == null) {
+			synchronized(zipLock) {
+				ret = index;
+				if (ret == null) {
+					HashMap<String,Long> entries = new HashMap<String,Long>();
+					ZipFile zip = acquireZip();
+					try {
+						// if the file cannot be opened now, try again on
+						// the next lookup rather than remember it as empty
+						if (zip == null) return Collections.emptyMap();
+						Enumeration<? extends ZipEntry> it = zip.entries();
+						while (it.hasMoreElements()) {
+							ZipEntry entry = it.nextElement();
+							entries.put(entry.getName(), Long.valueOf(entry.getSize()));
+						}
+					} finally {
+						releaseZip();
+					}
+					ret = Collections.unmodifiableMap(entries);
+					index = ret;
+				}
+			}
+		}
+		return ret;
+	}
+
+	private byte[] loadEntry(String resourceName) {
+		Long size = getIndex().get(resourceName);
+		if (size == null) return null;
+
+		ZipFile zip = acquireZip();
+		InputStream in = null;
+		try {
+			if (zip == null) return null;
+			ZipEntry zipEntry = zip.getEntry(resourceName);
+			if (zipEntry == null) return null;
+			if (DEBUG >= 3) System.err.println("  load file"); //OK
+			in = zip.getInputStream(zipEntry);
+			long expected = size.longValue();
+			ByteArrayOutputStream buf = new ByteArrayOutputStream(
+					expected > 0 ? (int) expected : 1024);
+			byte[] chunk = new byte[4096];
+			while (true) {
+				int n = in.read(chunk);
+				if (n < 0) break;
+				buf.write(chunk, 0, n);
+			}
+			return buf.toByteArray();
+		} catch (IOException e) {
+			if (DEBUG >= 3) System.err.println("  error loading file"); //OK
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					if (DEBUG >= 3) System.err.println("  close file"); //OK
+					in.close();
+				} catch (IOException ioex) {
+					if (DEBUG >= 3) System.err.println("  error closing data"); //OK
+				}
+			}
+			releaseZip();
+		}
+	}
+
+	// ZipFile allows concurrent reads, so threads only need to agree on
+	// when the file is open.
+	private ZipFile acquireZip() {
+		synchronized(zipLock) {
+			if (zipFile == null) {
+				try {
+					if (DEBUG >= 3) System.err.println("  open ZIP file"); //OK
+					zipFile = new ZipFile(zipPath);
+					if (DEBUG >= 1) System.err.println("  ZIP opened");  //OK
+				} catch (IOException e) {
+					if (DEBUG >= 1) System.err.println("  error opening ZIP file"); //OK
+				}
+			}
+			zipUsers++;
+			return zipFile;
+		}
+	}
+
+	private void releaseZip() {
+		synchronized(zipLock) {
+			zipUsers--;
+			if (zipUsers == 0 && zipFile != null) {
+				if (closeTask != null) closeTask.cancel();
+				closeTask = new CloseTask();
+				getCloser().schedule(closeTask, OPEN_TIME);
+			}
+		}
+	}
+
+	private void closeZip() {
+		if (zipFile != null) {
+			try {
+				zipFile.close();
+				if (DEBUG >= 1) System.err.println("  ZIP closed"); //OK
+			} catch (IOException e) {
+				if (DEBUG >= 1) System.err.println("Error closing ZIP file"); //OK
 			}
-			request = new Request(action, resourceName);
-			bgThread.requests.addLast(request);
-			bgLock.notifyAll();
+			zipFile = null;
 		}
-		return request.getResponse();
 	}
 }